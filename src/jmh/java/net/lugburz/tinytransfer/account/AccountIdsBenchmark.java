@@ -0,0 +1,79 @@
+package net.lugburz.tinytransfer.account;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for resolving account numbers to ids with {@link AccountIds} versus a {@link ConcurrentHashMap} of
+ * boxed ids, for numeric account numbers, which are packed into a {@code long}, and for prefixed ones, which are not.
+ *
+ * <p>
+ * Every lookup starts from a new {@link String}, as it would arrive in a request, so its hash code is not cached yet.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AccountIdsBenchmark {
+
+    /**
+     * Formats of the account numbers.
+     */
+    public enum Format {
+        NUMERIC, PREFIXED
+    }
+
+    @Param
+    public Format format;
+
+    @Param({"1000000"})
+    public int accounts;
+
+    private char[][] accountNos;
+    private AccountIds ids;
+    private Map<String, Integer> map;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        accountNos = new char[accounts][];
+        ids = new AccountIds();
+        map = new ConcurrentHashMap<>();
+        for (int i = 0; i < accounts; i++) {
+            final String accountNo = format == Format.NUMERIC ? Long.toString(40_000_000_000L + i) : "acc-" + i;
+            accountNos[i] = accountNo.toCharArray();
+            ids.putIfAbsent(accountNo, i);
+            map.put(accountNo, i);
+        }
+    }
+
+    @Benchmark
+    public int accountIds() {
+        return ids.get(nextAccountNo());
+    }
+
+    @Benchmark
+    public int concurrentHashMap() {
+        return map.get(nextAccountNo());
+    }
+
+    private String nextAccountNo() {
+        return new String(accountNos[ThreadLocalRandom.current().nextInt(accounts)]);
+    }
+}
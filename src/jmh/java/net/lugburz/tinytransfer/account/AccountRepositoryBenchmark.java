@@ -0,0 +1,112 @@
+package net.lugburz.tinytransfer.account;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for looking up and creating accounts in both {@link AccountRepository} implementations.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class AccountRepositoryBenchmark {
+
+    private static final int CREATIONS_PER_INVOCATION = 100_000;
+
+    /**
+     * Available account stores.
+     */
+    public enum Store {
+        IN_MEMORY, FIXED_POINT, OFF_HEAP
+    }
+
+    @Param
+    public Store store;
+
+    @Param({"1000000"})
+    public int accounts;
+
+    private AccountRepository repository;
+    private String[] accountNos;
+    private String[] newAccountNos;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        accountNos = new String[accounts];
+        for (int i = 0; i < accounts; i++) {
+            accountNos[i] = "acc-" + i;
+        }
+        repository = newRepository(store);
+        for (final String accountNo : accountNos) {
+            repository.create(accountNo, BigDecimal.TEN);
+        }
+        newAccountNos = new String[CREATIONS_PER_INVOCATION];
+        for (int i = 0; i < CREATIONS_PER_INVOCATION; i++) {
+            newAccountNos[i] = "new-" + i;
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Account find() {
+        return repository.find(accountNos[ThreadLocalRandom.current().nextInt(accounts)]);
+    }
+
+    /**
+     * Creates accounts in an empty store; each invocation starts with a new store, so the store never fills up.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @OperationsPerInvocation(CREATIONS_PER_INVOCATION)
+    public AccountRepository create(final EmptyRepository empty) {
+        final AccountRepository target = empty.repository;
+        for (int i = 0; i < CREATIONS_PER_INVOCATION; i++) {
+            target.create(newAccountNos[i], BigDecimal.TEN);
+        }
+        return target;
+    }
+
+    static AccountRepository newRepository(final Store store) {
+        switch (store) {
+            case FIXED_POINT:
+                return new FixedPointAccountRepository(new MinorUnits(2));
+            case OFF_HEAP:
+                return new OffHeapAccountRepository(new MinorUnits(2));
+            case IN_MEMORY:
+            default:
+                return new InMemoryAccountRepository();
+        }
+    }
+
+    /**
+     * A new, empty store per invocation of {@link #create(EmptyRepository)}.
+     */
+    @State(Scope.Thread)
+    public static class EmptyRepository {
+
+        private AccountRepository repository;
+
+        @Setup(Level.Invocation)
+        public void setup(final AccountRepositoryBenchmark benchmark) {
+            repository = newRepository(benchmark.store);
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package net.lugburz.tinytransfer.account;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmarks for concurrent account creations and lookups at 1 to 64 threads, to show how both scale with the number
+ * of threads.
+ *
+ * <ul>
+ * <li>{@code createN}: every thread creates its own accounts in a store which is empty at the start of each
+ * iteration; the score is the average time per creation.</li>
+ * <li>{@code lookupN}: every thread looks up random existing accounts.</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+public class AccountRepositoryScalingBenchmark {
+
+    private static final int CREATIONS_PER_THREAD = 50_000;
+
+    @Param
+    public AccountRepositoryBenchmark.Store store;
+
+    @Param({"1000000"})
+    public int accounts;
+
+    private AccountRepository prefilled;
+    private String[] accountNos;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        accountNos = new String[accounts];
+        prefilled = AccountRepositoryBenchmark.newRepository(store);
+        for (int i = 0; i < accounts; i++) {
+            accountNos[i] = "acc-" + i;
+            prefilled.create(accountNos[i], BigDecimal.TEN);
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 20)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @OperationsPerInvocation(CREATIONS_PER_THREAD)
+    public AccountRepository create1(final EmptyRepository empty, final Creator creator) {
+        return create(empty, creator);
+    }
+
+    @Benchmark
+    @Threads(2)
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 20)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @OperationsPerInvocation(CREATIONS_PER_THREAD)
+    public AccountRepository create2(final EmptyRepository empty, final Creator creator) {
+        return create(empty, creator);
+    }
+
+    @Benchmark
+    @Threads(4)
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 20)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @OperationsPerInvocation(CREATIONS_PER_THREAD)
+    public AccountRepository create4(final EmptyRepository empty, final Creator creator) {
+        return create(empty, creator);
+    }
+
+    @Benchmark
+    @Threads(8)
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 20)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @OperationsPerInvocation(CREATIONS_PER_THREAD)
+    public AccountRepository create8(final EmptyRepository empty, final Creator creator) {
+        return create(empty, creator);
+    }
+
+    @Benchmark
+    @Threads(16)
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 20)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @OperationsPerInvocation(CREATIONS_PER_THREAD)
+    public AccountRepository create16(final EmptyRepository empty, final Creator creator) {
+        return create(empty, creator);
+    }
+
+    @Benchmark
+    @Threads(32)
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 20)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @OperationsPerInvocation(CREATIONS_PER_THREAD)
+    public AccountRepository create32(final EmptyRepository empty, final Creator creator) {
+        return create(empty, creator);
+    }
+
+    @Benchmark
+    @Threads(64)
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Warmup(iterations = 5)
+    @Measurement(iterations = 20)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @OperationsPerInvocation(CREATIONS_PER_THREAD)
+    public AccountRepository create64(final EmptyRepository empty, final Creator creator) {
+        return create(empty, creator);
+    }
+
+    @Benchmark
+    @Threads(1)
+    @BenchmarkMode(Mode.Throughput)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Optional<Account> lookup1() {
+        return lookup();
+    }
+
+    @Benchmark
+    @Threads(2)
+    @BenchmarkMode(Mode.Throughput)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Optional<Account> lookup2() {
+        return lookup();
+    }
+
+    @Benchmark
+    @Threads(4)
+    @BenchmarkMode(Mode.Throughput)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Optional<Account> lookup4() {
+        return lookup();
+    }
+
+    @Benchmark
+    @Threads(8)
+    @BenchmarkMode(Mode.Throughput)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Optional<Account> lookup8() {
+        return lookup();
+    }
+
+    @Benchmark
+    @Threads(16)
+    @BenchmarkMode(Mode.Throughput)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Optional<Account> lookup16() {
+        return lookup();
+    }
+
+    @Benchmark
+    @Threads(32)
+    @BenchmarkMode(Mode.Throughput)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Optional<Account> lookup32() {
+        return lookup();
+    }
+
+    @Benchmark
+    @Threads(64)
+    @BenchmarkMode(Mode.Throughput)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Optional<Account> lookup64() {
+        return lookup();
+    }
+
+    private static AccountRepository create(final EmptyRepository empty, final Creator creator) {
+        final AccountRepository target = empty.repository;
+        final String[] names = creator.accountNos;
+        for (int i = 0; i < CREATIONS_PER_THREAD; i++) {
+            target.create(names[i], BigDecimal.TEN);
+        }
+        return target;
+    }
+
+    private Optional<Account> lookup() {
+        return prefilled.lookup(accountNos[ThreadLocalRandom.current().nextInt(accounts)]);
+    }
+
+    /**
+     * A new, empty store per iteration, shared by all threads.
+     */
+    @State(Scope.Benchmark)
+    public static class EmptyRepository {
+
+        private AccountRepository repository;
+
+        @Setup(Level.Iteration)
+        public void setup(final AccountRepositoryScalingBenchmark benchmark) {
+            repository = AccountRepositoryBenchmark.newRepository(benchmark.store);
+        }
+    }
+
+    /**
+     * Account numbers which only one thread creates.
+     */
+    @State(Scope.Thread)
+    public static class Creator {
+
+        private static final AtomicInteger THREADS = new AtomicInteger();
+
+        private String[] accountNos;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            final int thread = THREADS.getAndIncrement();
+            accountNos = new String[CREATIONS_PER_THREAD];
+            for (int i = 0; i < CREATIONS_PER_THREAD; i++) {
+                accountNos[i] = "t" + thread + "-" + i;
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package net.lugburz.tinytransfer.account;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark for the memory footprint of a store full of accounts and the time the garbage collector needs to mark it.
+ *
+ * <p>
+ * The score is the time of a full collection while the store is alive, which grows with the number of objects on the
+ * heap. The secondary results report the heap and the direct memory in use after the collection, in megabytes.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx24g", "-XX:MaxDirectMemorySize=8g"})
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MemoryFootprintBenchmark {
+
+    @Param
+    public AccountRepositoryBenchmark.Store store;
+
+    @Param({"50000000"})
+    public int accounts;
+
+    private AccountRepository repository;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // The default capacity of the fixed-point store is below the number of accounts.
+        repository = store == AccountRepositoryBenchmark.Store.FIXED_POINT
+                ? new FixedPointAccountRepository(new MinorUnits(2), accounts)
+                : AccountRepositoryBenchmark.newRepository(store);
+        for (int i = 0; i < accounts; i++) {
+            repository.create("acc-" + i, BigDecimal.valueOf(i, 2));
+        }
+    }
+
+    @Benchmark
+    public AccountRepository fullGc(final Footprint footprint) {
+        System.gc();
+        footprint.heapMegabytes = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() >> 20;
+        for (final BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if ("direct".equals(pool.getName())) {
+                footprint.directMegabytes = pool.getMemoryUsed() >> 20;
+            }
+        }
+        return repository;
+    }
+
+    /**
+     * Memory in use after the last collection.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+
+        public long heapMegabytes;
+        public long directMegabytes;
+    }
+}
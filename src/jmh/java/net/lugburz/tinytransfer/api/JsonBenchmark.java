@@ -0,0 +1,81 @@
+package net.lugburz.tinytransfer.api;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import io.dropwizard.jackson.Jackson;
+import net.lugburz.tinytransfer.account.Account;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for the JSON mapping of the request and response bodies, using the object mapper Dropwizard configures
+ * for Jersey.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JsonBenchmark {
+
+    private ObjectWriter accountWriter;
+    private ObjectReader accountReader;
+    private ObjectWriter transferRequestWriter;
+    private ObjectReader transferRequestReader;
+
+    private Account account;
+    private byte[] accountJson;
+    private TransferRequest transferRequest;
+    private byte[] transferRequestJson;
+
+    @Setup
+    public void setup() throws IOException {
+        final ObjectMapper mapper = Jackson.newObjectMapper();
+        accountWriter = mapper.writerFor(Account.class);
+        accountReader = mapper.readerFor(Account.class);
+        transferRequestWriter = mapper.writerFor(TransferRequest.class);
+        transferRequestReader = mapper.readerFor(TransferRequest.class);
+
+        account = new Account("DE89370400440532013000", new BigDecimal("12345.67"));
+        accountJson = accountWriter.writeValueAsBytes(account);
+        transferRequest = new TransferRequest();
+        transferRequest.setSenderAccNo("DE89370400440532013000");
+        transferRequest.setReceiverAccNo("DE02120300000000202051");
+        transferRequest.setAmount(new BigDecimal("100.50"));
+        transferRequestJson = transferRequestWriter.writeValueAsBytes(transferRequest);
+    }
+
+    @Benchmark
+    public byte[] writeAccount() throws IOException {
+        return accountWriter.writeValueAsBytes(account);
+    }
+
+    @Benchmark
+    public Account readAccount() throws IOException {
+        return accountReader.readValue(accountJson);
+    }
+
+    @Benchmark
+    public byte[] writeTransferRequest() throws IOException {
+        return transferRequestWriter.writeValueAsBytes(transferRequest);
+    }
+
+    @Benchmark
+    public TransferRequest readTransferRequest() throws IOException {
+        return transferRequestReader.readValue(transferRequestJson);
+    }
+}
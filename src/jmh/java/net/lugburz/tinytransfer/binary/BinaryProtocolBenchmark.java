@@ -0,0 +1,188 @@
+package net.lugburz.tinytransfer.binary;
+
+import io.dropwizard.testing.DropwizardTestSupport;
+import net.lugburz.tinytransfer.TinyTransferApplication;
+import net.lugburz.tinytransfer.TinyTransferConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for single transfers against the application on localhost, through {@code POST /transfer} over
+ * keep-alive HTTP connections and through the binary protocol with all threads sharing one connection, at 1 and 16
+ * client threads. {@code binaryPipelined} keeps a window of requests in flight from each thread.
+ *
+ * <p>
+ * Throughput is reported in transfers per millisecond and the sample time mode reports latency percentiles; for
+ * {@code binaryPipelined} a sample is the time of a whole window divided by its size.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BinaryProtocolBenchmark {
+
+    private static final int WINDOW = 64;
+    private static final BigDecimal AMOUNT = new BigDecimal("0.01");
+    // Large enough that the senders never run dry during a trial.
+    private static final BigDecimal BALANCE = BigDecimal.valueOf(1_000_000_000L);
+
+    @Param({"IN_MEMORY", "FIXED_POINT"})
+    public TinyTransferConfiguration.AccountStore store;
+
+    @Param({"1000"})
+    public int accounts;
+
+    private Path config;
+    private DropwizardTestSupport<TinyTransferConfiguration> app;
+    private URL transferUrl;
+    private BinaryClient client;
+    private String[] accountNos;
+    private byte[][] bodies;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        final int binaryPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            binaryPort = socket.getLocalPort();
+        }
+        config = Files.createTempFile("binary-protocol-benchmark", ".yml");
+        Files.write(config, Arrays.asList(
+                "accountStore: " + store,
+                "server:",
+                "  applicationConnectors: [{type: http, port: 0}]",
+                "  adminConnectors: [{type: http, port: 0}]",
+                "  requestLog:",
+                "    appenders: []",
+                "logging:",
+                "  level: WARN",
+                "binaryProtocol:",
+                "  enabled: true",
+                "  port: " + binaryPort));
+        app = new DropwizardTestSupport<>(TinyTransferApplication.class, config.toString());
+        app.before();
+        transferUrl = new URL("http://127.0.0.1:" + app.getLocalPort() + "/transfer");
+        client = BinaryClient.connect("127.0.0.1", binaryPort);
+
+        accountNos = new String[accounts];
+        for (int i = 0; i < accounts; i++) {
+            accountNos[i] = "acc-" + i;
+            client.create(accountNos[i], BALANCE).join();
+        }
+        // Pre-rendered bodies, so that both protocols pay only for their own encoding on the server.
+        bodies = new byte[accounts][];
+        for (int i = 0; i < accounts; i++) {
+            bodies[i] = ("{\"senderAccNo\":\"" + accountNos[i] + "\",\"receiverAccNo\":\""
+                    + accountNos[(i + 1) % accounts] + "\",\"amount\":" + AMOUNT + "}")
+                    .getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws IOException {
+        client.close();
+        app.after();
+        Files.delete(config);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int rest1() throws IOException {
+        return rest();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public int rest16() throws IOException {
+        return rest();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void binary1() {
+        binary();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void binary16() {
+        binary();
+    }
+
+    @Benchmark
+    @Threads(1)
+    @OperationsPerInvocation(WINDOW)
+    public void binaryPipelined1() {
+        binaryPipelined();
+    }
+
+    @Benchmark
+    @Threads(16)
+    @OperationsPerInvocation(WINDOW)
+    public void binaryPipelined16() {
+        binaryPipelined();
+    }
+
+    private int rest() throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) transferUrl.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "application/json");
+        connection.setDoOutput(true);
+        try (OutputStream body = connection.getOutputStream()) {
+            body.write(bodies[ThreadLocalRandom.current().nextInt(accounts)]);
+        }
+        final int status = connection.getResponseCode();
+        // Reading the response to its end returns the connection to the keep-alive pool.
+        try (InputStream response = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            if (response != null) {
+                while (response.read() >= 0) {
+                    // Discard the response body.
+                }
+            }
+        }
+        return status;
+    }
+
+    private void binary() {
+        final int sender = ThreadLocalRandom.current().nextInt(accounts);
+        client.transfer(accountNos[sender], accountNos[(sender + 1) % accounts], AMOUNT).join();
+    }
+
+    private void binaryPipelined() {
+        final CompletableFuture<?>[] window = new CompletableFuture<?>[WINDOW];
+        for (int i = 0; i < WINDOW; i++) {
+            final int sender = ThreadLocalRandom.current().nextInt(accounts);
+            window[i] = client.transfer(accountNos[sender], accountNos[(sender + 1) % accounts], AMOUNT);
+        }
+        CompletableFuture.allOf(window).join();
+    }
+}
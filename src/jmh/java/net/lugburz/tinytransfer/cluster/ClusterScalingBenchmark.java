@@ -0,0 +1,182 @@
+package net.lugburz.tinytransfer.cluster;
+
+import io.dropwizard.testing.DropwizardTestSupport;
+import net.lugburz.tinytransfer.TinyTransferApplication;
+import net.lugburz.tinytransfer.TinyTransferConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for single transfers through {@code POST /transfer} against a cluster of 1, 2 and 4 nodes on localhost,
+ * all running in the benchmark JVM. {@code sameNode} sends each transfer between two accounts of one node to that
+ * node; {@code anyNode} sends a transfer between two random accounts to a random node, so most transfers are
+ * forwarded to the node of the sender and credited on a third node through a reservation.
+ *
+ * <p>
+ * Throughput is reported in transfers per millisecond. The nodes share the cores of one machine, so the figures show
+ * the cost of coordination rather than the capacity gained by adding machines.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Dhttp.maxConnections=256")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(16)
+public class ClusterScalingBenchmark {
+
+    private static final String AMOUNT = "0.01";
+    // Large enough that the senders never run dry during a trial.
+    private static final long BALANCE = 1_000_000_000L;
+
+    @Param({"1", "2", "4"})
+    public int nodes;
+
+    @Param({"1000"})
+    public int accounts;
+
+    private final List<Path> configs = new ArrayList<>();
+    private final List<DropwizardTestSupport<TinyTransferConfiguration>> apps = new ArrayList<>();
+    private URL[] transferUrls;
+    // Pre-rendered bodies of transfers between two accounts of the same node, by node.
+    private byte[][][] sameNodeBodies;
+    private byte[][] anyNodeBodies;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        final List<String> urls = new ArrayList<>();
+        for (int i = 0; i < nodes; i++) {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                urls.add("http://127.0.0.1:" + socket.getLocalPort());
+            }
+        }
+        transferUrls = new URL[nodes];
+        for (int i = 0; i < nodes; i++) {
+            final Path config = Files.createTempFile("cluster-scaling-benchmark", ".yml");
+            Files.write(config, Arrays.asList(
+                    "server:",
+                    "  applicationConnectors: [{type: http, port: " + new URL(urls.get(i)).getPort() + "}]",
+                    "  adminConnectors: [{type: http, port: 0}]",
+                    "  requestLog:",
+                    "    appenders: []",
+                    "logging:",
+                    "  level: WARN",
+                    "cluster:",
+                    "  enabled: true",
+                    "  self: " + i,
+                    "  nodes: [" + String.join(", ", urls) + "]"));
+            configs.add(config);
+            final DropwizardTestSupport<TinyTransferConfiguration> app =
+                    new DropwizardTestSupport<>(TinyTransferApplication.class, config.toString());
+            app.before();
+            apps.add(app);
+            transferUrls[i] = new URL(urls.get(i) + "/transfer");
+        }
+
+        final Partitioner partitioner = new Partitioner(nodes);
+        final List<List<String>> accountsByNode = new ArrayList<>();
+        for (int i = 0; i < nodes; i++) {
+            accountsByNode.add(new ArrayList<>());
+        }
+        final String[] accountNos = new String[accounts];
+        for (int i = 0; i < accounts; i++) {
+            accountNos[i] = "acc-" + i;
+            post(new URL(urls.get(0) + "/accounts"),
+                    body("{\"accountNo\":\"" + accountNos[i] + "\",\"balance\":" + BALANCE + "}"));
+            accountsByNode.get(partitioner.ownerOf(accountNos[i])).add(accountNos[i]);
+        }
+
+        sameNodeBodies = new byte[nodes][][];
+        for (int node = 0; node < nodes; node++) {
+            final List<String> held = accountsByNode.get(node);
+            sameNodeBodies[node] = new byte[held.size()][];
+            for (int i = 0; i < held.size(); i++) {
+                sameNodeBodies[node][i] = transferBody(held.get(i), held.get((i + 1) % held.size()));
+            }
+        }
+        anyNodeBodies = new byte[accounts][];
+        for (int i = 0; i < accounts; i++) {
+            anyNodeBodies[i] = transferBody(accountNos[i], accountNos[(i + accounts / 2 + 1) % accounts]);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws IOException {
+        for (final DropwizardTestSupport<TinyTransferConfiguration> app : apps) {
+            app.after();
+        }
+        for (final Path config : configs) {
+            Files.delete(config);
+        }
+    }
+
+    @Benchmark
+    public int sameNode() throws IOException {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final int node = random.nextInt(nodes);
+        final byte[][] bodies = sameNodeBodies[node];
+        return post(transferUrls[node], bodies[random.nextInt(bodies.length)]);
+    }
+
+    @Benchmark
+    public int anyNode() throws IOException {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        return post(transferUrls[random.nextInt(nodes)], anyNodeBodies[random.nextInt(accounts)]);
+    }
+
+    private static byte[] transferBody(final String senderAccNo, final String receiverAccNo) {
+        return body("{\"senderAccNo\":\"" + senderAccNo + "\",\"receiverAccNo\":\"" + receiverAccNo
+                + "\",\"amount\":" + AMOUNT + "}");
+    }
+
+    private static byte[] body(final String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int post(final URL url, final byte[] body) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "application/json");
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(body);
+        }
+        final int status = connection.getResponseCode();
+        // Reading the response to its end returns the connection to the keep-alive pool.
+        try (InputStream response = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            if (response != null) {
+                while (response.read() >= 0) {
+                    // Discard the response body.
+                }
+            }
+        }
+        return status;
+    }
+}
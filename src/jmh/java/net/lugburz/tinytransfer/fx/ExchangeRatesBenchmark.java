@@ -0,0 +1,77 @@
+package net.lugburz.tinytransfer.fx;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Currency;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for converting an amount from euros to US dollars.
+ *
+ * <ul>
+ * <li>{@code fixedPoint}: {@link ExchangeRates#convert}, with the rate precomputed as a fixed-point {@code long}.</li>
+ * <li>{@code decimalMultiply}: multiplying by the rate as a {@link BigDecimal} and rounding.</li>
+ * <li>{@code decimalDivide}: dividing by the rate of the target currency to the source currency, as when only rates
+ * against a base currency are kept.</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ExchangeRatesBenchmark {
+
+    private static final Currency EUR = Currency.getInstance("EUR");
+    private static final Currency USD = Currency.getInstance("USD");
+    private static final BigDecimal RATE = new BigDecimal("1.0842");
+    private static final BigDecimal INVERSE_RATE = new BigDecimal("0.922339052");
+    private static final int AMOUNTS = 1 << 10;
+
+    private ExchangeRates rates;
+    private BigDecimal[] amounts;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        rates = ExchangeRates.parse(new StringReader("EUR USD " + RATE.toPlainString()), "benchmark");
+        amounts = new BigDecimal[AMOUNTS];
+        for (int i = 0; i < AMOUNTS; i++) {
+            amounts[i] = BigDecimal.valueOf(ThreadLocalRandom.current().nextLong(1, 10_000_000), 2);
+        }
+    }
+
+    @Benchmark
+    public BigDecimal fixedPoint() {
+        return rates.convert(amount(), EUR, USD);
+    }
+
+    @Benchmark
+    public BigDecimal decimalMultiply() {
+        return amount().multiply(RATE).setScale(2, RoundingMode.HALF_EVEN);
+    }
+
+    @Benchmark
+    public BigDecimal decimalDivide() {
+        return amount().divide(INVERSE_RATE, 2, RoundingMode.HALF_EVEN);
+    }
+
+    private BigDecimal amount() {
+        return amounts[ThreadLocalRandom.current().nextInt(AMOUNTS)];
+    }
+}
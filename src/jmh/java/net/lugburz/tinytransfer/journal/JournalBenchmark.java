@@ -0,0 +1,100 @@
+package net.lugburz.tinytransfer.journal;
+
+import net.lugburz.tinytransfer.account.InMemoryAccountRepository;
+import net.lugburz.tinytransfer.transfer.StripedLockTransferService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Benchmarks for journaled transfers with an fsync per request versus group commit. The journal is written to the
+ * temporary directory, which should be on the disk to be measured.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class JournalBenchmark {
+
+    private static final BigDecimal BALANCE = BigDecimal.valueOf(1_000_000_000L);
+
+    @Param({"false", "true"})
+    public boolean groupCommit;
+
+    @Param({"10000"})
+    public int accounts;
+
+    private Path directory;
+    private FileJournal journal;
+    private StripedLockTransferService transferService;
+    private String[] accountNos;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("journal-benchmark");
+        journal = new FileJournal(directory, groupCommit, 2, TimeUnit.MILLISECONDS, 256);
+        final InMemoryAccountRepository repository = new InMemoryAccountRepository(journal);
+        journal.replay(repository.recoveryHandler());
+        journal.start();
+        accountNos = new String[accounts];
+        for (int i = 0; i < accounts; i++) {
+            accountNos[i] = "acc-" + i;
+            repository.create(accountNos[i], BALANCE);
+        }
+        transferService = new StripedLockTransferService(repository);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        journal.stop();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void transfer1() {
+        transfer();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void transfer16() {
+        transfer();
+    }
+
+    @Benchmark
+    @Threads(64)
+    public void transfer64() {
+        transfer();
+    }
+
+    private void transfer() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        transferService.transfer(accountNos[random.nextInt(accounts)], accountNos[random.nextInt(accounts)],
+                BigDecimal.ONE);
+    }
+}
@@ -0,0 +1,109 @@
+package net.lugburz.tinytransfer.journal;
+
+import net.lugburz.tinytransfer.account.InMemoryAccountRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Benchmarks for the startup recovery of the in-memory account store, either from a snapshot plus a journal tail, or
+ * from the journal alone.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RecoveryBenchmark {
+
+    /**
+     * Where the accounts are recovered from.
+     */
+    public enum Source {
+        SNAPSHOT, JOURNAL
+    }
+
+    @Param
+    public Source source;
+
+    @Param({"10000000"})
+    public int accounts;
+
+    @Param({"100000"})
+    public int tailRecords;
+
+    private Path directory;
+    private InMemoryAccountRepository repository;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        directory = Files.createTempDirectory("recovery-benchmark");
+        if (source == Source.SNAPSHOT) {
+            // The snapshot covers the accounts, so the journal only holds the tail.
+            new SnapshotStore(directory).write(0, action -> {
+                for (int i = 0; i < accounts; i++) {
+                    action.accept("acc-" + i, BigDecimal.valueOf(i, 2));
+                }
+            });
+        }
+
+        final FileJournal journal = new FileJournal(directory, true, 2, TimeUnit.MILLISECONDS, 4096);
+        journal.replay(new InMemoryAccountRepository().recoveryHandler());
+        journal.start();
+        long last = 0;
+        if (source == Source.JOURNAL) {
+            for (int i = 0; i < accounts; i++) {
+                last = journal.appendCreate("acc-" + i, BigDecimal.valueOf(i, 2));
+            }
+        }
+        for (int i = 0; i < tailRecords; i++) {
+            last = journal.appendTransfer("acc-" + (i % accounts), BigDecimal.ONE,
+                    "acc-" + ((i + 1) % accounts), BigDecimal.TEN);
+        }
+        journal.awaitDurable(last);
+        journal.stop();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void release() {
+        // Lets the next invocation start from an empty heap rather than collect this one's accounts.
+        repository = null;
+        System.gc();
+    }
+
+    @Benchmark
+    public InMemoryAccountRepository recover() throws Exception {
+        final FileJournal journal = new FileJournal(directory, true, 2, TimeUnit.MILLISECONDS, 4096);
+        repository = new InMemoryAccountRepository(journal);
+        final long position = new SnapshotStore(directory).load(repository.recoveryHandler());
+        journal.replay(repository.recoveryHandler(), position);
+        journal.stop();
+        return repository;
+    }
+}
@@ -0,0 +1,87 @@
+package net.lugburz.tinytransfer.schedule;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Comparator;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for scheduling and cancelling an entry while many others are pending, in the {@link TimingWheel} versus
+ * a sorted set ordered by tick, the usual alternative with logarithmic cost.
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TimingWheelBenchmark {
+
+    // One year of one-second ticks.
+    private static final int HORIZON = 365 * 24 * 3600;
+    private static final int PROBES = 1 << 16;
+
+    @Param({"1000", "1000000", "4000000"})
+    public int pending;
+
+    private TimingWheel<Timer> wheel;
+    private TreeSet<Timer> sortedSet;
+    private Timer[] probes;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final Random random = new Random(42);
+        wheel = new TimingWheel<>(0);
+        sortedSet = new TreeSet<>(Comparator.comparingLong((Timer timer) -> timer.tick).thenComparingLong(
+                timer -> timer.id));
+        long id = 0;
+        for (int i = 0; i < pending; i++) {
+            final Timer timer = new Timer(id++, 1 + random.nextInt(HORIZON));
+            wheel.add(timer, timer.tick);
+            sortedSet.add(new Timer(timer.id, timer.tick));
+        }
+        probes = new Timer[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            probes[i] = new Timer(id++, 1 + random.nextInt(HORIZON));
+        }
+    }
+
+    @Benchmark
+    public boolean timingWheel() {
+        final Timer timer = probes[next++ & (PROBES - 1)];
+        wheel.add(timer, timer.tick);
+        return wheel.remove(timer);
+    }
+
+    @Benchmark
+    public boolean sortedSet() {
+        final Timer timer = probes[next++ & (PROBES - 1)];
+        sortedSet.add(timer);
+        return sortedSet.remove(timer);
+    }
+
+    private static final class Timer extends TimingWheel.Entry {
+
+        private final long id;
+        private final long tick;
+
+        private Timer(final long id, final long tick) {
+            this.id = id;
+            this.tick = tick;
+        }
+    }
+}
@@ -0,0 +1,378 @@
+package net.lugburz.tinytransfer.server;
+
+import net.lugburz.tinytransfer.TinyTransferApplication;
+import net.lugburz.tinytransfer.api.BankingResource;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Load comparison of {@code POST /transfer} with the journal enabled between the default server and
+ * {@code server.type: virtual-threads}, at 10,000 concurrent clients. Every client holds one keep-alive connection
+ * and sends its next transfer as soon as the previous one has been answered.
+ *
+ * <p>
+ * The application runs in a JVM of its own, started with the JVM and class path of the benchmark, so that the server
+ * and the clients do not share one limit of open files; both need one per client. Virtual threads require the
+ * benchmark to run on Java 21 or later. The clients are driven by a single selector thread.
+ *
+ * <p>
+ * A trial warms up for {@code warmupSeconds} and then measures for {@code seconds}. The primary score is only the
+ * length of the run; the results are the secondary ones: transfers per second, failed requests, which include
+ * connections the server rejected or reset, and latency percentiles in milliseconds.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class ServerTypeLoadBenchmark {
+
+    private static final String AMOUNT = "0.01";
+    // Large enough that the senders never run dry during a trial.
+    private static final long BALANCE = 1_000_000_000L;
+    private static final long STARTUP_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(2);
+
+    @Param({"default", "virtual-threads"})
+    public String serverType;
+
+    @Param({"10000"})
+    public int clients;
+
+    @Param({"1000"})
+    public int accounts;
+
+    @Param({"5"})
+    public int warmupSeconds;
+
+    @Param({"60"})
+    public int seconds;
+
+    private Path dir;
+    private Process server;
+    private Clients load;
+
+    /**
+     * The figures of the measured run, reported as secondary results.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Results {
+        public double transfersPerSecond;
+        public long failedRequests;
+        public double p50Millis;
+        public double p99Millis;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("server-type-load-benchmark");
+        final int port = freePort();
+        final Path config = dir.resolve("config.yml");
+        Files.write(config, Arrays.asList(
+                "server:",
+                "  type: " + serverType,
+                "  applicationConnectors: [{type: http, port: " + port + "}]",
+                "  adminConnectors: [{type: http, port: " + freePort() + "}]",
+                "  requestLog:",
+                "    appenders: []",
+                "logging:",
+                "  level: WARN",
+                "journal:",
+                "  enabled: true",
+                "  directory: " + dir.resolve("journal")));
+        server = new ProcessBuilder(
+                Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"),
+                TinyTransferApplication.class.getName(), "server", config.toString())
+                .redirectErrorStream(true)
+                .redirectOutput(dir.resolve("server.log").toFile())
+                .start();
+        final String baseUrl = "http://127.0.0.1:" + port;
+        awaitStarted(baseUrl);
+        createAccounts(baseUrl);
+
+        final byte[][] requests = new byte[accounts][];
+        for (int i = 0; i < accounts; i++) {
+            final String body = "{\"senderAccNo\":\"acc-" + i + "\",\"receiverAccNo\":\"acc-" + (i + 1) % accounts
+                    + "\",\"amount\":" + AMOUNT + "}";
+            requests[i] = ("POST /transfer HTTP/1.1\r\nHost: 127.0.0.1:" + port
+                    + "\r\nContent-Type: application/json\r\nContent-Length: " + body.length() + "\r\n\r\n" + body)
+                    .getBytes(StandardCharsets.US_ASCII);
+        }
+        load = new Clients(new InetSocketAddress("127.0.0.1", port), clients, requests);
+        load.run(TimeUnit.SECONDS.toNanos(warmupSeconds), new Results());
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws Exception {
+        if (load != null) {
+            load.close();
+        }
+        if (server != null) {
+            server.destroy();
+            server.waitFor(1, TimeUnit.MINUTES);
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public void transfers(final Results results) throws IOException {
+        load.run(TimeUnit.SECONDS.toNanos(seconds), results);
+    }
+
+    private void awaitStarted(final String baseUrl) throws Exception {
+        final long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MILLIS;
+        while (true) {
+            if (!server.isAlive()) {
+                throw new IllegalStateException("The server has exited, see " + dir.resolve("server.log"));
+            }
+            try {
+                final HttpURLConnection connection =
+                        (HttpURLConnection) new URL(baseUrl + "/accounts/unknown").openConnection();
+                connection.getResponseCode();
+                connection.disconnect();
+                return;
+            } catch (final IOException notYetListening) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new IllegalStateException("The server has not started, see " + dir.resolve("server.log"));
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    private void createAccounts(final String baseUrl) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + "/accounts/bulk").openConnection();
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", BankingResource.APPLICATION_NDJSON);
+        connection.setDoOutput(true);
+        try (OutputStream body = connection.getOutputStream()) {
+            for (int i = 0; i < accounts; i++) {
+                body.write(("{\"accountNo\":\"acc-" + i + "\",\"balance\":" + BALANCE + "}\n")
+                        .getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+            throw new IllegalStateException("The accounts could not be created: " + connection.getResponseCode());
+        }
+        try (InputStream response = connection.getInputStream()) {
+            while (response.read() >= 0) {
+                // Discard the import report.
+            }
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /**
+     * Closed-loop HTTP clients on one selector thread. A client whose connection is refused, closed or reset counts
+     * its request as failed and connects again.
+     */
+    private static final class Clients implements Closeable {
+
+        private static final int RESPONSE_BUFFER_BYTES = 8192;
+
+        private final InetSocketAddress address;
+        private final byte[][] requests;
+        private final Selector selector;
+
+        private long completed;
+        private long failed;
+        private long[] latencies = new long[1 << 16];
+
+        Clients(final InetSocketAddress address, final int clients, final byte[][] requests) throws IOException {
+            this.address = address;
+            this.requests = requests;
+            this.selector = Selector.open();
+            for (int i = 0; i < clients; i++) {
+                connect(new Client());
+            }
+        }
+
+        /**
+         * Keeps every client busy for the given time and reports the responses received meanwhile.
+         */
+        void run(final long nanos, final Results results) throws IOException {
+            completed = 0;
+            failed = 0;
+            final long start = System.nanoTime();
+            final long end = start + nanos;
+            for (long now = start; now < end; now = System.nanoTime()) {
+                selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(end - now)));
+                for (final SelectionKey key : selector.selectedKeys()) {
+                    handle(key);
+                }
+                selector.selectedKeys().clear();
+            }
+            final long[] sorted = Arrays.copyOf(latencies, (int) completed);
+            Arrays.sort(sorted);
+            results.transfersPerSecond = completed / (nanos / 1e9);
+            results.failedRequests = failed;
+            results.p50Millis = percentile(sorted, 0.50);
+            results.p99Millis = percentile(sorted, 0.99);
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (final SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+        }
+
+        private void handle(final SelectionKey key) {
+            final Client client = (Client) key.attachment();
+            try {
+                if (key.isConnectable()) {
+                    if (!client.channel.finishConnect()) {
+                        return;
+                    }
+                    send(client);
+                }
+                if (key.isValid() && key.isWritable()) {
+                    client.channel.write(client.request);
+                    if (!client.request.hasRemaining()) {
+                        key.interestOps(SelectionKey.OP_READ);
+                    }
+                }
+                if (key.isValid() && key.isReadable()) {
+                    receive(client);
+                }
+            } catch (final IOException exception) {
+                reconnect(client);
+            }
+        }
+
+        private void send(final Client client) throws IOException {
+            client.request = ByteBuffer.wrap(requests[ThreadLocalRandom.current().nextInt(requests.length)]);
+            client.response.clear();
+            client.sentAt = System.nanoTime();
+            client.channel.write(client.request);
+            client.key.interestOps(client.request.hasRemaining() ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+
+        private void receive(final Client client) throws IOException {
+            if (client.channel.read(client.response) < 0) {
+                throw new IOException("Connection closed by the server");
+            }
+            final String response = new String(client.response.array(), 0, client.response.position(),
+                    StandardCharsets.ISO_8859_1);
+            final int headerEnd = response.indexOf("\r\n\r\n");
+            if (headerEnd < 0 || !isComplete(response, headerEnd + 4)) {
+                if (!client.response.hasRemaining()) {
+                    throw new IOException("Response too large");
+                }
+                return;
+            }
+            if (response.startsWith("200", response.indexOf(' ') + 1)) {
+                record(System.nanoTime() - client.sentAt);
+            } else {
+                failed++;
+            }
+            if (response.toLowerCase(Locale.ROOT).contains("\r\nconnection: close")) {
+                reconnect(client);
+            } else {
+                send(client);
+            }
+        }
+
+        private static boolean isComplete(final String response, final int bodyStart) {
+            final String headers = response.substring(0, bodyStart).toLowerCase(Locale.ROOT);
+            final int contentLength = headers.indexOf("\r\ncontent-length:");
+            if (contentLength >= 0) {
+                final int valueStart = contentLength + "\r\ncontent-length:".length();
+                final int length = Integer.parseInt(headers.substring(valueStart, headers.indexOf('\r', valueStart))
+                        .trim());
+                return response.length() >= bodyStart + length;
+            }
+            if (headers.contains("\r\ntransfer-encoding: chunked")) {
+                return response.endsWith("\r\n0\r\n\r\n");
+            }
+            return true;
+        }
+
+        private void record(final long latency) {
+            if (completed == latencies.length) {
+                latencies = Arrays.copyOf(latencies, latencies.length * 2);
+            }
+            latencies[(int) completed++] = latency;
+        }
+
+        private void reconnect(final Client client) {
+            failed++;
+            try {
+                client.channel.close();
+                connect(client);
+            } catch (final IOException exception) {
+                throw new IllegalStateException("Could not reconnect", exception);
+            }
+        }
+
+        private void connect(final Client client) throws IOException {
+            client.channel = SocketChannel.open();
+            client.channel.configureBlocking(false);
+            client.key = client.channel.register(selector, SelectionKey.OP_CONNECT, client);
+            if (client.channel.connect(address)) {
+                client.key.interestOps(0);
+                send(client);
+            }
+        }
+
+        private static double percentile(final long[] sorted, final double fraction) {
+            if (sorted.length == 0) {
+                return Double.NaN;
+            }
+            return sorted[(int) Math.min(sorted.length - 1, Math.floor(sorted.length * fraction))] / 1e6;
+        }
+    }
+
+    private static final class Client {
+        private final ByteBuffer response = ByteBuffer.allocate(Clients.RESPONSE_BUFFER_BYTES);
+        private SocketChannel channel;
+        private SelectionKey key;
+        private ByteBuffer request;
+        private long sentAt;
+    }
+}
@@ -0,0 +1,117 @@
+package net.lugburz.tinytransfer.transfer;
+
+import net.lugburz.tinytransfer.account.InMemoryAccountRepository;
+import net.lugburz.tinytransfer.fx.ExchangeRateTable;
+import net.lugburz.tinytransfer.fx.ExchangeRates;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for single transfers between uniformly distributed accounts of the {@code IN_MEMORY} store, at 1 thread
+ * and as many threads as there are processors.
+ *
+ * <ul>
+ * <li>{@code SINGLE}: all accounts hold the same currency, so no amount is converted.</li>
+ * <li>{@code MIXED}: the accounts are spread over five currencies with rates between all of them, so four out of five
+ * transfers convert their amount.</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CrossCurrencyTransferBenchmark {
+
+    private static final String[] CURRENCIES = {"EUR", "USD", "GBP", "CHF", "JPY"};
+    // Units of each currency per euro.
+    private static final String[] PER_EURO = {"1", "1.0842", "0.8571", "0.9563", "162.53"};
+    private static final BigDecimal AMOUNT = new BigDecimal("1.25");
+    // Large enough that random transfers never run an account dry during a trial, even in yen.
+    private static final BigDecimal BALANCE = BigDecimal.valueOf(1_000_000_000_000L);
+
+    /**
+     * Currencies of the accounts.
+     */
+    public enum Currencies {
+        SINGLE, MIXED
+    }
+
+    @Param
+    public Currencies currencies;
+
+    @Param({"10000"})
+    public int accounts;
+
+    private TransferService transferService;
+    private String[] accountNos;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        final InMemoryAccountRepository repository =
+                new InMemoryAccountRepository(Collections.emptySet(), 1, Currency.getInstance(CURRENCIES[0]));
+        accountNos = new String[accounts];
+        for (int i = 0; i < accounts; i++) {
+            accountNos[i] = "acc-" + i;
+            final String currency = currencies == Currencies.MIXED ? CURRENCIES[i % CURRENCIES.length] : CURRENCIES[0];
+            repository.create(accountNos[i], BALANCE, Currency.getInstance(currency));
+        }
+        transferService = new InMemoryTransferService(repository, ExchangeRateTable.of(rates()));
+    }
+
+    /**
+     * @return the cross rates between all currencies, derived from their rates per euro
+     */
+    static ExchangeRates rates() throws IOException {
+        final StringBuilder table = new StringBuilder();
+        for (int from = 0; from < CURRENCIES.length; from++) {
+            for (int to = 0; to < CURRENCIES.length; to++) {
+                if (from != to) {
+                    final BigDecimal rate = new BigDecimal(PER_EURO[to])
+                            .divide(new BigDecimal(PER_EURO[from]), ExchangeRates.RATE_SCALE, RoundingMode.HALF_EVEN);
+                    table.append(CURRENCIES[from]).append(' ').append(CURRENCIES[to]).append(' ')
+                            .append(rate.toPlainString()).append('\n');
+                }
+            }
+        }
+        return ExchangeRates.parse(new StringReader(table.toString()), "benchmark");
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void transfer1() {
+        transfer();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void transferMax() {
+        transfer();
+    }
+
+    private void transfer() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        transferService.transfer(accountNos[random.nextInt(accounts)], accountNos[random.nextInt(accounts)], AMOUNT);
+    }
+}
@@ -0,0 +1,96 @@
+package net.lugburz.tinytransfer.transfer;
+
+import net.lugburz.tinytransfer.account.InMemoryAccountRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for transfers from many senders into a single merchant account, at 1, 2, 4 and as many threads as there
+ * are processors, with the balance of the merchant account in a single field or split over one cell per processor.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HotAccountBenchmark {
+
+    private static final String MERCHANT = "merchant";
+    private static final BigDecimal AMOUNT = BigDecimal.ONE;
+    // Large enough that the senders never run dry during a trial.
+    private static final BigDecimal BALANCE = BigDecimal.valueOf(1_000_000_000L);
+
+    @Param({"IN_MEMORY", "STRIPED_LOCK"})
+    public TransferServiceBenchmark.Service service;
+
+    @Param({"false", "true"})
+    public boolean split;
+
+    @Param({"10000"})
+    public int senders;
+
+    private TransferService transferService;
+    private String[] accountNos;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final InMemoryAccountRepository repository = split
+                ? new InMemoryAccountRepository(Collections.singleton(MERCHANT),
+                Runtime.getRuntime().availableProcessors())
+                : new InMemoryAccountRepository();
+        repository.create(MERCHANT, BigDecimal.ZERO);
+        accountNos = new String[senders];
+        for (int i = 0; i < senders; i++) {
+            accountNos[i] = "acc-" + i;
+            repository.create(accountNos[i], BALANCE);
+        }
+        transferService = service == TransferServiceBenchmark.Service.STRIPED_LOCK
+                ? new StripedLockTransferService(repository)
+                : new InMemoryTransferService(repository);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void deposit1() {
+        deposit();
+    }
+
+    @Benchmark
+    @Threads(2)
+    public void deposit2() {
+        deposit();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void deposit4() {
+        deposit();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void depositMax() {
+        deposit();
+    }
+
+    private void deposit() {
+        transferService.transfer(accountNos[ThreadLocalRandom.current().nextInt(senders)], MERCHANT, AMOUNT);
+    }
+}
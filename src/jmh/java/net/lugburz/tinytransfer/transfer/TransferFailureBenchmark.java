@@ -0,0 +1,173 @@
+package net.lugburz.tinytransfer.transfer;
+
+import com.codahale.metrics.MetricRegistry;
+import net.lugburz.tinytransfer.account.FixedPointAccountRepository;
+import net.lugburz.tinytransfer.account.InMemoryAccountRepository;
+import net.lugburz.tinytransfer.account.MinorUnits;
+import net.lugburz.tinytransfer.account.OffHeapAccountRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Benchmarks for single transfers of which half are rejected, at 1 thread and as many threads as there are
+ * processors.
+ *
+ * <ul>
+ * <li>{@code INSUFFICIENT_FUNDS}: every other transfer is sent from an account without money.</li>
+ * <li>{@code UNKNOWN_ACCOUNT}: every other transfer is sent to an account which does not exist.</li>
+ * </ul>
+ * <p>
+ * The asynchronous variants go through the same decorators as the REST API, so that they include the cost of
+ * propagating a rejection through the returned futures.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TransferFailureBenchmark {
+
+    private static final BigDecimal AMOUNT = BigDecimal.ONE;
+    // Large enough that the funded accounts never run dry during a trial.
+    private static final BigDecimal BALANCE = BigDecimal.valueOf(1_000_000_000L);
+
+    /**
+     * Kinds of rejection.
+     */
+    public enum Failure {
+        INSUFFICIENT_FUNDS, UNKNOWN_ACCOUNT
+    }
+
+    @Param
+    public TransferServiceBenchmark.Service service;
+
+    @Param
+    public Failure failure;
+
+    @Param({"10000"})
+    public int accounts;
+
+    private TransferService transferService;
+    private TransferService decorated;
+    private String[] funded;
+    private String[] rejected;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        funded = new String[accounts];
+        rejected = new String[accounts];
+        for (int i = 0; i < accounts; i++) {
+            funded[i] = "acc-" + i;
+            rejected[i] = (failure == Failure.UNKNOWN_ACCOUNT ? "unknown-" : "empty-") + i;
+        }
+        switch (service) {
+            case FIXED_POINT:
+                final FixedPointAccountRepository fixedPointRepository =
+                        new FixedPointAccountRepository(new MinorUnits(2));
+                fill(fixedPointRepository::create);
+                transferService = new FixedPointTransferService(fixedPointRepository);
+                break;
+            case OFF_HEAP:
+                final OffHeapAccountRepository offHeapRepository = new OffHeapAccountRepository(new MinorUnits(2));
+                fill(offHeapRepository::create);
+                transferService = new FixedPointTransferService(offHeapRepository);
+                break;
+            case STRIPED_LOCK:
+                final InMemoryAccountRepository stripedRepository = new InMemoryAccountRepository();
+                fill(stripedRepository::create);
+                transferService = new StripedLockTransferService(stripedRepository);
+                break;
+            case IN_MEMORY:
+            default:
+                final InMemoryAccountRepository repository = new InMemoryAccountRepository();
+                fill(repository::create);
+                transferService = new InMemoryTransferService(repository);
+                break;
+        }
+        decorated = new MeteredTransferService(transferService, new MetricRegistry());
+    }
+
+    private void fill(final BiConsumer<String, BigDecimal> create) {
+        for (int i = 0; i < accounts; i++) {
+            create.accept(funded[i], BALANCE);
+            if (failure == Failure.INSUFFICIENT_FUNDS) {
+                create.accept(rejected[i], BigDecimal.ZERO);
+            }
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean transfer1() {
+        return transfer();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean transferMax() {
+        return transfer();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean transferAsync1() {
+        return transferAsync();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean transferAsyncMax() {
+        return transferAsync();
+    }
+
+    private boolean transfer() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final String sender = funded[random.nextInt(accounts)];
+        final String receiver = funded[random.nextInt(accounts)];
+        try {
+            if (random.nextBoolean()) {
+                transferService.transfer(sender, receiver, AMOUNT);
+            } else if (failure == Failure.UNKNOWN_ACCOUNT) {
+                transferService.transfer(sender, rejected[random.nextInt(accounts)], AMOUNT);
+            } else {
+                transferService.transfer(rejected[random.nextInt(accounts)], receiver, AMOUNT);
+            }
+            return true;
+        } catch (final TransferException exception) {
+            return false;
+        }
+    }
+
+    private boolean transferAsync() {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final String sender = funded[random.nextInt(accounts)];
+        final String receiver = funded[random.nextInt(accounts)];
+        final CompletableFuture<Void> result;
+        if (random.nextBoolean()) {
+            result = decorated.transferAsync(sender, receiver, AMOUNT);
+        } else if (failure == Failure.UNKNOWN_ACCOUNT) {
+            result = decorated.transferAsync(sender, rejected[random.nextInt(accounts)], AMOUNT);
+        } else {
+            result = decorated.transferAsync(rejected[random.nextInt(accounts)], receiver, AMOUNT);
+        }
+        return result.isCompletedExceptionally();
+    }
+}
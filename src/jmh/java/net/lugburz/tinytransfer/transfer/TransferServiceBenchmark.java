@@ -0,0 +1,184 @@
+package net.lugburz.tinytransfer.transfer;
+
+import net.lugburz.tinytransfer.account.FixedPointAccountRepository;
+import net.lugburz.tinytransfer.account.InMemoryAccountRepository;
+import net.lugburz.tinytransfer.account.MinorUnits;
+import net.lugburz.tinytransfer.account.OffHeapAccountRepository;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for single transfers under different contention patterns, at 1, 2, 4 and as many threads as there are
+ * processors.
+ *
+ * <ul>
+ * <li>{@code UNIFORM}: sender and receiver are drawn uniformly from all accounts, contention is rare.</li>
+ * <li>{@code ZIPF}: sender and receiver are drawn from a Zipf distribution with exponent 1, so a few hot accounts take
+ * part in most transfers.</li>
+ * <li>{@code PING_PONG}: all threads transfer back and forth between the same two accounts.</li>
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TransferServiceBenchmark {
+
+    private static final BigDecimal AMOUNT = BigDecimal.ONE;
+    // Large enough that random transfers never run an account dry during a trial.
+    private static final BigDecimal BALANCE = BigDecimal.valueOf(1_000_000_000L);
+
+    /**
+     * Available transfer services.
+     */
+    public enum Service {
+        IN_MEMORY, STRIPED_LOCK, FIXED_POINT, OFF_HEAP
+    }
+
+    /**
+     * Available contention patterns.
+     */
+    public enum Distribution {
+        UNIFORM, ZIPF, PING_PONG
+    }
+
+    @Param
+    public Service service;
+
+    @Param
+    public Distribution distribution;
+
+    @Param({"10000"})
+    public int accounts;
+
+    private TransferService transferService;
+    private String[] accountNos;
+    private double[] zipfCumulative;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        accountNos = new String[accounts];
+        for (int i = 0; i < accounts; i++) {
+            accountNos[i] = "acc-" + i;
+        }
+        switch (service) {
+            case FIXED_POINT:
+                final FixedPointAccountRepository fixedPointRepository =
+                        new FixedPointAccountRepository(new MinorUnits(2));
+                Arrays.stream(accountNos).forEach(accountNo -> fixedPointRepository.create(accountNo, BALANCE));
+                transferService = new FixedPointTransferService(fixedPointRepository);
+                break;
+            case OFF_HEAP:
+                final OffHeapAccountRepository offHeapRepository = new OffHeapAccountRepository(new MinorUnits(2));
+                Arrays.stream(accountNos).forEach(accountNo -> offHeapRepository.create(accountNo, BALANCE));
+                transferService = new FixedPointTransferService(offHeapRepository);
+                break;
+            case STRIPED_LOCK:
+                final InMemoryAccountRepository stripedRepository = new InMemoryAccountRepository();
+                Arrays.stream(accountNos).forEach(accountNo -> stripedRepository.create(accountNo, BALANCE));
+                transferService = new StripedLockTransferService(stripedRepository);
+                break;
+            case IN_MEMORY:
+            default:
+                final InMemoryAccountRepository repository = new InMemoryAccountRepository();
+                Arrays.stream(accountNos).forEach(accountNo -> repository.create(accountNo, BALANCE));
+                transferService = new InMemoryTransferService(repository);
+                break;
+        }
+
+        zipfCumulative = new double[accounts];
+        double sum = 0;
+        for (int i = 0; i < accounts; i++) {
+            sum += 1.0 / (i + 1);
+            zipfCumulative[i] = sum;
+        }
+        for (int i = 0; i < accounts; i++) {
+            zipfCumulative[i] /= sum;
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void transfer1(final Sender sender) {
+        transfer(sender);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public void transfer2(final Sender sender) {
+        transfer(sender);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void transfer4(final Sender sender) {
+        transfer(sender);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void transferMax(final Sender sender) {
+        transfer(sender);
+    }
+
+    private void transfer(final Sender sender) {
+        final int from;
+        final int to;
+        switch (distribution) {
+            case ZIPF:
+                from = zipf();
+                to = zipf();
+                break;
+            case PING_PONG:
+                // Half of the threads start in the opposite direction; every thread alternates.
+                sender.forward = !sender.forward;
+                from = sender.forward ? 0 : 1;
+                to = 1 - from;
+                break;
+            case UNIFORM:
+            default:
+                from = ThreadLocalRandom.current().nextInt(accounts);
+                to = ThreadLocalRandom.current().nextInt(accounts);
+                break;
+        }
+        transferService.transfer(accountNos[from], accountNos[to], AMOUNT);
+    }
+
+    private int zipf() {
+        final int index = Arrays.binarySearch(zipfCumulative, ThreadLocalRandom.current().nextDouble());
+        return Math.min(index < 0 ? -index - 1 : index, accounts - 1);
+    }
+
+    /**
+     * Per-thread direction of the ping-pong transfers.
+     */
+    @State(Scope.Thread)
+    public static class Sender {
+
+        private boolean forward;
+
+        @Setup(Level.Trial)
+        public void setup(final ThreadParams threadParams) {
+            forward = threadParams.getThreadIndex() % 2 == 0;
+        }
+    }
+}
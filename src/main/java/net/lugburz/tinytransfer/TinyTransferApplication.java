@@ -1,9 +1,62 @@
 package net.lugburz.tinytransfer;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SlidingTimeWindowArrayReservoir;
 import io.dropwizard.Application;
+import io.dropwizard.lifecycle.AutoCloseableManager;
 import io.dropwizard.setup.Environment;
 import net.lugburz.tinytransfer.account.AccountRepository;
+import net.lugburz.tinytransfer.account.FixedPointAccountRepository;
+import net.lugburz.tinytransfer.account.HotAccountsFactory;
+import net.lugburz.tinytransfer.account.InMemoryAccountRepository;
+import net.lugburz.tinytransfer.account.MinorUnits;
+import net.lugburz.tinytransfer.account.OffHeapAccountRepository;
+import net.lugburz.tinytransfer.account.ShardedAccountRepository;
+import net.lugburz.tinytransfer.admission.AdmissionFactory;
 import net.lugburz.tinytransfer.api.BankingResource;
+import net.lugburz.tinytransfer.binary.BinaryProtocolFactory;
+import net.lugburz.tinytransfer.cluster.AccountRoutingFilter;
+import net.lugburz.tinytransfer.cluster.ClusterFactory;
+import net.lugburz.tinytransfer.cluster.ClusterResource;
+import net.lugburz.tinytransfer.cluster.IncomingCredits;
+import net.lugburz.tinytransfer.cluster.NodeClient;
+import net.lugburz.tinytransfer.cluster.PartitionedAccountRepository;
+import net.lugburz.tinytransfer.cluster.Partitioner;
+import net.lugburz.tinytransfer.cluster.RoutingTransferService;
+import net.lugburz.tinytransfer.cluster.TwoPhaseTransferService;
+import net.lugburz.tinytransfer.fx.CurrenciesFactory;
+import net.lugburz.tinytransfer.fx.ExchangeRateTable;
+import net.lugburz.tinytransfer.fx.ReloadExchangeRatesTask;
+import net.lugburz.tinytransfer.journal.ChangeFeed;
+import net.lugburz.tinytransfer.journal.FileJournal;
+import net.lugburz.tinytransfer.journal.Journal;
+import net.lugburz.tinytransfer.journal.JournalFactory;
+import net.lugburz.tinytransfer.journal.SnapshotStore;
+import net.lugburz.tinytransfer.ledger.Ledger;
+import net.lugburz.tinytransfer.ledger.RecordingTransferService;
+import net.lugburz.tinytransfer.replication.FeedServer;
+import net.lugburz.tinytransfer.replication.FollowTask;
+import net.lugburz.tinytransfer.replication.PromoteTask;
+import net.lugburz.tinytransfer.replication.Replica;
+import net.lugburz.tinytransfer.replication.ReplicationFactory;
+import net.lugburz.tinytransfer.schedule.ScheduledTransferResource;
+import net.lugburz.tinytransfer.schedule.SchedulerFactory;
+import net.lugburz.tinytransfer.schedule.TransferScheduler;
+import net.lugburz.tinytransfer.transfer.FixedPointTransferService;
+import net.lugburz.tinytransfer.transfer.InMemoryTransferService;
+import net.lugburz.tinytransfer.transfer.MeteredTransferService;
+import net.lugburz.tinytransfer.transfer.ShardedTransferService;
+import net.lugburz.tinytransfer.transfer.StripedLockTransferService;
+import net.lugburz.tinytransfer.transfer.TransferService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Entry point of the application.
@@ -12,6 +65,8 @@ public class TinyTransferApplication extends Application<TinyTransferConfigurati
 
     private static final String APP_NAME = "TinyTransfer";
 
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
     public static void main(final String[] args) throws Exception {
         new TinyTransferApplication().run(args);
     }
@@ -22,11 +77,248 @@ public class TinyTransferApplication extends Application<TinyTransferConfigurati
     }
 
     @Override
-    public void run(TinyTransferConfiguration configuration, Environment environment) {
-        final AccountRepository repository = new AccountRepository();
-        final BankingResource resource = new BankingResource(repository);
+    public void run(TinyTransferConfiguration configuration, Environment environment) throws IOException {
+        switch (configuration.getAccountStore()) {
+            case FIXED_POINT:
+                final FixedPointAccountRepository fixedPointRepository =
+                        new FixedPointAccountRepository(new MinorUnits(configuration.getCurrencyScale()));
+                register(configuration, environment, fixedPointRepository,
+                        new FixedPointTransferService(fixedPointRepository));
+                break;
+            case OFF_HEAP:
+                final OffHeapAccountRepository offHeapRepository =
+                        new OffHeapAccountRepository(new MinorUnits(configuration.getCurrencyScale()));
+                register(configuration, environment, offHeapRepository,
+                        new FixedPointTransferService(offHeapRepository));
+                break;
+            case SHARDED:
+                final ShardedAccountRepository shardedRepository =
+                        new ShardedAccountRepository(configuration.getShards());
+                environment.lifecycle().manage(new AutoCloseableManager(shardedRepository));
+                final ExecutorService completions = environment.lifecycle()
+                        .executorService("transfer-completion-%d")
+                        .minThreads(configuration.getShards())
+                        .maxThreads(configuration.getShards())
+                        .build();
+                register(configuration, environment, shardedRepository,
+                        new ShardedTransferService(shardedRepository, completions));
+                break;
+            case IN_MEMORY:
+            default:
+                if (configuration.getJournal().isEnabled()) {
+                    registerJournaled(configuration, environment);
+                } else if (configuration.getReplication().isEnabled()) {
+                    final ChangeFeed feed = configuration.getReplication().changeFeed(Journal.NONE);
+                    final InMemoryAccountRepository repository = new InMemoryAccountRepository(feed);
+                    final StripedLockTransferService transferService =
+                            stripedLockTransferService(environment, repository);
+                    replicate(configuration, environment, feed, repository, transferService);
+                    register(configuration, environment, repository, transferService);
+                } else if (configuration.getCurrencies().isEnabled()) {
+                    registerMultiCurrency(configuration, environment);
+                } else {
+                    final InMemoryAccountRepository repository = configuration.getHotAccounts().isEnabled()
+                            ? configuration.getHotAccounts().build()
+                            : new InMemoryAccountRepository();
+                    final StripedLockTransferService transferService =
+                            stripedLockTransferService(environment, repository);
+                    if (configuration.getCluster().isEnabled()) {
+                        registerClustered(configuration, environment, repository, transferService);
+                    } else {
+                        register(configuration, environment, repository, transferService);
+                    }
+                }
+                break;
+        }
+    }
+
+    /**
+     * Creates the in-memory account store, rebuilds its state from the latest snapshot and the journal records
+     * appended after it, and schedules further snapshots.
+     */
+    private void registerJournaled(final TinyTransferConfiguration configuration,
+                                   final Environment environment) throws IOException {
+        final JournalFactory journalFactory = configuration.getJournal();
+        final FileJournal journal = journalFactory.open();
+        final SnapshotStore snapshots = journalFactory.openSnapshots();
+        final ChangeFeed feed = configuration.getReplication().isEnabled()
+                ? configuration.getReplication().changeFeed(journal)
+                : null;
+        final InMemoryAccountRepository repository = new InMemoryAccountRepository(feed == null ? journal : feed);
+
+        final long started = System.nanoTime();
+        final long position = snapshots.load(repository.recoveryHandler());
+        final long records = journal.replay(repository.recoveryHandler(), position);
+        log.info("Recovered the accounts from the snapshot at journal position {} and {} later records in {} ms.",
+                position, records, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+
+        final StripedLockTransferService transferService = stripedLockTransferService(environment, repository);
+        environment.lifecycle().manage(journal);
+        // Managed objects are stopped in reverse order, so no snapshot is in progress once the journal is stopped.
+        environment.lifecycle().manage(journalFactory.snapshotter(journal, snapshots, repository, () -> {
+            repository.awaitAppliedChanges();
+            transferService.awaitAppliedChanges();
+        }));
+        if (feed != null) {
+            replicate(configuration, environment, feed, repository, transferService);
+        }
+        register(configuration, environment, repository, transferService);
+    }
+
+    /**
+     * Creates the in-memory account store with accounts in several currencies, whose transfers convert amounts at the
+     * rates of a table which the admin task {@code reload-exchange-rates} replaces. Only the
+     * {@link InMemoryTransferService} converts, so batches are not isolated from reads of single accounts.
+     */
+    private void registerMultiCurrency(final TinyTransferConfiguration configuration,
+                                       final Environment environment) throws IOException {
+        final CurrenciesFactory currencies = configuration.getCurrencies();
+        final HotAccountsFactory hotAccounts = configuration.getHotAccounts();
+        final InMemoryAccountRepository repository = new InMemoryAccountRepository(hotAccounts.getAccounts(),
+                hotAccounts.getCells(), currencies.getDefaultCurrency());
+        final ExchangeRateTable rates = currencies.build();
+        environment.admin().addTask(new ReloadExchangeRatesTask(rates));
+        register(configuration, environment, repository, new InMemoryTransferService(repository, rates));
+    }
+
+    /**
+     * Streams the changes of a primary to its replicas, or makes this node a replica which follows its primary, serves
+     * reads of accounts and can be promoted.
+     */
+    private void replicate(final TinyTransferConfiguration configuration,
+                           final Environment environment,
+                           final ChangeFeed feed,
+                           final InMemoryAccountRepository repository,
+                           final StripedLockTransferService transferService) {
+        final ReplicationFactory replication = configuration.getReplication();
+        final FeedServer feedServer = replication.feedServer(feed, repository, () -> {
+            repository.awaitAppliedChanges();
+            transferService.awaitAppliedChanges();
+        });
+        final MetricRegistry metrics = environment.metrics();
+        metrics.register(MetricRegistry.name(FeedServer.class, "replicas"), (Gauge<Integer>) feedServer::replicas);
+        metrics.register(MetricRegistry.name(FeedServer.class, "backlog"), (Gauge<Long>) feedServer::backlog);
+        if (!replication.isReplica()) {
+            environment.lifecycle().manage(feedServer);
+            return;
+        }
+        final Replica replica = replication.replica(repository, feedServer);
+        environment.lifecycle().manage(replica);
+        metrics.register(MetricRegistry.name(Replica.class, "staleness"), (Gauge<Long>) replica::stalenessMillis);
+        metrics.register(MetricRegistry.name(Replica.class, "sequence"), (Gauge<Long>) replica::sequence);
+        environment.jersey().register(replication.filter(replica));
+        environment.admin().addTask(new PromoteTask(replica));
+        environment.admin().addTask(new FollowTask(replica));
+    }
+
+    /**
+     * Registers one node of a cluster, which holds the accounts of its range and performs the transfers from them.
+     */
+    private void registerClustered(final TinyTransferConfiguration configuration,
+                                   final Environment environment,
+                                   final InMemoryAccountRepository repository,
+                                   final StripedLockTransferService transferService) {
+        final ClusterFactory cluster = configuration.getCluster();
+        final Partitioner partitioner = cluster.partitioner();
+        final NodeClient client = cluster.client(environment.getObjectMapper());
+        final Ledger ledger = configuration.getLedger().build();
+
+        final TwoPhaseTransferService twoPhase = new TwoPhaseTransferService(transferService, partitioner,
+                cluster.getSelf(), client, cluster.getRetryInterval().toMilliseconds());
+        final IncomingCredits credits = new IncomingCredits(repository, transferService, ledger);
+        environment.lifecycle().manage(twoPhase);
+        final MetricRegistry metrics = environment.metrics();
+        metrics.register(MetricRegistry.name(TwoPhaseTransferService.class, "undelivered-decisions"),
+                (Gauge<Integer>) twoPhase::undeliveredCount);
+        metrics.register(MetricRegistry.name(IncomingCredits.class, "prepared-credits"),
+                (Gauge<Integer>) credits::preparedCount);
+
+        // Transfers from accounts of this node are metered and recorded here; the others on the node of their sender.
+        final TransferService local = decorate(metrics, twoPhase, ledger);
+        environment.jersey().register(new ClusterResource(local, credits));
+        environment.jersey().register(new AccountRoutingFilter(partitioner, cluster.getSelf(), client));
+        serve(configuration, environment,
+                new PartitionedAccountRepository(repository, partitioner, cluster.getSelf(), client),
+                new RoutingTransferService(local, partitioner, cluster.getSelf(), client), ledger);
+    }
+
+    private StripedLockTransferService stripedLockTransferService(final Environment environment,
+                                                                  final InMemoryAccountRepository repository) {
+        final Histogram lockWaits = environment.metrics().histogram(
+                MetricRegistry.name(StripedLockTransferService.class, "lock-waits"),
+                () -> new Histogram(new SlidingTimeWindowArrayReservoir(1, TimeUnit.MINUTES)));
+        return new StripedLockTransferService(repository, StripedLockTransferService.DEFAULT_STRIPES,
+                lockWaits::update);
+    }
+
+    private void register(final TinyTransferConfiguration configuration,
+                          final Environment environment,
+                          final AccountRepository repository,
+                          final TransferService transferService) {
+        final Ledger ledger = configuration.getLedger().build();
+        serve(configuration, environment, repository, decorate(environment.metrics(), transferService, ledger),
+                ledger);
+    }
+
+    private static TransferService decorate(final MetricRegistry metrics,
+                                            final TransferService transferService,
+                                            final Ledger ledger) {
+        if (!ledger.isEnabled()) {
+            return new MeteredTransferService(transferService, metrics);
+        }
+        return new MeteredTransferService(new RecordingTransferService(transferService, ledger), metrics);
+    }
+
+    /**
+     * Serves the accounts through the REST API and, if enabled, the binary protocol.
+     *
+     * @param decorated the transfer service, with metering and recording in the ledger in place
+     */
+    private void serve(final TinyTransferConfiguration configuration,
+                       final Environment environment,
+                       final AccountRepository repository,
+                       final TransferService decorated,
+                       final Ledger ledger) {
+        final MetricRegistry metrics = environment.metrics();
+        metrics.register(MetricRegistry.name(AccountRepository.class, "accounts"), (Gauge<Integer>) repository::size);
+        metrics.register(MetricRegistry.name(AccountRepository.class, "total-balance"),
+                (Gauge<BigDecimal>) repository::totalBalance);
+
+        final BankingResource resource = new BankingResource(repository, decorated,
+                configuration.getIdempotency().build(), ledger);
         environment.healthChecks().register("data", new DataHealthCheck(repository));
+        environment.admin().addTask(new VerifyConsistencyTask(repository));
         environment.jersey().register(resource);
+        final AdmissionFactory admission = configuration.getAdmission();
+        if (admission.isEnabled()) {
+            environment.jersey().register(admission.build(metrics));
+        }
+
+        final SchedulerFactory scheduler = configuration.getScheduler();
+        if (scheduler.isEnabled()) {
+            final ExecutorService executor = environment.lifecycle()
+                    .executorService("scheduled-transfer-%d")
+                    .minThreads(scheduler.getParallelism())
+                    .maxThreads(scheduler.getParallelism())
+                    .build();
+            // Managed objects are stopped in reverse order, so no transfer falls due once the executor stops.
+            final TransferScheduler transferScheduler = scheduler.build(decorated, executor);
+            environment.lifecycle().manage(transferScheduler);
+            metrics.register(MetricRegistry.name(TransferScheduler.class, "pending"),
+                    (Gauge<Integer>) transferScheduler::size);
+            environment.jersey().register(new ScheduledTransferResource(transferScheduler));
+        }
+
+        final BinaryProtocolFactory binaryProtocol = configuration.getBinaryProtocol();
+        if (binaryProtocol.isEnabled()) {
+            final ExecutorService workers = environment.lifecycle()
+                    .executorService("binary-worker-%d")
+                    .minThreads(binaryProtocol.getWorkerThreads())
+                    .maxThreads(binaryProtocol.getWorkerThreads())
+                    .build();
+            // Managed objects are stopped in reverse order, so the listener stops before its workers.
+            environment.lifecycle().manage(binaryProtocol.build(repository, decorated, workers));
+        }
     }
 
 }
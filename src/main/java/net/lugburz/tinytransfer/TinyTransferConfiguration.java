@@ -1,10 +1,178 @@
 package net.lugburz.tinytransfer;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import io.dropwizard.Configuration;
+import io.dropwizard.validation.ValidationMethod;
+import lombok.Getter;
+import lombok.Setter;
+import net.lugburz.tinytransfer.account.HotAccountsFactory;
+import net.lugburz.tinytransfer.account.MinorUnits;
+import net.lugburz.tinytransfer.admission.AdmissionFactory;
+import net.lugburz.tinytransfer.api.IdempotencyFactory;
+import net.lugburz.tinytransfer.binary.BinaryProtocolFactory;
+import net.lugburz.tinytransfer.cluster.ClusterFactory;
+import net.lugburz.tinytransfer.fx.CurrenciesFactory;
+import net.lugburz.tinytransfer.journal.JournalFactory;
+import net.lugburz.tinytransfer.ledger.LedgerFactory;
+import net.lugburz.tinytransfer.replication.ReplicationFactory;
+import net.lugburz.tinytransfer.schedule.SchedulerFactory;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
 
 /**
  * Application-specific configurations.
  */
+@Getter
+@Setter
 public class TinyTransferConfiguration extends Configuration {
-    // No further configuration other than the default necessary for now.
+
+    /**
+     * Available implementations of the account store.
+     */
+    public enum AccountStore {
+        /**
+         * One {@link net.lugburz.tinytransfer.account.Account} object with a {@link java.math.BigDecimal} balance per
+         * account, transfers guarded by lock stripes.
+         */
+        IN_MEMORY,
+        /**
+         * Balances as scaled {@code long} minor units in primitive arrays, lock-free transfers.
+         */
+        FIXED_POINT,
+        /**
+         * Balances as scaled {@code long} minor units and account numbers in direct buffers outside of the heap,
+         * transfers guarded by lock stripes.
+         */
+        OFF_HEAP,
+        /**
+         * Accounts partitioned across single-threaded shards which own their balances, asynchronous transfers.
+         */
+        SHARDED
+    }
+
+    @JsonProperty
+    @NotNull
+    private AccountStore accountStore = AccountStore.IN_MEMORY;
+
+    /**
+     * Number of fractional digits of the currency. Used by the {@link AccountStore#FIXED_POINT} and
+     * {@link AccountStore#OFF_HEAP} stores, which reject amounts with more fractional digits.
+     */
+    @JsonProperty
+    @Min(0)
+    @Max(MinorUnits.MAX_SCALE)
+    private int currencyScale = 2;
+
+    /**
+     * Number of shards of the {@link AccountStore#SHARDED} store, one thread each. Defaults to the number of cores.
+     */
+    @JsonProperty
+    @Min(1)
+    private int shards = Runtime.getRuntime().availableProcessors();
+
+    @JsonProperty
+    @Valid
+    @NotNull
+    private CurrenciesFactory currencies = new CurrenciesFactory();
+
+    @JsonProperty
+    @Valid
+    @NotNull
+    private JournalFactory journal = new JournalFactory();
+
+    @JsonProperty
+    @Valid
+    @NotNull
+    private IdempotencyFactory idempotency = new IdempotencyFactory();
+
+    @JsonProperty
+    @Valid
+    @NotNull
+    private AdmissionFactory admission = new AdmissionFactory();
+
+    @JsonProperty
+    @Valid
+    @NotNull
+    private SchedulerFactory scheduler = new SchedulerFactory();
+
+    @JsonProperty
+    @Valid
+    @NotNull
+    private LedgerFactory ledger = new LedgerFactory();
+
+    @JsonProperty
+    @Valid
+    @NotNull
+    private HotAccountsFactory hotAccounts = new HotAccountsFactory();
+
+    @JsonProperty
+    @Valid
+    @NotNull
+    private BinaryProtocolFactory binaryProtocol = new BinaryProtocolFactory();
+
+    @JsonProperty
+    @Valid
+    @NotNull
+    private ClusterFactory cluster = new ClusterFactory();
+
+    @JsonProperty
+    @Valid
+    @NotNull
+    private ReplicationFactory replication = new ReplicationFactory();
+
+    @JsonIgnore
+    @ValidationMethod(message = "the journal is only supported by the IN_MEMORY account store")
+    public boolean isJournalSupported() {
+        return !journal.isEnabled() || accountStore == AccountStore.IN_MEMORY;
+    }
+
+    @JsonIgnore
+    @ValidationMethod(message = "hot accounts are only supported by the IN_MEMORY account store without journal")
+    public boolean isHotAccountsSupported() {
+        return !hotAccounts.isEnabled() || accountStore == AccountStore.IN_MEMORY && !journal.isEnabled();
+    }
+
+    @JsonIgnore
+    @ValidationMethod(message = "currencies are only supported by the IN_MEMORY account store without journal, "
+            + "replication and cluster mode")
+    public boolean isCurrenciesSupported() {
+        return !currencies.isEnabled() || accountStore == AccountStore.IN_MEMORY && !journal.isEnabled()
+                && !replication.isEnabled() && !cluster.isEnabled();
+    }
+
+    @JsonIgnore
+    @ValidationMethod(message = "cluster mode is only supported by the IN_MEMORY account store without journal")
+    public boolean isClusterSupported() {
+        return !cluster.isEnabled() || accountStore == AccountStore.IN_MEMORY && !journal.isEnabled();
+    }
+
+    @JsonIgnore
+    @ValidationMethod(message = "replication is only supported by the IN_MEMORY account store without hot accounts "
+            + "and cluster mode")
+    public boolean isReplicationSupported() {
+        return !replication.isEnabled()
+                || accountStore == AccountStore.IN_MEMORY && !hotAccounts.isEnabled() && !cluster.isEnabled();
+    }
+
+    @JsonIgnore
+    @ValidationMethod(message = "a replica keeps no journal; only a primary supports it")
+    public boolean isReplicaWithoutJournal() {
+        return !replication.isReplica() || !journal.isEnabled();
+    }
+
+    @JsonIgnore
+    @ValidationMethod(message = "a replica serves reads only through the REST API; disable the binary protocol")
+    public boolean isReplicaWithoutBinaryProtocol() {
+        return !replication.isReplica() || !binaryProtocol.isEnabled();
+    }
+
+    @JsonIgnore
+    @ValidationMethod(message = "a replica performs no transfers; only a primary supports scheduled transfers")
+    public boolean isReplicaWithoutScheduler() {
+        return !replication.isReplica() || !scheduler.isEnabled();
+    }
 }
@@ -0,0 +1,38 @@
+package net.lugburz.tinytransfer;
+
+import io.dropwizard.servlets.tasks.Task;
+import net.lugburz.tinytransfer.account.AccountRepository;
+import net.lugburz.tinytransfer.account.Consistency;
+
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Admin task which scans every account of the store and compares the result with the counters behind
+ * {@link DataHealthCheck}.
+ * <p>
+ * Run with {@code POST http://localhost:8081/tasks/verify-consistency}.
+ */
+public final class VerifyConsistencyTask extends Task {
+
+    private final AccountRepository repository;
+
+    public VerifyConsistencyTask(final AccountRepository repository) {
+        super("verify-consistency");
+        this.repository = repository;
+    }
+
+    @Override
+    public void execute(final Map<String, List<String>> parameters, final PrintWriter output) {
+        final long started = System.nanoTime();
+        final Consistency scanned = repository.verifyConsistency();
+        final long millis = (System.nanoTime() - started) / 1_000_000;
+        final Consistency tracked = repository.checkConsistency();
+
+        output.println("scan: " + scanned + " (" + millis + " ms)");
+        output.println("counters: " + tracked);
+        output.println(scanned.isConsistent() ? "consistent" : "INCONSISTENT");
+        output.flush();
+    }
+}
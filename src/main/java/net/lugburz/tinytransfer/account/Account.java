@@ -1,53 +1,248 @@
 package net.lugburz.tinytransfer.account;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import lombok.AllArgsConstructor;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 
 import java.math.BigDecimal;
+import java.util.Currency;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 /**
  * Thread-safe implementation of a minimal model for a bank account.
+ *
+ * <p>
+ * A split account keeps its balance in several cells instead of a single field, see {@link #split}. Deposits into a
+ * split account do not take its monitor, so that concurrent deposits into a hot account do not serialize.
+ *
+ * <p>
+ * Changes which span several accounts are announced with {@link #beginUpdate()} and {@link #endUpdate()}, so that
+ * {@link AccountRepository#snapshotAll} can read a consistent view of several accounts without locking them. A
+ * {@link #credit} to a split account is not announced on it, so that deposits into a hot account do not contend on
+ * its update counter.
  */
 @Getter
-@AllArgsConstructor
 @NoArgsConstructor
 public final class Account {
 
+    private static final AtomicLongFieldUpdater<Account> UPDATES =
+            AtomicLongFieldUpdater.newUpdater(Account.class, "updates");
+    private static final int IN_PROGRESS_BITS = 20;
+    private static final long IN_PROGRESS_MASK = (1L << IN_PROGRESS_BITS) - 1;
+
     @JsonProperty
     private String accountNo;
 
     @JsonProperty
-    private BigDecimal balance;
+    private volatile BigDecimal balance;
+
+    /**
+     * The currency of the balance, or null if the store does not distinguish currencies.
+     */
+    @JsonProperty
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Currency currency;
+
+    // Null unless the account is split; the balance field is unused then.
+    @Getter(AccessLevel.NONE)
+    private SplitBalance cells;
+
+    // Changes in progress in the low bits, finished changes above them.
+    @Getter(AccessLevel.NONE)
+    private volatile long updates;
+
+    public Account(final String accountNo, final BigDecimal balance) {
+        this(accountNo, balance, null);
+    }
+
+    public Account(final String accountNo, final BigDecimal balance, final Currency currency) {
+        this.accountNo = accountNo;
+        this.balance = balance;
+        this.currency = currency;
+    }
+
+    /**
+     * Creates an account whose balance is spread over several cells.
+     *
+     * @param accountNo the account number
+     * @param balance   the starting balance, may not be negative
+     * @param cells     the number of cells, rounded up to the next power of two
+     * @return the split account
+     */
+    public static Account split(final String accountNo, final BigDecimal balance, final int cells) {
+        return split(accountNo, balance, cells, null);
+    }
+
+    /**
+     * Creates an account in a given currency whose balance is spread over several cells.
+     *
+     * @param accountNo the account number
+     * @param balance   the starting balance, may not be negative
+     * @param cells     the number of cells, rounded up to the next power of two
+     * @param currency  the currency of the balance, or null
+     * @return the split account
+     */
+    public static Account split(final String accountNo,
+                                final BigDecimal balance,
+                                final int cells,
+                                final Currency currency) {
+        final Account account = new Account(accountNo, null, currency);
+        account.cells = new SplitBalance(balance, cells);
+        return account;
+    }
+
+    /**
+     * @return true if the balance is spread over several cells, see {@link #split}
+     */
+    @JsonIgnore
+    public boolean isSplit() {
+        return cells != null;
+    }
+
+    /**
+     * Returns the balance; for a split account, the sum of its cells, which may or may not include deposits made
+     * while the cells are being read.
+     *
+     * @return the balance
+     */
+    public BigDecimal getBalance() {
+        return cells == null ? balance : cells.sum();
+    }
 
     /**
      * Subtracts a given amount from the balance in a thread-safe manner.
      *
      * @param amount the amount to withdraw
+     * @return the balance after the withdrawal
      * @throws AccountException if the amount to withdraw is greater than the balance or is negative
      */
-    public synchronized void withdraw(final BigDecimal amount) {
+    public BigDecimal withdraw(final BigDecimal amount) {
+        final BigDecimal after = tryWithdraw(amount);
+        if (after == null) {
+            throw new AccountException("The account does not have sufficient balance for the withdrawal.");
+        }
+        return after;
+    }
+
+    /**
+     * Subtracts a given amount from the balance in a thread-safe manner, unless the balance does not cover it.
+     * <p>
+     * Unlike {@link #withdraw(BigDecimal)}, an uncovered amount is reported without creating an exception. A split
+     * account borrows the amount from as many cells as needed; its withdrawals are serialized by the monitor.
+     *
+     * @param amount the amount to withdraw
+     * @return the balance after the withdrawal, or null if the balance does not cover the amount
+     * @throws AccountException if the amount is negative
+     */
+    public synchronized BigDecimal tryWithdraw(final BigDecimal amount) {
         if (isNegative(amount)) {
             throw new AccountException("Cannot withdraw negative amount.");
         }
+        if (cells != null) {
+            final BigDecimal before = cells.sum();
+            if (before.compareTo(amount) < 0) {
+                return null;
+            }
+            cells.take(amount);
+            return before.subtract(amount);
+        }
         if (balance.compareTo(amount) < 0) {
-            throw new AccountException("The account does not have sufficient balance for the withdrawal.");
+            return null;
         }
         balance = balance.subtract(amount);
+        return balance;
     }
 
     /**
      * Adds a given amount to the balance in a thread-safe manner.
      *
      * @param amount the amount to deposit
+     * @return the balance after the deposit; for a split account, the sum of its cells right after the deposit
+     * @throws AccountException if the amount is negative
+     */
+    public BigDecimal deposit(final BigDecimal amount) {
+        if (cells != null) {
+            credit(amount);
+            return cells.sum();
+        }
+        synchronized (this) {
+            if (isNegative(amount)) {
+                throw new AccountException("Cannot deposit negative amount.");
+            }
+            balance = balance.add(amount);
+            return balance;
+        }
+    }
+
+    /**
+     * Adds a given amount to the balance of a split account without taking its monitor and without reading the other
+     * cells.
+     * <p>
+     * The credit is a single compare-and-set of one cell, so a reader sees all of it or none. It is therefore not
+     * announced on this account, see {@link #beginUpdate()}.
+     *
+     * @param amount the amount to deposit
      * @throws AccountException if the amount is negative
+     * @throws IllegalStateException if the account is not split
      */
-    public synchronized void deposit(final BigDecimal amount) {
+    public void credit(final BigDecimal amount) {
+        if (cells == null) {
+            throw new IllegalStateException("Only split accounts can be credited without their monitor.");
+        }
         if (isNegative(amount)) {
             throw new AccountException("Cannot deposit negative amount.");
         }
-        balance = balance.add(amount);
+        cells.add(amount);
+    }
+
+    /**
+     * Replaces the balance, such as with the balance a replica receives from its primary.
+     *
+     * @param balance the new balance
+     * @throws IllegalStateException if the account is split
+     */
+    synchronized void assignBalance(final BigDecimal balance) {
+        if (cells != null) {
+            throw new IllegalStateException("The balance of a split account cannot be replaced.");
+        }
+        this.balance = balance;
+    }
+
+    /**
+     * Announces a change of the balance to snapshot readers, which retry while a change is in progress or if one has
+     * finished during their read. A change which spans several accounts begins on all of them before it changes any
+     * balance and ends on all of them after it has changed every balance, so that a reader sees either all of it or
+     * none. Changes may overlap; each call is paired with one call of {@link #endUpdate()}.
+     * <p>
+     * One account of a change may be left out if the change only {@link #credit credits} it and the account is
+     * split: the credit is atomic by itself, and a reader who also reads another account of the change is held off
+     * by the announcement there. A change must not leave out more than one account, since a reader of just those
+     * could see one credit without the other.
+     */
+    public void beginUpdate() {
+        UPDATES.incrementAndGet(this);
+    }
+
+    /**
+     * Finishes a change announced by {@link #beginUpdate()}.
+     */
+    public void endUpdate() {
+        // Moves the change from the count in progress to the count of finished changes.
+        UPDATES.addAndGet(this, (1L << IN_PROGRESS_BITS) - 1);
+    }
+
+    /**
+     * @return the update counter, which changes whenever a change begins or ends
+     */
+    long updates() {
+        return updates;
+    }
+
+    static boolean isUpdating(final long updates) {
+        return (updates & IN_PROGRESS_MASK) != 0;
     }
 
     private boolean isNegative(final BigDecimal amount) {
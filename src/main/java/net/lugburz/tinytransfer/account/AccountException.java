@@ -5,7 +5,16 @@ package net.lugburz.tinytransfer.account;
  */
 public final class AccountException extends RuntimeException {
 
+    /**
+     * Shared instance for lookups of unknown accounts, which are routine; it has no stack trace.
+     */
+    static final AccountException UNKNOWN_ACCOUNT = new AccountException("Unknown account provided", false);
+
     public AccountException(final String message)  {
         super(message);
     }
+
+    private AccountException(final String message, final boolean writableStackTrace) {
+        super(message, null, false, writableStackTrace);
+    }
 }
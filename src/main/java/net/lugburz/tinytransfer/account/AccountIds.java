@@ -0,0 +1,160 @@
+package net.lugburz.tinytransfer.account;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Dictionary from account numbers to the dense ids of a store.
+ *
+ * <p>
+ * Account numbers in canonical decimal form, up to 18 digits without leading zeros, are packed into a {@code long}
+ * and kept in a primitive open-addressing table: looking them up neither hashes nor compares strings, and storing them
+ * takes neither a {@link String} nor an {@link Integer}. Other account numbers are kept in a {@link ConcurrentHashMap}.
+ *
+ * <p>
+ * Lookups take no lock. Ids are added by one thread at a time; adding an id publishes everything the adding thread has
+ * written before to every thread that finds the id.
+ */
+final class AccountIds {
+
+    static final long NOT_PACKED = -1;
+
+    private static final int MAX_PACKED_DIGITS = 18;
+    private static final int INITIAL_CAPACITY = 1 << 10;
+
+    private final Map<String, Integer> others = new ConcurrentHashMap<>();
+    private volatile Numeric numeric = new Numeric(INITIAL_CAPACITY);
+    // Only written by the adding thread.
+    private int numericSize;
+
+    /**
+     * Packs an account number in canonical decimal form into a {@code long}.
+     *
+     * @param accountNo the account number, may not be null
+     * @return the number, or {@link #NOT_PACKED} if the account number is not in canonical decimal form
+     */
+    static long pack(final String accountNo) {
+        final int length = accountNo.length();
+        if (length == 0 || length > MAX_PACKED_DIGITS || length > 1 && accountNo.charAt(0) == '0') {
+            return NOT_PACKED;
+        }
+        long packed = 0;
+        for (int i = 0; i < length; i++) {
+            final int digit = accountNo.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return NOT_PACKED;
+            }
+            packed = packed * 10 + digit;
+        }
+        return packed;
+    }
+
+    /**
+     * @return the id of the account number, or -1 if it is unknown
+     */
+    int get(final String accountNo) {
+        final long packed = pack(accountNo);
+        if (packed != NOT_PACKED) {
+            return numeric.get(packed);
+        }
+        final Integer id = others.get(accountNo);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Adds an id unless the account number is known already; to be called by one thread at a time.
+     *
+     * @return false if the account number is known already
+     */
+    boolean putIfAbsent(final String accountNo, final int id) {
+        final long packed = pack(accountNo);
+        if (packed == NOT_PACKED) {
+            return others.putIfAbsent(accountNo, id) == null;
+        }
+        if (numeric.get(packed) >= 0) {
+            return false;
+        }
+        if ((numericSize + 1L) * 2 > numeric.keys.length()) {
+            numeric = numeric.doubled();
+        }
+        numeric.insert(packed, id);
+        numericSize++;
+        return true;
+    }
+
+    /**
+     * Passes every account number with its id to the action; ids added meanwhile may or may not be included.
+     */
+    void forEach(final ObjIntConsumer<String> action) {
+        final Numeric current = numeric;
+        for (int position = 0; position < current.keys.length(); position++) {
+            final long key = current.keys.get(position);
+            if (key != 0) {
+                action.accept(Long.toString(key - 1), current.values[position]);
+            }
+        }
+        others.forEach(action::accept);
+    }
+
+    /**
+     * Open-addressing table with linear probing from packed account numbers to ids. Keys are stored plus one, so that
+     * zero marks a free position. A key is set after its id, so a reader who finds the key also finds the id.
+     */
+    private static final class Numeric {
+
+        private final AtomicLongArray keys;
+        private final int[] values;
+        private final int mask;
+
+        private Numeric(final int capacity) {
+            this.keys = new AtomicLongArray(capacity);
+            this.values = new int[capacity];
+            this.mask = capacity - 1;
+        }
+
+        private int get(final long packed) {
+            final long key = packed + 1;
+            for (int position = hash(key) & mask; ; position = (position + 1) & mask) {
+                final long found = keys.get(position);
+                if (found == key) {
+                    return values[position];
+                }
+                if (found == 0) {
+                    return -1;
+                }
+            }
+        }
+
+        private void insert(final long packed, final int id) {
+            final long key = packed + 1;
+            int position = hash(key) & mask;
+            while (keys.get(position) != 0) {
+                position = (position + 1) & mask;
+            }
+            values[position] = id;
+            keys.set(position, key);
+        }
+
+        /**
+         * Copies the entries into a table of twice the capacity; readers keep using this one until the new one has
+         * been published.
+         */
+        private Numeric doubled() {
+            final Numeric doubled = new Numeric(keys.length() << 1);
+            for (int position = 0; position < keys.length(); position++) {
+                final long key = keys.get(position);
+                if (key != 0) {
+                    doubled.insert(key - 1, values[position]);
+                }
+            }
+            return doubled;
+        }
+
+        private static int hash(final long key) {
+            final long hash = key * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32));
+        }
+    }
+}
@@ -1,22 +1,40 @@
 package net.lugburz.tinytransfer.account;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 
 /**
- * In-memory repository for bank accounts.
+ * Repository for bank accounts.
  *
  * <p>
  * Assumptions:
  * <ul>
- *     <li>Account numbers are non-empty strings./li>
+ *     <li>Account numbers are non-empty strings.</li>
  *     <li>Balance may never be negative.</li>
  * </ul>
  */
-public final class AccountRepository {
+public interface AccountRepository {
 
-    private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+    /**
+     * Message of the rejection of an account with a currency by a store which does not distinguish currencies.
+     */
+    String CURRENCIES_UNSUPPORTED = "Currencies are not enabled for the account store.";
+
+    /**
+     * Looks up the account data for a given account number with a single probe of the store.
+     *
+     * @param accountNo the account number
+     * @return an instance of {@link Account}, or empty if the provided account number is unknown
+     */
+    Optional<Account> lookup(String accountNo);
 
     /**
      * Returns the account data for a given account number.
@@ -25,11 +43,38 @@ public final class AccountRepository {
      * @return an instance of {@link Account}
      * @throws AccountException if the provided account number is unknown
      */
-    public Account find(final String accountNo) {
-        if (!accounts.containsKey(accountNo)) {
-            throw new AccountException("Unknown account provided");
+    default Account find(final String accountNo) {
+        return lookup(accountNo).orElseThrow(() -> AccountException.UNKNOWN_ACCOUNT);
+    }
+
+    /**
+     * Reads the balance of an account into an instance which is detached from the store.
+     *
+     * @param accountNo the account number
+     * @return a copy of the account, or empty if the provided account number is unknown
+     */
+    default Optional<Account> snapshot(final String accountNo) {
+        final List<Account> accounts = snapshotAll(Collections.singletonList(accountNo));
+        return accounts.isEmpty() ? Optional.empty() : Optional.of(accounts.get(0));
+    }
+
+    /**
+     * Reads the balances of several accounts into instances which are detached from the store.
+     * <p>
+     * By default the accounts are looked up one by one, so each balance has been current at some point, but a transfer
+     * between two of the accounts may show up in one of them only. Stores which can read a point-in-time view, in
+     * which every change is reflected in all of its accounts or in none, override this.
+     *
+     * @param accountNos the account numbers
+     * @return copies of the accounts in the order of the account numbers; unknown account numbers are left out
+     */
+    default List<Account> snapshotAll(final List<String> accountNos) {
+        final List<Account> accounts = new ArrayList<>(accountNos.size());
+        for (final String accountNo : accountNos) {
+            lookup(accountNo).ifPresent(account -> accounts.add(new Account(account.getAccountNo(),
+                    account.getBalance(), account.getCurrency())));
         }
-        return accounts.get(accountNo);
+        return accounts;
     }
 
     /**
@@ -40,43 +85,122 @@ public final class AccountRepository {
      * @throws AccountException if the provided account number is invalid or belongs to an existing account
      *                          or if the provided balance is negative
      */
-    public synchronized void create(final String accountNo, final BigDecimal balance) {
-        validateAccountNo(accountNo);
-        validateBalance(balance);
-        if (accounts.containsKey(accountNo)) {
-            throw new AccountException("Account No. already exists.");
+    void create(String accountNo, BigDecimal balance);
+
+    /**
+     * Creates a new account which holds its balance in a given currency.
+     * <p>
+     * By default the store does not distinguish currencies and only accepts accounts without one.
+     *
+     * @param accountNo the account number, may not be null
+     * @param balance   the starting balance, may not be negative
+     * @param currency  the currency of the balance, or null for the default currency of the store
+     * @throws AccountException if the provided account number is invalid or belongs to an existing account, if the
+     *                          provided balance is negative or if the store does not support the currency
+     */
+    default void create(final String accountNo, final BigDecimal balance, final Currency currency) {
+        if (currency != null) {
+            throw new AccountException(CURRENCIES_UNSUPPORTED);
         }
-        accounts.put(accountNo, new Account(accountNo, balance));
+        create(accountNo, balance);
     }
 
     /**
-     * Clears the repository.
+     * Creates several accounts, each on its own: an invalid account or an existing account number does not prevent the
+     * other accounts from being created.
+     * <p>
+     * By default the accounts are created one by one; stores override this to amortize the cost of a creation over
+     * the whole list.
+     *
+     * @param accounts the account numbers, starting balances and currencies
+     * @return the reason of the failure by position in the list, for every account that has not been created
      */
-    public synchronized void clear() {
-        accounts.clear();
+    default Map<Integer, String> createAll(final List<Account> accounts) {
+        final Map<Integer, String> errors = new HashMap<>();
+        for (int i = 0; i < accounts.size(); i++) {
+            try {
+                create(accounts.get(i).getAccountNo(), accounts.get(i).getBalance(), accounts.get(i).getCurrency());
+            } catch (final AccountException exception) {
+                errors.put(i, exception.getMessage());
+            }
+        }
+        return errors;
     }
 
     /**
-     * Determines data consistency by checking whether there is any negative account balance in the store.
+     * Passes the balance of every account to the action without blocking changes. Each balance may or may not reflect
+     * changes made while the iteration is in progress.
+     *
+     * @param action receives the account number and the balance of each account
+     */
+    void forEachBalance(BiConsumer<String, BigDecimal> action);
+
+    /**
+     * Passes every account to the action without blocking changes, like {@link #forEachBalance}, along with its
+     * currency.
      * <p>
-     * Used for health-check purposes.
+     * By default the store does not distinguish currencies, so the accounts carry none.
      *
-     * @return true if no account has a negative balance, false otherwise
+     * @param action receives a detached copy of each account
      */
-    public boolean isConsistent() {
-        return accounts.values().stream().noneMatch(acc -> acc.getBalance().compareTo(BigDecimal.ZERO) < 0);
+    default void forEachAccount(final Consumer<Account> action) {
+        forEachBalance((accountNo, balance) -> action.accept(new Account(accountNo, balance)));
     }
 
-
-    private void validateAccountNo(final String accountNo) {
-        if (accountNo == null || accountNo.trim().isEmpty()) {
-            throw new AccountException("Invalid account number provided.");
-        }
+    /**
+     * @return true if every account holds its balance in a currency of its own, see
+     * {@link #create(String, BigDecimal, Currency)}
+     */
+    default boolean hasCurrencies() {
+        return false;
     }
 
-    private void validateBalance(final BigDecimal balance) {
-        if (balance.compareTo(BigDecimal.ZERO) < 0) {
-            throw new AccountException("Balance may not be negative.");
-        }
+    /**
+     * Clears the repository.
+     */
+    void clear();
+
+    /**
+     * Returns the number of accounts.
+     *
+     * @return the number of accounts
+     */
+    int size();
+
+    /**
+     * Returns the sum of all balances. Transfers move money between accounts, so the total only changes when
+     * accounts are created or the repository is cleared; it is maintained on those occasions rather than computed.
+     *
+     * @return the total balance of all accounts
+     */
+    BigDecimal totalBalance();
+
+    /**
+     * Returns the consistency figures maintained on every write, in constant time.
+     * <p>
+     * Used for health-check purposes.
+     *
+     * @return the number of negative balances and the running sum of all balances
+     */
+    Consistency checkConsistency();
+
+    /**
+     * Computes the consistency figures by scanning every account.
+     * <p>
+     * Balances are read one by one while transfers continue, so money in flight may show up as a difference between
+     * the sum and the expected total; the scan is meant as an on-demand cross-check of {@link #checkConsistency()}.
+     *
+     * @return the number of negative balances and the sum of all balances as found by the scan
+     */
+    Consistency verifyConsistency();
+
+    /**
+     * Determines data consistency by checking whether there is any negative account balance in the store and whether
+     * the balances add up to the money brought in by account creations.
+     *
+     * @return true if the store is consistent, false otherwise
+     */
+    default boolean isConsistent() {
+        return checkConsistency().isConsistent();
     }
 }
@@ -0,0 +1,187 @@
+package net.lugburz.tinytransfer.account;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Counters of an account store which are maintained on every write, so that consistency can be checked without
+ * scanning all accounts: the number of negative balances, the running sum of all balances and the expected total
+ * which the balances have to add up to.
+ *
+ * <p>
+ * Writers report each transfer or batch as a whole once it has been applied, so the running sum never contains half
+ * a transfer. The sum and the expected total are spread over cells selected by the writing thread to keep concurrent
+ * writers apart. A change which moves both, such as a creation, updates both in the same cell at once, so that
+ * {@link #check} never sees one without the other.
+ */
+public final class BalanceTracker {
+
+    private final Cell[] cells;
+    private final int mask;
+    private final AtomicInteger negativeBalances = new AtomicInteger();
+
+    public BalanceTracker() {
+        this(Runtime.getRuntime().availableProcessors() * 2);
+    }
+
+    /**
+     * @param cells the number of cells of the running sum, rounded up to the next power of two
+     */
+    BalanceTracker(final int cells) {
+        final int size = Integer.highestOneBit(Math.max(1, cells) * 2 - 1);
+        this.cells = new Cell[size];
+        for (int i = 0; i < size; i++) {
+            this.cells[i] = new Cell();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Records a new account; its balance adds to the expected total as well.
+     */
+    public void onCreate(final BigDecimal balance) {
+        onExternalChange(balance, negativeChange(BigDecimal.ZERO, balance));
+    }
+
+    /**
+     * Records the balances of both accounts of a transfer before and after it has been applied.
+     */
+    public void onTransfer(final BigDecimal senderBefore, final BigDecimal senderAfter,
+                           final BigDecimal receiverBefore, final BigDecimal receiverAfter) {
+        add(senderAfter.subtract(senderBefore).add(receiverAfter.subtract(receiverBefore)),
+                negativeChange(senderBefore, senderAfter) + negativeChange(receiverBefore, receiverAfter));
+    }
+
+    /**
+     * Records the combined change of several balances.
+     *
+     * @param delta     the change of the sum of the balances
+     * @param negatives the change of the number of negative balances, see {@link #negativeChange}
+     */
+    public void add(final BigDecimal delta, final int negatives) {
+        if (delta.signum() != 0) {
+            cell().add(delta, BigDecimal.ZERO);
+        }
+        addNegatives(negatives);
+    }
+
+    /**
+     * Records a change of the balances by money which enters or leaves the store other than by a transfer within it,
+     * such as a transfer from or to an account held by another node or the difference of a currency conversion. The
+     * expected total moves by the same amount.
+     *
+     * @param delta     the change of the sum of the balances, negative if money left the store
+     * @param negatives the change of the number of negative balances, see {@link #negativeChange}
+     */
+    public void onExternalChange(final BigDecimal delta, final int negatives) {
+        if (delta.signum() != 0) {
+            cell().add(delta, delta);
+        }
+        addNegatives(negatives);
+    }
+
+    /**
+     * Forgets all balances, when the store is cleared.
+     */
+    public void reset() {
+        for (final Cell cell : cells) {
+            cell.reset();
+        }
+        negativeBalances.set(0);
+    }
+
+    /**
+     * @return the running sum of all balances
+     */
+    public BigDecimal sum() {
+        BigDecimal sum = BigDecimal.ZERO;
+        for (final Cell cell : cells) {
+            sum = sum.add(cell.sum());
+        }
+        return sum;
+    }
+
+    /**
+     * @return the total which the balances have to add up to
+     */
+    public BigDecimal expected() {
+        BigDecimal expected = BigDecimal.ZERO;
+        for (final Cell cell : cells) {
+            expected = expected.add(cell.expected());
+        }
+        return expected;
+    }
+
+    /**
+     * Reads the running sum and the expected total in one pass, taking both values of each cell together.
+     *
+     * @param accounts the number of accounts of the store
+     * @return the consistency figures
+     */
+    public Consistency check(final int accounts) {
+        final BigDecimal[] totals = {BigDecimal.ZERO, BigDecimal.ZERO};
+        for (final Cell cell : cells) {
+            cell.addTo(totals);
+        }
+        return new Consistency(accounts, negativeBalances.get(), totals[0], totals[1]);
+    }
+
+    public int negativeBalances() {
+        return negativeBalances.get();
+    }
+
+    /**
+     * @return 1 if a balance turns negative, -1 if it stops being negative, 0 otherwise
+     */
+    public static int negativeChange(final BigDecimal before, final BigDecimal after) {
+        return (after.signum() < 0 ? 1 : 0) - (before.signum() < 0 ? 1 : 0);
+    }
+
+    /**
+     * @return 1 if a balance in minor units turns negative, -1 if it stops being negative, 0 otherwise
+     */
+    public static int negativeChange(final long before, final long after) {
+        return (after < 0 ? 1 : 0) - (before < 0 ? 1 : 0);
+    }
+
+    private Cell cell() {
+        return cells[(int) Thread.currentThread().getId() & mask];
+    }
+
+    private void addNegatives(final int negatives) {
+        if (negatives != 0) {
+            negativeBalances.addAndGet(negatives);
+        }
+    }
+
+    private static final class Cell {
+
+        private BigDecimal sum = BigDecimal.ZERO;
+        private BigDecimal expected = BigDecimal.ZERO;
+
+        private synchronized void add(final BigDecimal delta, final BigDecimal expectedDelta) {
+            sum = sum.add(delta);
+            if (expectedDelta.signum() != 0) {
+                expected = expected.add(expectedDelta);
+            }
+        }
+
+        private synchronized BigDecimal sum() {
+            return sum;
+        }
+
+        private synchronized BigDecimal expected() {
+            return expected;
+        }
+
+        private synchronized void addTo(final BigDecimal[] totals) {
+            totals[0] = totals[0].add(sum);
+            totals[1] = totals[1].add(expected);
+        }
+
+        private synchronized void reset() {
+            sum = BigDecimal.ZERO;
+            expected = BigDecimal.ZERO;
+        }
+    }
+}
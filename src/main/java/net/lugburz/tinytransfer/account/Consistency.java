@@ -0,0 +1,41 @@
+package net.lugburz.tinytransfer.account;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+
+/**
+ * Consistency figures of an account store.
+ */
+@Getter
+@AllArgsConstructor
+public final class Consistency {
+
+    private final int accounts;
+
+    private final int negativeBalances;
+
+    /**
+     * The sum of all balances.
+     */
+    private final BigDecimal balanceSum;
+
+    /**
+     * The money brought into the store by account creations, which transfers have to conserve.
+     */
+    private final BigDecimal expectedTotal;
+
+    /**
+     * @return true if no balance is negative and the balances add up to the expected total
+     */
+    public boolean isConsistent() {
+        return negativeBalances == 0 && balanceSum.compareTo(expectedTotal) == 0;
+    }
+
+    @Override
+    public String toString() {
+        return "accounts: " + accounts + ", negative balances: " + negativeBalances + ", sum of balances: "
+                + balanceSum.toPlainString() + ", expected total: " + expectedTotal.toPlainString();
+    }
+}
@@ -0,0 +1,364 @@
+package net.lugburz.tinytransfer.account;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * In-memory repository for bank accounts which keeps balances as scaled {@code long} minor units in primitive arrays
+ * instead of one {@link Account} object per account.
+ *
+ * <p>
+ * Each account is assigned a dense id on creation which indexes into chunked {@link AtomicLongArray}s; see
+ * {@link AccountIds} for how account numbers are mapped to their ids. Balance
+ * updates are lock-free: withdrawals are compare-and-set loops which never let a balance drop below zero.
+ * The sum of all balances is capped at {@link Long#MAX_VALUE} on creation; since transfers conserve money, no deposit
+ * can overflow afterwards.
+ */
+public final class FixedPointAccountRepository implements MinorUnitAccountRepository {
+
+    public static final int DEFAULT_CAPACITY = 1 << 24;
+
+    private static final int CHUNK_BITS = 14;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final long NOT_COVERED = Long.MIN_VALUE;
+
+    private final MinorUnits minorUnits;
+    private final int capacity;
+
+    private volatile Table table;
+
+    public FixedPointAccountRepository(final MinorUnits minorUnits) {
+        this(minorUnits, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param minorUnits the conversion between decimal amounts and minor units
+     * @param capacity   the maximum number of accounts
+     */
+    public FixedPointAccountRepository(final MinorUnits minorUnits, final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity must be positive.");
+        }
+        this.minorUnits = minorUnits;
+        this.capacity = capacity;
+        this.table = new Table(capacity);
+    }
+
+    @Override
+    public MinorUnits getMinorUnits() {
+        return minorUnits;
+    }
+
+    /**
+     * Looks up a snapshot of the account data for a given account number.
+     * <p>
+     * The returned instance is detached from the store: changing it does not affect the stored balance.
+     *
+     * @param accountNo the account number
+     * @return an instance of {@link Account}, or empty if the provided account number is unknown
+     */
+    @Override
+    public Optional<Account> lookup(final String accountNo) {
+        final Table current = table;
+        final int id = accountNo == null ? -1 : current.ids.get(accountNo);
+        if (id < 0) {
+            return Optional.empty();
+        }
+        return Optional.of(new Account(accountNo, minorUnits.toDecimal(current.balance(id))));
+    }
+
+    /**
+     * Creates a new account in a thread-safe manner.
+     *
+     * @param accountNo the account number, may not be null
+     * @param balance   the starting balance, may not be negative
+     * @throws AccountException if the provided account number is invalid or belongs to an existing account,
+     *                          if the provided balance is negative or cannot be represented in minor units
+     *                          or if the store is full
+     */
+    @Override
+    public synchronized void create(final String accountNo, final BigDecimal balance) {
+        add(table, accountNo, balance);
+    }
+
+    /**
+     * Creates the accounts while holding the monitor of the repository once, which assigns their ids.
+     */
+    @Override
+    public synchronized Map<Integer, String> createAll(final List<Account> accounts) {
+        final Table current = table;
+        final Map<Integer, String> errors = new HashMap<>();
+        for (int i = 0; i < accounts.size(); i++) {
+            try {
+                add(current, accounts.get(i).getAccountNo(), accounts.get(i).getBalance());
+            } catch (final AccountException exception) {
+                errors.put(i, exception.getMessage());
+            }
+        }
+        return errors;
+    }
+
+    private void add(final Table current, final String accountNo, final BigDecimal balance) {
+        validateAccountNo(accountNo);
+        validateBalance(balance);
+        final long units = minorUnits.toMinorUnits(balance);
+        if (current.size == capacity) {
+            throw new AccountException("The account store is full.");
+        }
+        if (current.totalUnits > Long.MAX_VALUE - units) {
+            throw new AccountException("The total balance of all accounts exceeds the supported range.");
+        }
+        current.add(accountNo, units);
+    }
+
+    /**
+     * Transfers an amount of minor units from one account to another without locking.
+     * <p>
+     * The withdrawal and the deposit are two separate atomic steps; money is never created or lost, but a reader may
+     * observe the amount in neither account for a short moment.
+     *
+     * @param senderAccNo   the account number of the sender
+     * @param receiverAccNo the account number of the receiver
+     * @param amount        the amount in minor units, must be positive
+     * @return false if the sender's balance does not cover the amount; nothing has been transferred in this case
+     * @throws AccountException if an account is unknown or the amount is not positive
+     */
+    @Override
+    public boolean transfer(final String senderAccNo, final String receiverAccNo, final long amount) {
+        final Table current = table;
+        final int sender = current.idOf(senderAccNo);
+        final int receiver = current.idOf(receiverAccNo);
+        if (amount <= 0) {
+            throw new AccountException("Cannot transfer a non-positive amount.");
+        }
+
+        final long senderBefore = current.tryWithdraw(sender, amount);
+        if (senderBefore == NOT_COVERED) {
+            return false;
+        }
+        final long receiverBefore = current.deposit(receiver, amount);
+        current.onTransfer(senderBefore, senderBefore - amount, receiverBefore, receiverBefore + amount);
+        return true;
+    }
+
+    /**
+     * Applies balance deltas to several accounts as a whole without locking.
+     * <p>
+     * All debits are withdrawn first; if one of them is not covered, the debits withdrawn so far are put back and no
+     * credit is applied. Other threads may observe the debits before the credits are applied.
+     *
+     * @param deltas the delta in minor units per account number
+     * @return null if all deltas have been applied, otherwise the number of the first account whose balance does not
+     * cover its debit
+     * @throws AccountException if an account is unknown; no delta has been applied in this case
+     */
+    @Override
+    public String applyDeltas(final Map<String, Long> deltas) {
+        final Table current = table;
+        final String[] accountNos = new String[deltas.size()];
+        final int[] ids = new int[accountNos.length];
+        final long[] values = new long[accountNos.length];
+        int n = 0;
+        for (final Map.Entry<String, Long> delta : deltas.entrySet()) {
+            accountNos[n] = delta.getKey();
+            ids[n] = current.idOf(delta.getKey());
+            values[n++] = delta.getValue();
+        }
+
+        // The changes of the balances, reported as a whole once the batch has been applied or rolled back.
+        long delta = 0;
+        int negatives = 0;
+        for (int i = 0; i < n; i++) {
+            if (values[i] < 0) {
+                final long before = current.tryWithdraw(ids[i], -values[i]);
+                if (before == NOT_COVERED) {
+                    for (int j = 0; j < i; j++) {
+                        if (values[j] < 0) {
+                            current.deposit(ids[j], -values[j]);
+                        }
+                    }
+                    return accountNos[i];
+                }
+                delta += values[i];
+                negatives += BalanceTracker.negativeChange(before, before + values[i]);
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            if (values[i] > 0) {
+                final long before = current.deposit(ids[i], values[i]);
+                delta += values[i];
+                negatives += BalanceTracker.negativeChange(before, before + values[i]);
+            }
+        }
+        current.onChange(delta, negatives);
+        return null;
+    }
+
+    @Override
+    public void forEachBalance(final BiConsumer<String, BigDecimal> action) {
+        final Table current = table;
+        current.ids.forEach((accountNo, id) -> action.accept(accountNo, minorUnits.toDecimal(current.balance(id))));
+    }
+
+    @Override
+    public synchronized void clear() {
+        table = new Table(capacity);
+    }
+
+    @Override
+    public int size() {
+        return table.size;
+    }
+
+    @Override
+    public BigDecimal totalBalance() {
+        return minorUnits.toDecimal(table.totalUnits);
+    }
+
+    /**
+     * Answers from the counters every write maintains: each transfer or batch reports the balances it has changed
+     * once it is complete, so the running sum never contains half a transfer. Holds the monitor, which creations hold
+     * while they add to both the running sum and the total.
+     */
+    @Override
+    public synchronized Consistency checkConsistency() {
+        final Table current = table;
+        return new Consistency(current.size, current.negativeBalances.get(),
+                minorUnits.toDecimal(current.balanceUnits.sum()), minorUnits.toDecimal(current.totalUnits));
+    }
+
+    @Override
+    public Consistency verifyConsistency() {
+        final Table current = table;
+        final int size = current.size;
+        int negatives = 0;
+        long sum = 0;
+        for (int id = 0; id < size; id++) {
+            final long balance = current.balance(id);
+            if (balance < 0) {
+                negatives++;
+            }
+            sum += balance;
+        }
+        return new Consistency(size, negatives, minorUnits.toDecimal(sum), minorUnits.toDecimal(current.totalUnits));
+    }
+
+
+    private void validateAccountNo(final String accountNo) {
+        if (accountNo == null || accountNo.trim().isEmpty()) {
+            throw new AccountException("Invalid account number provided.");
+        }
+    }
+
+    private void validateBalance(final BigDecimal balance) {
+        if (balance.compareTo(BigDecimal.ZERO) < 0) {
+            throw new AccountException("Balance may not be negative.");
+        }
+    }
+
+    /**
+     * One generation of the store; {@link #clear()} replaces it as a whole, so that operations which resolved their
+     * ids against the previous generation can never touch accounts created afterwards.
+     */
+    private static final class Table {
+
+        private final AccountIds ids = new AccountIds();
+        private final AtomicLongArray[] chunks;
+        private final AtomicInteger negativeBalances = new AtomicInteger();
+        private final LongAdder balanceUnits = new LongAdder();
+
+        // Only written while holding the repository monitor.
+        private volatile int size;
+        private volatile long totalUnits;
+
+        private Table(final int capacity) {
+            this.chunks = new AtomicLongArray[(capacity + CHUNK_SIZE - 1) >>> CHUNK_BITS];
+        }
+
+        private int idOf(final String accountNo) {
+            final int id = accountNo == null ? -1 : ids.get(accountNo);
+            if (id < 0) {
+                throw AccountException.UNKNOWN_ACCOUNT;
+            }
+            return id;
+        }
+
+        private AtomicLongArray chunk(final int id) {
+            return chunks[id >>> CHUNK_BITS];
+        }
+
+        private long balance(final int id) {
+            return chunk(id).get(id & CHUNK_MASK);
+        }
+
+        /**
+         * Withdraws with a compare-and-set loop which never lets the balance drop below zero.
+         *
+         * @return the balance before the withdrawal, or {@link #NOT_COVERED} if it does not cover the amount
+         */
+        private long tryWithdraw(final int id, final long amount) {
+            final AtomicLongArray chunk = chunk(id);
+            final int index = id & CHUNK_MASK;
+            long balance;
+            do {
+                balance = chunk.get(index);
+                if (balance < amount) {
+                    return NOT_COVERED;
+                }
+            } while (!chunk.compareAndSet(index, balance, balance - amount));
+            return balance;
+        }
+
+        /**
+         * @return the balance before the deposit
+         */
+        private long deposit(final int id, final long amount) {
+            return chunk(id).getAndAdd(id & CHUNK_MASK, amount);
+        }
+
+        /**
+         * Records the balances of both accounts of a transfer before and after it has been applied.
+         */
+        private void onTransfer(final long senderBefore, final long senderAfter,
+                                final long receiverBefore, final long receiverAfter) {
+            onChange(senderAfter - senderBefore + receiverAfter - receiverBefore,
+                    BalanceTracker.negativeChange(senderBefore, senderAfter)
+                            + BalanceTracker.negativeChange(receiverBefore, receiverAfter));
+        }
+
+        /**
+         * Records the combined change of the balances of a transfer or batch.
+         */
+        private void onChange(final long delta, final int negatives) {
+            if (delta != 0) {
+                balanceUnits.add(delta);
+            }
+            if (negatives != 0) {
+                negativeBalances.addAndGet(negatives);
+            }
+        }
+
+        private void add(final String accountNo, final long units) {
+            final int id = size;
+            if (chunks[id >>> CHUNK_BITS] == null) {
+                chunks[id >>> CHUNK_BITS] = new AtomicLongArray(CHUNK_SIZE);
+            }
+            chunk(id).set(id & CHUNK_MASK, units);
+            // Publishing the id makes the chunk and the balance visible to every thread that looks it up.
+            if (!ids.putIfAbsent(accountNo, id)) {
+                throw new AccountException("Account No. already exists.");
+            }
+            balanceUnits.add(units);
+            totalUnits += units;
+            size = id + 1;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package net.lugburz.tinytransfer.account;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Configuration of the accounts whose balance is split over several cells, see {@link Account#split}.
+ */
+@Getter
+@Setter
+public class HotAccountsFactory {
+
+    /**
+     * Numbers of the accounts which receive many concurrent deposits, such as a merchant account. They are created as
+     * split accounts whenever they are created.
+     */
+    @JsonProperty
+    @NotNull
+    private Set<String> accounts = new HashSet<>();
+
+    /**
+     * Number of cells per hot account. Defaults to the number of cores.
+     */
+    @JsonProperty
+    @Min(1)
+    private int cells = Runtime.getRuntime().availableProcessors();
+
+    @JsonIgnore
+    public boolean isEnabled() {
+        return !accounts.isEmpty();
+    }
+
+    public InMemoryAccountRepository build() {
+        return new InMemoryAccountRepository(accounts, cells);
+    }
+}
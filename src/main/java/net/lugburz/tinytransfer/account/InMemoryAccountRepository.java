@@ -0,0 +1,564 @@
+package net.lugburz.tinytransfer.account;
+
+import net.lugburz.tinytransfer.journal.Journal;
+import net.lugburz.tinytransfer.journal.RecordHandler;
+import net.lugburz.tinytransfer.journal.SnapshotSource;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * In-memory repository for bank accounts which keeps one mutable {@link Account} instance per account.
+ *
+ * <p>
+ * Creations and clears are written to a {@link Journal} before they become visible. Creations take no lock of the
+ * repository: each one inserts its account with a single {@link ConcurrentHashMap#computeIfAbsent} into the current
+ * {@link Epoch}. A clear retires the epoch as a whole and replaces it with an empty one instead of removing the
+ * accounts one by one. Transfer services change balances within the epoch as well, see {@link #beginChange()}.
+ * <p>
+ * Accounts designated as hot are created as split accounts, so that concurrent deposits into them do not contend.
+ * <p>
+ * A repository with a default currency keeps the balance of each account in its own currency; accounts created
+ * without one are given the default. The journal does not record currencies, so only a repository without journal
+ * has a default currency.
+ */
+public final class InMemoryAccountRepository implements AccountRepository, SnapshotSource {
+
+    // Snapshot reads retried more often than this yield the processor before every further attempt.
+    private static final int SNAPSHOT_SPINS = 64;
+
+    private final Journal journal;
+    private final Set<String> hotAccounts;
+    private final int cells;
+    // Null unless the repository distinguishes currencies.
+    private final Currency defaultCurrency;
+    private final BalanceTracker tracker = new BalanceTracker();
+    /**
+     * Serializes clears and barriers, which are rare; creations never take it. A lock rather than a monitor, since
+     * the journal may block while it is held and a virtual thread blocked inside a monitor would pin its carrier
+     * thread.
+     */
+    private final ReentrantLock clearLock = new ReentrantLock();
+
+    private volatile Epoch epoch = new Epoch();
+
+    public InMemoryAccountRepository() {
+        this(Journal.NONE);
+    }
+
+    public InMemoryAccountRepository(final Journal journal) {
+        this.journal = journal;
+        this.hotAccounts = Collections.emptySet();
+        this.cells = 1;
+        this.defaultCurrency = null;
+    }
+
+    /**
+     * Creates a repository without a journal in which the given accounts are created as split accounts, see
+     * {@link Account#split}. The journal records absolute balances, which a split account does not have a single
+     * writer for, so hot accounts and a journal are mutually exclusive.
+     *
+     * @param hotAccounts the numbers of the accounts to split
+     * @param cells       the number of cells per hot account
+     */
+    public InMemoryAccountRepository(final Set<String> hotAccounts, final int cells) {
+        this(hotAccounts, cells, null);
+    }
+
+    /**
+     * Creates a repository without a journal whose accounts hold their balance in a currency of their own.
+     *
+     * @param hotAccounts     the numbers of the accounts to split
+     * @param cells           the number of cells per hot account
+     * @param defaultCurrency the currency of the accounts which are created without one, or null if the repository
+     *                        does not distinguish currencies
+     */
+    public InMemoryAccountRepository(final Set<String> hotAccounts, final int cells, final Currency defaultCurrency) {
+        this.journal = Journal.NONE;
+        this.hotAccounts = new HashSet<>(hotAccounts);
+        this.cells = cells;
+        this.defaultCurrency = defaultCurrency;
+    }
+
+    public Journal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Returns the counters which transfer services have to update whenever they change balances.
+     *
+     * @return the balance tracker of this repository
+     */
+    public BalanceTracker getTracker() {
+        return tracker;
+    }
+
+    /**
+     * Looks up the live account instance for a given account number.
+     *
+     * @param accountNo the account number
+     * @return the account, or empty if the provided account number is unknown
+     */
+    @Override
+    public Optional<Account> lookup(final String accountNo) {
+        return accountNo == null ? Optional.empty() : Optional.ofNullable(epoch.accounts.get(accountNo));
+    }
+
+    /**
+     * Reads the balances without blocking changes, in the style of a seqlock: the update counters of all accounts are
+     * read before and after their balances, and the read is repeated until no account has had a change in progress or
+     * finished in between. Transfer services announce every change on all accounts it spans before making it, see
+     * {@link Account#beginUpdate()}, so a validated read contains every change completely or not at all. Credits to a
+     * split account are atomic by themselves and not announced on it, so reading a hot account does not have to wait
+     * for the deposits into it.
+     */
+    @Override
+    public List<Account> snapshotAll(final List<String> accountNos) {
+        final Map<String, Account> accounts = epoch.accounts;
+        final List<Account> found = new ArrayList<>(accountNos.size());
+        for (final String accountNo : accountNos) {
+            final Account account = accountNo == null ? null : accounts.get(accountNo);
+            if (account != null) {
+                found.add(account);
+            }
+        }
+        final long[] updates = new long[found.size()];
+        final BigDecimal[] balances = new BigDecimal[found.size()];
+        for (int attempt = 1; !tryRead(found, updates, balances); attempt++) {
+            if (attempt >= SNAPSHOT_SPINS) {
+                Thread.yield();
+            }
+        }
+        final List<Account> snapshot = new ArrayList<>(found.size());
+        for (int i = 0; i < balances.length; i++) {
+            snapshot.add(new Account(found.get(i).getAccountNo(), balances[i], found.get(i).getCurrency()));
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return false if a change of one of the accounts has been in progress or has finished during the read
+     */
+    private static boolean tryRead(final List<Account> accounts, final long[] updates, final BigDecimal[] balances) {
+        for (int i = 0; i < updates.length; i++) {
+            updates[i] = accounts.get(i).updates();
+            if (Account.isUpdating(updates[i])) {
+                return false;
+            }
+        }
+        for (int i = 0; i < balances.length; i++) {
+            balances[i] = accounts.get(i).getBalance();
+        }
+        for (int i = 0; i < updates.length; i++) {
+            if (accounts.get(i).updates() != updates[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void create(final String accountNo, final BigDecimal balance) {
+        create(accountNo, balance, null);
+    }
+
+    @Override
+    public void create(final String accountNo, final BigDecimal balance, final Currency currency) {
+        validateAccountNo(accountNo);
+        validateBalance(balance);
+        journal.awaitDurable(add(accountNo, balance, currencyOf(currency)));
+    }
+
+    /**
+     * Creates the accounts one by one and waits for the journal once for all of them.
+     */
+    @Override
+    public Map<Integer, String> createAll(final List<Account> newAccounts) {
+        final Map<Integer, String> errors = new HashMap<>();
+        long position = 0;
+        for (int i = 0; i < newAccounts.size(); i++) {
+            final Account account = newAccounts.get(i);
+            try {
+                validateAccountNo(account.getAccountNo());
+                validateBalance(account.getBalance());
+                position = Math.max(position,
+                        add(account.getAccountNo(), account.getBalance(), currencyOf(account.getCurrency())));
+            } catch (final AccountException exception) {
+                errors.put(i, exception.getMessage());
+            }
+        }
+        journal.awaitDurable(position);
+        return errors;
+    }
+
+    /**
+     * Retires the current epoch and starts an empty one. Creations which are in progress finish in the retired epoch
+     * first, so that their journal records precede the record of the clear; creations which arrive in the meantime
+     * wait for the new epoch.
+     */
+    @Override
+    public void clear() {
+        final long position;
+        clearLock.lock();
+        try {
+            final Epoch retired = epoch;
+            retired.close();
+            position = journal.appendClear();
+            tracker.reset();
+            epoch = new Epoch();
+        } finally {
+            clearLock.unlock();
+        }
+        journal.awaitDurable(position);
+    }
+
+    @Override
+    public int size() {
+        return epoch.accounts.size();
+    }
+
+    @Override
+    public BigDecimal totalBalance() {
+        return tracker.expected();
+    }
+
+    /**
+     * Answers from the balance tracker, which keeps the sum of the balances and the expected total together; money
+     * which enters or leaves the store other than by a creation is reported with
+     * {@link BalanceTracker#onExternalChange}.
+     */
+    @Override
+    public Consistency checkConsistency() {
+        return tracker.check(epoch.accounts.size());
+    }
+
+    @Override
+    public Consistency verifyConsistency() {
+        int size = 0;
+        int negatives = 0;
+        BigDecimal sum = BigDecimal.ZERO;
+        for (final Account account : epoch.accounts.values()) {
+            final BigDecimal balance = account.getBalance();
+            size++;
+            if (balance.signum() < 0) {
+                negatives++;
+            }
+            sum = sum.add(balance);
+        }
+        return new Consistency(size, negatives, sum, tracker.expected());
+    }
+
+    @Override
+    public void forEachBalance(final BiConsumer<String, BigDecimal> action) {
+        epoch.accounts.forEach((accountNo, account) -> action.accept(accountNo, account.getBalance()));
+    }
+
+    @Override
+    public void forEachAccount(final Consumer<Account> action) {
+        epoch.accounts.forEach((accountNo, account) ->
+                action.accept(new Account(accountNo, account.getBalance(), account.getCurrency())));
+    }
+
+    @Override
+    public boolean hasCurrencies() {
+        return defaultCurrency != null;
+    }
+
+    /**
+     * Enters the current epoch on behalf of a change to the balances of existing accounts, such as a transfer. A clear
+     * waits until every change inside the epoch is closed, so the journal record of a change precedes the record of the
+     * clear and always refers to the accounts the change looked up. Without it, a clear could retire an account
+     * between its lookup and the record, which would overwrite the balance of an account created again under the same
+     * number on replay.
+     * <p>
+     * Accounts are to be looked up through the change. It is to be closed before waiting for the journal, since a clear
+     * blocks creations while it waits.
+     *
+     * @return the change, to be closed once it has been applied
+     */
+    public Change beginChange() {
+        final int stripe = Epoch.stripeOf(Thread.currentThread().getId());
+        while (true) {
+            final Epoch current = epoch;
+            if (current.enter(stripe)) {
+                return new Change(current, stripe);
+            }
+            // A clear or a barrier is in progress; they only wait for the changes already inside.
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Blocks until every creation and clear whose record has been appended to the journal has been applied.
+     */
+    public void awaitAppliedChanges() {
+        // Clears are journaled and applied while holding the clear lock, creations while inside the epoch.
+        clearLock.lock();
+        try {
+            final Epoch current = epoch;
+            current.close();
+            current.reopen();
+        } finally {
+            clearLock.unlock();
+        }
+    }
+
+    /**
+     * Returns a handler which applies journal records to this repository without validating or journaling them
+     * again. Only to be used to rebuild the state on startup, before the repository serves requests.
+     *
+     * @return the record handler
+     */
+    public RecordHandler recoveryHandler() {
+        // Records may overlap with a snapshot, so the total follows the balances rather than the creations.
+        return new RecordHandler() {
+            @Override
+            public void onCreate(final String accountNo, final BigDecimal balance) {
+                adjustTotal(epoch.accounts.put(accountNo, new Account(accountNo, balance)), balance);
+            }
+
+            @Override
+            public void onBalance(final String accountNo, final BigDecimal balance) {
+                final Account previous = epoch.accounts.get(accountNo);
+                if (previous != null) {
+                    epoch.accounts.put(accountNo, new Account(accountNo, balance));
+                    adjustTotal(previous, balance);
+                }
+            }
+
+            @Override
+            public void onClear() {
+                epoch = new Epoch();
+                tracker.reset();
+            }
+
+            private void adjustTotal(final Account previous, final BigDecimal balance) {
+                final BigDecimal replaced = previous == null ? BigDecimal.ZERO : previous.getBalance();
+                tracker.onExternalChange(balance.subtract(replaced), BalanceTracker.negativeChange(replaced, balance));
+            }
+        };
+    }
+
+    /**
+     * Returns a handler which applies the records a replica receives from its primary, while the repository keeps
+     * serving reads. Balances are replaced in place, and all balances of a record are announced as one change, see
+     * {@link Account#beginUpdate()}, so that snapshot reads never see part of a transfer. A creation of an existing
+     * account replaces its balance, since a snapshot the replica starts from may already contain it.
+     *
+     * @return the record handler, to be called by a single thread
+     */
+    public RecordHandler replicationHandler() {
+        return new RecordHandler() {
+            private final List<Account> changed = new ArrayList<>();
+
+            @Override
+            public void onCreate(final String accountNo, final BigDecimal balance) {
+                final Account existing = epoch.accounts.get(accountNo);
+                if (existing == null) {
+                    epoch.accounts.put(accountNo, new Account(accountNo, balance));
+                    adjustTotal(BigDecimal.ZERO, balance);
+                } else {
+                    assign(existing, balance);
+                }
+            }
+
+            @Override
+            public void onBalance(final String accountNo, final BigDecimal balance) {
+                final Account account = epoch.accounts.get(accountNo);
+                if (account != null) {
+                    assign(account, balance);
+                }
+            }
+
+            @Override
+            public void onClear() {
+                epoch = new Epoch();
+                tracker.reset();
+            }
+
+            @Override
+            public void onRecordEnd() {
+                changed.forEach(Account::endUpdate);
+                changed.clear();
+            }
+
+            private void assign(final Account account, final BigDecimal balance) {
+                account.beginUpdate();
+                changed.add(account);
+                final BigDecimal replaced = account.getBalance();
+                account.assignBalance(balance);
+                adjustTotal(replaced, balance);
+            }
+
+            private void adjustTotal(final BigDecimal replaced, final BigDecimal balance) {
+                tracker.onExternalChange(balance.subtract(replaced), BalanceTracker.negativeChange(replaced, balance));
+            }
+        };
+    }
+
+    /**
+     * Journals and applies the creation of a valid account within the current epoch.
+     *
+     * @return the journal position of the creation
+     */
+    private long add(final String accountNo, final BigDecimal balance, final Currency currency) {
+        final int stripe = Epoch.stripeOf(accountNo);
+        while (true) {
+            final Epoch current = epoch;
+            if (!current.enter(stripe)) {
+                // A clear or a barrier is in progress; they only wait for the creations already inside.
+                Thread.yield();
+                continue;
+            }
+            try {
+                final Account created = hotAccounts.contains(accountNo)
+                        ? Account.split(accountNo, balance, cells, currency)
+                        : new Account(accountNo, balance, currency);
+                final long[] position = new long[1];
+                // The account becomes visible only after its record has been appended.
+                final Account account = current.accounts.computeIfAbsent(accountNo, key -> {
+                    position[0] = journal.appendCreate(key, balance);
+                    return created;
+                });
+                if (account != created) {
+                    throw new AccountException("Account No. already exists.");
+                }
+                tracker.onCreate(balance);
+                return position[0];
+            } finally {
+                current.exit(stripe);
+            }
+        }
+    }
+
+    private void validateAccountNo(final String accountNo) {
+        if (accountNo == null || accountNo.trim().isEmpty()) {
+            throw new AccountException("Invalid account number provided.");
+        }
+    }
+
+    private void validateBalance(final BigDecimal balance) {
+        if (balance.compareTo(BigDecimal.ZERO) < 0) {
+            throw new AccountException("Balance may not be negative.");
+        }
+    }
+
+    /**
+     * @return the currency of a new account, null if the repository does not distinguish currencies
+     */
+    private Currency currencyOf(final Currency requested) {
+        if (defaultCurrency == null && requested != null) {
+            throw new AccountException(CURRENCIES_UNSUPPORTED);
+        }
+        return requested == null ? defaultCurrency : requested;
+    }
+
+    /**
+     * A change to existing accounts within one epoch, see {@link #beginChange()}.
+     */
+    public static final class Change implements AutoCloseable {
+
+        private final Epoch epoch;
+        private final int stripe;
+
+        private Change(final Epoch epoch, final int stripe) {
+            this.epoch = epoch;
+            this.stripe = stripe;
+        }
+
+        /**
+         * @param accountNo the account number
+         * @return the account of the epoch of this change, or empty if the provided account number is unknown
+         */
+        public Optional<Account> lookup(final String accountNo) {
+            return accountNo == null ? Optional.empty() : Optional.ofNullable(epoch.accounts.get(accountNo));
+        }
+
+        /**
+         * @param accountNo the account number
+         * @return the account of the epoch of this change
+         * @throws AccountException if the provided account number is unknown
+         */
+        public Account find(final String accountNo) {
+            return lookup(accountNo).orElseThrow(() -> AccountException.UNKNOWN_ACCOUNT);
+        }
+
+        @Override
+        public void close() {
+            epoch.exit(stripe);
+        }
+    }
+
+    /**
+     * One generation of the accounts; {@link #clear()} replaces it as a whole.
+     * <p>
+     * Creations announce themselves on a counter stripe chosen by the account number, so that concurrent creations of
+     * different accounts rarely write the same cache line; changes to existing accounts announce themselves on a stripe
+     * chosen by the thread. Closing the epoch waits until every stripe is empty; since a creation or change checks the
+     * closed flag after announcing itself, it either sees the flag and backs off or is seen by the closing thread.
+     */
+    private static final class Epoch {
+
+        private static final int STRIPES = 64;
+        // Spreads the counters over separate cache lines.
+        private static final int PADDING = 16;
+
+        private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+        private final AtomicLongArray inFlight = new AtomicLongArray(STRIPES * PADDING);
+        private volatile boolean closed;
+
+        private static int stripeOf(final String accountNo) {
+            return (accountNo.hashCode() & Integer.MAX_VALUE) % STRIPES * PADDING;
+        }
+
+        private static int stripeOf(final long threadId) {
+            return (int) ((threadId & Long.MAX_VALUE) % STRIPES) * PADDING;
+        }
+
+        /**
+         * @return false if the epoch is closed; the caller has not entered it in this case
+         */
+        private boolean enter(final int stripe) {
+            inFlight.incrementAndGet(stripe);
+            if (closed) {
+                inFlight.decrementAndGet(stripe);
+                return false;
+            }
+            return true;
+        }
+
+        private void exit(final int stripe) {
+            inFlight.decrementAndGet(stripe);
+        }
+
+        /**
+         * Keeps new creations and changes out and waits for those inside to finish; to be called while holding the
+         * clear lock.
+         */
+        private void close() {
+            closed = true;
+            for (int stripe = 0; stripe < STRIPES * PADDING; stripe += PADDING) {
+                while (inFlight.get(stripe) != 0) {
+                    Thread.yield();
+                }
+            }
+        }
+
+        private void reopen() {
+            closed = false;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package net.lugburz.tinytransfer.account;
+
+import java.util.Map;
+
+/**
+ * Repository for bank accounts which keeps balances as scaled {@code long} minor units, see {@link MinorUnits}, and
+ * moves money between them without converting back to decimals.
+ */
+public interface MinorUnitAccountRepository extends AccountRepository {
+
+    /**
+     * @return the conversion between decimal amounts and the minor units of the store
+     */
+    MinorUnits getMinorUnits();
+
+    /**
+     * Transfers an amount of minor units from one account to another.
+     *
+     * @param senderAccNo   the account number of the sender
+     * @param receiverAccNo the account number of the receiver
+     * @param amount        the amount in minor units, must be positive
+     * @return false if the sender's balance does not cover the amount; nothing has been transferred in this case
+     * @throws AccountException if an account is unknown or the amount is not positive
+     */
+    boolean transfer(String senderAccNo, String receiverAccNo, long amount);
+
+    /**
+     * Applies balance deltas to several accounts as a whole: either all of them or none.
+     *
+     * @param deltas the delta in minor units per account number
+     * @return null if all deltas have been applied, otherwise the number of the first account whose balance does not
+     * cover its debit
+     * @throws AccountException if an account is unknown; no delta has been applied in this case
+     */
+    String applyDeltas(Map<String, Long> deltas);
+}
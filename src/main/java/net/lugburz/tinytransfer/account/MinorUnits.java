@@ -0,0 +1,71 @@
+package net.lugburz.tinytransfer.account;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+/**
+ * Converts between decimal amounts and scaled {@code long} minor units of a currency, e.g. cents for a scale of 2.
+ *
+ * <p>
+ * Conversions are strict: amounts with more fractional digits than the scale or beyond the range of {@code long}
+ * are rejected instead of being rounded or truncated.
+ */
+public final class MinorUnits {
+
+    public static final int MAX_SCALE = 18;
+
+    // Long.MAX_VALUE has 19 digits, so anything with more integer digits cannot fit at any scale.
+    private static final int MAX_INTEGER_DIGITS = 19;
+
+    private final int scale;
+
+    /**
+     * @param scale the number of fractional digits of the currency, between 0 and {@value #MAX_SCALE}
+     */
+    public MinorUnits(final int scale) {
+        if (scale < 0 || scale > MAX_SCALE) {
+            throw new IllegalArgumentException("The currency scale must be between 0 and " + MAX_SCALE + ".");
+        }
+        this.scale = scale;
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    /**
+     * Converts a decimal amount into minor units.
+     *
+     * @param amount the amount, may not be null
+     * @return the amount in minor units
+     * @throws AccountException if the amount has more fractional digits than the scale or does not fit into a
+     *                          {@code long} once scaled
+     */
+    public long toMinorUnits(final BigDecimal amount) {
+        if (amount.precision() - amount.scale() > MAX_INTEGER_DIGITS) {
+            throw new AccountException("The amount exceeds the supported range.");
+        }
+        final BigDecimal scaled;
+        try {
+            scaled = amount.setScale(scale, RoundingMode.UNNECESSARY);
+        } catch (final ArithmeticException exception) {
+            throw new AccountException("The amount may not have more than " + scale + " fractional digits.");
+        }
+        final BigInteger unscaled = scaled.unscaledValue();
+        if (unscaled.bitLength() >= Long.SIZE) {
+            throw new AccountException("The amount exceeds the supported range.");
+        }
+        return unscaled.longValue();
+    }
+
+    /**
+     * Converts minor units into a decimal amount with the configured scale.
+     *
+     * @param minorUnits the amount in minor units
+     * @return the decimal amount
+     */
+    public BigDecimal toDecimal(final long minorUnits) {
+        return BigDecimal.valueOf(minorUnits, scale);
+    }
+}
@@ -0,0 +1,597 @@
+package net.lugburz.tinytransfer.account;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Repository for bank accounts which keeps account numbers and balances in direct buffers outside of the Java heap, so
+ * that tens of millions of accounts neither grow the heap nor the work of the garbage collector.
+ *
+ * <p>
+ * Each account is assigned a dense id on creation and takes one fixed-width slot: its balance in minor units and a
+ * reference to its account number, whose UTF-8 bytes are appended to a separate key area. Account numbers in canonical
+ * decimal form are packed into the reference instead, see {@link AccountIds#pack}. An open-addressing index with
+ * linear probing maps the hash of an account number to its id and is doubled whenever it becomes half full.
+ * Lookups take no lock: creations are serialized by the monitor of the repository and publish an account by raising
+ * the volatile size once its slot, key and index entry have been written.
+ *
+ * <p>
+ * Balances are guarded by lock stripes chosen by the id. A transfer holds the stripes of both accounts and a batch the
+ * stripes of all of its accounts, acquired in ascending order, so both are applied as a whole and no balance ever
+ * drops below zero.
+ *
+ * <p>
+ * The memory of a cleared store is released once the garbage collector finds its buffers unreachable. The direct
+ * memory of the JVM is limited by {@code -XX:MaxDirectMemorySize}, which defaults to the maximum heap size.
+ */
+public final class OffHeapAccountRepository implements MinorUnitAccountRepository {
+
+    public static final int DEFAULT_CAPACITY = 1 << 30;
+    public static final int MAX_ACCOUNT_NO_BYTES = 1024;
+
+    private static final int STRIPES = 4096;
+    private static final int INITIAL_INDEX_CAPACITY = 1 << 10;
+    private static final int CHUNK_BITS = 20;
+    // Balance and key reference of an account; a negative reference is the complement of a packed account number.
+    private static final int SLOT_BYTES = 16;
+    private static final int KEY_LENGTH_BITS = 16;
+
+    private final MinorUnits minorUnits;
+    private final int capacity;
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+
+    private volatile Table table = new Table();
+
+    public OffHeapAccountRepository(final MinorUnits minorUnits) {
+        this(minorUnits, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param minorUnits the conversion between decimal amounts and minor units
+     * @param capacity   the maximum number of accounts
+     */
+    public OffHeapAccountRepository(final MinorUnits minorUnits, final int capacity) {
+        if (capacity < 1 || capacity > DEFAULT_CAPACITY) {
+            throw new IllegalArgumentException("The capacity must be between 1 and " + DEFAULT_CAPACITY + ".");
+        }
+        this.minorUnits = minorUnits;
+        this.capacity = capacity;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    @Override
+    public MinorUnits getMinorUnits() {
+        return minorUnits;
+    }
+
+    /**
+     * Looks up a snapshot of the account data for a given account number.
+     * <p>
+     * The returned instance is detached from the store: changing it does not affect the stored balance.
+     *
+     * @param accountNo the account number
+     * @return an instance of {@link Account}, or empty if the provided account number is unknown
+     */
+    @Override
+    public Optional<Account> lookup(final String accountNo) {
+        final Table current = table;
+        final int id = accountNo == null ? -1 : current.find(accountNo);
+        if (id < 0) {
+            return Optional.empty();
+        }
+        return Optional.of(new Account(accountNo, minorUnits.toDecimal(lockedBalance(current, id))));
+    }
+
+    /**
+     * Creates a new account in a thread-safe manner.
+     *
+     * @param accountNo the account number, may not be null or longer than {@value #MAX_ACCOUNT_NO_BYTES} bytes
+     * @param balance   the starting balance, may not be negative
+     * @throws AccountException if the provided account number is invalid or belongs to an existing account,
+     *                          if the provided balance is negative or cannot be represented in minor units
+     *                          or if the store is full
+     */
+    @Override
+    public synchronized void create(final String accountNo, final BigDecimal balance) {
+        add(table, accountNo, balance);
+    }
+
+    /**
+     * Creates the accounts while holding the monitor of the repository once, which assigns their ids.
+     */
+    @Override
+    public synchronized Map<Integer, String> createAll(final List<Account> accounts) {
+        final Table current = table;
+        final Map<Integer, String> errors = new HashMap<>();
+        for (int i = 0; i < accounts.size(); i++) {
+            try {
+                add(current, accounts.get(i).getAccountNo(), accounts.get(i).getBalance());
+            } catch (final AccountException exception) {
+                errors.put(i, exception.getMessage());
+            }
+        }
+        return errors;
+    }
+
+    private void add(final Table current, final String accountNo, final BigDecimal balance) {
+        validateAccountNo(accountNo);
+        validateBalance(balance);
+        final long packed = AccountIds.pack(accountNo);
+        final byte[] key = packed == AccountIds.NOT_PACKED ? accountNo.getBytes(StandardCharsets.UTF_8) : null;
+        if (key != null && key.length > MAX_ACCOUNT_NO_BYTES) {
+            throw new AccountException("Account No. may not be longer than " + MAX_ACCOUNT_NO_BYTES + " bytes.");
+        }
+        final long units = minorUnits.toMinorUnits(balance);
+        if (current.size == capacity) {
+            throw new AccountException("The account store is full.");
+        }
+        if (current.totalUnits > Long.MAX_VALUE - units) {
+            throw new AccountException("The total balance of all accounts exceeds the supported range.");
+        }
+        if (current.find(accountNo) >= 0) {
+            throw new AccountException("Account No. already exists.");
+        }
+        current.add(packed == AccountIds.NOT_PACKED ? hash(accountNo) : hash(packed), packed, key, units);
+    }
+
+    /**
+     * Transfers an amount of minor units from one account to another while holding the stripes of both accounts.
+     */
+    @Override
+    public boolean transfer(final String senderAccNo, final String receiverAccNo, final long amount) {
+        final Table current = table;
+        final int sender = current.idOf(senderAccNo);
+        final int receiver = current.idOf(receiverAccNo);
+        if (amount <= 0) {
+            throw new AccountException("Cannot transfer a non-positive amount.");
+        }
+
+        final ReentrantLock first = stripes[Math.min(stripeOf(sender), stripeOf(receiver))];
+        final ReentrantLock second = stripes[Math.max(stripeOf(sender), stripeOf(receiver))];
+        first.lock();
+        try {
+            second.lock();
+            try {
+                final long senderBefore = current.balance(sender);
+                if (senderBefore < amount) {
+                    return false;
+                }
+                current.setBalance(sender, senderBefore - amount);
+                // Read after the withdrawal, which it includes if both are the same account.
+                final long receiverBefore = current.balance(receiver);
+                current.setBalance(receiver, receiverBefore + amount);
+                current.onTransfer(senderBefore, senderBefore - amount, receiverBefore, receiverBefore + amount);
+                return true;
+            } finally {
+                second.unlock();
+            }
+        } finally {
+            first.unlock();
+        }
+    }
+
+    /**
+     * Applies balance deltas to several accounts while holding the stripes of all of them, so that other threads never
+     * observe part of the deltas.
+     */
+    @Override
+    public String applyDeltas(final Map<String, Long> deltas) {
+        final Table current = table;
+        final String[] accountNos = new String[deltas.size()];
+        final int[] ids = new int[accountNos.length];
+        final long[] values = new long[accountNos.length];
+        final BitSet indices = new BitSet(STRIPES);
+        int n = 0;
+        for (final Map.Entry<String, Long> delta : deltas.entrySet()) {
+            accountNos[n] = delta.getKey();
+            ids[n] = current.idOf(delta.getKey());
+            indices.set(stripeOf(ids[n]));
+            values[n++] = delta.getValue();
+        }
+
+        final int[] locked = indices.stream().toArray();
+        for (final int index : locked) {
+            stripes[index].lock();
+        }
+        try {
+            for (int i = 0; i < n; i++) {
+                if (values[i] < 0 && current.balance(ids[i]) < -values[i]) {
+                    return accountNos[i];
+                }
+            }
+            long delta = 0;
+            int negatives = 0;
+            for (int i = 0; i < n; i++) {
+                final long before = current.balance(ids[i]);
+                current.setBalance(ids[i], before + values[i]);
+                delta += values[i];
+                negatives += BalanceTracker.negativeChange(before, before + values[i]);
+            }
+            current.onChange(delta, negatives);
+            return null;
+        } finally {
+            for (int i = locked.length - 1; i >= 0; i--) {
+                stripes[locked[i]].unlock();
+            }
+        }
+    }
+
+    /**
+     * Reads the balances while holding the stripes of all accounts at once, like {@link #applyDeltas}, so that the
+     * view is consistent; transfers on those stripes wait for the read.
+     */
+    @Override
+    public List<Account> snapshotAll(final List<String> accountNos) {
+        final Table current = table;
+        final String[] found = new String[accountNos.size()];
+        final int[] ids = new int[found.length];
+        final BitSet indices = new BitSet(STRIPES);
+        int n = 0;
+        for (final String accountNo : accountNos) {
+            final int id = accountNo == null ? -1 : current.find(accountNo);
+            if (id >= 0) {
+                found[n] = accountNo;
+                ids[n++] = id;
+                indices.set(stripeOf(id));
+            }
+        }
+
+        final long[] balances = new long[n];
+        final int[] locked = indices.stream().toArray();
+        for (final int index : locked) {
+            stripes[index].lock();
+        }
+        try {
+            for (int i = 0; i < n; i++) {
+                balances[i] = current.balance(ids[i]);
+            }
+        } finally {
+            for (int i = locked.length - 1; i >= 0; i--) {
+                stripes[locked[i]].unlock();
+            }
+        }
+        final List<Account> snapshot = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            snapshot.add(new Account(found[i], minorUnits.toDecimal(balances[i])));
+        }
+        return snapshot;
+    }
+
+    @Override
+    public void forEachBalance(final BiConsumer<String, BigDecimal> action) {
+        final Table current = table;
+        final int size = current.size;
+        for (int id = 0; id < size; id++) {
+            action.accept(current.accountNo(id), minorUnits.toDecimal(lockedBalance(current, id)));
+        }
+    }
+
+    @Override
+    public synchronized void clear() {
+        table = new Table();
+    }
+
+    @Override
+    public int size() {
+        return table.size;
+    }
+
+    @Override
+    public BigDecimal totalBalance() {
+        return minorUnits.toDecimal(table.totalUnits);
+    }
+
+    /**
+     * Answers from the counters every write maintains: each transfer or batch reports the balances it has changed
+     * once it is complete, so the running sum never contains half a transfer. Holds the monitor, which creations hold
+     * while they add to both the running sum and the total.
+     */
+    @Override
+    public synchronized Consistency checkConsistency() {
+        final Table current = table;
+        return new Consistency(current.size, current.negativeBalances.get(),
+                minorUnits.toDecimal(current.balanceUnits.sum()), minorUnits.toDecimal(current.totalUnits));
+    }
+
+    @Override
+    public Consistency verifyConsistency() {
+        final Table current = table;
+        final int size = current.size;
+        int negatives = 0;
+        long sum = 0;
+        for (int id = 0; id < size; id++) {
+            final long balance = lockedBalance(current, id);
+            if (balance < 0) {
+                negatives++;
+            }
+            sum += balance;
+        }
+        return new Consistency(size, negatives, minorUnits.toDecimal(sum), minorUnits.toDecimal(current.totalUnits));
+    }
+
+    private long lockedBalance(final Table current, final int id) {
+        final ReentrantLock stripe = stripes[stripeOf(id)];
+        stripe.lock();
+        try {
+            return current.balance(id);
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    private static int stripeOf(final int id) {
+        return id & (STRIPES - 1);
+    }
+
+    private static int hash(final String accountNo) {
+        final int hash = accountNo.hashCode() * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int hash(final long packed) {
+        final long hash = packed * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private void validateAccountNo(final String accountNo) {
+        if (accountNo == null || accountNo.trim().isEmpty()) {
+            throw new AccountException("Invalid account number provided.");
+        }
+    }
+
+    private void validateBalance(final BigDecimal balance) {
+        if (balance.compareTo(BigDecimal.ZERO) < 0) {
+            throw new AccountException("Balance may not be negative.");
+        }
+    }
+
+    /**
+     * One generation of the store; {@link #clear()} replaces it as a whole, so that operations which resolved their
+     * ids against the previous generation can never touch accounts created afterwards.
+     */
+    private static final class Table {
+
+        private final Chunks slots = new Chunks(CHUNK_BITS);
+        private final Chunks keys = new Chunks(CHUNK_BITS);
+        private volatile Index index = new Index(INITIAL_INDEX_CAPACITY);
+        private final AtomicInteger negativeBalances = new AtomicInteger();
+        private final LongAdder balanceUnits = new LongAdder();
+
+        // Only written while holding the repository monitor.
+        private long keysEnd;
+        private volatile int size;
+        private volatile long totalUnits;
+
+        /**
+         * @return the id of the account, or -1 if the account number is unknown
+         */
+        private int find(final String accountNo) {
+            // Everything written before the size was raised to its current value is visible from here on.
+            final int published = size;
+            final Index current = index;
+            final long packed = AccountIds.pack(accountNo);
+            final int hash = packed == AccountIds.NOT_PACKED ? hash(accountNo) : hash(packed);
+            final byte[] key = packed == AccountIds.NOT_PACKED ? accountNo.getBytes(StandardCharsets.UTF_8) : null;
+            for (long position = hash & current.mask; ; position = (position + 1) & current.mask) {
+                final long entry = current.entries.getLong(position << 3);
+                if (entry == 0) {
+                    return -1;
+                }
+                final int id = (int) entry - 1;
+                // Entries of creations in progress may be seen before they are published and are skipped.
+                if ((int) (entry >>> 32) == hash && id >= 0 && id < published && keyEquals(id, packed, key)) {
+                    return id;
+                }
+            }
+        }
+
+        private int idOf(final String accountNo) {
+            final int id = accountNo == null ? -1 : find(accountNo);
+            if (id < 0) {
+                throw AccountException.UNKNOWN_ACCOUNT;
+            }
+            return id;
+        }
+
+        private boolean keyEquals(final int id, final long packed, final byte[] key) {
+            final long reference = slots.getLong((long) id * SLOT_BYTES + 8);
+            if (key == null) {
+                return reference == ~packed;
+            }
+            if (reference < 0 || (int) (reference & ((1 << KEY_LENGTH_BITS) - 1)) != key.length) {
+                return false;
+            }
+            final long offset = reference >>> KEY_LENGTH_BITS;
+            for (int i = 0; i < key.length; i++) {
+                if (keys.get(offset + i) != key[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private String accountNo(final int id) {
+            final long reference = slots.getLong((long) id * SLOT_BYTES + 8);
+            if (reference < 0) {
+                return Long.toString(~reference);
+            }
+            final byte[] key = new byte[(int) (reference & ((1 << KEY_LENGTH_BITS) - 1))];
+            final long offset = reference >>> KEY_LENGTH_BITS;
+            for (int i = 0; i < key.length; i++) {
+                key[i] = keys.get(offset + i);
+            }
+            return new String(key, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * To be called while holding the stripe of the account.
+         */
+        private long balance(final int id) {
+            return slots.getLong((long) id * SLOT_BYTES);
+        }
+
+        /**
+         * To be called while holding the stripe of the account.
+         */
+        private void setBalance(final int id, final long balance) {
+            slots.putLong((long) id * SLOT_BYTES, balance);
+        }
+
+        /**
+         * Records the balances of both accounts of a transfer before and after it has been applied.
+         */
+        private void onTransfer(final long senderBefore, final long senderAfter,
+                                final long receiverBefore, final long receiverAfter) {
+            onChange(senderAfter - senderBefore + receiverAfter - receiverBefore,
+                    BalanceTracker.negativeChange(senderBefore, senderAfter)
+                            + BalanceTracker.negativeChange(receiverBefore, receiverAfter));
+        }
+
+        /**
+         * Records the combined change of the balances of a transfer or batch.
+         */
+        private void onChange(final long delta, final int negatives) {
+            if (delta != 0) {
+                balanceUnits.add(delta);
+            }
+            if (negatives != 0) {
+                negativeBalances.addAndGet(negatives);
+            }
+        }
+
+        /**
+         * Stores and publishes a new account; to be called while holding the repository monitor.
+         *
+         * @param key the UTF-8 bytes of the account number, or null if it is packed
+         */
+        private void add(final int hash, final long packed, final byte[] key, final long units) {
+            final int id = size;
+            slots.reserve((id + 1L) * SLOT_BYTES);
+            slots.putLong((long) id * SLOT_BYTES, units);
+            slots.putLong((long) id * SLOT_BYTES + 8, key == null ? ~packed : appendKey(key));
+
+            if ((id + 1L) * 2 > index.mask + 1) {
+                index = index.doubled();
+            }
+            index.insert(((long) hash << 32) | (id + 1L));
+            balanceUnits.add(units);
+            totalUnits += units;
+            size = id + 1;
+        }
+
+        /**
+         * @return the reference to the key: its offset in the upper bits, its length in the lower bits
+         */
+        private long appendKey(final byte[] key) {
+            // A key never spans two chunks.
+            long offset = keysEnd;
+            if ((offset & keys.mask) + key.length > keys.mask + 1) {
+                offset = (offset | keys.mask) + 1;
+            }
+            keys.reserve(offset + key.length);
+            for (int i = 0; i < key.length; i++) {
+                keys.put(offset + i, key[i]);
+            }
+            keysEnd = offset + key.length;
+            return offset << KEY_LENGTH_BITS | key.length;
+        }
+    }
+
+    /**
+     * Open-addressing table of {@code long} entries with linear probing: the hash of the account number in the upper
+     * half, the id plus one in the lower half, zero for a free position.
+     */
+    private static final class Index {
+
+        private final Chunks entries;
+        private final long mask;
+
+        private Index(final long capacity) {
+            this.entries = new Chunks(Math.min(CHUNK_BITS, Long.numberOfTrailingZeros(capacity) + 3));
+            this.entries.reserve(capacity << 3);
+            this.mask = capacity - 1;
+        }
+
+        private void insert(final long entry) {
+            long position = (int) (entry >>> 32) & mask;
+            while (entries.getLong(position << 3) != 0) {
+                position = (position + 1) & mask;
+            }
+            entries.putLong(position << 3, entry);
+        }
+
+        /**
+         * Copies the entries into an index of twice the capacity; readers keep using this one until the new one has
+         * been published.
+         */
+        private Index doubled() {
+            final Index doubled = new Index((mask + 1) << 1);
+            for (long position = 0; position <= mask; position++) {
+                final long entry = entries.getLong(position << 3);
+                if (entry != 0) {
+                    doubled.insert(entry);
+                }
+            }
+            return doubled;
+        }
+    }
+
+    /**
+     * Direct buffers of equal size which are allocated as needed; a buffer never moves once allocated. Buffers are
+     * only allocated while holding the repository monitor.
+     */
+    private static final class Chunks {
+
+        private final int chunkBits;
+        private final long mask;
+        private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+
+        private Chunks(final int chunkBits) {
+            this.chunkBits = chunkBits;
+            this.mask = (1L << chunkBits) - 1;
+        }
+
+        private void reserve(final long end) {
+            final int needed = (int) ((end + mask) >>> chunkBits);
+            final ByteBuffer[] current = chunks;
+            if (needed > current.length) {
+                final ByteBuffer[] grown = Arrays.copyOf(current, needed);
+                for (int i = current.length; i < needed; i++) {
+                    grown[i] = ByteBuffer.allocateDirect(1 << chunkBits).order(ByteOrder.nativeOrder());
+                }
+                chunks = grown;
+            }
+        }
+
+        private long getLong(final long offset) {
+            return chunks[(int) (offset >>> chunkBits)].getLong((int) (offset & mask));
+        }
+
+        private void putLong(final long offset, final long value) {
+            chunks[(int) (offset >>> chunkBits)].putLong((int) (offset & mask), value);
+        }
+
+        private byte get(final long offset) {
+            return chunks[(int) (offset >>> chunkBits)].get((int) (offset & mask));
+        }
+
+        private void put(final long offset, final byte value) {
+            chunks[(int) (offset >>> chunkBits)].put((int) (offset & mask), value);
+        }
+    }
+}
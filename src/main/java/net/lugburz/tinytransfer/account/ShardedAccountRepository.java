@@ -0,0 +1,529 @@
+package net.lugburz.tinytransfer.account;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * In-memory repository for bank accounts which partitions the accounts across single-threaded shards.
+ *
+ * <p>
+ * Each shard owns the balances of its accounts: they are only ever read and written by the shard's thread, which
+ * processes one message at a time, so no locks are needed. Every operation is a message to the shard of the account
+ * it concerns; the synchronous methods of {@link AccountRepository} wait for the reply.
+ *
+ * <p>
+ * A transfer between two accounts of the same shard is a single message. A transfer across shards takes two phases:
+ * the sender's shard reserves the amount by withdrawing it, then the receiver's shard credits it. If the receiver
+ * turns out to be unknown, the sender's shard refunds the amount. Until the credit, the amount is in flight; the
+ * consistency figures count money in flight with the balances.
+ */
+public final class ShardedAccountRepository implements AccountRepository, AutoCloseable {
+
+    private final Shard[] shards;
+
+    /**
+     * @param shards the number of shards, usually one per core
+     */
+    public ShardedAccountRepository(final int shards) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("The number of shards must be positive.");
+        }
+        this.shards = new Shard[shards];
+        for (int i = 0; i < shards; i++) {
+            this.shards[i] = new Shard("shard-" + i);
+        }
+    }
+
+    /**
+     * Looks up a snapshot of the account data for a given account number.
+     * <p>
+     * The returned instance is detached from the store: changing it does not affect the stored balance.
+     *
+     * @param accountNo the account number
+     * @return an instance of {@link Account}, or empty if the provided account number is unknown
+     */
+    @Override
+    public Optional<Account> lookup(final String accountNo) {
+        if (accountNo == null) {
+            return Optional.empty();
+        }
+        final Shard shard = shardOf(accountNo);
+        final BigDecimal balance = await(shard.call(() -> shard.balances.get(accountNo)));
+        return balance == null ? Optional.empty() : Optional.of(new Account(accountNo, balance));
+    }
+
+    @Override
+    public void create(final String accountNo, final BigDecimal balance) {
+        validateAccountNo(accountNo);
+        validateBalance(balance);
+        final Shard shard = shardOf(accountNo);
+        await(shard.call(() -> {
+            shard.add(accountNo, balance);
+            shard.publish();
+            return null;
+        }));
+    }
+
+    /**
+     * Sends one message per shard with all of its accounts; the shards create them in parallel.
+     */
+    @Override
+    public Map<Integer, String> createAll(final List<Account> accounts) {
+        final Map<Integer, String> errors = new HashMap<>();
+        final Map<Shard, List<Integer>> byShard = new HashMap<>();
+        for (int i = 0; i < accounts.size(); i++) {
+            try {
+                validateAccountNo(accounts.get(i).getAccountNo());
+                validateBalance(accounts.get(i).getBalance());
+                if (accounts.get(i).getCurrency() != null) {
+                    throw new AccountException(CURRENCIES_UNSUPPORTED);
+                }
+                byShard.computeIfAbsent(shardOf(accounts.get(i).getAccountNo()), shard -> new ArrayList<>()).add(i);
+            } catch (final AccountException exception) {
+                errors.put(i, exception.getMessage());
+            }
+        }
+
+        final List<CompletableFuture<Map<Integer, String>>> replies = new ArrayList<>(byShard.size());
+        byShard.forEach((shard, indices) -> replies.add(shard.call(() -> {
+            final Map<Integer, String> shardErrors = new HashMap<>();
+            for (final int index : indices) {
+                try {
+                    shard.add(accounts.get(index).getAccountNo(), accounts.get(index).getBalance());
+                } catch (final AccountException exception) {
+                    shardErrors.put(index, exception.getMessage());
+                }
+            }
+            shard.publish();
+            return shardErrors;
+        })));
+        replies.forEach(reply -> errors.putAll(await(reply)));
+        return errors;
+    }
+
+    /**
+     * Copies the balances of one shard at a time and passes them to the action outside of the shard's thread.
+     */
+    @Override
+    public void forEachBalance(final BiConsumer<String, BigDecimal> action) {
+        for (final Shard shard : shards) {
+            await(shard.call(() -> new HashMap<>(shard.balances))).forEach(action);
+        }
+    }
+
+    @Override
+    public void clear() {
+        final List<CompletableFuture<Void>> cleared = new ArrayList<>(shards.length);
+        for (final Shard shard : shards) {
+            cleared.add(shard.call(() -> {
+                shard.balances.clear();
+                shard.negativeBalances = 0;
+                shard.sum = BigDecimal.ZERO;
+                shard.outstanding = BigDecimal.ZERO;
+                shard.created = BigDecimal.ZERO;
+                shard.publish();
+                return null;
+            }));
+        }
+        cleared.forEach(ShardedAccountRepository::await);
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (final Shard shard : shards) {
+            size += shard.totals.accounts;
+        }
+        return size;
+    }
+
+    @Override
+    public BigDecimal totalBalance() {
+        BigDecimal total = BigDecimal.ZERO;
+        for (final Shard shard : shards) {
+            total = total.add(shard.totals.created);
+        }
+        return total;
+    }
+
+    /**
+     * Adds up the figures each shard publishes after every message, so every transfer is either fully contained or
+     * not at all.
+     */
+    @Override
+    public Consistency checkConsistency() {
+        int accounts = 0;
+        int negatives = 0;
+        BigDecimal sum = BigDecimal.ZERO;
+        BigDecimal created = BigDecimal.ZERO;
+        for (final Shard shard : shards) {
+            final Totals totals = shard.totals;
+            accounts += totals.accounts;
+            negatives += totals.negativeBalances;
+            sum = sum.add(totals.sum);
+            created = created.add(totals.created);
+        }
+        return new Consistency(accounts, negatives, sum, created);
+    }
+
+    @Override
+    public Consistency verifyConsistency() {
+        final List<CompletableFuture<Consistency>> scans = new ArrayList<>(shards.length);
+        for (final Shard shard : shards) {
+            scans.add(shard.call(() -> {
+                int negatives = 0;
+                BigDecimal sum = shard.outstanding;
+                for (final BigDecimal balance : shard.balances.values()) {
+                    if (balance.signum() < 0) {
+                        negatives++;
+                    }
+                    sum = sum.add(balance);
+                }
+                return new Consistency(shard.balances.size(), negatives, sum, shard.created);
+            }));
+        }
+        int accounts = 0;
+        int negatives = 0;
+        BigDecimal sum = BigDecimal.ZERO;
+        BigDecimal created = BigDecimal.ZERO;
+        for (final CompletableFuture<Consistency> scan : scans) {
+            final Consistency consistency = await(scan);
+            accounts += consistency.getAccounts();
+            negatives += consistency.getNegativeBalances();
+            sum = sum.add(consistency.getBalanceSum());
+            created = created.add(consistency.getExpectedTotal());
+        }
+        return new Consistency(accounts, negatives, sum, created);
+    }
+
+    /**
+     * Transfers an amount from one account to another without blocking the caller.
+     * <p>
+     * The returned future is completed on a shard thread; callers have to move expensive continuations to an
+     * executor of their own.
+     *
+     * @param senderAccNo   the account number of the sender
+     * @param receiverAccNo the account number of the receiver
+     * @param amount        the amount, must be positive
+     * @return a future which completes with false if the sender's balance does not cover the amount, or
+     * exceptionally with an {@link AccountException} if an account is unknown; nothing has been transferred then
+     */
+    public CompletableFuture<Boolean> transfer(final String senderAccNo,
+                                               final String receiverAccNo,
+                                               final BigDecimal amount) {
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        if (senderAccNo == null || receiverAccNo == null) {
+            result.completeExceptionally(AccountException.UNKNOWN_ACCOUNT);
+            return result;
+        }
+        final Shard from = shardOf(senderAccNo);
+        final Shard to = shardOf(receiverAccNo);
+        if (from == to) {
+            from.execute(result, () -> {
+                final BigDecimal senderBalance = from.balanceOf(senderAccNo);
+                final BigDecimal receiverBalance = from.balanceOf(receiverAccNo);
+                if (senderBalance.compareTo(amount) < 0) {
+                    result.complete(false);
+                    return;
+                }
+                from.put(senderAccNo, senderBalance, senderBalance.subtract(amount));
+                final BigDecimal credited = senderAccNo.equals(receiverAccNo) ? senderBalance.subtract(amount)
+                        : receiverBalance;
+                from.put(receiverAccNo, credited, credited.add(amount));
+                from.publish();
+                result.complete(true);
+            });
+            return result;
+        }
+
+        from.execute(result, () -> {
+            if (!from.reserve(senderAccNo, amount)) {
+                result.complete(false);
+                return;
+            }
+            to.execute(result, () -> {
+                if (to.credit(receiverAccNo, amount)) {
+                    result.complete(true);
+                    return;
+                }
+                from.execute(result, () -> {
+                    from.refund(senderAccNo, amount);
+                    result.completeExceptionally(AccountException.UNKNOWN_ACCOUNT);
+                });
+            });
+        });
+        return result;
+    }
+
+    /**
+     * Applies balance deltas to several accounts as a whole.
+     * <p>
+     * All debits are reserved first, each on the shard of its account; if one of them is not covered, the reserved
+     * debits are refunded and no credit is applied. Other threads may observe a batch while it is being applied.
+     *
+     * @param deltas the delta per account number; the deltas have to add up to zero
+     * @return the account number of the first debit that is not covered, or null if the deltas have been applied
+     * @throws AccountException if an account is unknown; nothing has been applied in this case
+     */
+    public String applyDeltas(final Map<String, BigDecimal> deltas) {
+        // Receivers are checked up front, so that no credit can fail once the debits have been reserved.
+        final List<CompletableFuture<BigDecimal>> receivers = new ArrayList<>();
+        for (final Map.Entry<String, BigDecimal> delta : deltas.entrySet()) {
+            if (delta.getValue().signum() > 0) {
+                final Shard shard = shardOf(delta.getKey());
+                receivers.add(shard.call(() -> shard.balanceOf(delta.getKey())));
+            }
+        }
+        receivers.forEach(ShardedAccountRepository::await);
+
+        final Map<String, CompletableFuture<Boolean>> reservations = new LinkedHashMap<>();
+        for (final Map.Entry<String, BigDecimal> delta : deltas.entrySet()) {
+            if (delta.getValue().signum() < 0) {
+                final Shard shard = shardOf(delta.getKey());
+                reservations.put(delta.getKey(),
+                        shard.call(() -> shard.reserve(delta.getKey(), delta.getValue().negate())));
+            }
+        }
+
+        String uncovered = null;
+        AccountException unknown = null;
+        final List<CompletableFuture<Void>> refunds = new ArrayList<>();
+        final Map<String, Boolean> reserved = new HashMap<>();
+        for (final Map.Entry<String, CompletableFuture<Boolean>> reservation : reservations.entrySet()) {
+            try {
+                reserved.put(reservation.getKey(), await(reservation.getValue()));
+            } catch (final AccountException exception) {
+                unknown = exception;
+                reserved.put(reservation.getKey(), false);
+            }
+            if (uncovered == null && !reserved.get(reservation.getKey())) {
+                uncovered = reservation.getKey();
+            }
+        }
+        if (uncovered != null) {
+            for (final Map.Entry<String, Boolean> reservation : reserved.entrySet()) {
+                if (reservation.getValue()) {
+                    final Shard shard = shardOf(reservation.getKey());
+                    final BigDecimal amount = deltas.get(reservation.getKey()).negate();
+                    refunds.add(shard.call(() -> {
+                        shard.refund(reservation.getKey(), amount);
+                        return null;
+                    }));
+                }
+            }
+            refunds.forEach(ShardedAccountRepository::await);
+            if (unknown != null) {
+                throw unknown;
+            }
+            return uncovered;
+        }
+
+        final List<CompletableFuture<Boolean>> credits = new ArrayList<>();
+        for (final Map.Entry<String, BigDecimal> delta : deltas.entrySet()) {
+            if (delta.getValue().signum() > 0) {
+                final Shard shard = shardOf(delta.getKey());
+                credits.add(shard.call(() -> shard.credit(delta.getKey(), delta.getValue())));
+            }
+        }
+        credits.forEach(ShardedAccountRepository::await);
+        return null;
+    }
+
+    /**
+     * Stops the shard threads once the messages already sent to them have been processed. If the calling thread is
+     * interrupted, it stops waiting for them and keeps its interrupt status.
+     */
+    @Override
+    public void close() {
+        for (final Shard shard : shards) {
+            shard.loop.shutdown();
+        }
+        try {
+            for (final Shard shard : shards) {
+                shard.loop.awaitTermination(1, TimeUnit.MINUTES);
+            }
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Shard shardOf(final String accountNo) {
+        final int hash = accountNo.hashCode();
+        return shards[Math.floorMod(hash ^ (hash >>> 16), shards.length)];
+    }
+
+    /**
+     * Waits for the reply of a shard and rethrows its exception as is.
+     */
+    private static <T> T await(final CompletableFuture<T> reply) {
+        try {
+            return reply.join();
+        } catch (final CompletionException exception) {
+            if (exception.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) exception.getCause();
+            }
+            throw exception;
+        }
+    }
+
+    private void validateAccountNo(final String accountNo) {
+        if (accountNo == null || accountNo.trim().isEmpty()) {
+            throw new AccountException("Invalid account number provided.");
+        }
+    }
+
+    private void validateBalance(final BigDecimal balance) {
+        if (balance.compareTo(BigDecimal.ZERO) < 0) {
+            throw new AccountException("Balance may not be negative.");
+        }
+    }
+
+    /**
+     * Consistency figures of a shard; replaced as a whole after every message that changes them.
+     */
+    private static final class Totals {
+
+        private static final Totals EMPTY = new Totals(0, 0, BigDecimal.ZERO, BigDecimal.ZERO);
+
+        private final int accounts;
+        private final int negativeBalances;
+        private final BigDecimal sum;
+        private final BigDecimal created;
+
+        private Totals(final int accounts, final int negativeBalances, final BigDecimal sum, final BigDecimal created) {
+            this.accounts = accounts;
+            this.negativeBalances = negativeBalances;
+            this.sum = sum;
+            this.created = created;
+        }
+    }
+
+    /**
+     * A single-threaded event loop and the balances it owns. All fields but {@link #totals} are confined to the loop.
+     */
+    private static final class Shard {
+
+        private final ExecutorService loop;
+        private final Map<String, BigDecimal> balances = new HashMap<>();
+
+        private int negativeBalances;
+        private BigDecimal sum = BigDecimal.ZERO;
+        /**
+         * Money reserved by this shard which has not been credited on another shard yet, minus money credited here
+         * that another shard has reserved.
+         */
+        private BigDecimal outstanding = BigDecimal.ZERO;
+        private BigDecimal created = BigDecimal.ZERO;
+
+        private volatile Totals totals = Totals.EMPTY;
+
+        private Shard(final String name) {
+            this.loop = Executors.newSingleThreadExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        /**
+         * Runs a message on the loop; an exception thrown by the message completes the given future.
+         */
+        private void execute(final CompletableFuture<?> result, final Runnable message) {
+            loop.execute(() -> {
+                try {
+                    message.run();
+                } catch (final RuntimeException exception) {
+                    result.completeExceptionally(exception);
+                }
+            });
+        }
+
+        private <T> CompletableFuture<T> call(final Supplier<T> message) {
+            final CompletableFuture<T> result = new CompletableFuture<>();
+            execute(result, () -> result.complete(message.get()));
+            return result;
+        }
+
+        private BigDecimal balanceOf(final String accountNo) {
+            final BigDecimal balance = balances.get(accountNo);
+            if (balance == null) {
+                throw AccountException.UNKNOWN_ACCOUNT;
+            }
+            return balance;
+        }
+
+        /**
+         * Withdraws the amount of an outgoing transfer.
+         *
+         * @return false if the balance does not cover the amount
+         */
+        private boolean reserve(final String accountNo, final BigDecimal amount) {
+            final BigDecimal balance = balanceOf(accountNo);
+            if (balance.compareTo(amount) < 0) {
+                return false;
+            }
+            put(accountNo, balance, balance.subtract(amount));
+            outstanding = outstanding.add(amount);
+            publish();
+            return true;
+        }
+
+        /**
+         * Deposits the amount of an incoming transfer.
+         *
+         * @return false if the account is unknown
+         */
+        private boolean credit(final String accountNo, final BigDecimal amount) {
+            final BigDecimal balance = balances.get(accountNo);
+            if (balance == null) {
+                return false;
+            }
+            put(accountNo, balance, balance.add(amount));
+            outstanding = outstanding.subtract(amount);
+            publish();
+            return true;
+        }
+
+        /**
+         * Puts back a reserved amount; dropped if the account has been cleared in the meantime.
+         */
+        private void refund(final String accountNo, final BigDecimal amount) {
+            final BigDecimal balance = balances.get(accountNo);
+            if (balance != null) {
+                put(accountNo, balance, balance.add(amount));
+                outstanding = outstanding.subtract(amount);
+                publish();
+            }
+        }
+
+        private void add(final String accountNo, final BigDecimal balance) {
+            if (balances.containsKey(accountNo)) {
+                throw new AccountException("Account No. already exists.");
+            }
+            put(accountNo, BigDecimal.ZERO, balance);
+            created = created.add(balance);
+        }
+
+        private void put(final String accountNo, final BigDecimal before, final BigDecimal after) {
+            balances.put(accountNo, after);
+            sum = sum.add(after).subtract(before);
+            negativeBalances += BalanceTracker.negativeChange(before, after);
+        }
+
+        private void publish() {
+            totals = new Totals(balances.size(), negativeBalances, sum.add(outstanding), created);
+        }
+    }
+}
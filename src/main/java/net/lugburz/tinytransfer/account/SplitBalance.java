@@ -0,0 +1,78 @@
+package net.lugburz.tinytransfer.account;
+
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Balance of a hot account spread over several cells, in the style of {@link java.util.concurrent.atomic.LongAdder}:
+ * each thread deposits into its own cell with a compare-and-set, so concurrent deposits rarely touch the same cache
+ * line.
+ *
+ * <p>
+ * No cell is ever negative. Withdrawals have to be serialized by the caller; they borrow the amount from as many
+ * cells as needed. Deposits only ever increase cells, so a withdrawal which has found the sum to cover the amount
+ * always collects it.
+ */
+final class SplitBalance {
+
+    // Spreads the cells over separate cache lines.
+    private static final int PADDING = 16;
+
+    private final AtomicReferenceArray<BigDecimal> cells;
+    private final int mask;
+
+    /**
+     * @param balance the starting balance
+     * @param cells   the number of cells, rounded up to the next power of two
+     */
+    SplitBalance(final BigDecimal balance, final int cells) {
+        final int size = Integer.highestOneBit(Math.max(1, cells) * 2 - 1);
+        this.cells = new AtomicReferenceArray<>(size * PADDING);
+        for (int i = 0; i < size; i++) {
+            this.cells.set(i * PADDING, BigDecimal.ZERO);
+        }
+        this.cells.set(0, balance);
+        this.mask = size - 1;
+    }
+
+    void add(final BigDecimal amount) {
+        final int index = ((int) Thread.currentThread().getId() & mask) * PADDING;
+        BigDecimal cell;
+        do {
+            cell = cells.get(index);
+        } while (!cells.compareAndSet(index, cell, cell.add(amount)));
+    }
+
+    /**
+     * Sums up the cells one by one; deposits made meanwhile may or may not be included.
+     */
+    BigDecimal sum() {
+        BigDecimal sum = BigDecimal.ZERO;
+        for (int i = 0; i <= mask; i++) {
+            sum = sum.add(cells.get(i * PADDING));
+        }
+        return sum;
+    }
+
+    /**
+     * Takes the amount from the cells, starting with the cell of the current thread; to be called by one thread at a
+     * time and only if {@link #sum()} covers the amount.
+     */
+    void take(final BigDecimal amount) {
+        final int start = (int) Thread.currentThread().getId() & mask;
+        BigDecimal remaining = amount;
+        for (int i = 0; i <= mask && remaining.signum() > 0; i++) {
+            final int index = ((start + i) & mask) * PADDING;
+            BigDecimal cell;
+            BigDecimal taken;
+            do {
+                cell = cells.get(index);
+                taken = cell.min(remaining);
+            } while (taken.signum() > 0 && !cells.compareAndSet(index, cell, cell.subtract(taken)));
+            remaining = remaining.subtract(taken);
+        }
+        if (remaining.signum() > 0) {
+            throw new IllegalStateException("The cells do not cover the amount.");
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package net.lugburz.tinytransfer.admission;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+import io.dropwizard.validation.MinDuration;
+import io.dropwizard.validation.ValidationMethod;
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configuration of the admission control of transfers, see {@link AdmissionFilter}.
+ */
+@Getter
+@Setter
+public class AdmissionFactory {
+
+    @JsonProperty
+    private boolean enabled = false;
+
+    /**
+     * Request header which identifies a client; clients which send none, or all if it is null, are told apart by their
+     * remote address. Keys are taken as given, so they only separate clients an authenticating proxy has checked.
+     */
+    @JsonProperty
+    private String clientKeyHeader = "Api-Key";
+
+    /**
+     * Transfers per second a single client may sustain.
+     */
+    @JsonProperty
+    @DecimalMin(value = "0", inclusive = false)
+    private double ratePerSecond = 100;
+
+    /**
+     * Transfers a client may send at once after being idle.
+     */
+    @JsonProperty
+    @Min(1)
+    private int burst = 200;
+
+    /**
+     * Number of clients above which the token buckets of idle clients are dropped.
+     */
+    @JsonProperty
+    @Min(1)
+    private int maxClients = 100_000;
+
+    /**
+     * Transfers in flight admitted at startup, before the limit adapts.
+     */
+    @JsonProperty
+    @Min(1)
+    private int initialConcurrency = 64;
+
+    @JsonProperty
+    @Min(1)
+    private int minConcurrency = 4;
+
+    @JsonProperty
+    @Min(1)
+    private int maxConcurrency = 1024;
+
+    /**
+     * Latency above which a transfer is taken as a sign of overload and the concurrency limit is cut.
+     */
+    @JsonProperty
+    @NotNull
+    @MinDuration(value = 1, unit = TimeUnit.MILLISECONDS)
+    private Duration latencyThreshold = Duration.milliseconds(50);
+
+    /**
+     * Factor the concurrency limit is multiplied with on overload.
+     */
+    @JsonProperty
+    @DecimalMin(value = "0", inclusive = false)
+    @DecimalMax(value = "1", inclusive = false)
+    private double backoffRatio = 0.9;
+
+    @JsonIgnore
+    @ValidationMethod(message = "minConcurrency must not exceed maxConcurrency")
+    public boolean isConcurrencyRangeValid() {
+        return minConcurrency <= maxConcurrency;
+    }
+
+    /**
+     * Creates the filter and registers its metrics, prefixed with the name of {@link AdmissionFilter}:
+     * {@code rate-limited} and {@code overloaded}, meters of rejected transfers, and {@code limit} and
+     * {@code in-flight}, gauges of the concurrency limit.
+     */
+    public AdmissionFilter build(final MetricRegistry metrics) {
+        final ConcurrencyLimit concurrencyLimit = new ConcurrencyLimit(initialConcurrency, minConcurrency,
+                maxConcurrency, latencyThreshold.toNanoseconds(), backoffRatio, System.nanoTime());
+        metrics.register(MetricRegistry.name(AdmissionFilter.class, "limit"),
+                (Gauge<Integer>) concurrencyLimit::limit);
+        metrics.register(MetricRegistry.name(AdmissionFilter.class, "in-flight"),
+                (Gauge<Integer>) concurrencyLimit::inFlight);
+        return new AdmissionFilter(new ClientRateLimiter(ratePerSecond, burst, maxClients), concurrencyLimit,
+                clientKeyHeader, metrics.meter(MetricRegistry.name(AdmissionFilter.class, "rate-limited")),
+                metrics.meter(MetricRegistry.name(AdmissionFilter.class, "overloaded")));
+    }
+}
@@ -0,0 +1,115 @@
+package net.lugburz.tinytransfer.admission;
+
+import com.codahale.metrics.Meter;
+import io.dropwizard.jersey.errors.ErrorMessage;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.PathSegment;
+import javax.ws.rs.core.Response;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission control of transfers, {@code POST /transfer} and {@code POST /transfers/batch}.
+ *
+ * <p>
+ * A transfer first takes a token from the bucket of its client, identified by the client key header if the request
+ * carries one and by its remote address otherwise; a client whose bucket is empty is answered with HTTP 429 and a
+ * {@code Retry-After} header. It is then admitted if fewer transfers than the {@link ConcurrencyLimit} are in flight,
+ * and answered with HTTP 429 otherwise, before it waits for the locks of its accounts. The latency of every admitted
+ * transfer, up to its response, adapts the limit.
+ */
+public final class AdmissionFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    private static final String ADMITTED_AT = AdmissionFilter.class.getName() + ".admittedAt";
+
+    private final ClientRateLimiter rateLimiter;
+    private final ConcurrencyLimit concurrencyLimit;
+    private final String clientKeyHeader;
+    private final Meter rateLimited;
+    private final Meter overloaded;
+
+    @Context
+    private HttpServletRequest servletRequest;
+
+    /**
+     * @param rateLimiter      the token buckets of the clients
+     * @param concurrencyLimit the limit of transfers in flight
+     * @param clientKeyHeader  the request header which identifies a client, or null to tell clients by address only
+     * @param rateLimited      meter of transfers rejected for the rate of their client
+     * @param overloaded       meter of transfers rejected for the concurrency limit
+     */
+    public AdmissionFilter(final ClientRateLimiter rateLimiter,
+                           final ConcurrencyLimit concurrencyLimit,
+                           final String clientKeyHeader,
+                           final Meter rateLimited,
+                           final Meter overloaded) {
+        this.rateLimiter = rateLimiter;
+        this.concurrencyLimit = concurrencyLimit;
+        this.clientKeyHeader = clientKeyHeader;
+        this.rateLimited = rateLimited;
+        this.overloaded = overloaded;
+    }
+
+    @Override
+    public void filter(final ContainerRequestContext request) {
+        if (!isTransfer(request.getMethod(), request.getUriInfo().getPathSegments())) {
+            return;
+        }
+        final long wait = rateLimiter.tryAcquire(clientOf(request));
+        if (wait > 0) {
+            rateLimited.mark();
+            // Retry-After is given in whole seconds.
+            request.abortWith(tooManyRequests("The client has exceeded its rate of transfers.")
+                    .header(HttpHeaders.RETRY_AFTER, Math.max(1, (wait + 999_999_999) / TimeUnit.SECONDS.toNanos(1)))
+                    .build());
+            return;
+        }
+        if (!concurrencyLimit.tryAcquire()) {
+            overloaded.mark();
+            request.abortWith(tooManyRequests("The server is overloaded.").build());
+            return;
+        }
+        request.setProperty(ADMITTED_AT, System.nanoTime());
+    }
+
+    @Override
+    public void filter(final ContainerRequestContext request, final ContainerResponseContext response) {
+        final Object admittedAt = request.getProperty(ADMITTED_AT);
+        if (admittedAt != null) {
+            request.removeProperty(ADMITTED_AT);
+            concurrencyLimit.release((Long) admittedAt, System.nanoTime());
+        }
+    }
+
+    private String clientOf(final ContainerRequestContext request) {
+        final String key = clientKeyHeader == null ? null : request.getHeaderString(clientKeyHeader);
+        // Keys are prefixed so that no key can name the bucket of an address.
+        return key == null || key.isEmpty() ? servletRequest.getRemoteAddr() : "key:" + key;
+    }
+
+    private static boolean isTransfer(final String method, final List<PathSegment> segments) {
+        if (!HttpMethod.POST.equals(method)) {
+            return false;
+        }
+        if (segments.size() == 1) {
+            return "transfer".equals(segments.get(0).getPath());
+        }
+        return segments.size() == 2 && "transfers".equals(segments.get(0).getPath())
+                && "batch".equals(segments.get(1).getPath());
+    }
+
+    private static Response.ResponseBuilder tooManyRequests(final String message) {
+        return Response.status(Response.Status.TOO_MANY_REQUESTS)
+                .type(MediaType.APPLICATION_JSON_TYPE)
+                .entity(new ErrorMessage(Response.Status.TOO_MANY_REQUESTS.getStatusCode(), message));
+    }
+}
@@ -0,0 +1,95 @@
+package net.lugburz.tinytransfer.admission;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Token buckets per client, each of which refills at a fixed rate up to a burst of requests.
+ *
+ * <p>
+ * A bucket is kept as a single timestamp, the time at which it will be full again (the generic cell rate algorithm).
+ * Taking a token moves that time by the refill interval of one token, which is one compare-and-set without locks, and
+ * is refused if the time would lie further ahead than it takes to refill the whole burst. A bucket which is full again
+ * holds no state a new one would not have, so full buckets are dropped whenever the number of clients has grown past
+ * the configured size; the sweeps are spaced out so that their cost per new client stays constant.
+ */
+public final class ClientRateLimiter {
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final int maxClients;
+    private final LongSupplier nanoClock;
+
+    private final ConcurrentMap<String, AtomicLong> fullAt = new ConcurrentHashMap<>();
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+    private volatile int sweepAt;
+
+    /**
+     * @param ratePerSecond the tokens a bucket regains per second
+     * @param burst         the tokens of a full bucket
+     * @param maxClients    the number of clients above which the buckets of idle clients are dropped
+     */
+    public ClientRateLimiter(final double ratePerSecond, final int burst, final int maxClients) {
+        this(ratePerSecond, burst, maxClients, System::nanoTime);
+    }
+
+    ClientRateLimiter(final double ratePerSecond, final int burst, final int maxClients,
+                      final LongSupplier nanoClock) {
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond));
+        this.burstNanos = burst * intervalNanos;
+        this.maxClients = maxClients;
+        this.nanoClock = nanoClock;
+        this.sweepAt = maxClients;
+    }
+
+    /**
+     * Takes a token from the bucket of a client.
+     *
+     * @param client the key of the client
+     * @return 0 if a token has been taken, otherwise the nanoseconds until the bucket holds the next token
+     */
+    public long tryAcquire(final String client) {
+        final long now = nanoClock.getAsLong();
+        AtomicLong bucket = fullAt.get(client);
+        if (bucket == null) {
+            sweepIfLarge(now);
+            bucket = fullAt.computeIfAbsent(client, key -> new AtomicLong(now));
+        }
+        while (true) {
+            final long current = bucket.get();
+            final long next = (current - now > 0 ? current : now) + intervalNanos;
+            final long wait = next - now - burstNanos;
+            if (wait > 0) {
+                return wait;
+            }
+            if (bucket.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * @return the number of clients whose buckets are kept
+     */
+    public int clients() {
+        return fullAt.size();
+    }
+
+    private void sweepIfLarge(final long now) {
+        if (fullAt.size() < sweepAt || !sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            // A client which takes a token while its bucket is dropped gets a full bucket back, one token at most.
+            fullAt.values().removeIf(bucket -> bucket.get() - now <= 0);
+            // With mostly active clients the map stays large, so the next sweep waits until it has doubled.
+            sweepAt = Math.max(maxClients, 2 * fullAt.size());
+        } finally {
+            sweeping.set(false);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package net.lugburz.tinytransfer.admission;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Limit of concurrent requests which adapts to their latency by additive increase and multiplicative decrease (AIMD).
+ *
+ * <p>
+ * While requests complete within the latency threshold and use at least half of the limit, every completion raises the
+ * limit by the reciprocal of the limit, which adds one request per limit completions. A request slower than the
+ * threshold cuts the limit by the backoff ratio, but only if it was admitted after the previous cut: the requests
+ * admitted before it waited behind the same queue, and cutting the limit for each of them would collapse it.
+ *
+ * <p>
+ * The limit and the number of requests in flight are plain atomics, so admission takes one compare-and-set.
+ */
+public final class ConcurrencyLimit {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private final double backoffRatio;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    // The bits of the limit as a double, which grows by fractions.
+    private final AtomicLong limit;
+    private final AtomicLong lastCutAt;
+
+    /**
+     * @param initialLimit          the limit to start with
+     * @param minLimit              the lowest limit
+     * @param maxLimit              the highest limit
+     * @param latencyThresholdNanos the latency above which a request counts as a sign of overload
+     * @param backoffRatio          the factor the limit is multiplied with on overload, between 0 and 1
+     * @param now                   the current {@link System#nanoTime()}
+     */
+    public ConcurrencyLimit(final int initialLimit,
+                            final int minLimit,
+                            final int maxLimit,
+                            final long latencyThresholdNanos,
+                            final double backoffRatio,
+                            final long now) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyThresholdNanos = latencyThresholdNanos;
+        this.backoffRatio = backoffRatio;
+        this.limit = new AtomicLong(Double.doubleToLongBits(Math.max(minLimit, Math.min(maxLimit, initialLimit))));
+        this.lastCutAt = new AtomicLong(now);
+    }
+
+    /**
+     * Admits a request if fewer requests than the limit are in flight. An admitted request has to be released.
+     *
+     * @return whether the request has been admitted
+     */
+    public boolean tryAcquire() {
+        final int current = limit();
+        while (true) {
+            final int admitted = inFlight.get();
+            if (admitted >= current) {
+                return false;
+            }
+            if (inFlight.compareAndSet(admitted, admitted + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Releases an admitted request and adapts the limit to its latency.
+     *
+     * @param startNanos the {@link System#nanoTime()} at which the request was admitted
+     * @param endNanos   the {@link System#nanoTime()} at which it completed
+     */
+    public void release(final long startNanos, final long endNanos) {
+        final int admitted = inFlight.getAndDecrement();
+        if (endNanos - startNanos > latencyThresholdNanos) {
+            final long cutAt = lastCutAt.get();
+            if (startNanos - cutAt > 0 && lastCutAt.compareAndSet(cutAt, endNanos)) {
+                update(current -> Math.max(minLimit, current * backoffRatio));
+            }
+        } else if (2 * admitted >= limit()) {
+            update(current -> Math.min(maxLimit, current + 1 / current));
+        }
+    }
+
+    /**
+     * @return the current limit
+     */
+    public int limit() {
+        return (int) Double.longBitsToDouble(limit.get());
+    }
+
+    /**
+     * @return the number of admitted requests which have not been released yet
+     */
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    private void update(final DoubleUnaryOperator function) {
+        while (true) {
+            final long bits = limit.get();
+            final long next = Double.doubleToLongBits(function.applyAsDouble(Double.longBitsToDouble(bits)));
+            if (bits == next || limit.compareAndSet(bits, next)) {
+                return;
+            }
+        }
+    }
+}
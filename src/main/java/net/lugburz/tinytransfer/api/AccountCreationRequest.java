@@ -1,14 +1,18 @@
 package net.lugburz.tinytransfer.api;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.validation.ValidationMethod;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import net.lugburz.tinytransfer.transfer.Amounts;
 
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.NotNull;
 import java.math.BigDecimal;
+import java.util.Currency;
 
 /**
  * DTO for deserializing account creation requests.
@@ -26,4 +30,16 @@ final class AccountCreationRequest {
     @NotNull
     @Min(value = 0)
     private BigDecimal balance;
+
+    /**
+     * Optional ISO 4217 code of the currency of the balance; only accepted if currencies are enabled.
+     */
+    @JsonProperty
+    private Currency currency;
+
+    @JsonIgnore
+    @ValidationMethod(message = "balance " + Amounts.UNSUPPORTED_SCALE)
+    public boolean isBalanceScaleSupported() {
+        return Amounts.hasSupportedScale(balance);
+    }
 }
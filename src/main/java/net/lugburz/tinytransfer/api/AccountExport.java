@@ -0,0 +1,102 @@
+package net.lugburz.tinytransfer.api;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import net.lugburz.tinytransfer.account.AccountRepository;
+
+import javax.ws.rs.core.StreamingOutput;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streams every account of a repository, one per line, while the repository is being iterated.
+ *
+ * <p>
+ * Memory does not depend on the number of accounts. The export is not a snapshot: transfers continue during the
+ * export, so balances of different accounts may have been read at different times.
+ */
+final class AccountExport {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private AccountExport() {
+    }
+
+    /**
+     * Newline-delimited JSON objects with the fields {@code accountNo}, {@code balance} and, if the account has one,
+     * {@code currency}; the format read by {@link AccountImport}.
+     */
+    static StreamingOutput ndjson(final AccountRepository repository) {
+        return output -> {
+            try (JsonGenerator generator = JSON.createGenerator(output)) {
+                generator.setRootValueSeparator(null);
+                try {
+                    repository.forEachAccount(account -> {
+                        try {
+                            generator.writeStartObject();
+                            generator.writeStringField("accountNo", account.getAccountNo());
+                            generator.writeNumberField("balance", account.getBalance());
+                            if (account.getCurrency() != null) {
+                                generator.writeStringField("currency", account.getCurrency().getCurrencyCode());
+                            }
+                            generator.writeEndObject();
+                            generator.writeRaw('\n');
+                        } catch (final IOException exception) {
+                            throw new UncheckedIOException(exception);
+                        }
+                    });
+                } catch (final UncheckedIOException exception) {
+                    throw exception.getCause();
+                }
+            }
+        };
+    }
+
+    /**
+     * Comma-separated values with a header line {@code accountNo,balance}, followed by {@code ,currency} if the
+     * repository distinguishes currencies.
+     */
+    static StreamingOutput csv(final AccountRepository repository) {
+        return output -> {
+            final Writer writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+            final boolean currencies = repository.hasCurrencies();
+            writer.write(currencies ? "accountNo,balance,currency\n" : "accountNo,balance\n");
+            try {
+                repository.forEachAccount(account -> {
+                    try {
+                        writer.write(csvField(account.getAccountNo()));
+                        writer.write(',');
+                        writer.write(account.getBalance().toPlainString());
+                        if (currencies) {
+                            writer.write(',');
+                            writer.write(account.getCurrency().getCurrencyCode());
+                        }
+                        writer.write('\n');
+                    } catch (final IOException exception) {
+                        throw new UncheckedIOException(exception);
+                    }
+                });
+            } catch (final UncheckedIOException exception) {
+                throw exception.getCause();
+            }
+            writer.flush();
+        };
+    }
+
+    /**
+     * Quotes a field if it contains a separator, a quote or a line break, as described in RFC 4180.
+     */
+    static String csvField(final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return '"' + value.replace("\"", "\"\"") + '"';
+            }
+        }
+        return value;
+    }
+}
@@ -0,0 +1,225 @@
+package net.lugburz.tinytransfer.api;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import net.lugburz.tinytransfer.account.Account;
+import net.lugburz.tinytransfer.account.AccountRepository;
+import net.lugburz.tinytransfer.transfer.Amounts;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Currency;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads accounts from a stream of newline-delimited JSON objects and creates them in batches.
+ *
+ * <p>
+ * Each line is parsed on its own with a streaming parser, so a malformed line is reported and skipped without
+ * affecting the lines after it. Lines are read as bytes up to {@link #MAX_LINE_BYTES}; the rest of a longer line is
+ * skipped up to the next newline and the line is reported. Failures are reported in line order once their batch has
+ * been created. Memory is bounded by one line, one batch of accounts and the reported errors.
+ */
+final class AccountImport {
+
+    static final int BATCH_SIZE = 1_000;
+    static final int MAX_REPORTED_ERRORS = 1_000;
+    static final int MAX_LINE_BYTES = 8_192;
+
+    private static final int READ_BUFFER_BYTES = 65_536;
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final AccountRepository repository;
+
+    private final List<Account> batch = new ArrayList<>(BATCH_SIZE);
+    private final long[] batchLines = new long[BATCH_SIZE];
+    private final List<ImportResult.LineError> batchErrors = new ArrayList<>();
+    private final List<ImportResult.LineError> errors = new ArrayList<>();
+    private long created;
+    private long failed;
+
+    AccountImport(final AccountRepository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * Imports every line of the stream.
+     *
+     * @param input the UTF-8 encoded stream, one account per line; blank lines are skipped
+     * @return the number of created accounts and the reasons of the failures
+     * @throws IOException if reading the stream fails; the accounts of the lines before have been created
+     */
+    ImportResult run(final InputStream input) throws IOException {
+        final byte[] buffer = new byte[READ_BUFFER_BYTES];
+        final byte[] line = new byte[MAX_LINE_BYTES];
+        int length = 0;
+        boolean truncated = false;
+        long lineNo = 0;
+        int read;
+        while ((read = input.read(buffer)) >= 0) {
+            for (int i = 0; i < read; i++) {
+                final byte b = buffer[i];
+                if (b == '\n') {
+                    accept(++lineNo, line, length, truncated);
+                    length = 0;
+                    truncated = false;
+                } else if (length < MAX_LINE_BYTES) {
+                    line[length++] = b;
+                } else {
+                    truncated = true;
+                }
+            }
+        }
+        if (length > 0 || truncated) {
+            accept(++lineNo, line, length, truncated);
+        }
+        flush();
+        report();
+        return new ImportResult(created, failed, errors);
+    }
+
+    /**
+     * Parses a line and adds its account to the current batch, or records why it is rejected.
+     */
+    private void accept(final long lineNo, final byte[] line, final int length, final boolean truncated)
+            throws IOException {
+        if (truncated) {
+            reject(lineNo, "The line exceeds " + MAX_LINE_BYTES + " bytes.");
+            return;
+        }
+        if (isBlank(line, length)) {
+            return;
+        }
+        try {
+            batchLines[batch.size()] = lineNo;
+            batch.add(parse(line, length));
+        } catch (final JsonProcessingException exception) {
+            reject(lineNo, "Invalid JSON: " + exception.getOriginalMessage());
+            return;
+        } catch (final IllegalArgumentException exception) {
+            reject(lineNo, exception.getMessage());
+            return;
+        }
+        if (batch.size() == BATCH_SIZE) {
+            flush();
+        }
+    }
+
+    private void flush() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        final Map<Integer, String> rejected = repository.createAll(batch);
+        for (int i = 0; i < batch.size(); i++) {
+            final String error = rejected.get(i);
+            if (error == null) {
+                created++;
+            } else {
+                fail(batchLines[i], error);
+            }
+        }
+        batch.clear();
+        report();
+    }
+
+    /**
+     * Records a line that could not be parsed. These arrive in line order, so once enough are kept the later ones
+     * cannot be among the first failures.
+     */
+    private void reject(final long lineNo, final String error) {
+        if (errors.size() + batchErrors.size() < MAX_REPORTED_ERRORS) {
+            batchErrors.add(new ImportResult.LineError(lineNo, error));
+        }
+        failed++;
+    }
+
+    private void fail(final long lineNo, final String error) {
+        failed++;
+        batchErrors.add(new ImportResult.LineError(lineNo, error));
+    }
+
+    /**
+     * Moves the failures of the current batch, which are found in two passes, to the reported errors in line order.
+     */
+    private void report() {
+        batchErrors.sort(Comparator.comparingLong(ImportResult.LineError::getLine));
+        for (final ImportResult.LineError error : batchErrors) {
+            if (errors.size() == MAX_REPORTED_ERRORS) {
+                break;
+            }
+            errors.add(error);
+        }
+        batchErrors.clear();
+    }
+
+    private static boolean isBlank(final byte[] line, final int length) {
+        for (int i = 0; i < length; i++) {
+            if (line[i] != ' ' && line[i] != '\t' && line[i] != '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses a UTF-8 encoded object with the fields {@code accountNo}, {@code balance} and the optional
+     * {@code currency}; other fields are ignored.
+     */
+    private static Account parse(final byte[] line, final int length) throws IOException {
+        try (JsonParser parser = JSON.createParser(line, 0, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("Expected a JSON object.");
+            }
+            String accountNo = null;
+            BigDecimal balance = null;
+            Currency currency = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String field = parser.getCurrentName();
+                final JsonToken value = parser.nextToken();
+                if ("accountNo".equals(field)) {
+                    if (value != JsonToken.VALUE_STRING) {
+                        throw new IllegalArgumentException("accountNo must be a string.");
+                    }
+                    accountNo = parser.getText();
+                } else if ("balance".equals(field)) {
+                    if (value != JsonToken.VALUE_NUMBER_INT && value != JsonToken.VALUE_NUMBER_FLOAT) {
+                        throw new IllegalArgumentException("balance must be a number.");
+                    }
+                    balance = parser.getDecimalValue();
+                    if (!Amounts.hasSupportedScale(balance)) {
+                        throw new IllegalArgumentException("balance " + Amounts.UNSUPPORTED_SCALE + ".");
+                    }
+                } else if ("currency".equals(field)) {
+                    if (value != JsonToken.VALUE_STRING) {
+                        throw new IllegalArgumentException("currency must be a string.");
+                    }
+                    currency = currency(parser.getText());
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (parser.nextToken() != null) {
+                throw new IllegalArgumentException("Expected a single JSON object per line.");
+            }
+            if (accountNo == null || balance == null) {
+                throw new IllegalArgumentException("accountNo and balance are required.");
+            }
+            return new Account(accountNo, balance, currency);
+        }
+    }
+
+    private static Currency currency(final String code) {
+        try {
+            return Currency.getInstance(code);
+        } catch (final IllegalArgumentException exception) {
+            throw new IllegalArgumentException("Unknown currency " + code + ".");
+        }
+    }
+}
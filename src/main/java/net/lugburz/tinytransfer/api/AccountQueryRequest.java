@@ -0,0 +1,27 @@
+package net.lugburz.tinytransfer.api;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.Size;
+import java.util.List;
+
+/**
+ * DTO for a query of several accounts contained in the request body.
+ */
+@Getter
+@Setter
+@NoArgsConstructor(access = AccessLevel.PACKAGE)
+final class AccountQueryRequest {
+
+    static final int MAX_ACCOUNTS = 10_000;
+
+    @JsonProperty
+    @NotEmpty
+    @Size(max = MAX_ACCOUNTS)
+    private List<@NotEmpty String> accountNos;
+}
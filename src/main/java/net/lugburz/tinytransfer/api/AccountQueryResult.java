@@ -0,0 +1,26 @@
+package net.lugburz.tinytransfer.api;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import net.lugburz.tinytransfer.account.Account;
+
+import java.util.List;
+
+/**
+ * Balances of several accounts as of one point in time.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+public final class AccountQueryResult {
+
+    /**
+     * The known accounts in the order in which they have been queried.
+     */
+    @JsonProperty
+    private final List<Account> accounts;
+
+    @JsonProperty
+    private final List<String> unknownAccountNos;
+}
@@ -3,17 +3,35 @@ package net.lugburz.tinytransfer.api;
 import net.lugburz.tinytransfer.account.Account;
 import net.lugburz.tinytransfer.account.AccountException;
 import net.lugburz.tinytransfer.account.AccountRepository;
+import net.lugburz.tinytransfer.ledger.Ledger;
+import net.lugburz.tinytransfer.ledger.Statement;
+import net.lugburz.tinytransfer.transfer.BatchMode;
+import net.lugburz.tinytransfer.transfer.BatchResult;
+import net.lugburz.tinytransfer.transfer.Transfer;
 import net.lugburz.tinytransfer.transfer.TransferException;
-import net.lugburz.tinytransfer.transfer.InMemoryTransferService;
 import net.lugburz.tinytransfer.transfer.TransferService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.validation.Valid;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import javax.ws.rs.*;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 /**
  * REST API for banking operations.
@@ -23,14 +41,40 @@ import javax.ws.rs.core.Response;
 @Consumes(MediaType.APPLICATION_JSON)
 public final class BankingResource {
 
+    /**
+     * Optional request header which makes retries of a single transfer safe.
+     */
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
+    /**
+     * Response header which marks the outcome of a previous request with the same idempotency key.
+     */
+    public static final String IDEMPOTENT_REPLAYED = "Idempotent-Replayed";
+
+    public static final String APPLICATION_NDJSON = "application/x-ndjson";
+    public static final String TEXT_CSV = "text/csv";
+
+    private static final String UNKNOWN_ACCOUNT = "Unknown account provided";
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+    private static final int UNPROCESSABLE_ENTITY = 422;
+    private static final int MAX_STATEMENT_LIMIT = 1000;
+
     private final Logger log = LoggerFactory.getLogger(this.getClass());
+    private final RejectionLog rejections = new RejectionLog(log, 1, TimeUnit.SECONDS);
 
     private final TransferService transferService;
     private final AccountRepository repository;
+    private final IdempotencyCache idempotencyCache;
+    private final Ledger ledger;
 
-    public BankingResource(final AccountRepository repository) {
+    public BankingResource(final AccountRepository repository,
+                           final TransferService transferService,
+                           final IdempotencyCache idempotencyCache,
+                           final Ledger ledger) {
         this.repository = repository;
-        this.transferService = new InMemoryTransferService(repository);
+        this.transferService = transferService;
+        this.idempotencyCache = idempotencyCache;
+        this.ledger = ledger;
     }
 
     /**
@@ -43,23 +87,88 @@ public final class BankingResource {
     @GET
     @Path("/accounts/{accountNo}")
     public Account getAccount(@PathParam("accountNo") final String accountNo) {
+        final Optional<Account> account;
         try {
-            return repository.find(accountNo);
-
-        } catch (final AccountException exception) {
-            log.error("No account find for the given account number.", exception);
-            throw new WebApplicationException(exception.getMessage(), Response.Status.NOT_FOUND);
+            account = repository.snapshot(accountNo);
 
         } catch (final RuntimeException exception) {
             log.error("Failed to fetch account information.", exception);
             throw new WebApplicationException(exception.getMessage(), Response.Status.INTERNAL_SERVER_ERROR);
         }
+        return account.orElseThrow(() -> new WebApplicationException(UNKNOWN_ACCOUNT, Response.Status.NOT_FOUND));
+    }
+
+    /**
+     * Returns several accounts as of one point in time, without blocking transfers.
+     *
+     * @param request the account numbers to query, at most {@value AccountQueryRequest#MAX_ACCOUNTS}. Example:
+     *                {"accountNos": ["123", "456"]}
+     * @return HTTP 200 with an {@link AccountQueryResult} which lists the known accounts in the order of the request
+     * and the unknown account numbers separately, HTTP 422 on invalid parameters, HTTP 500 on internal errors
+     */
+    @POST
+    @Path("/accounts/query")
+    public AccountQueryResult queryAccounts(@NotNull @Valid final AccountQueryRequest request) {
+        final List<Account> accounts;
+        try {
+            accounts = repository.snapshotAll(request.getAccountNos());
+        } catch (final RuntimeException exception) {
+            log.error("Failed to query accounts.", exception);
+            throw new WebApplicationException(exception.getMessage(), Response.Status.INTERNAL_SERVER_ERROR);
+        }
+        // The snapshot keeps the order of the request and leaves out unknown accounts.
+        final List<String> unknown = new ArrayList<>();
+        int found = 0;
+        for (final String accountNo : request.getAccountNos()) {
+            if (found < accounts.size() && accounts.get(found).getAccountNo().equals(accountNo)) {
+                found++;
+            } else {
+                unknown.add(accountNo);
+            }
+        }
+        return new AccountQueryResult(accounts, unknown);
+    }
+
+    /**
+     * Returns the transfers of an account, newest first, one page at a time.
+     *
+     * @param accountNo the account number
+     * @param after     optional cursor returned as {@code next} with the previous page
+     * @param limit     the maximum number of transfers on the page, between 1 and 1000, 50 by default
+     * @return HTTP 200 with a {@link Statement} on success, HTTP 400 on an invalid cursor or limit,
+     * HTTP 404 on unknown account number or if the ledger is disabled
+     */
+    @GET
+    @Path("/accounts/{accountNo}/transfers")
+    public Statement getTransfers(@PathParam("accountNo") final String accountNo,
+                                  @QueryParam("after") final String after,
+                                  @QueryParam("limit") @DefaultValue("50") @Min(1) @Max(MAX_STATEMENT_LIMIT)
+                                  final int limit) {
+        if (!ledger.isEnabled()) {
+            throw new WebApplicationException("The transfer history is disabled.", Response.Status.NOT_FOUND);
+        }
+        if (!repository.lookup(accountNo).isPresent()) {
+            throw new WebApplicationException(UNKNOWN_ACCOUNT, Response.Status.NOT_FOUND);
+        }
+        // Parsed here rather than by Jersey, which would answer an unparsable query parameter with HTTP 404.
+        final Long cursor;
+        try {
+            cursor = after == null ? null : Long.valueOf(after);
+        } catch (final NumberFormatException exception) {
+            throw new BadRequestException("Unknown cursor provided.");
+        }
+        try {
+            return ledger.statement(accountNo, cursor, limit);
+        } catch (final IllegalArgumentException exception) {
+            throw new BadRequestException(exception.getMessage());
+        }
     }
 
     /**
      * Creates a new account.
      *
-     * @param account JSON representation of the account data. Example: {"accountNo": "123", balance: 10.42}
+     * @param account JSON representation of the account data. Example: {"accountNo": "123", balance: 10.42}, with
+     *                an optional currency such as "currency": "USD"
      * @return HTTP 200 on successful creation, HTTP 400 on failure due to bad parameters,
      * HTTP 422 on invalid parameters, HTTP 500 on internal errors
      */
@@ -67,11 +176,11 @@ public final class BankingResource {
     @Path("/accounts")
     public Response createAccount(@NotNull @Valid final AccountCreationRequest account) {
         try {
-            repository.create(account.getAccountNo(), account.getBalance());
+            repository.create(account.getAccountNo(), account.getBalance(), account.getCurrency());
             return Response.ok().build();
 
         } catch (final AccountException exception) {
-            log.error("Account creation failed.", exception);
+            rejections.reject("Account creation", exception.getMessage());
             throw new BadRequestException(exception.getMessage());
 
         } catch (final RuntimeException exception) {
@@ -80,6 +189,47 @@ public final class BankingResource {
         }
     }
 
+    /**
+     * Creates accounts from a stream of newline-delimited JSON objects in the format of {@link #createAccount}.
+     * <p>
+     * Every line is created or rejected on its own; a rejected line does not abort the import. The stream is parsed
+     * and applied in batches while it is being received.
+     *
+     * @param input one JSON object per line. Example: {"accountNo": "123", "balance": 10.42}
+     * @return HTTP 200 with the number of created and failed accounts and the reasons of the first failures,
+     * HTTP 500 on internal errors
+     */
+    @POST
+    @Path("/accounts/bulk")
+    @Consumes(APPLICATION_NDJSON)
+    public ImportResult importAccounts(final InputStream input) throws IOException {
+        return new AccountImport(repository).run(input);
+    }
+
+    /**
+     * Streams all accounts as newline-delimited JSON objects in the format of {@link #getAccount}.
+     *
+     * @return HTTP 200 with one account per line
+     */
+    @GET
+    @Path("/accounts/export")
+    @Produces(APPLICATION_NDJSON)
+    public StreamingOutput exportAccounts() {
+        return AccountExport.ndjson(repository);
+    }
+
+    /**
+     * Streams all accounts as comma-separated values; selected with {@code Accept: text/csv}.
+     *
+     * @return HTTP 200 with a header line and one account per line
+     */
+    @GET
+    @Path("/accounts/export")
+    @Produces(TEXT_CSV)
+    public StreamingOutput exportAccountsAsCsv() {
+        return AccountExport.csv(repository);
+    }
+
     /**
      * Resets the internal data store by deleting all stored accounts.
      */
@@ -87,31 +237,132 @@ public final class BankingResource {
     @Path("/accounts/reset")
     public Response reset() {
         repository.clear();
+        idempotencyCache.clear();
+        ledger.clear();
         return Response.ok().build();
     }
 
     /**
      * Transfers an amount from one account to another.
+     * <p>
+     * The request is answered asynchronously: the request thread is released while the transfer is in progress.
+     * <p>
+     * If an {@code Idempotency-Key} header is given, the transfer is executed at most once per key: a retry with the
+     * same key is answered with the outcome of the first request and the header {@code Idempotent-Replayed: true}.
+     * Keys are remembered for a limited time and number of requests, see {@link IdempotencyFactory}.
      *
-     * @param request the transfer request containing the fields {@code senderAccNo}, {@code receiverAccNo} and
-     *                {@code balance}. The balance must be a non-negative number. Example:
-     *                {"senderAccNo": "123", "receiverAccNo": "456", balance: 10.42}
-     * @return HTTP 200 on successful transfer, HTTP 400 on failure due to bad parameters,
-     * HTTP 422 on invalid parameters, HTTP 500 on internal errors
+     * @param idempotencyKey optional key of up to 255 characters which identifies retries of the same transfer
+     * @param request        the transfer request containing the fields {@code senderAccNo}, {@code receiverAccNo} and
+     *                       {@code balance}. The balance must be a non-negative number. Example:
+     *                       {"senderAccNo": "123", "receiverAccNo": "456", balance: 10.42}
+     * @param response       resumed with HTTP 200 on successful transfer, HTTP 400 on failure due to bad parameters,
+     *                       HTTP 422 on invalid parameters or on a key which has been used for a different transfer,
+     *                       HTTP 500 on internal errors
      */
     @POST
     @Path("/transfer")
-    public Response transfer(@NotNull @Valid final TransferRequest request) {
+    public void transfer(@HeaderParam(IDEMPOTENCY_KEY) final String idempotencyKey,
+                         @NotNull @Valid final TransferRequest request,
+                         @Suspended final AsyncResponse response) {
+        if (idempotencyKey == null) {
+            execute(request).whenComplete((outcome, failure) -> {
+                if (failure != null) {
+                    response.resume(unwrap(failure));
+                } else {
+                    resume(response, outcome, false);
+                }
+            });
+            return;
+        }
+        if (idempotencyKey.isEmpty() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+            response.resume(new BadRequestException("The " + IDEMPOTENCY_KEY + " header must have between 1 and "
+                    + MAX_IDEMPOTENCY_KEY_LENGTH + " characters."));
+            return;
+        }
+
+        idempotencyCache.computeIfAbsent(idempotencyKey, () -> execute(request)).whenComplete((outcome, failure) -> {
+            if (failure != null) {
+                response.resume(unwrap(failure));
+            } else if (outcome.getRequest() == request) {
+                resume(response, outcome, false);
+            } else if (!outcome.matches(request)) {
+                response.resume(new WebApplicationException(
+                        "The " + IDEMPOTENCY_KEY + " has already been used for a different transfer.",
+                        UNPROCESSABLE_ENTITY));
+            } else {
+                resume(response, outcome, true);
+            }
+        });
+    }
+
+    /**
+     * Starts a transfer. Rejected transfers are part of the outcome, so that they are replayed as well; unexpected
+     * failures complete the future exceptionally and leave the idempotency key unused.
+     */
+    private CompletableFuture<TransferOutcome> execute(final TransferRequest request) {
+        CompletableFuture<Void> transfer;
         try {
-            transferService.transfer(request.getSenderAccNo(), request.getReceiverAccNo(), request.getAmount());
-            return Response.ok().build();
+            transfer = transferService.transferAsync(
+                    request.getSenderAccNo(), request.getReceiverAccNo(), request.getAmount());
+        } catch (final RuntimeException exception) {
+            transfer = new CompletableFuture<>();
+            transfer.completeExceptionally(exception);
+        }
+        return transfer.handle((ignored, failure) -> {
+            final Throwable cause = unwrap(failure);
+            if (cause == null) {
+                return new TransferOutcome(request, null);
+            }
+            if (cause instanceof TransferException) {
+                rejections.reject("Transfer", cause.getMessage());
+                return new TransferOutcome(request, cause.getMessage());
+            }
+            log.error("Transfer request failed.", cause);
+            throw new InternalServerErrorException(cause.getMessage());
+        });
+    }
 
-        } catch (final TransferException exception) {
-            log.error("Transfer request failed.", exception);
-            throw new BadRequestException(exception.getMessage());
+    private static void resume(final AsyncResponse response, final TransferOutcome outcome, final boolean replayed) {
+        final Response.ResponseBuilder builder =
+                outcome.getFailure() == null ? Response.ok() : Response.status(Response.Status.BAD_REQUEST);
+        if (replayed) {
+            builder.header(IDEMPOTENT_REPLAYED, true);
+        }
+        if (outcome.getFailure() != null) {
+            response.resume(new BadRequestException(outcome.getFailure(), builder.build()));
+        } else {
+            response.resume(builder.build());
+        }
+    }
+
+    private static Throwable unwrap(final Throwable failure) {
+        return failure instanceof CompletionException ? failure.getCause() : failure;
+    }
+
+    /**
+     * Transfers amounts between accounts in a single batch.
+     *
+     * @param request the batch request containing the {@code mode}, either {@code ATOMIC} (default) or
+     *                {@code BEST_EFFORT}, and a list of {@code transfers} in the format of {@link #transfer}. Example:
+     *                {"mode": "ATOMIC", "transfers": [{"senderAccNo": "123", "receiverAccNo": "456", "amount": 1}]}
+     * @return HTTP 200 with one result per transfer if the batch has been processed, HTTP 400 with the results if an
+     * atomic batch has been rolled back, HTTP 422 on invalid parameters, HTTP 500 on internal errors
+     */
+    @POST
+    @Path("/transfers/batch")
+    public Response transferBatch(@NotNull @Valid final BatchTransferRequest request) {
+        try {
+            final List<Transfer> transfers = request.getTransfers().stream()
+                    .map(t -> new Transfer(t.getSenderAccNo(), t.getReceiverAccNo(), t.getAmount()))
+                    .collect(Collectors.toList());
+            final BatchResult result = transferService.transferAll(transfers, request.getMode());
+            if (!result.isCommitted() && result.getMode() == BatchMode.ATOMIC) {
+                return Response.status(Response.Status.BAD_REQUEST).entity(result).build();
+            }
+            return Response.ok(result).build();
 
         } catch (final RuntimeException exception) {
-            log.error("Transfer request failed.", exception);
+            log.error("Batch transfer request failed.", exception);
             throw new InternalServerErrorException(exception.getMessage());
         }
     }
@@ -0,0 +1,34 @@
+package net.lugburz.tinytransfer.api;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import net.lugburz.tinytransfer.transfer.BatchMode;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.util.List;
+
+/**
+ * DTO for a batch transfer request contained in the request body.
+ */
+@Getter
+@Setter
+@NoArgsConstructor(access = AccessLevel.PACKAGE)
+final class BatchTransferRequest {
+
+    static final int MAX_TRANSFERS = 10_000;
+
+    @JsonProperty
+    @NotNull
+    private BatchMode mode = BatchMode.ATOMIC;
+
+    @JsonProperty
+    @NotEmpty
+    @Size(max = MAX_TRANSFERS)
+    private List<@NotNull @Valid TransferRequest> transfers;
+}
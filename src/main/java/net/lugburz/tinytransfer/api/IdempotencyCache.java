@@ -0,0 +1,64 @@
+package net.lugburz.tinytransfer.api;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Outcomes of recent transfers by idempotency key, so that a retried request is answered with the original outcome
+ * instead of being executed again.
+ *
+ * <p>
+ * The cache is bounded in size and evicts entries a fixed time after they were written. Eviction is handled by
+ * Caffeine, which keeps lookups lock-free and admits new keys by their estimated frequency, so a flood of one-off keys
+ * cannot push out the keys that are being retried.
+ *
+ * <p>
+ * Outcomes are remembered as futures, so that a transfer which is still in progress is neither executed again nor
+ * waited for by a thread.
+ */
+public final class IdempotencyCache {
+
+    private final AsyncCache<String, TransferOutcome> outcomes;
+
+    /**
+     * @param maximumSize the maximum number of remembered keys
+     * @param expireAfter how long a key is remembered after the transfer
+     */
+    public IdempotencyCache(final long maximumSize, final long expireAfter, final TimeUnit expireAfterUnit) {
+        this.outcomes = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfter, expireAfterUnit)
+                .buildAsync();
+    }
+
+    /**
+     * Returns the outcome remembered for the key, or executes the transfer and remembers its outcome.
+     * <p>
+     * Concurrent requests with the same key receive the future of the first one, so a transfer is executed at most
+     * once per key. If the transfer fails, the key is forgotten again and the failure is propagated.
+     *
+     * @param key      the idempotency key
+     * @param transfer starts the transfer
+     * @return the outcome, which belongs to a different request instance if it has been remembered
+     */
+    CompletableFuture<TransferOutcome> computeIfAbsent(final String key,
+                                                       final Supplier<CompletableFuture<TransferOutcome>> transfer) {
+        return outcomes.get(key, (k, executor) -> transfer.get());
+    }
+
+    /**
+     * Forgets all keys.
+     */
+    public void clear() {
+        outcomes.synchronous().invalidateAll();
+    }
+
+    long size() {
+        outcomes.synchronous().cleanUp();
+        return outcomes.synchronous().estimatedSize();
+    }
+}
@@ -0,0 +1,39 @@
+package net.lugburz.tinytransfer.api;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+import io.dropwizard.validation.MinDuration;
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configuration of the cache behind the {@code Idempotency-Key} header of single transfers.
+ */
+@Getter
+@Setter
+public class IdempotencyFactory {
+
+    /**
+     * Maximum number of remembered keys. Each key takes roughly the size of the request, so the default of 100,000
+     * keys stays in the order of tens of megabytes.
+     */
+    @JsonProperty
+    @Min(1)
+    private long maximumSize = 100_000;
+
+    /**
+     * How long a key is remembered after its transfer; retries arriving later are executed again.
+     */
+    @JsonProperty
+    @NotNull
+    @MinDuration(value = 1, unit = TimeUnit.SECONDS)
+    private Duration expireAfter = Duration.hours(1);
+
+    public IdempotencyCache build() {
+        return new IdempotencyCache(maximumSize, expireAfter.getQuantity(), expireAfter.getUnit());
+    }
+}
@@ -0,0 +1,46 @@
+package net.lugburz.tinytransfer.api;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Outcome of a bulk import of accounts.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+public final class ImportResult {
+
+    @JsonProperty
+    private final long created;
+
+    @JsonProperty
+    private final long failed;
+
+    /**
+     * The reasons of the first failures, at most {@link AccountImport#MAX_REPORTED_ERRORS}; {@link #failed} counts all
+     * of them.
+     */
+    @JsonProperty
+    private final List<LineError> errors;
+
+    /**
+     * Reason why a line of the import has not been created.
+     */
+    @Getter
+    @AllArgsConstructor(access = AccessLevel.PACKAGE)
+    public static final class LineError {
+
+        /**
+         * Line number within the import, starting at 1.
+         */
+        @JsonProperty
+        private final long line;
+
+        @JsonProperty
+        private final String error;
+    }
+}
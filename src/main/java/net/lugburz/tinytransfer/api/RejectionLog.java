@@ -0,0 +1,53 @@
+package net.lugburz.tinytransfer.api;
+
+import org.slf4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Logs rejected requests, such as transfers without sufficient funds, at most once per interval and without stack
+ * traces.
+ *
+ * <p>
+ * Rejections are routine client errors. Logging each one with its stack trace would cost more than serving the
+ * request when many are rejected at once, so every logged line stands for all rejections since the previous one.
+ */
+public final class RejectionLog {
+
+    private final Logger log;
+    private final long intervalNanos;
+    private final LongSupplier nanoClock;
+
+    private final LongAdder rejections = new LongAdder();
+    private final AtomicLong nextLogAt;
+
+    public RejectionLog(final Logger log, final long interval, final TimeUnit unit) {
+        this(log, interval, unit, System::nanoTime);
+    }
+
+    RejectionLog(final Logger log, final long interval, final TimeUnit unit, final LongSupplier nanoClock) {
+        this.log = log;
+        this.intervalNanos = unit.toNanos(interval);
+        this.nanoClock = nanoClock;
+        this.nextLogAt = new AtomicLong(nanoClock.getAsLong());
+    }
+
+    /**
+     * Counts a rejection and logs it if no rejection has been logged during the current interval.
+     *
+     * @param request what has been rejected, e.g. "Transfer"
+     * @param reason  the reason given to the client
+     */
+    public void reject(final String request, final String reason) {
+        rejections.increment();
+        final long now = nanoClock.getAsLong();
+        final long next = nextLogAt.get();
+        if (now - next < 0 || !nextLogAt.compareAndSet(next, now + intervalNanos)) {
+            return;
+        }
+        log.warn("{} rejected: {} ({} rejections since the last report)", request, reason, rejections.sumThenReset());
+    }
+}
@@ -0,0 +1,32 @@
+package net.lugburz.tinytransfer.api;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Result of a single transfer as remembered for its idempotency key.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+final class TransferOutcome {
+
+    /**
+     * The request which has been executed.
+     */
+    private final TransferRequest request;
+
+    /**
+     * The reason the transfer has been rejected, or null if it succeeded.
+     */
+    private final String failure;
+
+    /**
+     * @return true if the given request asks for the same transfer as the executed one
+     */
+    boolean matches(final TransferRequest other) {
+        return request.getSenderAccNo().equals(other.getSenderAccNo())
+                && request.getReceiverAccNo().equals(other.getReceiverAccNo())
+                && request.getAmount().compareTo(other.getAmount()) == 0;
+    }
+}
@@ -1,10 +1,13 @@
 package net.lugburz.tinytransfer.api;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.validation.ValidationMethod;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import net.lugburz.tinytransfer.transfer.Amounts;
 
 import javax.validation.constraints.NotEmpty;
 import javax.validation.constraints.NotNull;
@@ -31,4 +34,10 @@ final class TransferRequest {
     @NotNull
     @Positive
     private BigDecimal amount;
+
+    @JsonIgnore
+    @ValidationMethod(message = "amount " + Amounts.UNSUPPORTED_SCALE)
+    public boolean isAmountScaleSupported() {
+        return Amounts.hasSupportedScale(amount);
+    }
 }
@@ -0,0 +1,184 @@
+package net.lugburz.tinytransfer.binary;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Client of the {@link BinaryProtocol} over one connection, shared by any number of threads.
+ *
+ * <p>
+ * Requests are pipelined: every method sends its request and returns at once, and a reader thread completes the
+ * returned future when the response arrives. A request which the server does not answer with
+ * {@link BinaryProtocol.Status#OK} completes exceptionally with a {@link BinaryProtocolException}; if the connection
+ * is lost, all pending requests complete exceptionally with an {@link UncheckedIOException}.
+ */
+public final class BinaryClient implements Closeable {
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final SocketChannel channel;
+    private final Map<Long, CompletableFuture<Object>> pending = new ConcurrentHashMap<>();
+    private final Thread reader;
+
+    // Guarded by the monitor of the client.
+    private final ByteBuffer output = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private long nextRequestId;
+
+    private BinaryClient(final SocketChannel channel) {
+        this.channel = channel;
+        this.reader = new Thread(this::read, "binary-client-reader");
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    public static BinaryClient connect(final String host, final int port) throws IOException {
+        final SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        return new BinaryClient(channel);
+    }
+
+    public CompletableFuture<Void> transfer(final String senderAccNo, final String receiverAccNo,
+                                            final BigDecimal amount) {
+        final byte[] sender = BinaryProtocol.utf8(senderAccNo);
+        final byte[] receiver = BinaryProtocol.utf8(receiverAccNo);
+        final byte[] unscaled = BinaryProtocol.unscaled(amount);
+        synchronized (this) {
+            final ByteBuffer frame = begin(BinaryProtocol.TRANSFER, BinaryProtocol.stringBytes(sender)
+                    + BinaryProtocol.stringBytes(receiver) + BinaryProtocol.decimalBytes(unscaled));
+            BinaryProtocol.putString(frame, sender);
+            BinaryProtocol.putString(frame, receiver);
+            BinaryProtocol.putDecimal(frame, amount.scale(), unscaled);
+            return send();
+        }
+    }
+
+    public CompletableFuture<BigDecimal> balance(final String accountNo) {
+        final byte[] account = BinaryProtocol.utf8(accountNo);
+        synchronized (this) {
+            final ByteBuffer frame = begin(BinaryProtocol.BALANCE, BinaryProtocol.stringBytes(account));
+            BinaryProtocol.putString(frame, account);
+            return send();
+        }
+    }
+
+    public CompletableFuture<Void> create(final String accountNo, final BigDecimal balance) {
+        final byte[] account = BinaryProtocol.utf8(accountNo);
+        final byte[] unscaled = BinaryProtocol.unscaled(balance);
+        synchronized (this) {
+            final ByteBuffer frame = begin(BinaryProtocol.CREATE,
+                    BinaryProtocol.stringBytes(account) + BinaryProtocol.decimalBytes(unscaled));
+            BinaryProtocol.putString(frame, account);
+            BinaryProtocol.putDecimal(frame, balance.scale(), unscaled);
+            return send();
+        }
+    }
+
+    /**
+     * Closes the connection; pending requests complete exceptionally.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        try {
+            reader.join();
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private ByteBuffer begin(final byte operation, final int bodyBytes) {
+        if (BinaryProtocol.LENGTH_BYTES + BinaryProtocol.HEADER_BYTES + bodyBytes > output.capacity()) {
+            throw new IllegalArgumentException("The request exceeds " + output.capacity() + " bytes.");
+        }
+        output.clear();
+        output.putInt(BinaryProtocol.HEADER_BYTES + bodyBytes);
+        output.put(operation);
+        output.putLong(nextRequestId);
+        return output;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> CompletableFuture<T> send() {
+        final long requestId = nextRequestId++;
+        final CompletableFuture<Object> response = new CompletableFuture<>();
+        pending.put(requestId, response);
+        output.flip();
+        try {
+            while (output.hasRemaining()) {
+                channel.write(output);
+            }
+        } catch (final IOException exception) {
+            pending.remove(requestId);
+            response.completeExceptionally(new UncheckedIOException(exception));
+        }
+        return (CompletableFuture<T>) response;
+    }
+
+    private void read() {
+        final ByteBuffer input = ByteBuffer.allocate(BUFFER_BYTES);
+        try {
+            while (channel.read(input) >= 0) {
+                input.flip();
+                while (input.remaining() >= BinaryProtocol.LENGTH_BYTES) {
+                    final int length = input.getInt(input.position());
+                    if (length < BinaryProtocol.HEADER_BYTES
+                            || length > input.capacity() - BinaryProtocol.LENGTH_BYTES) {
+                        throw new IOException("Invalid response frame of " + length + " bytes");
+                    }
+                    if (input.remaining() < BinaryProtocol.LENGTH_BYTES + length) {
+                        break;
+                    }
+                    final int end = input.position() + BinaryProtocol.LENGTH_BYTES + length;
+                    input.position(input.position() + BinaryProtocol.LENGTH_BYTES);
+                    final ByteBuffer frame = input.slice();
+                    frame.limit(length);
+                    complete(frame);
+                    input.position(end);
+                }
+                input.compact();
+            }
+            failPending(new IOException("The server closed the connection"));
+        } catch (final IOException | RuntimeException exception) {
+            failPending(exception instanceof IOException ? (IOException) exception : new IOException(exception));
+        }
+    }
+
+    private void complete(final ByteBuffer frame) {
+        final BinaryProtocol.Status status = BinaryProtocol.Status.of(frame.get());
+        final CompletableFuture<Object> response = pending.remove(frame.getLong());
+        if (response == null) {
+            return;
+        }
+        if (status != BinaryProtocol.Status.OK) {
+            response.completeExceptionally(new BinaryProtocolException(status, BinaryProtocol.getString(frame)));
+        } else if (frame.remaining() > 0) {
+            response.complete(BinaryProtocol.getDecimal(frame));
+        } else {
+            response.complete(null);
+        }
+    }
+
+    private void failPending(final IOException cause) {
+        try {
+            channel.close();
+        } catch (final IOException ignored) {
+            // The connection is lost either way.
+        }
+        final UncheckedIOException failure = new UncheckedIOException(cause);
+        for (final Long requestId : pending.keySet()) {
+            final CompletableFuture<Object> response = pending.remove(requestId);
+            if (response != null) {
+                response.completeExceptionally(failure);
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package net.lugburz.tinytransfer.binary;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Length-prefixed binary protocol for transfers, balance queries and account creations, served next to the JSON REST
+ * API for clients which send many small requests.
+ *
+ * <p>
+ * Every frame starts with its length in bytes as a 4-byte big-endian int, not counting the length itself. A request
+ * continues with its operation (1 byte) and an id chosen by the client (8 bytes); the response repeats the id after
+ * its status (1 byte). Requests are pipelined: a client may send further requests before the previous ones have been
+ * answered, and responses are sent in the order in which the requests complete, not in the order they were sent.
+ *
+ * <pre>
+ * TRANSFER request: sender (string), receiver (string), amount (decimal)
+ * BALANCE  request: account number (string)              OK response: balance (decimal)
+ * CREATE   request: account number (string), balance (decimal)
+ * response with any status but OK: message (string)
+ *
+ * string:  length n (2 bytes, unsigned), n bytes of UTF-8
+ * decimal: scale (1 byte, signed), length n (1 byte, 1 to 127), unscaled value (n bytes, two's complement, big-endian)
+ * </pre>
+ */
+public final class BinaryProtocol {
+
+    public static final byte TRANSFER = 1;
+    public static final byte BALANCE = 2;
+    public static final byte CREATE = 3;
+
+    /**
+     * Length of the operation or status and the request id, the part every frame has after its length.
+     */
+    public static final int HEADER_BYTES = 9;
+
+    static final int LENGTH_BYTES = 4;
+
+    private static final int MAX_STRING_BYTES = 0xFFFF;
+    private static final int MAX_DECIMAL_BYTES = Byte.MAX_VALUE;
+
+    /**
+     * Status of a response.
+     */
+    public enum Status {
+        OK,
+        /**
+         * The transfer or the account creation has been rejected, like HTTP 400 of the REST API.
+         */
+        REJECTED,
+        /**
+         * The account of a balance query is unknown, like HTTP 404.
+         */
+        NOT_FOUND,
+        /**
+         * The request could not be decoded or lacks a field, like HTTP 422.
+         */
+        INVALID,
+        /**
+         * The request failed unexpectedly, like HTTP 500.
+         */
+        ERROR;
+
+        private static final Status[] VALUES = values();
+
+        static Status of(final byte code) {
+            if (code < 0 || code >= VALUES.length) {
+                throw new IllegalArgumentException("Unknown status " + code);
+            }
+            return VALUES[code];
+        }
+
+        byte code() {
+            return (byte) ordinal();
+        }
+    }
+
+    private BinaryProtocol() {
+    }
+
+    /**
+     * @return the number of bytes {@link #putString} writes for the string
+     */
+    static int stringBytes(final byte[] utf8) {
+        return 2 + utf8.length;
+    }
+
+    static byte[] utf8(final String value) {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("A string may not exceed " + MAX_STRING_BYTES + " bytes.");
+        }
+        return bytes;
+    }
+
+    static void putString(final ByteBuffer buffer, final byte[] utf8) {
+        buffer.putShort((short) utf8.length);
+        buffer.put(utf8);
+    }
+
+    /**
+     * @throws BufferUnderflowException if the buffer ends within the string
+     */
+    static String getString(final ByteBuffer buffer) {
+        final int length = buffer.getShort() & 0xFFFF;
+        if (buffer.remaining() < length) {
+            throw new BufferUnderflowException();
+        }
+        final String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+                    StandardCharsets.UTF_8);
+        } else {
+            final byte[] bytes = new byte[length];
+            buffer.duplicate().get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    /**
+     * @return the unscaled value of the decimal as written by {@link #putDecimal}
+     * @throws IllegalArgumentException if the scale or the unscaled value exceed the range of the protocol
+     */
+    static byte[] unscaled(final BigDecimal value) {
+        if (value.scale() < Byte.MIN_VALUE || value.scale() > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("The scale of a decimal must fit into a byte.");
+        }
+        final byte[] unscaled = value.unscaledValue().toByteArray();
+        if (unscaled.length > MAX_DECIMAL_BYTES) {
+            throw new IllegalArgumentException("A decimal may not exceed " + MAX_DECIMAL_BYTES + " bytes.");
+        }
+        return unscaled;
+    }
+
+    static int decimalBytes(final byte[] unscaled) {
+        return 2 + unscaled.length;
+    }
+
+    static void putDecimal(final ByteBuffer buffer, final int scale, final byte[] unscaled) {
+        buffer.put((byte) scale);
+        buffer.put((byte) unscaled.length);
+        buffer.put(unscaled);
+    }
+
+    /**
+     * Decodes a decimal; values of up to 8 bytes, which covers every amount of a {@code long} store, are assembled
+     * without a {@link BigInteger}.
+     *
+     * @throws IllegalArgumentException if the length is out of range
+     * @throws BufferUnderflowException if the buffer ends within the decimal
+     */
+    static BigDecimal getDecimal(final ByteBuffer buffer) {
+        final int scale = buffer.get();
+        final int length = buffer.get();
+        if (length < 1) {
+            throw new IllegalArgumentException("Invalid decimal length " + length);
+        }
+        if (length <= Long.BYTES) {
+            long unscaled = buffer.get();
+            for (int i = 1; i < length; i++) {
+                unscaled = unscaled << 8 | buffer.get() & 0xFF;
+            }
+            return BigDecimal.valueOf(unscaled, scale);
+        }
+        final byte[] unscaled = new byte[length];
+        buffer.get(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+}
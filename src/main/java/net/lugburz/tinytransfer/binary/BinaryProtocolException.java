@@ -0,0 +1,18 @@
+package net.lugburz.tinytransfer.binary;
+
+import lombok.Getter;
+
+/**
+ * Completes the future of a {@link BinaryClient} request which the server did not answer with
+ * {@link BinaryProtocol.Status#OK}.
+ */
+@Getter
+public final class BinaryProtocolException extends RuntimeException {
+
+    private final BinaryProtocol.Status status;
+
+    public BinaryProtocolException(final BinaryProtocol.Status status, final String message) {
+        super(message, null, false, false);
+        this.status = status;
+    }
+}
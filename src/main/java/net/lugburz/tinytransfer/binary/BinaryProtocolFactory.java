@@ -0,0 +1,69 @@
+package net.lugburz.tinytransfer.binary;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import lombok.Setter;
+import net.lugburz.tinytransfer.account.AccountRepository;
+import net.lugburz.tinytransfer.transfer.TransferService;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotEmpty;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Configuration of the listener for the {@link BinaryProtocol}.
+ */
+@Getter
+@Setter
+public class BinaryProtocolFactory {
+
+    @JsonProperty
+    private boolean enabled = false;
+
+    /**
+     * Address the listener binds to; the loopback address by default, so that only local clients can connect.
+     */
+    @JsonProperty
+    @NotEmpty
+    private String bindHost = "127.0.0.1";
+
+    /**
+     * TCP port of the listener; 0 picks a free port.
+     */
+    @JsonProperty
+    @Min(0)
+    @Max(65535)
+    private int port = 8090;
+
+    /**
+     * Number of threads which execute requests, shared by all connections.
+     */
+    @JsonProperty
+    @Min(1)
+    private int workerThreads = 2 * Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Maximum length of a request frame; a client who sends a longer frame is disconnected. Every connection holds a
+     * read buffer of this size.
+     */
+    @JsonProperty
+    @Min(BinaryProtocol.HEADER_BYTES)
+    private int maxFrameBytes = 4096;
+
+    /**
+     * Maximum number of requests per connection which have been read but not answered; at the limit the listener
+     * stops reading from the connection until responses have been written.
+     */
+    @JsonProperty
+    @Min(1)
+    private int maxInFlightRequests = 1024;
+
+    public BinaryServer build(final AccountRepository repository,
+                              final TransferService transferService,
+                              final ExecutorService workers) {
+        return new BinaryServer(new InetSocketAddress(bindHost, port), maxFrameBytes, maxInFlightRequests, repository,
+                transferService, workers);
+    }
+}
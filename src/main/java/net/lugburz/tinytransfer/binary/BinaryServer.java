@@ -0,0 +1,442 @@
+package net.lugburz.tinytransfer.binary;
+
+import io.dropwizard.lifecycle.Managed;
+import net.lugburz.tinytransfer.account.Account;
+import net.lugburz.tinytransfer.account.AccountException;
+import net.lugburz.tinytransfer.account.AccountRepository;
+import net.lugburz.tinytransfer.api.RejectionLog;
+import net.lugburz.tinytransfer.transfer.TransferException;
+import net.lugburz.tinytransfer.transfer.TransferService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Listener for the {@link BinaryProtocol}, served by the same account store and transfer service as the REST API.
+ *
+ * <p>
+ * A single selector thread accepts connections, reads and decodes request frames and writes responses; requests are
+ * executed on the worker pool, so a transfer which waits for a lock stripe or for the journal never stalls the other
+ * connections. Workers queue their responses on the connection and wake the selector only if it has not been woken for
+ * that connection already, so a burst of pipelined responses is written with few system calls.
+ *
+ * <p>
+ * Every connection may have a limited number of requests in flight, from decoding until the response is handed to the
+ * socket. At the limit the selector stops reading from the connection, so a client who pipelines faster than it is
+ * served, or who does not read its responses, is held back by TCP flow control instead of filling the worker queue and
+ * the response queue. Reading resumes once the responses have been written down to half the limit.
+ */
+public final class BinaryServer implements Managed {
+
+    private static final String UNKNOWN_ACCOUNT = "Unknown account provided";
+    private static final int OUTPUT_BUFFER_BYTES = 64 * 1024;
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+    private final RejectionLog rejections = new RejectionLog(log, 1, TimeUnit.SECONDS);
+
+    private final InetSocketAddress address;
+    private final int maxFrameBytes;
+    private final int maxInFlight;
+    private final AccountRepository repository;
+    private final TransferService transferService;
+    private final ExecutorService workers;
+
+    private final Queue<Connection> flushes = new ConcurrentLinkedQueue<>();
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread selectorThread;
+    private volatile boolean running;
+
+    /**
+     * @param address         the address to listen on; port 0 picks a free port, see {@link #getPort()}
+     * @param maxFrameBytes   the maximum length of a request frame; a client who sends a longer frame is disconnected
+     * @param maxInFlight     the maximum number of requests per connection which have been read but not answered
+     * @param repository      the account store for balance queries and account creations
+     * @param transferService the transfer service for transfers
+     * @param workers         the pool which executes the requests
+     */
+    public BinaryServer(final InetSocketAddress address,
+                        final int maxFrameBytes,
+                        final int maxInFlight,
+                        final AccountRepository repository,
+                        final TransferService transferService,
+                        final ExecutorService workers) {
+        if (maxFrameBytes < BinaryProtocol.HEADER_BYTES) {
+            throw new IllegalArgumentException("The maximum frame length must cover the frame header.");
+        }
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("At least one request must be allowed in flight.");
+        }
+        this.address = address;
+        this.maxFrameBytes = maxFrameBytes;
+        this.maxInFlight = maxInFlight;
+        this.repository = repository;
+        this.transferService = transferService;
+        this.workers = workers;
+    }
+
+    @Override
+    public void start() throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(address);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        selectorThread = new Thread(this::run, "binary-selector");
+        selectorThread.start();
+        log.info("Binary protocol listening on {}", serverChannel.getLocalAddress());
+    }
+
+    @Override
+    public void stop() throws Exception {
+        running = false;
+        selector.wakeup();
+        selectorThread.join();
+        for (final SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+
+    /**
+     * @return the port the listener is bound to
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                selector.select();
+            } catch (final IOException exception) {
+                log.error("Binary protocol selector failed", exception);
+                return;
+            }
+            Connection flush;
+            while ((flush = flushes.poll()) != null) {
+                flush.flushScheduled.set(false);
+                flush.write();
+            }
+            final Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                final SelectionKey key = keys.next();
+                keys.remove();
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.isAcceptable()) {
+                    accept();
+                    continue;
+                }
+                final Connection connection = (Connection) key.attachment();
+                if (key.isReadable()) {
+                    connection.read();
+                }
+                if (key.isValid() && key.isWritable()) {
+                    connection.write();
+                }
+            }
+        }
+    }
+
+    private void accept() {
+        try {
+            final SocketChannel channel = serverChannel.accept();
+            if (channel == null) {
+                return;
+            }
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            final Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        } catch (final IOException exception) {
+            log.warn("Failed to accept a binary protocol connection", exception);
+        }
+    }
+
+    /**
+     * Decodes a request frame on the selector thread and hands it to the worker pool; the frame is only valid until
+     * this method returns.
+     */
+    private void dispatch(final Connection connection, final ByteBuffer frame) {
+        final byte operation = frame.get();
+        final long requestId = frame.getLong();
+        final Runnable request;
+        try {
+            switch (operation) {
+                case BinaryProtocol.TRANSFER: {
+                    final String sender = BinaryProtocol.getString(frame);
+                    final String receiver = BinaryProtocol.getString(frame);
+                    final BigDecimal amount = BinaryProtocol.getDecimal(frame);
+                    request = () -> transfer(connection, requestId, sender, receiver, amount);
+                    break;
+                }
+                case BinaryProtocol.BALANCE: {
+                    final String accountNo = BinaryProtocol.getString(frame);
+                    request = () -> balance(connection, requestId, accountNo);
+                    break;
+                }
+                case BinaryProtocol.CREATE: {
+                    final String accountNo = BinaryProtocol.getString(frame);
+                    final BigDecimal balance = BinaryProtocol.getDecimal(frame);
+                    request = () -> create(connection, requestId, accountNo, balance);
+                    break;
+                }
+                default:
+                    connection.respond(requestId, BinaryProtocol.Status.INVALID, "Unknown operation " + operation);
+                    return;
+            }
+        } catch (final BufferUnderflowException | IllegalArgumentException exception) {
+            connection.respond(requestId, BinaryProtocol.Status.INVALID, "Malformed request");
+            return;
+        }
+        try {
+            workers.execute(request);
+        } catch (final RejectedExecutionException exception) {
+            connection.respond(requestId, BinaryProtocol.Status.ERROR, "The server is shutting down");
+        }
+    }
+
+    private void transfer(final Connection connection, final long requestId,
+                          final String sender, final String receiver, final BigDecimal amount) {
+        if (sender.isEmpty() || receiver.isEmpty() || amount.signum() <= 0) {
+            connection.respond(requestId, BinaryProtocol.Status.INVALID,
+                    "Accounts may not be empty and the amount must be positive");
+            return;
+        }
+        transferService.transferAsync(sender, receiver, amount).whenComplete((ignored, throwable) -> {
+            if (throwable == null) {
+                connection.respond(requestId, BinaryProtocol.Status.OK, null);
+                return;
+            }
+            final Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+            if (cause instanceof TransferException) {
+                rejections.reject("Transfer", cause.getMessage());
+                connection.respond(requestId, BinaryProtocol.Status.REJECTED, cause.getMessage());
+            } else {
+                log.error("Transfer failed", cause);
+                connection.respond(requestId, BinaryProtocol.Status.ERROR, "Internal error");
+            }
+        });
+    }
+
+    private void balance(final Connection connection, final long requestId, final String accountNo) {
+        try {
+            final Optional<Account> account = repository.snapshot(accountNo);
+            if (account.isPresent()) {
+                connection.respond(requestId, account.get().getBalance());
+            } else {
+                connection.respond(requestId, BinaryProtocol.Status.NOT_FOUND, UNKNOWN_ACCOUNT);
+            }
+        } catch (final RuntimeException exception) {
+            // Every request has to be answered, or its slot of the requests in flight is never released.
+            log.error("Balance query failed", exception);
+            connection.respond(requestId, BinaryProtocol.Status.ERROR, "Internal error");
+        }
+    }
+
+    private void create(final Connection connection, final long requestId,
+                        final String accountNo, final BigDecimal balance) {
+        try {
+            repository.create(accountNo, balance);
+            connection.respond(requestId, BinaryProtocol.Status.OK, null);
+        } catch (final AccountException exception) {
+            rejections.reject("Account creation", exception.getMessage());
+            connection.respond(requestId, BinaryProtocol.Status.REJECTED, exception.getMessage());
+        } catch (final RuntimeException exception) {
+            log.error("Account creation failed", exception);
+            connection.respond(requestId, BinaryProtocol.Status.ERROR, "Internal error");
+        }
+    }
+
+    /**
+     * State of one client connection. The buffers and the count of requests in flight are only touched by the
+     * selector thread; workers only add to the queue of responses.
+     */
+    private final class Connection {
+
+        private final SocketChannel channel;
+        private final ByteBuffer input;
+        private final ByteBuffer output = ByteBuffer.allocateDirect(OUTPUT_BUFFER_BYTES);
+        private final Queue<ByteBuffer> responses = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean flushScheduled = new AtomicBoolean();
+        private SelectionKey key;
+        private ByteBuffer partial;
+        private int inFlight;
+        private boolean paused;
+
+        private Connection(final SocketChannel channel) {
+            this.channel = channel;
+            this.input = ByteBuffer.allocate(BinaryProtocol.LENGTH_BYTES + maxFrameBytes);
+        }
+
+        private void read() {
+            try {
+                if (channel.read(input) < 0) {
+                    close();
+                    return;
+                }
+            } catch (final IOException exception) {
+                close();
+                return;
+            }
+            decode();
+        }
+
+        /**
+         * Dispatches the complete frames in the input buffer until the limit of requests in flight is reached; the
+         * frames after that stay in the buffer and reading is paused.
+         */
+        private void decode() {
+            input.flip();
+            while (inFlight < maxInFlight && input.remaining() >= BinaryProtocol.LENGTH_BYTES) {
+                final int length = input.getInt(input.position());
+                if (length < BinaryProtocol.HEADER_BYTES || length > maxFrameBytes) {
+                    // The stream cannot be resynchronized after a bad length.
+                    log.warn("Closing binary protocol connection after a frame of {} bytes", length);
+                    close();
+                    return;
+                }
+                if (input.remaining() < BinaryProtocol.LENGTH_BYTES + length) {
+                    break;
+                }
+                final int end = input.position() + BinaryProtocol.LENGTH_BYTES + length;
+                input.position(input.position() + BinaryProtocol.LENGTH_BYTES);
+                final ByteBuffer frame = input.slice();
+                frame.limit(length);
+                inFlight++;
+                dispatch(this, frame);
+                input.position(end);
+            }
+            input.compact();
+            if (inFlight == maxInFlight && !paused) {
+                paused = true;
+                updateInterest();
+            }
+        }
+
+        private void respond(final long requestId, final BigDecimal balance) {
+            final byte[] unscaled = BinaryProtocol.unscaled(balance);
+            final ByteBuffer response = header(requestId, BinaryProtocol.Status.OK,
+                    BinaryProtocol.decimalBytes(unscaled));
+            BinaryProtocol.putDecimal(response, balance.scale(), unscaled);
+            enqueue(response);
+        }
+
+        private void respond(final long requestId, final BinaryProtocol.Status status, final String message) {
+            if (message == null) {
+                enqueue(header(requestId, status, 0));
+                return;
+            }
+            final byte[] utf8 = BinaryProtocol.utf8(message);
+            final ByteBuffer response = header(requestId, status, BinaryProtocol.stringBytes(utf8));
+            BinaryProtocol.putString(response, utf8);
+            enqueue(response);
+        }
+
+        private ByteBuffer header(final long requestId, final BinaryProtocol.Status status, final int bodyBytes) {
+            final ByteBuffer response = ByteBuffer.allocate(
+                    BinaryProtocol.LENGTH_BYTES + BinaryProtocol.HEADER_BYTES + bodyBytes);
+            response.putInt(BinaryProtocol.HEADER_BYTES + bodyBytes);
+            response.put(status.code());
+            response.putLong(requestId);
+            return response;
+        }
+
+        private void enqueue(final ByteBuffer response) {
+            response.flip();
+            responses.add(response);
+            // The flag is cleared before the queue is drained, so a response added meanwhile schedules another flush.
+            if (flushScheduled.compareAndSet(false, true)) {
+                flushes.add(this);
+                selector.wakeup();
+            }
+        }
+
+        /**
+         * Copies as many queued responses as fit into the output buffer and writes them with one call, until the
+         * queue is empty or the socket does not take more; in the latter case the connection waits for the socket to
+         * become writable. Once the queue is empty, a paused connection resumes reading if few enough requests are
+         * still in flight.
+         */
+        private void write() {
+            if (!key.isValid()) {
+                return;
+            }
+            try {
+                while (true) {
+                    while (output.hasRemaining() && (partial != null || (partial = responses.poll()) != null)) {
+                        if (partial.remaining() <= output.remaining()) {
+                            output.put(partial);
+                            partial = null;
+                            inFlight--;
+                        } else {
+                            final int limit = partial.limit();
+                            partial.limit(partial.position() + output.remaining());
+                            output.put(partial);
+                            partial.limit(limit);
+                        }
+                    }
+                    output.flip();
+                    channel.write(output);
+                    final boolean written = !output.hasRemaining();
+                    output.compact();
+                    if (!written) {
+                        updateInterest();
+                        return;
+                    }
+                    if (partial == null && responses.isEmpty()) {
+                        if (paused && inFlight <= maxInFlight / 2) {
+                            paused = false;
+                            // The frames read before the pause come first; decoding them may pause again.
+                            decode();
+                        }
+                        updateInterest();
+                        return;
+                    }
+                }
+            } catch (final IOException exception) {
+                close();
+            }
+        }
+
+        private void updateInterest() {
+            if (!key.isValid()) {
+                return;
+            }
+            final boolean pending = output.position() > 0 || partial != null;
+            key.interestOps((paused ? 0 : SelectionKey.OP_READ) | (pending ? SelectionKey.OP_WRITE : 0));
+        }
+
+        private void close() {
+            key.cancel();
+            try {
+                channel.close();
+            } catch (final IOException exception) {
+                log.debug("Failed to close a binary protocol connection", exception);
+            }
+        }
+    }
+}
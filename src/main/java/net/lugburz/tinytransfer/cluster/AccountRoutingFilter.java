@@ -0,0 +1,91 @@
+package net.lugburz.tinytransfer.cluster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.PreMatching;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.PathSegment;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+
+/**
+ * Forwards the requests for a single account of another node, {@code GET /accounts/{accountNo}} and
+ * {@code GET /accounts/{accountNo}/transfers}, to that node and answers them with its response.
+ *
+ * <p>
+ * Requests which have been forwarded once are served where they arrive, so that nodes with differing views of the
+ * cluster never pass a request back and forth.
+ */
+@PreMatching
+public final class AccountRoutingFilter implements ContainerRequestFilter {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final Partitioner partitioner;
+    private final int self;
+    private final NodeClient client;
+
+    /**
+     * @param partitioner assigns the accounts to nodes
+     * @param self        the position of this node
+     * @param client      calls the other nodes
+     */
+    public AccountRoutingFilter(final Partitioner partitioner, final int self, final NodeClient client) {
+        this.partitioner = partitioner;
+        this.self = self;
+        this.client = client;
+    }
+
+    @Override
+    public void filter(final ContainerRequestContext request) {
+        if (!HttpMethod.GET.equals(request.getMethod()) || request.getHeaderString(NodeClient.FORWARDED) != null) {
+            return;
+        }
+        final String accountNo = accountNoOf(request.getUriInfo().getPathSegments());
+        if (accountNo == null) {
+            return;
+        }
+        final int node = partitioner.ownerOf(accountNo);
+        if (node == self) {
+            return;
+        }
+        final URI uri = request.getUriInfo().getRequestUri();
+        final String path = uri.getRawQuery() == null ? uri.getRawPath() : uri.getRawPath() + "?" + uri.getRawQuery();
+        try {
+            final NodeClient.Reply reply =
+                    client.forward(node, HttpMethod.GET, path, request.getHeaderString(HttpHeaders.ACCEPT));
+            request.abortWith(Response.status(reply.getStatus())
+                    .type(reply.getContentType())
+                    .entity(reply.getBody())
+                    .build());
+        } catch (final IOException exception) {
+            log.error("Failed to forward a request to node {}.", node, exception);
+            request.abortWith(Response.status(Response.Status.BAD_GATEWAY).build());
+        }
+    }
+
+    /**
+     * @return the account number of a request for a single account, or null for other requests
+     */
+    private static String accountNoOf(final List<PathSegment> segments) {
+        final int size = segments.size();
+        if (size < 2 || size > 3 || !"accounts".equals(segments.get(0).getPath())) {
+            return null;
+        }
+        final String accountNo = segments.get(1).getPath();
+        // GET /accounts/export lists the accounts of this node.
+        if (size == 2 && "export".equals(accountNo)) {
+            return null;
+        }
+        if (size == 3 && !"transfers".equals(segments.get(2).getPath())) {
+            return null;
+        }
+        return accountNo.isEmpty() ? null : accountNo;
+    }
+}
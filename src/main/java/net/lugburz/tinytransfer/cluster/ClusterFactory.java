@@ -0,0 +1,74 @@
+package net.lugburz.tinytransfer.cluster;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dropwizard.util.Duration;
+import io.dropwizard.validation.MinDuration;
+import io.dropwizard.validation.ValidationMethod;
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configuration of cluster mode, in which several nodes each hold the accounts of one range of account number hashes.
+ */
+@Getter
+@Setter
+public class ClusterFactory {
+
+    @JsonProperty
+    private boolean enabled = false;
+
+    /**
+     * Base URLs of all nodes, such as {@code http://10.0.0.2:8080}, in the same order on every node; the position of a
+     * node in the list determines its range of accounts.
+     */
+    @JsonProperty
+    @NotNull
+    private List<@NotEmpty String> nodes = new ArrayList<>();
+
+    /**
+     * Position of this node in {@link #nodes}.
+     */
+    @JsonProperty
+    @Min(0)
+    private int self = 0;
+
+    /**
+     * How long a call to another node may take to connect and to answer. A reservation whose preparation is not
+     * answered in time is aborted.
+     */
+    @JsonProperty
+    @NotNull
+    @MinDuration(value = 1, unit = TimeUnit.MILLISECONDS)
+    private Duration requestTimeout = Duration.seconds(2);
+
+    /**
+     * Time between two attempts to deliver decisions about reservations which another node has not acknowledged.
+     */
+    @JsonProperty
+    @NotNull
+    @MinDuration(value = 1, unit = TimeUnit.MILLISECONDS)
+    private Duration retryInterval = Duration.seconds(1);
+
+    @JsonIgnore
+    @ValidationMethod(message = "cluster.self must be the position of this node in cluster.nodes")
+    public boolean isSelfListed() {
+        return !enabled || self < nodes.size();
+    }
+
+    public Partitioner partitioner() {
+        return new Partitioner(nodes.size());
+    }
+
+    public NodeClient client(final ObjectMapper mapper) {
+        return new NodeClient(nodes, mapper, (int) requestTimeout.toMilliseconds());
+    }
+}
@@ -0,0 +1,113 @@
+package net.lugburz.tinytransfer.cluster;
+
+import net.lugburz.tinytransfer.transfer.BatchResult;
+import net.lugburz.tinytransfer.transfer.FailureReason;
+import net.lugburz.tinytransfer.transfer.Transfer;
+import net.lugburz.tinytransfer.transfer.TransferException;
+import net.lugburz.tinytransfer.transfer.TransferService;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.stream.Collectors;
+
+/**
+ * REST API through which the nodes of a cluster hand transfers to each other and agree on transfers between them.
+ * It is meant to be reachable by the other nodes only.
+ */
+@Path("/cluster")
+@Produces(MediaType.APPLICATION_JSON)
+@Consumes(MediaType.APPLICATION_JSON)
+public final class ClusterResource {
+
+    private final TransferService transferService;
+    private final IncomingCredits credits;
+
+    /**
+     * @param transferService performs transfers whose sender is held by this node
+     * @param credits         the credits prepared for receivers of this node
+     */
+    public ClusterResource(final TransferService transferService, final IncomingCredits credits) {
+        this.transferService = transferService;
+        this.credits = credits;
+    }
+
+    /**
+     * Performs a transfer whose sender is held by this node.
+     *
+     * @return HTTP 200 on successful transfer, HTTP 409 with the {@link RemoteRejection} if the transfer is rejected
+     */
+    @POST
+    @Path("/transfers")
+    public Response transfer(@NotNull @Valid final RemoteTransfer transfer) {
+        try {
+            transferService.transfer(transfer.getSenderAccNo(), transfer.getReceiverAccNo(), transfer.getAmount());
+            return Response.ok().build();
+        } catch (final TransferException exception) {
+            return conflict(exception.getReason());
+        }
+    }
+
+    /**
+     * Performs a batch whose accounts are all held by this node.
+     *
+     * @return HTTP 200 with the {@link BatchResult}
+     */
+    @POST
+    @Path("/batches")
+    public BatchResult transferAll(@NotNull @Valid final RemoteBatch batch) {
+        return transferService.transferAll(batch.getTransfers().stream()
+                .map(t -> new Transfer(t.getSenderAccNo(), t.getReceiverAccNo(), t.getAmount()))
+                .collect(Collectors.toList()), batch.getMode());
+    }
+
+    /**
+     * Prepares the credit of a transfer from another node.
+     *
+     * @return HTTP 200 if the credit is prepared, HTTP 409 if the receiver is unknown or the transfer has been aborted
+     */
+    @POST
+    @Path("/credits/{transferId}/prepare")
+    public Response prepareCredit(@PathParam("transferId") final String transferId,
+                                  @NotNull @Valid final RemoteTransfer transfer) {
+        if (!credits.prepare(transferId, transfer.getSenderAccNo(), transfer.getReceiverAccNo(),
+                transfer.getAmount())) {
+            return conflict(FailureReason.UNKNOWN_ACCOUNT);
+        }
+        return Response.ok().build();
+    }
+
+    /**
+     * Applies a prepared credit.
+     *
+     * @return HTTP 200, also if the credit has been applied before
+     */
+    @POST
+    @Path("/credits/{transferId}/commit")
+    public Response commitCredit(@PathParam("transferId") final String transferId) {
+        credits.commit(transferId);
+        return Response.ok().build();
+    }
+
+    /**
+     * Drops the credit of an aborted transfer.
+     *
+     * @return HTTP 200, also if the credit has not been prepared
+     */
+    @POST
+    @Path("/credits/{transferId}/abort")
+    public Response abortCredit(@PathParam("transferId") final String transferId) {
+        credits.abort(transferId);
+        return Response.ok().build();
+    }
+
+    private static Response conflict(final FailureReason reason) {
+        return Response.status(Response.Status.CONFLICT).entity(new RemoteRejection(reason)).build();
+    }
+}
@@ -0,0 +1,137 @@
+package net.lugburz.tinytransfer.cluster;
+
+import lombok.AllArgsConstructor;
+import net.lugburz.tinytransfer.account.AccountRepository;
+import net.lugburz.tinytransfer.ledger.Ledger;
+import net.lugburz.tinytransfer.transfer.StripedLockTransferService;
+import net.lugburz.tinytransfer.transfer.TransferException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The part of a transfer between nodes which is played by the node of the receiver: credits are prepared when the
+ * node of the sender has reserved the amount and applied or dropped when it has decided, see
+ * {@link TwoPhaseTransferService}.
+ *
+ * <p>
+ * A prepared credit holds no money, so it waits for the decision as long as it takes. Commits and aborts may be
+ * repeated: a credit is applied by the first commit which removes it. Aborted transfers are remembered for a while,
+ * so that a preparation which arrives after the abort of its transfer is refused rather than left waiting.
+ */
+public final class IncomingCredits {
+
+    // Far longer than any preparation can be under way, since the node of the sender gives up after its timeout.
+    private static final long ABORTED_RETENTION_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final AccountRepository repository;
+    private final StripedLockTransferService transferService;
+    private final Ledger ledger;
+    private final Map<String, RemoteTransfer> prepared = new ConcurrentHashMap<>();
+    private final Map<String, Long> aborted = new ConcurrentHashMap<>();
+    // Aborted transfers in the order of their abort, to forget them once they are old enough.
+    private final Queue<Abort> aborts = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param repository      the accounts of this node
+     * @param transferService applies the credits to the accounts
+     * @param ledger          records applied credits in the statement of the receiver
+     */
+    public IncomingCredits(final AccountRepository repository,
+                           final StripedLockTransferService transferService,
+                           final Ledger ledger) {
+        this.repository = repository;
+        this.transferService = transferService;
+        this.ledger = ledger;
+    }
+
+    /**
+     * Prepares a credit, unless its receiver is unknown or its transfer has been aborted.
+     *
+     * @param transferId    the id of the transfer, unique within the cluster
+     * @param senderAccNo   the account number of the sender, held by another node
+     * @param receiverAccNo the account number of the receiver
+     * @param amount        the amount of the transfer
+     * @return true if the credit is prepared
+     */
+    public boolean prepare(final String transferId, final String senderAccNo, final String receiverAccNo,
+                           final BigDecimal amount) {
+        if (aborted.containsKey(transferId) || !repository.lookup(receiverAccNo).isPresent()) {
+            return false;
+        }
+        prepared.putIfAbsent(transferId, new RemoteTransfer(senderAccNo, receiverAccNo, amount));
+        // An abort may have missed the credit between the check and the insertion.
+        if (aborted.containsKey(transferId)) {
+            prepared.remove(transferId);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Applies a prepared credit; does nothing if the credit has been applied already.
+     *
+     * @param transferId the id of the transfer
+     */
+    public void commit(final String transferId) {
+        final RemoteTransfer transfer = prepared.remove(transferId);
+        if (transfer == null) {
+            return;
+        }
+        try {
+            transferService.deposit(transfer.getReceiverAccNo(), transfer.getAmount());
+        } catch (final TransferException exception) {
+            // Only a reset can have removed the receiver since the preparation; its money is gone with it.
+            log.warn("Dropped the credit of transfer {} of {} to account {}: {}", transferId,
+                    transfer.getAmount(), transfer.getReceiverAccNo(), exception.getMessage());
+            return;
+        }
+        ledger.record(transfer.getSenderAccNo(), transfer.getReceiverAccNo(), transfer.getAmount());
+    }
+
+    /**
+     * Drops a credit, whether or not it has been prepared, and refuses later preparations of it.
+     *
+     * @param transferId the id of the transfer
+     */
+    public void abort(final String transferId) {
+        final long now = System.nanoTime();
+        if (aborted.putIfAbsent(transferId, now) == null) {
+            aborts.add(new Abort(transferId, now));
+        }
+        prepared.remove(transferId);
+        forgetAborts(now);
+    }
+
+    /**
+     * @return the number of credits which wait for the decision about their transfer
+     */
+    public int preparedCount() {
+        return prepared.size();
+    }
+
+    private void forgetAborts(final long now) {
+        for (Abort oldest = aborts.peek(); oldest != null && now - oldest.time > ABORTED_RETENTION_NANOS;
+             oldest = aborts.peek()) {
+            if (aborts.remove(oldest)) {
+                aborted.remove(oldest.transferId, oldest.time);
+            }
+        }
+    }
+
+    @AllArgsConstructor
+    private static final class Abort {
+
+        private final String transferId;
+
+        private final long time;
+    }
+}
@@ -0,0 +1,218 @@
+package net.lugburz.tinytransfer.cluster;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import net.lugburz.tinytransfer.account.Account;
+import net.lugburz.tinytransfer.account.AccountException;
+import net.lugburz.tinytransfer.transfer.BatchMode;
+import net.lugburz.tinytransfer.transfer.BatchResult;
+import net.lugburz.tinytransfer.transfer.Transfer;
+import net.lugburz.tinytransfer.transfer.TransferException;
+
+import javax.ws.rs.core.MediaType;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Calls the other nodes of the cluster over HTTP.
+ *
+ * <p>
+ * Connections are kept alive by {@link HttpURLConnection}, which pools at most {@code http.maxConnections} idle
+ * connections per node, 5 by default; more concurrent calls open and close connections of their own.
+ *
+ * <p>
+ * Every method throws an {@link IOException} if the node cannot be reached, does not answer within the request timeout
+ * or answers with an unexpected status. The call may or may not have taken effect on the node in that case.
+ */
+public final class NodeClient {
+
+    /**
+     * Request header which marks a request forwarded by another node, so that it is never forwarded again.
+     */
+    public static final String FORWARDED = "Cluster-Forwarded";
+
+    private static final int CONFLICT = 409;
+    private static final int UNPROCESSABLE_ENTITY = 422;
+
+    private final List<String> nodes;
+    private final ObjectMapper mapper;
+    private final int timeoutMillis;
+
+    /**
+     * @param nodes         the base URLs of all nodes
+     * @param mapper        serializes the requests and parses the responses
+     * @param timeoutMillis the timeout to connect and the timeout to wait for the response, each
+     */
+    public NodeClient(final List<String> nodes, final ObjectMapper mapper, final int timeoutMillis) {
+        this.nodes = nodes.stream()
+                .map(node -> node.endsWith("/") ? node.substring(0, node.length() - 1) : node)
+                .collect(Collectors.toList());
+        this.mapper = mapper;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Hands a transfer to the node which holds its sender.
+     *
+     * @throws TransferException if the node has rejected the transfer
+     */
+    public void transfer(final int node, final String senderAccNo, final String receiverAccNo,
+                         final BigDecimal amount) throws IOException {
+        final Reply reply = call(node, "POST", "/cluster/transfers",
+                mapper.writeValueAsBytes(new RemoteTransfer(senderAccNo, receiverAccNo, amount)), null);
+        if (reply.status == CONFLICT) {
+            throw TransferException.rejected(mapper.readValue(reply.body, RemoteRejection.class).getReason());
+        }
+        expectSuccess(node, reply);
+    }
+
+    /**
+     * Hands a batch to the node which holds all of its accounts.
+     *
+     * @return the result of the batch as applied by the node
+     */
+    public BatchResult transferAll(final int node, final List<Transfer> transfers,
+                                   final BatchMode mode) throws IOException {
+        final List<RemoteTransfer> remote = transfers.stream()
+                .map(t -> new RemoteTransfer(t.getSenderAccNo(), t.getReceiverAccNo(), t.getAmount()))
+                .collect(Collectors.toList());
+        final Reply reply = call(node, "POST", "/cluster/batches",
+                mapper.writeValueAsBytes(new RemoteBatch(mode, remote)), null);
+        expectSuccess(node, reply);
+        final JsonNode results = mapper.readTree(reply.body).path("results");
+        final List<String> errors = new ArrayList<>(transfers.size());
+        for (int i = 0; i < transfers.size(); i++) {
+            final JsonNode result = results.path(i);
+            errors.add(result.path("success").asBoolean() ? null : result.path("error").asText());
+        }
+        return BatchResult.of(mode, errors);
+    }
+
+    /**
+     * Asks the node of the receiver to prepare the credit of a transfer whose amount has been reserved.
+     *
+     * @return false if the node has refused, because the receiver is unknown or the transfer has been aborted already
+     */
+    public boolean prepareCredit(final int node, final String transferId, final String senderAccNo,
+                                 final String receiverAccNo, final BigDecimal amount) throws IOException {
+        final Reply reply = call(node, "POST", "/cluster/credits/" + transferId + "/prepare",
+                mapper.writeValueAsBytes(new RemoteTransfer(senderAccNo, receiverAccNo, amount)), null);
+        if (reply.status == CONFLICT) {
+            return false;
+        }
+        expectSuccess(node, reply);
+        return true;
+    }
+
+    /**
+     * Tells the node of the receiver to apply a prepared credit. Repeating the call has no further effect.
+     */
+    public void commitCredit(final int node, final String transferId) throws IOException {
+        expectSuccess(node, call(node, "POST", "/cluster/credits/" + transferId + "/commit", null, null));
+    }
+
+    /**
+     * Tells the node of the receiver to drop a credit, whether or not it has been prepared. Repeating the call has no
+     * further effect.
+     */
+    public void abortCredit(final int node, final String transferId) throws IOException {
+        expectSuccess(node, call(node, "POST", "/cluster/credits/" + transferId + "/abort", null, null));
+    }
+
+    /**
+     * Creates an account on the node which holds it.
+     *
+     * @throws AccountException if the node has rejected the account
+     */
+    public void createAccount(final int node, final String accountNo, final BigDecimal balance) throws IOException {
+        final Reply reply = call(node, "POST", "/accounts",
+                mapper.writeValueAsBytes(new Account(accountNo, balance)), null);
+        if (reply.status == HttpURLConnection.HTTP_BAD_REQUEST || reply.status == UNPROCESSABLE_ENTITY) {
+            final JsonNode error = mapper.readTree(reply.body);
+            throw new AccountException(error.has("message") ? error.path("message").asText()
+                    : error.path("errors").path(0).asText());
+        }
+        expectSuccess(node, reply);
+    }
+
+    /**
+     * Sends a request without a body to a node as it is and returns the response as it is.
+     *
+     * @param node   the position of the node
+     * @param method the HTTP method
+     * @param path   the raw path and query of the request, starting with a slash
+     * @param accept the accepted media types, or null
+     */
+    Reply forward(final int node, final String method, final String path, final String accept) throws IOException {
+        return call(node, method, path, null, accept);
+    }
+
+    private Reply call(final int node, final String method, final String path, final byte[] body,
+                       final String accept) throws IOException {
+        final HttpURLConnection connection = (HttpURLConnection) new URL(nodes.get(node) + path).openConnection();
+        connection.setConnectTimeout(timeoutMillis);
+        connection.setReadTimeout(timeoutMillis);
+        connection.setRequestMethod(method);
+        connection.setRequestProperty(FORWARDED, "true");
+        if (accept != null) {
+            connection.setRequestProperty("Accept", accept);
+        }
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", MediaType.APPLICATION_JSON);
+            connection.setFixedLengthStreamingMode(body.length);
+            try (OutputStream output = connection.getOutputStream()) {
+                output.write(body);
+            }
+        }
+        final int status = connection.getResponseCode();
+        // Reading the response to its end returns the connection to the keep-alive pool.
+        try (InputStream input = status < HttpURLConnection.HTTP_BAD_REQUEST
+                ? connection.getInputStream() : connection.getErrorStream()) {
+            return new Reply(status, connection.getContentType(), readAll(input));
+        }
+    }
+
+    private static void expectSuccess(final int node, final Reply reply) throws IOException {
+        if (reply.status / 100 != 2) {
+            throw new IOException("Node " + node + " answered with HTTP " + reply.status + ".");
+        }
+    }
+
+    private static byte[] readAll(final InputStream input) throws IOException {
+        if (input == null) {
+            return new byte[0];
+        }
+        final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[4096];
+        for (int read = input.read(buffer); read >= 0; read = input.read(buffer)) {
+            output.write(buffer, 0, read);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Response of a node.
+     */
+    @Getter
+    @AllArgsConstructor(access = AccessLevel.PRIVATE)
+    static final class Reply {
+
+        private final int status;
+
+        private final String contentType;
+
+        private final byte[] body;
+    }
+}
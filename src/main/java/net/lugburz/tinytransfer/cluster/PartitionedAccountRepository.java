@@ -0,0 +1,138 @@
+package net.lugburz.tinytransfer.cluster;
+
+import net.lugburz.tinytransfer.account.Account;
+import net.lugburz.tinytransfer.account.AccountException;
+import net.lugburz.tinytransfer.account.AccountRepository;
+import net.lugburz.tinytransfer.account.Consistency;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BiConsumer;
+
+/**
+ * Account repository decorator for one node of a cluster, which creates every account on the node that holds it.
+ *
+ * <p>
+ * All other operations, reads included, only see the accounts of this node: an account of another node is unknown
+ * here. Requests for single accounts are forwarded to their node before they reach the repository, see
+ * {@link AccountRoutingFilter}.
+ */
+public final class PartitionedAccountRepository implements AccountRepository {
+
+    private final AccountRepository local;
+    private final Partitioner partitioner;
+    private final int self;
+    private final NodeClient client;
+
+    /**
+     * @param local       the accounts of this node
+     * @param partitioner assigns the accounts to nodes
+     * @param self        the position of this node
+     * @param client      calls the other nodes
+     */
+    public PartitionedAccountRepository(final AccountRepository local,
+                                        final Partitioner partitioner,
+                                        final int self,
+                                        final NodeClient client) {
+        this.local = local;
+        this.partitioner = partitioner;
+        this.self = self;
+        this.client = client;
+    }
+
+    @Override
+    public Optional<Account> lookup(final String accountNo) {
+        return local.lookup(accountNo);
+    }
+
+    @Override
+    public Optional<Account> snapshot(final String accountNo) {
+        return local.snapshot(accountNo);
+    }
+
+    @Override
+    public List<Account> snapshotAll(final List<String> accountNos) {
+        return local.snapshotAll(accountNos);
+    }
+
+    /**
+     * Creates the account on this node or on the node which holds it.
+     *
+     * @throws UncheckedIOException if the account belongs to another node which did not answer in time; the account
+     *                              may or may not have been created
+     */
+    @Override
+    public void create(final String accountNo, final BigDecimal balance) {
+        final int node = accountNo == null ? self : partitioner.ownerOf(accountNo);
+        if (node == self) {
+            local.create(accountNo, balance);
+            return;
+        }
+        try {
+            client.createAccount(node, accountNo, balance);
+        } catch (final IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    /**
+     * Creates the accounts of this node at once and the accounts of other nodes one by one.
+     */
+    @Override
+    public Map<Integer, String> createAll(final List<Account> accounts) {
+        final List<Account> owned = new ArrayList<>(accounts.size());
+        final List<Integer> positions = new ArrayList<>(accounts.size());
+        final Map<Integer, String> errors = new HashMap<>();
+        for (int i = 0; i < accounts.size(); i++) {
+            final Account account = accounts.get(i);
+            if (account.getAccountNo() == null || partitioner.ownerOf(account.getAccountNo()) == self) {
+                owned.add(account);
+                positions.add(i);
+                continue;
+            }
+            try {
+                create(account.getAccountNo(), account.getBalance(), account.getCurrency());
+            } catch (final AccountException | UncheckedIOException exception) {
+                errors.put(i, exception.getMessage());
+            }
+        }
+        local.createAll(owned).forEach((position, error) -> errors.put(positions.get(position), error));
+        return errors;
+    }
+
+    @Override
+    public void forEachBalance(final BiConsumer<String, BigDecimal> action) {
+        local.forEachBalance(action);
+    }
+
+    @Override
+    public void clear() {
+        local.clear();
+    }
+
+    @Override
+    public int size() {
+        return local.size();
+    }
+
+    @Override
+    public BigDecimal totalBalance() {
+        return local.totalBalance();
+    }
+
+    @Override
+    public Consistency checkConsistency() {
+        return local.checkConsistency();
+    }
+
+    @Override
+    public Consistency verifyConsistency() {
+        return local.verifyConsistency();
+    }
+}
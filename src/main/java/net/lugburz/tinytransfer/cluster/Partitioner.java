@@ -0,0 +1,52 @@
+package net.lugburz.tinytransfer.cluster;
+
+/**
+ * Assigns every account to the node which holds it.
+ *
+ * <p>
+ * The 32-bit hash space of account numbers is cut into one contiguous range per node, of equal size. The hash code of
+ * the account number is mixed first, so that consecutive account numbers spread over all nodes.
+ */
+public final class Partitioner {
+
+    private final int nodes;
+
+    /**
+     * @param nodes the number of nodes
+     */
+    public Partitioner(final int nodes) {
+        if (nodes < 1) {
+            throw new IllegalArgumentException("A cluster needs at least one node.");
+        }
+        this.nodes = nodes;
+    }
+
+    /**
+     * @param accountNo the account number, may not be null
+     * @return the position of the node which holds the account
+     */
+    public int ownerOf(final String accountNo) {
+        final long hash = mix(accountNo.hashCode()) & 0xFFFFFFFFL;
+        return (int) ((hash * nodes) >>> 32);
+    }
+
+    /**
+     * @return the number of nodes
+     */
+    public int size() {
+        return nodes;
+    }
+
+    /**
+     * The finalizer of MurmurHash3, which lets every bit of the input affect the upper bits that pick the range.
+     */
+    private static int mix(final int hash) {
+        int h = hash;
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
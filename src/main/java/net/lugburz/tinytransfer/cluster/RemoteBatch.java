@@ -0,0 +1,32 @@
+package net.lugburz.tinytransfer.cluster;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import net.lugburz.tinytransfer.transfer.BatchMode;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import java.util.List;
+
+/**
+ * DTO for a batch handed to the node which holds all of its accounts.
+ */
+@Getter
+@Setter
+@NoArgsConstructor(access = AccessLevel.PACKAGE)
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+final class RemoteBatch {
+
+    @JsonProperty
+    @NotNull
+    private BatchMode mode;
+
+    @JsonProperty
+    @NotEmpty
+    private List<@NotNull @Valid RemoteTransfer> transfers;
+}
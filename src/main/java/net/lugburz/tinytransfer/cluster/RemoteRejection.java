@@ -0,0 +1,22 @@
+package net.lugburz.tinytransfer.cluster;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import net.lugburz.tinytransfer.transfer.FailureReason;
+
+/**
+ * DTO for the reason why another node has rejected a transfer or the preparation of a credit.
+ */
+@Getter
+@Setter
+@NoArgsConstructor(access = AccessLevel.PACKAGE)
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+final class RemoteRejection {
+
+    @JsonProperty
+    private FailureReason reason;
+}
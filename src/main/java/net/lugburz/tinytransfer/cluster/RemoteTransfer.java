@@ -0,0 +1,37 @@
+package net.lugburz.tinytransfer.cluster;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Positive;
+import java.math.BigDecimal;
+
+/**
+ * DTO for a transfer passed between nodes: a transfer handed to the node of its sender, or the credit of a transfer
+ * prepared on the node of its receiver.
+ */
+@Getter
+@Setter
+@NoArgsConstructor(access = AccessLevel.PACKAGE)
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+final class RemoteTransfer {
+
+    @JsonProperty
+    @NotEmpty
+    private String senderAccNo;
+
+    @JsonProperty
+    @NotEmpty
+    private String receiverAccNo;
+
+    @JsonProperty
+    @NotNull
+    @Positive
+    private BigDecimal amount;
+}
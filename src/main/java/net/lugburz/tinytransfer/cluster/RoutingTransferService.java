@@ -0,0 +1,117 @@
+package net.lugburz.tinytransfer.cluster;
+
+import net.lugburz.tinytransfer.transfer.BatchMode;
+import net.lugburz.tinytransfer.transfer.BatchResult;
+import net.lugburz.tinytransfer.transfer.FailureReason;
+import net.lugburz.tinytransfer.transfer.Transfer;
+import net.lugburz.tinytransfer.transfer.TransferException;
+import net.lugburz.tinytransfer.transfer.TransferService;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Transfer service decorator which performs every transfer on the node of its sender: transfers whose sender is held
+ * by another node are handed to that node, the others are passed to the delegate.
+ *
+ * <p>
+ * A batch whose accounts are all held by one node is performed by that node as a whole. A batch which spans several
+ * nodes is performed transfer by transfer if it is {@link BatchMode#BEST_EFFORT}; if it is {@link BatchMode#ATOMIC},
+ * it is rejected, since nodes only agree on single transfers.
+ */
+public final class RoutingTransferService implements TransferService {
+
+    static final String ATOMIC_BATCH_SPANS_NODES =
+            "Money transfer failed: An atomic batch may only contain accounts of one node.";
+
+    private final TransferService delegate;
+    private final Partitioner partitioner;
+    private final int self;
+    private final NodeClient client;
+
+    /**
+     * @param delegate    performs the transfers whose sender is held by this node
+     * @param partitioner assigns the accounts to nodes
+     * @param self        the position of this node
+     * @param client      calls the other nodes
+     */
+    public RoutingTransferService(final TransferService delegate,
+                                  final Partitioner partitioner,
+                                  final int self,
+                                  final NodeClient client) {
+        this.delegate = delegate;
+        this.partitioner = partitioner;
+        this.self = self;
+        this.client = client;
+    }
+
+    /**
+     * @throws UncheckedIOException if the transfer has been handed to another node which did not answer in time; the
+     *                              transfer may or may not have been performed
+     */
+    @Override
+    public void transfer(final String senderAccNo, final String receiverAccNo, final BigDecimal amount) {
+        final int node = partitioner.ownerOf(senderAccNo);
+        if (node == self) {
+            delegate.transfer(senderAccNo, receiverAccNo, amount);
+            return;
+        }
+        if (amount.compareTo(BigDecimal.ZERO) <= 0) {
+            throw TransferException.rejected(FailureReason.INVALID_AMOUNT);
+        }
+        try {
+            client.transfer(node, senderAccNo, receiverAccNo, amount);
+        } catch (final IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> transferAsync(final String senderAccNo,
+                                                 final String receiverAccNo,
+                                                 final BigDecimal amount) {
+        if (partitioner.ownerOf(senderAccNo) == self) {
+            return delegate.transferAsync(senderAccNo, receiverAccNo, amount);
+        }
+        return TransferService.super.transferAsync(senderAccNo, receiverAccNo, amount);
+    }
+
+    @Override
+    public BatchResult transferAll(final List<Transfer> transfers, final BatchMode mode) {
+        final BitSet nodes = new BitSet(partitioner.size());
+        for (final Transfer transfer : transfers) {
+            nodes.set(partitioner.ownerOf(transfer.getSenderAccNo()));
+            nodes.set(partitioner.ownerOf(transfer.getReceiverAccNo()));
+        }
+        if (nodes.cardinality() == 1) {
+            final int node = nodes.nextSetBit(0);
+            if (node == self) {
+                return delegate.transferAll(transfers, mode);
+            }
+            try {
+                return client.transferAll(node, transfers, mode);
+            } catch (final IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+        }
+        if (mode == BatchMode.ATOMIC) {
+            return BatchResult.of(mode, Collections.nCopies(transfers.size(), ATOMIC_BATCH_SPANS_NODES));
+        }
+        final List<String> errors = new ArrayList<>(transfers.size());
+        for (final Transfer transfer : transfers) {
+            try {
+                transfer(transfer.getSenderAccNo(), transfer.getReceiverAccNo(), transfer.getAmount());
+                errors.add(null);
+            } catch (final TransferException | UncheckedIOException exception) {
+                errors.add(exception.getMessage());
+            }
+        }
+        return BatchResult.of(mode, errors);
+    }
+}
@@ -0,0 +1,206 @@
+package net.lugburz.tinytransfer.cluster;
+
+import io.dropwizard.lifecycle.Managed;
+import net.lugburz.tinytransfer.transfer.BatchMode;
+import net.lugburz.tinytransfer.transfer.BatchResult;
+import net.lugburz.tinytransfer.transfer.FailureReason;
+import net.lugburz.tinytransfer.transfer.StripedLockTransferService;
+import net.lugburz.tinytransfer.transfer.Transfer;
+import net.lugburz.tinytransfer.transfer.TransferException;
+import net.lugburz.tinytransfer.transfer.TransferService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Transfer service for the node of the sender, which transfers to accounts of other nodes in two phases.
+ *
+ * <p>
+ * The amount is first reserved by withdrawing it from the sender, and the node of the receiver is asked to prepare the
+ * credit, see {@link IncomingCredits}. If it agrees, the transfer is decided and the node of the receiver is told to
+ * apply the credit; if it refuses or does not answer within the request timeout, the amount is refunded to the sender
+ * and the node of the receiver is told to drop the credit. A decision which the node of the receiver has not
+ * acknowledged is delivered again by a background task, until it is: the transfer itself has succeeded or failed for
+ * the caller either way.
+ *
+ * <p>
+ * Transfers whose receiver is held by this node, as well as batches, are performed by the local transfer service
+ * alone. The sender of every transfer must be held by this node, see {@link RoutingTransferService}.
+ */
+public final class TwoPhaseTransferService implements TransferService, Managed {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final StripedLockTransferService local;
+    private final Partitioner partitioner;
+    private final int self;
+    private final NodeClient client;
+    private final long retryIntervalMillis;
+    private final Map<String, Reservation> undelivered = new ConcurrentHashMap<>();
+    // Unique across restarts, so that nodes never mistake a new transfer for one they still remember.
+    private final String idPrefix;
+    private final AtomicLong sequence = new AtomicLong();
+
+    private ScheduledExecutorService recovery;
+
+    /**
+     * @param local               transfers between accounts of this node and reserves and refunds amounts
+     * @param partitioner         assigns the accounts to nodes
+     * @param self                the position of this node
+     * @param client              calls the other nodes
+     * @param retryIntervalMillis the time between two attempts to deliver unacknowledged decisions
+     */
+    public TwoPhaseTransferService(final StripedLockTransferService local,
+                                   final Partitioner partitioner,
+                                   final int self,
+                                   final NodeClient client,
+                                   final long retryIntervalMillis) {
+        this.local = local;
+        this.partitioner = partitioner;
+        this.self = self;
+        this.client = client;
+        this.retryIntervalMillis = retryIntervalMillis;
+        this.idPrefix = self + "-" + Long.toString(System.currentTimeMillis(), 36) + "-";
+    }
+
+    /**
+     * @throws TransferException    on failure to transfer due to unknown sender or receiver account, insufficient
+     *                              funds or an invalid amount
+     * @throws UncheckedIOException if the node of the receiver has not prepared the credit in time; the amount has
+     *                              been refunded to the sender
+     */
+    @Override
+    public void transfer(final String senderAccNo, final String receiverAccNo, final BigDecimal amount) {
+        final int node = partitioner.ownerOf(receiverAccNo);
+        if (node == self) {
+            local.transfer(senderAccNo, receiverAccNo, amount);
+            return;
+        }
+
+        local.withdraw(senderAccNo, amount);
+        final Reservation reservation = new Reservation(idPrefix + sequence.incrementAndGet(), node, senderAccNo,
+                amount);
+        final boolean prepared;
+        try {
+            prepared = client.prepareCredit(node, reservation.transferId, senderAccNo, receiverAccNo, amount);
+        } catch (final IOException exception) {
+            abort(reservation);
+            throw new UncheckedIOException("Node " + node + " did not prepare the credit of the transfer.", exception);
+        }
+        if (!prepared) {
+            abort(reservation);
+            throw TransferException.rejected(FailureReason.UNKNOWN_ACCOUNT);
+        }
+        reservation.committed = true;
+        deliver(reservation);
+    }
+
+    /**
+     * Performs a batch between accounts of this node.
+     */
+    @Override
+    public BatchResult transferAll(final List<Transfer> transfers, final BatchMode mode) {
+        return local.transferAll(transfers, mode);
+    }
+
+    /**
+     * @return the number of decisions which the nodes of the receivers have not acknowledged yet
+     */
+    public int undeliveredCount() {
+        return undelivered.size();
+    }
+
+    @Override
+    public void start() {
+        recovery = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "cluster-recovery");
+            thread.setDaemon(true);
+            return thread;
+        });
+        recovery.scheduleWithFixedDelay(this::redeliver, retryIntervalMillis, retryIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() throws InterruptedException {
+        recovery.shutdown();
+        recovery.awaitTermination(1, TimeUnit.MINUTES);
+        if (!undelivered.isEmpty()) {
+            log.warn("Stopped with {} decisions about transfers to other nodes undelivered.", undelivered.size());
+        }
+    }
+
+    /**
+     * Delivers every decision which has not been acknowledged again; runs in the background.
+     */
+    void redeliver() {
+        for (final Reservation reservation : undelivered.values()) {
+            if (tryDeliver(reservation)) {
+                undelivered.remove(reservation.transferId);
+            }
+        }
+    }
+
+    /**
+     * Refunds the sender and tells the node of the receiver to drop the credit.
+     */
+    private void abort(final Reservation reservation) {
+        local.deposit(reservation.senderAccNo, reservation.amount);
+        deliver(reservation);
+    }
+
+    /**
+     * Tells the node of the receiver the decision about a reservation, or keeps it for the recovery task.
+     */
+    private void deliver(final Reservation reservation) {
+        if (!tryDeliver(reservation)) {
+            undelivered.put(reservation.transferId, reservation);
+        }
+    }
+
+    private boolean tryDeliver(final Reservation reservation) {
+        try {
+            if (reservation.committed) {
+                client.commitCredit(reservation.node, reservation.transferId);
+            } else {
+                client.abortCredit(reservation.node, reservation.transferId);
+            }
+            return true;
+        } catch (final IOException | RuntimeException exception) {
+            log.warn("Failed to deliver the decision about transfer {} to node {}: {}", reservation.transferId,
+                    reservation.node, exception.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * An amount withdrawn from a sender of this node for a receiver of another node.
+     */
+    private static final class Reservation {
+
+        private final String transferId;
+        private final int node;
+        private final String senderAccNo;
+        private final BigDecimal amount;
+        // Set once the node of the receiver has prepared the credit; read by the recovery task after publication.
+        private volatile boolean committed;
+
+        private Reservation(final String transferId, final int node, final String senderAccNo,
+                            final BigDecimal amount) {
+            this.transferId = transferId;
+            this.node = node;
+            this.senderAccNo = senderAccNo;
+            this.amount = amount;
+        }
+    }
+}
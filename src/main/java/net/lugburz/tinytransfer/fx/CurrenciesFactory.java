@@ -0,0 +1,44 @@
+package net.lugburz.tinytransfer.fx;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Currency;
+
+/**
+ * Configuration of accounts in several currencies and of the exchange rates between them.
+ *
+ * <p>
+ * Transfers between such accounts are performed by the {@code InMemoryTransferService}, which holds no lock across a
+ * batch: reads of single accounts may observe a batch part-way, only snapshot reads of several accounts may not.
+ */
+@Getter
+@Setter
+public class CurrenciesFactory {
+
+    @JsonProperty
+    private boolean enabled = false;
+
+    /**
+     * Currency of the accounts which are created without one.
+     */
+    @JsonProperty
+    @NotNull
+    private Currency defaultCurrency = Currency.getInstance("EUR");
+
+    /**
+     * File of exchange rates in the format of {@link ExchangeRates}; reloaded by {@link ReloadExchangeRatesTask}.
+     */
+    @JsonProperty
+    @NotEmpty
+    private String ratesFile = "data/exchange-rates.txt";
+
+    public ExchangeRateTable build() throws IOException {
+        return ExchangeRateTable.load(Paths.get(ratesFile));
+    }
+}
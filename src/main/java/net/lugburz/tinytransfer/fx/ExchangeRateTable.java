@@ -0,0 +1,76 @@
+package net.lugburz.tinytransfer.fx;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * The current {@link ExchangeRates}, which can be replaced while transfers convert amounts.
+ *
+ * <p>
+ * A reload reads the file into a new table and publishes it with a single volatile write, so readers never take a
+ * lock and a transfer or batch converts all of its amounts at the rates of one table. A file which fails to load
+ * leaves the current table in place.
+ */
+public final class ExchangeRateTable {
+
+    private final Path file;
+    private volatile ExchangeRates current;
+
+    private ExchangeRateTable(final Path file, final ExchangeRates rates) {
+        this.file = file;
+        this.current = rates;
+    }
+
+    /**
+     * Loads the rates from a file which can later be reloaded.
+     *
+     * @param file the file, in the format of {@link ExchangeRates}
+     * @return the table
+     * @throws IOException if the file cannot be read or contains an invalid line
+     */
+    public static ExchangeRateTable load(final Path file) throws IOException {
+        return new ExchangeRateTable(file, ExchangeRates.load(file));
+    }
+
+    /**
+     * Creates a table without a file, which only changes through {@link #replace}.
+     *
+     * @param rates the initial rates
+     * @return the table
+     */
+    public static ExchangeRateTable of(final ExchangeRates rates) {
+        return new ExchangeRateTable(null, rates);
+    }
+
+    /**
+     * @return the current rates
+     */
+    public ExchangeRates current() {
+        return current;
+    }
+
+    /**
+     * Reads the file again and replaces the current rates with its content.
+     *
+     * @return the new rates
+     * @throws IOException if the file cannot be read or contains an invalid line; the current rates stay in place
+     * @throws IllegalStateException if the table has no file
+     */
+    public ExchangeRates reload() throws IOException {
+        if (file == null) {
+            throw new IllegalStateException("The exchange rates were not loaded from a file.");
+        }
+        final ExchangeRates rates = ExchangeRates.load(file);
+        current = rates;
+        return rates;
+    }
+
+    /**
+     * Replaces the current rates.
+     *
+     * @param rates the new rates
+     */
+    public void replace(final ExchangeRates rates) {
+        current = rates;
+    }
+}
@@ -0,0 +1,198 @@
+package net.lugburz.tinytransfer.fx;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable table of exchange rates between pairs of currencies.
+ *
+ * <p>
+ * Each rate is kept as a {@code long} with {@value #RATE_SCALE} fractional digits, next to the largest amount whose
+ * product with it fits into a {@code long}. Converting an amount of up to 18 digits is then one multiplication and one
+ * division by a power of ten in {@code long} arithmetic; only larger amounts fall back to {@link BigDecimal}. The
+ * result is rounded half-even to the fractional digits of the target currency.
+ * <p>
+ * The file format has one rate per line: the source currency, the target currency and the amount of the target
+ * currency one unit of the source currency buys, such as {@code EUR USD 1.0842}. Rates are not inverted, so each
+ * direction needs its own line. Blank lines and lines starting with {@code #} are skipped.
+ */
+public final class ExchangeRates {
+
+    /**
+     * A table without any rate.
+     */
+    public static final ExchangeRates NONE = new ExchangeRates(Collections.emptyMap(), 0);
+
+    /**
+     * Highest number of fractional digits of a rate.
+     */
+    public static final int RATE_SCALE = 9;
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+    // The unscaled value of an amount with at most this many digits fits into a long.
+    private static final int MAX_LONG_DIGITS = 18;
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final Map<Currency, Map<Currency, Rate>> rates;
+    private final int size;
+
+    private ExchangeRates(final Map<Currency, Map<Currency, Rate>> rates, final int size) {
+        this.rates = rates;
+        this.size = size;
+    }
+
+    /**
+     * Reads a table from a file.
+     *
+     * @param file the file, in the format described above
+     * @return the table
+     * @throws IOException if the file cannot be read or contains an invalid line
+     */
+    public static ExchangeRates load(final Path file) throws IOException {
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return parse(reader, file.toString());
+        }
+    }
+
+    /**
+     * Reads a table in the file format described above.
+     *
+     * @param reader the lines of the table
+     * @param source the name of the source, for error messages
+     * @return the table
+     * @throws IOException if reading fails or a line is invalid
+     */
+    public static ExchangeRates parse(final Reader reader, final String source) throws IOException {
+        final BufferedReader lines = new BufferedReader(reader);
+        final Map<Currency, Map<Currency, Rate>> rates = new HashMap<>();
+        int size = 0;
+        int lineNo = 0;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            lineNo++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            final String[] fields = line.split("\\s+");
+            try {
+                if (fields.length != 3) {
+                    throw new IllegalArgumentException("expected source currency, target currency and rate");
+                }
+                final Currency from = currency(fields[0]);
+                final Currency to = currency(fields[1]);
+                if (from.equals(to)) {
+                    throw new IllegalArgumentException("source and target currency are the same");
+                }
+                final Rate rate = new Rate(new BigDecimal(fields[2]), to.getDefaultFractionDigits());
+                if (rates.computeIfAbsent(from, key -> new HashMap<>()).putIfAbsent(to, rate) != null) {
+                    throw new IllegalArgumentException("duplicate rate from " + from + " to " + to);
+                }
+                size++;
+            } catch (final IllegalArgumentException | ArithmeticException exception) {
+                throw new IOException("Invalid exchange rate in line " + lineNo + " of " + source + ": "
+                        + exception.getMessage(), exception);
+            }
+        }
+        return new ExchangeRates(rates, size);
+    }
+
+    /**
+     * Converts an amount from one currency to another.
+     *
+     * @param amount the amount in the source currency, may not be negative
+     * @param from   the source currency
+     * @param to     the target currency, different from the source currency
+     * @return the amount in the target currency, rounded to its fractional digits, or null if the table has no rate
+     * from the source to the target currency
+     */
+    public BigDecimal convert(final BigDecimal amount, final Currency from, final Currency to) {
+        final Map<Currency, Rate> targets = rates.get(from);
+        final Rate rate = targets == null ? null : targets.get(to);
+        return rate == null ? null : rate.convert(amount);
+    }
+
+    /**
+     * @return the number of rates
+     */
+    public int size() {
+        return size;
+    }
+
+    private static Currency currency(final String code) {
+        final Currency currency;
+        try {
+            currency = Currency.getInstance(code);
+        } catch (final IllegalArgumentException exception) {
+            throw new IllegalArgumentException("unknown currency " + code);
+        }
+        if (currency.getDefaultFractionDigits() < 0) {
+            throw new IllegalArgumentException(code + " has no minor unit");
+        }
+        return currency;
+    }
+
+    /**
+     * The rate from one currency to another, precomputed for conversions.
+     */
+    private static final class Rate {
+
+        private final BigDecimal decimal;
+        private final long fixed;
+        // Largest unscaled amount whose product with the fixed-point rate does not overflow.
+        private final long maxUnscaled;
+        private final int targetScale;
+
+        private Rate(final BigDecimal decimal, final int targetScale) {
+            if (decimal.signum() <= 0) {
+                throw new IllegalArgumentException("rate is not greater than zero");
+            }
+            final BigDecimal normalized = decimal.stripTrailingZeros();
+            if (normalized.scale() > RATE_SCALE) {
+                throw new IllegalArgumentException("rate has more than " + RATE_SCALE + " fractional digits");
+            }
+            this.decimal = normalized;
+            this.fixed = normalized.setScale(RATE_SCALE).unscaledValue().longValueExact();
+            this.maxUnscaled = Long.MAX_VALUE / fixed;
+            this.targetScale = targetScale;
+        }
+
+        private BigDecimal convert(final BigDecimal amount) {
+            // The amount is u * 10^-s, the result u * fixed * 10^-(s + RATE_SCALE), expressed with the target scale.
+            final int exponent = amount.scale() + RATE_SCALE - targetScale;
+            if (exponent >= 0 && exponent < POWERS_OF_TEN.length && amount.precision() <= MAX_LONG_DIGITS) {
+                // Unlike unscaledValue(), allocates no BigInteger for an amount which fits into a long.
+                final long unscaled = amount.scaleByPowerOfTen(amount.scale()).longValueExact();
+                if (unscaled >= 0 && unscaled <= maxUnscaled) {
+                    return BigDecimal.valueOf(divideHalfEven(unscaled * fixed, POWERS_OF_TEN[exponent]), targetScale);
+                }
+            }
+            return amount.multiply(decimal).setScale(targetScale, RoundingMode.HALF_EVEN);
+        }
+
+        private static long divideHalfEven(final long dividend, final long divisor) {
+            final long quotient = dividend / divisor;
+            final long twiceRemainder = (dividend - quotient * divisor) * 2;
+            if (twiceRemainder > divisor || twiceRemainder == divisor && (quotient & 1) != 0) {
+                return quotient + 1;
+            }
+            return quotient;
+        }
+    }
+}
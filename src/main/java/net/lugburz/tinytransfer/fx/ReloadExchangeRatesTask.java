@@ -0,0 +1,30 @@
+package net.lugburz.tinytransfer.fx;
+
+import io.dropwizard.servlets.tasks.Task;
+
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Admin task which reloads the exchange rates from their file. Transfers in progress finish at the rates they
+ * started with; a file which fails to load leaves the current rates in place.
+ * <p>
+ * Run with {@code POST http://localhost:8081/tasks/reload-exchange-rates}.
+ */
+public final class ReloadExchangeRatesTask extends Task {
+
+    private final ExchangeRateTable table;
+
+    public ReloadExchangeRatesTask(final ExchangeRateTable table) {
+        super("reload-exchange-rates");
+        this.table = table;
+    }
+
+    @Override
+    public void execute(final Map<String, List<String>> parameters, final PrintWriter output) throws Exception {
+        final ExchangeRates rates = table.reload();
+        output.println("loaded " + rates.size() + " exchange rates");
+        output.flush();
+    }
+}
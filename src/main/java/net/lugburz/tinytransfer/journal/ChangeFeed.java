@@ -0,0 +1,167 @@
+package net.lugburz.tinytransfer.journal;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Journal which numbers every record consecutively and keeps the most recent ones in memory, so that replicas can
+ * stream the changes of the account store in order. Records are passed on to a delegate journal as well.
+ *
+ * <p>
+ * Records are passed on to the delegate first and only enter the feed if the delegate accepted them. They are
+ * appended while the caller holds the locks which order changes to the same account, so two records of the
+ * same account are numbered in the order in which they are applied. Records of different accounts may be numbered in
+ * either order; they carry resulting balances of disjoint accounts, so applying them in either order gives the same
+ * state.
+ *
+ * <p>
+ * The records are kept in a ring: appending never blocks, and a reader which falls behind by more than the capacity
+ * loses its place and has to start over from a snapshot.
+ */
+public final class ChangeFeed implements Journal {
+
+    private final Journal delegate;
+    private final AtomicReferenceArray<Entry> ring;
+    private final int mask;
+    private final AtomicLong sequence = new AtomicLong();
+    // Tells readers of another incarnation of the feed, such as the one before a restart, that sequences do not match.
+    private final long id = ThreadLocalRandom.current().nextLong();
+
+    /**
+     * @param delegate the journal which records are passed on to
+     * @param capacity the number of records kept in memory, rounded up to the next power of two
+     */
+    public ChangeFeed(final Journal delegate, final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity of the change feed must be positive.");
+        }
+        final int size = Integer.highestOneBit(capacity) == capacity ? capacity : Integer.highestOneBit(capacity) << 1;
+        this.delegate = delegate;
+        this.ring = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    @Override
+    public long appendCreate(final String accountNo, final BigDecimal balance) {
+        final long position = delegate.appendCreate(accountNo, balance);
+        publish(RecordCodec.create(accountNo, balance));
+        return position;
+    }
+
+    @Override
+    public long appendTransfer(final String senderAccNo, final BigDecimal senderBalance,
+                               final String receiverAccNo, final BigDecimal receiverBalance) {
+        final long position = delegate.appendTransfer(senderAccNo, senderBalance, receiverAccNo, receiverBalance);
+        publish(RecordCodec.balances(senderAccNo, senderBalance, receiverAccNo, receiverBalance));
+        return position;
+    }
+
+    @Override
+    public long appendBalances(final Map<String, BigDecimal> balances) {
+        final long position = delegate.appendBalances(balances);
+        publish(RecordCodec.balances(balances));
+        return position;
+    }
+
+    @Override
+    public long appendClear() {
+        final long position = delegate.appendClear();
+        publish(RecordCodec.clear());
+        return position;
+    }
+
+    @Override
+    public void awaitDurable(final long position) {
+        delegate.awaitDurable(position);
+    }
+
+    /**
+     * @return the identifier of this feed, which differs between instances
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return the sequence number of the latest record, 0 if there is none; the record may still be in the course of
+     * being stored
+     */
+    public long sequence() {
+        return sequence.get();
+    }
+
+    /**
+     * Returns the record with the given sequence number.
+     *
+     * @param sequence the sequence number, at least 1
+     * @return the encoded record, or null if it has not been stored yet
+     * @throws JournalException if the record has already been overwritten by a newer one
+     */
+    public byte[] read(final long sequence) {
+        final Entry entry = ring.get((int) sequence & mask);
+        if (entry == null || entry.sequence < sequence) {
+            return null;
+        }
+        if (entry.sequence > sequence) {
+            throw new JournalException("Change " + sequence + " has already been dropped from the feed.");
+        }
+        return entry.record;
+    }
+
+    /**
+     * Encodes the current balance of an account for a snapshot which a reader of the feed starts from; applied like a
+     * creation which replaces an existing account.
+     */
+    public static byte[] snapshotRecord(final String accountNo, final BigDecimal balance) {
+        return RecordCodec.create(accountNo, balance);
+    }
+
+    /**
+     * Encodes the removal of all accounts, which precedes a snapshot.
+     */
+    public static byte[] clearRecord() {
+        return RecordCodec.clear();
+    }
+
+    /**
+     * Decodes a record read from the feed and passes its content to the handler.
+     *
+     * @throws JournalException if the record is corrupt
+     */
+    public static void apply(final byte[] record, final RecordHandler handler) {
+        final ByteBuffer buffer = ByteBuffer.wrap(record);
+        final int length = buffer.getInt();
+        final int crc = buffer.getInt();
+        if (length != record.length - RecordCodec.HEADER_BYTES) {
+            throw new JournalException("Malformed change feed record.");
+        }
+        final byte[] body = new byte[length];
+        buffer.get(body);
+        if (!RecordCodec.isIntact(body, crc)) {
+            throw new JournalException("Corrupt change feed record.");
+        }
+        RecordCodec.decode(ByteBuffer.wrap(body), handler);
+    }
+
+    private void publish(final byte[] record) {
+        final Entry entry = new Entry(sequence.incrementAndGet(), record);
+        // A writer which stalled between numbering and storing its record must not replace a newer one.
+        ring.accumulateAndGet((int) entry.sequence & mask, entry,
+                (stored, next) -> stored != null && stored.sequence > next.sequence ? stored : next);
+    }
+
+    private static final class Entry {
+
+        private final long sequence;
+        private final byte[] record;
+
+        private Entry(final long sequence, final byte[] record) {
+            this.sequence = sequence;
+            this.record = record;
+        }
+    }
+}
@@ -0,0 +1,560 @@
+package net.lugburz.tinytransfer.journal;
+
+import io.dropwizard.lifecycle.Managed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Append-only journal backed by a directory of segment files.
+ *
+ * <p>
+ * Appending only copies the encoded record into an in-memory buffer. With group commit, a background thread writes
+ * the buffer to the file and forces it to disk once per batch: it waits at most the commit window for further
+ * records, or until the maximum batch size is reached, so that concurrent requests share one fsync. Without group
+ * commit, every {@link #awaitDurable(long)} call writes and forces the file itself.
+ *
+ * <p>
+ * Records are numbered consecutively, starting at 1; the number is the position returned by the append methods.
+ * Each segment file is named after the position of its first record. {@link #roll()} makes the next write start a new
+ * segment, so that the segments covered by a snapshot can be {@link #discardBefore(long) discarded} as a whole.
+ *
+ * <p>
+ * Usage: open the journal, {@link #replay(RecordHandler, long)} it to rebuild the state, then {@link #start()} it
+ * before appending. A failed write is fatal: all waiting and further callers receive a {@link JournalException}.
+ */
+public final class FileJournal implements Journal, Managed {
+
+    private static final Logger log = LoggerFactory.getLogger(FileJournal.class);
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final int INITIAL_BUFFER_BYTES = 64 * 1024;
+    private static final int READ_BUFFER_BYTES = 1024 * 1024;
+
+    private final Path directory;
+    private final boolean groupCommit;
+    private final long windowNanos;
+    private final int maxBatch;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition recordsPending = lock.newCondition();
+    private final Condition durabilityAdvanced = lock.newCondition();
+
+    // All of the following fields are guarded by lock.
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+    private int pendingRecords;
+    private long appendedPosition;
+    private long durablePosition;
+    private boolean rollRequested;
+    private boolean replayed;
+    private boolean started;
+    private boolean closed;
+    private IOException failure;
+
+    // Only used by the thread which writes, i.e. the flusher or a caller holding the lock.
+    private ByteBuffer writing = ByteBuffer.allocate(INITIAL_BUFFER_BYTES);
+    private long writingFirstPosition;
+    private boolean writingRoll;
+    private FileChannel channel;
+    private long channelStart;
+
+    private Thread flusher;
+
+    /**
+     * Opens or creates the journal directory.
+     *
+     * @param directory   the directory of the segment files
+     * @param groupCommit whether to batch fsyncs across concurrent callers
+     * @param window      the maximum time a batch waits for further records
+     * @param maxBatch    the number of records after which a batch is written without waiting any longer
+     * @throws IOException if the directory cannot be created
+     */
+    public FileJournal(final Path directory,
+                       final boolean groupCommit,
+                       final long window,
+                       final TimeUnit windowUnit,
+                       final int maxBatch) throws IOException {
+        if (maxBatch < 1) {
+            throw new IllegalArgumentException("The maximum batch size must be positive.");
+        }
+        this.directory = Files.createDirectories(directory);
+        this.groupCommit = groupCommit;
+        this.windowNanos = windowUnit.toNanos(window);
+        this.maxBatch = maxBatch;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Passes all intact records of the journal to the handler, in order.
+     *
+     * @see #replay(RecordHandler, long)
+     */
+    public long replay(final RecordHandler handler) throws IOException {
+        return replay(handler, 0);
+    }
+
+    /**
+     * Passes all intact records after the given position to the handler, in order. A torn or corrupt record at the
+     * end of the last segment, left behind by a crash during a write, is cut off together with everything after it.
+     *
+     * @param handler receives the records
+     * @param after   the position up to which the state has already been restored, e.g. from a snapshot
+     * @return the number of replayed records
+     * @throws IOException if a segment cannot be read, is corrupt before its end, or records after the given position
+     *                     are missing
+     */
+    public long replay(final RecordHandler handler, final long after) throws IOException {
+        lock.lock();
+        try {
+            if (replayed) {
+                throw new IllegalStateException("The journal has already been replayed.");
+            }
+            final List<Segment> segments = segments();
+            int first = 0;
+            while (first + 1 < segments.size() && segments.get(first + 1).start <= after + 1) {
+                first++;
+            }
+            if (first < segments.size() && segments.get(first).start > after + 1) {
+                throw new IOException("The journal records from position " + (after + 1) + " to "
+                        + (segments.get(first).start - 1) + " are missing in " + directory + ".");
+            }
+
+            long position = first < segments.size() ? segments.get(first).start - 1 : after;
+            long records = 0;
+            for (int i = first; i < segments.size(); i++) {
+                final Segment segment = segments.get(i);
+                if (segment.start != position + 1) {
+                    throw new IOException("The journal segment " + segment.path + " does not follow position "
+                            + position + ".");
+                }
+                final boolean last = i == segments.size() - 1;
+                final FileChannel segmentChannel = last
+                        ? FileChannel.open(segment.path, StandardOpenOption.READ, StandardOpenOption.WRITE)
+                        : FileChannel.open(segment.path, StandardOpenOption.READ);
+                try {
+                    final long size = segmentChannel.size();
+                    long valid = 0;
+                    final DataInputStream input = new DataInputStream(
+                            new BufferedInputStream(Channels.newInputStream(segmentChannel), READ_BUFFER_BYTES));
+                    while (valid < size) {
+                        final byte[] body = readRecord(input, size - valid);
+                        if (body == null) {
+                            break;
+                        }
+                        position++;
+                        if (position > after) {
+                            RecordCodec.decode(ByteBuffer.wrap(body), handler);
+                            records++;
+                        }
+                        valid += RecordCodec.HEADER_BYTES + body.length;
+                    }
+                    if (valid < size) {
+                        if (!last) {
+                            throw new IOException("The journal segment " + segment.path + " is corrupt.");
+                        }
+                        log.warn("Truncating {} bytes of incomplete records at the end of journal segment {}.",
+                                size - valid, segment.path);
+                        segmentChannel.truncate(valid);
+                        segmentChannel.force(true);
+                    }
+                    segmentChannel.position(valid);
+                } catch (final IOException | RuntimeException exception) {
+                    segmentChannel.close();
+                    throw exception;
+                }
+                if (last && position >= after) {
+                    channel = segmentChannel;
+                    channelStart = segment.start;
+                } else {
+                    segmentChannel.close();
+                }
+            }
+
+            appendedPosition = Math.max(position, after);
+            durablePosition = appendedPosition;
+            if (channel == null) {
+                channelStart = appendedPosition + 1;
+                channel = createSegment(channelStart);
+            }
+            replayed = true;
+            return records;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Allows appending and starts the group commit thread, if enabled.
+     *
+     * @throws IllegalStateException if the journal has not been replayed
+     */
+    @Override
+    public void start() {
+        lock.lock();
+        try {
+            if (!replayed) {
+                throw new IllegalStateException("The journal has to be replayed before it is started.");
+            }
+            if (started) {
+                return;
+            }
+            started = true;
+        } finally {
+            lock.unlock();
+        }
+        if (groupCommit) {
+            flusher = new Thread(this::flushLoop, "journal-flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+    }
+
+    /**
+     * Writes all pending records and closes the file.
+     */
+    @Override
+    public void stop() throws IOException, InterruptedException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            recordsPending.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (flusher != null) {
+            flusher.join();
+        } else {
+            flush();
+        }
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    @Override
+    public long appendCreate(final String accountNo, final BigDecimal balance) {
+        return append(RecordCodec.create(accountNo, balance));
+    }
+
+    @Override
+    public long appendTransfer(final String senderAccNo, final BigDecimal senderBalance,
+                               final String receiverAccNo, final BigDecimal receiverBalance) {
+        return append(RecordCodec.balances(senderAccNo, senderBalance, receiverAccNo, receiverBalance));
+    }
+
+    @Override
+    public long appendBalances(final Map<String, BigDecimal> balances) {
+        return append(RecordCodec.balances(balances));
+    }
+
+    @Override
+    public long appendClear() {
+        return append(RecordCodec.clear());
+    }
+
+    @Override
+    public void awaitDurable(final long position) {
+        if (!groupCommit) {
+            flush();
+            return;
+        }
+        lock.lock();
+        try {
+            boolean interrupted = false;
+            while (durablePosition < position && failure == null) {
+                try {
+                    durabilityAdvanced.await();
+                } catch (final InterruptedException exception) {
+                    // The change has already been applied in memory, so the caller has to learn its outcome.
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (durablePosition < position) {
+                throw new JournalException("Failed to write the journal.", failure);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Makes the next write start a new segment.
+     *
+     * @return the position of the last record appended so far; every later record ends up in a later segment or in
+     * the current one, but never in an older one
+     */
+    public long roll() {
+        lock.lock();
+        try {
+            rollRequested = true;
+            return appendedPosition;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deletes the segments which only contain records up to the given position. The newest segment is always kept.
+     *
+     * @param position the position up to which the records are no longer needed, e.g. because a snapshot covers them
+     * @return the number of deleted segments
+     * @throws IOException if a segment cannot be deleted
+     */
+    public int discardBefore(final long position) throws IOException {
+        final List<Segment> segments = segments();
+        int deleted = 0;
+        for (int i = 0; i + 1 < segments.size() && segments.get(i + 1).start <= position + 1; i++) {
+            Files.delete(segments.get(i).path);
+            deleted++;
+        }
+        return deleted;
+    }
+
+    private long append(final byte[] record) {
+        lock.lock();
+        try {
+            if (failure != null) {
+                throw new JournalException("The journal has failed.", failure);
+            }
+            if (!started || closed) {
+                throw new JournalException("The journal is not open for appending.");
+            }
+            if (pending.remaining() < record.length) {
+                pending = grow(pending, record.length);
+            }
+            pending.put(record);
+            appendedPosition++;
+            pendingRecords++;
+            if (pendingRecords == 1 || pendingRecords >= maxBatch) {
+                recordsPending.signal();
+            }
+            return appendedPosition;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            final long batchPosition;
+            lock.lock();
+            try {
+                while (pendingRecords == 0 && !closed) {
+                    recordsPending.awaitUninterruptibly();
+                }
+                if (pendingRecords == 0) {
+                    return;
+                }
+                // Give concurrent requests the chance to join this batch.
+                long remaining = windowNanos;
+                while (pendingRecords < maxBatch && !closed && remaining > 0) {
+                    try {
+                        remaining = recordsPending.awaitNanos(remaining);
+                    } catch (final InterruptedException exception) {
+                        remaining = 0;
+                    }
+                }
+                batchPosition = swapBuffers();
+            } finally {
+                lock.unlock();
+            }
+            if (!write(batchPosition)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Writes and forces all pending records in the calling thread.
+     */
+    private void flush() {
+        lock.lock();
+        try {
+            if (failure != null) {
+                throw new JournalException("Failed to write the journal.", failure);
+            }
+            if (pendingRecords > 0) {
+                // Holding the lock while writing serializes the fsyncs, which is the point of this mode.
+                if (!write(swapBuffers())) {
+                    throw new JournalException("Failed to write the journal.", failure);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Hands the pending records over to the writing buffer; must be called while holding the lock.
+     *
+     * @return the position of the last handed over record
+     */
+    private long swapBuffers() {
+        final ByteBuffer batch = pending;
+        pending = writing;
+        writing = batch;
+        writingFirstPosition = appendedPosition - pendingRecords + 1;
+        writingRoll = rollRequested;
+        rollRequested = false;
+        pendingRecords = 0;
+        return appendedPosition;
+    }
+
+    /**
+     * Writes the writing buffer to the file and forces it to disk, starting a new segment first if requested.
+     *
+     * @return false if the journal has failed
+     */
+    private boolean write(final long batchPosition) {
+        try {
+            // A segment which does not hold any record yet is as good as a new one.
+            if (writingRoll && writingFirstPosition != channelStart) {
+                // The previous batch has already been forced, so the old segment is complete.
+                final FileChannel next = createSegment(writingFirstPosition);
+                channel.close();
+                channel = next;
+                channelStart = writingFirstPosition;
+            }
+            writing.flip();
+            while (writing.hasRemaining()) {
+                channel.write(writing);
+            }
+            channel.force(false);
+            writing.clear();
+        } catch (final IOException exception) {
+            log.error("Failed to write journal {}.", directory, exception);
+            lock.lock();
+            try {
+                failure = exception;
+                durabilityAdvanced.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            return false;
+        }
+        lock.lock();
+        try {
+            durablePosition = batchPosition;
+            durabilityAdvanced.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        return true;
+    }
+
+    /**
+     * Creates a segment file and makes its directory entry durable, so that the records forced into the new segment
+     * cannot be lost with the entry on a crash.
+     */
+    private FileChannel createSegment(final long start) throws IOException {
+        final Path path = directory.resolve(SEGMENT_PREFIX + String.format("%020d", start) + SEGMENT_SUFFIX);
+        final FileChannel segment = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        try {
+            forceDirectory();
+        } catch (final IOException exception) {
+            segment.close();
+            throw exception;
+        }
+        return segment;
+    }
+
+    private void forceDirectory() throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * @return the segment files, ordered by the position of their first record
+     */
+    private List<Segment> segments() throws IOException {
+        final List<Segment> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (final Path file : files) {
+                final String name = file.getFileName().toString();
+                final String start = name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length());
+                try {
+                    segments.add(new Segment(file, Long.parseLong(start)));
+                } catch (final NumberFormatException exception) {
+                    log.warn("Ignoring unexpected file {} in journal directory.", file);
+                }
+            }
+        }
+        segments.sort((a, b) -> Long.compare(a.start, b.start));
+        return segments;
+    }
+
+    private static ByteBuffer grow(final ByteBuffer buffer, final int required) {
+        final ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + required));
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+
+    /**
+     * @return the record body, or null if the remaining bytes do not hold an intact record
+     */
+    private static byte[] readRecord(final DataInputStream input, final long available) throws IOException {
+        if (available < RecordCodec.HEADER_BYTES) {
+            return null;
+        }
+        final int length;
+        final int crc;
+        try {
+            length = input.readInt();
+            crc = input.readInt();
+        } catch (final EOFException exception) {
+            return null;
+        }
+        if (length <= 0 || length > available - RecordCodec.HEADER_BYTES) {
+            return null;
+        }
+        final byte[] body = new byte[length];
+        try {
+            input.readFully(body);
+        } catch (final EOFException exception) {
+            return null;
+        }
+        return RecordCodec.isIntact(body, crc) ? body : null;
+    }
+
+    private static final class Segment {
+
+        private final Path path;
+        private final long start;
+
+        private Segment(final Path path, final long start) {
+            this.path = path;
+            this.start = start;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package net.lugburz.tinytransfer.journal;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * Write-ahead journal for changes to the account store.
+ *
+ * <p>
+ * Records are appended before the change they describe is applied in memory, while the caller still holds the locks
+ * which order changes to the same account. Records carry the resulting balances rather than deltas, so replaying a
+ * record twice is harmless. The caller acknowledges a change only after {@link #awaitDurable(long)} has returned for
+ * the position of its record, which it must not call while holding those locks.
+ */
+public interface Journal {
+
+    /**
+     * Journal which records nothing.
+     */
+    Journal NONE = new Journal() {
+        @Override
+        public long appendCreate(final String accountNo, final BigDecimal balance) {
+            return 0;
+        }
+
+        @Override
+        public long appendTransfer(final String senderAccNo, final BigDecimal senderBalance,
+                                   final String receiverAccNo, final BigDecimal receiverBalance) {
+            return 0;
+        }
+
+        @Override
+        public long appendBalances(final Map<String, BigDecimal> balances) {
+            return 0;
+        }
+
+        @Override
+        public long appendClear() {
+            return 0;
+        }
+
+        @Override
+        public void awaitDurable(final long position) {
+            // nothing to wait for
+        }
+    };
+
+    /**
+     * Records the creation of an account.
+     *
+     * @return the position of the record
+     * @throws JournalException if the journal has failed or is closed
+     */
+    long appendCreate(String accountNo, BigDecimal balance);
+
+    /**
+     * Records the balances of both accounts after a transfer.
+     *
+     * @return the position of the record
+     * @throws JournalException if the journal has failed or is closed
+     */
+    long appendTransfer(String senderAccNo, BigDecimal senderBalance, String receiverAccNo, BigDecimal receiverBalance);
+
+    /**
+     * Records the balances of several accounts after a batch of transfers as one atomic record.
+     *
+     * @param balances the new balance per account number
+     * @return the position of the record
+     * @throws JournalException if the journal has failed or is closed
+     */
+    long appendBalances(Map<String, BigDecimal> balances);
+
+    /**
+     * Records the removal of all accounts.
+     *
+     * @return the position of the record
+     * @throws JournalException if the journal has failed or is closed
+     */
+    long appendClear();
+
+    /**
+     * Blocks until the record at the given position and all records before it are durable.
+     *
+     * @param position the position returned by one of the append methods
+     * @throws JournalException if the journal failed to persist the record
+     */
+    void awaitDurable(long position);
+}
@@ -0,0 +1,15 @@
+package net.lugburz.tinytransfer.journal;
+
+/**
+ * Thrown if the journal cannot persist or read records.
+ */
+public final class JournalException extends RuntimeException {
+
+    public JournalException(final String message) {
+        super(message);
+    }
+
+    public JournalException(final String message, final Throwable cause) {
+        super(message, cause);
+    }
+}
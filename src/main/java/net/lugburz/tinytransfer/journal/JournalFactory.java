@@ -0,0 +1,102 @@
+package net.lugburz.tinytransfer.journal;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+import io.dropwizard.validation.MinDuration;
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configuration of the write-ahead journal and its snapshots.
+ */
+@Getter
+@Setter
+public class JournalFactory {
+
+    /**
+     * Whether changes are journaled and replayed on startup. Without the journal, a restart loses all accounts.
+     */
+    @JsonProperty
+    private boolean enabled = false;
+
+    /**
+     * Directory of the journal segments and snapshots.
+     */
+    @JsonProperty
+    @NotEmpty
+    private String directory = "data/journal";
+
+    /**
+     * Whether concurrent requests share one fsync. If disabled, every request forces the file to disk on its own.
+     */
+    @JsonProperty
+    private boolean groupCommit = true;
+
+    /**
+     * Maximum time a group commit waits for further records before forcing the file to disk.
+     */
+    @JsonProperty
+    @NotNull
+    @MinDuration(value = 0, unit = TimeUnit.MILLISECONDS)
+    private Duration groupCommitWindow = Duration.milliseconds(2);
+
+    /**
+     * Number of records after which a group commit forces the file to disk without waiting any longer.
+     */
+    @JsonProperty
+    @Min(1)
+    private int groupCommitMaxBatch = 256;
+
+    /**
+     * Time between two snapshots of the account store; zero disables periodic snapshots.
+     */
+    @JsonProperty
+    @NotNull
+    @MinDuration(value = 0, unit = TimeUnit.MILLISECONDS)
+    private Duration snapshotInterval = Duration.minutes(10);
+
+    /**
+     * Opens the configured journal.
+     *
+     * @return the journal, which has yet to be replayed and started
+     * @throws IOException if the directory cannot be created
+     */
+    public FileJournal open() throws IOException {
+        return new FileJournal(Paths.get(directory), groupCommit,
+                groupCommitWindow.getQuantity(), groupCommitWindow.getUnit(), groupCommitMaxBatch);
+    }
+
+    /**
+     * Opens the snapshots of the configured journal.
+     *
+     * @return the snapshot store
+     * @throws IOException if the directory cannot be created
+     */
+    public SnapshotStore openSnapshots() throws IOException {
+        return new SnapshotStore(Paths.get(directory));
+    }
+
+    /**
+     * Creates the task which periodically writes snapshots of the account store.
+     *
+     * @param journal        the journal returned by {@link #open()}
+     * @param snapshots      the snapshot store returned by {@link #openSnapshots()}
+     * @param source         the account store
+     * @param appliedBarrier blocks until every journaled change has been applied to the account store
+     * @return the snapshotter, which has yet to be started
+     */
+    public Snapshotter snapshotter(final FileJournal journal,
+                                   final SnapshotStore snapshots,
+                                   final SnapshotSource source,
+                                   final Runnable appliedBarrier) {
+        return new Snapshotter(journal, snapshots, source, appliedBarrier,
+                snapshotInterval.getQuantity(), snapshotInterval.getUnit());
+    }
+}
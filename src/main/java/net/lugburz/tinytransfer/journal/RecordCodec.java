@@ -0,0 +1,210 @@
+package net.lugburz.tinytransfer.journal;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Binary encoding of journal records.
+ *
+ * <pre>
+ * record   := length:int32 crc32:int32 body[length]
+ * body     := CREATE accountNo:string balance:decimal
+ *           | BALANCES count:varint (accountNo:string balance:decimal){count}
+ *           | CLEAR
+ * string   := length:varint utf8[length]
+ * decimal  := scale:zigzag-varint length:varint unscaled[length]    (two's complement, big-endian)
+ * </pre>
+ */
+final class RecordCodec {
+
+    static final int HEADER_BYTES = 8;
+
+    static final byte CREATE = 1;
+    static final byte BALANCES = 2;
+    static final byte CLEAR = 3;
+
+    private static final int MAX_VARINT_BYTES = 5;
+
+    private RecordCodec() {
+    }
+
+    static byte[] create(final String accountNo, final BigDecimal balance) {
+        final byte[] account = utf8(accountNo);
+        final byte[] unscaled = balance.unscaledValue().toByteArray();
+        final ByteBuffer buffer = allocate(1 + stringSize(account) + decimalSize(unscaled));
+        buffer.put(CREATE);
+        putString(buffer, account);
+        putDecimal(buffer, balance.scale(), unscaled);
+        return seal(buffer);
+    }
+
+    static byte[] balances(final String accountNo1, final BigDecimal balance1,
+                           final String accountNo2, final BigDecimal balance2) {
+        final byte[] account1 = utf8(accountNo1);
+        final byte[] unscaled1 = balance1.unscaledValue().toByteArray();
+        final byte[] account2 = utf8(accountNo2);
+        final byte[] unscaled2 = balance2.unscaledValue().toByteArray();
+        final ByteBuffer buffer = allocate(1 + MAX_VARINT_BYTES
+                + stringSize(account1) + decimalSize(unscaled1) + stringSize(account2) + decimalSize(unscaled2));
+        buffer.put(BALANCES);
+        putVarint(buffer, 2);
+        putString(buffer, account1);
+        putDecimal(buffer, balance1.scale(), unscaled1);
+        putString(buffer, account2);
+        putDecimal(buffer, balance2.scale(), unscaled2);
+        return seal(buffer);
+    }
+
+    static byte[] balances(final Map<String, BigDecimal> balances) {
+        final byte[][] accounts = new byte[balances.size()][];
+        final byte[][] unscaled = new byte[balances.size()][];
+        final int[] scales = new int[balances.size()];
+        int size = 1 + MAX_VARINT_BYTES;
+        int n = 0;
+        for (final Map.Entry<String, BigDecimal> balance : balances.entrySet()) {
+            accounts[n] = utf8(balance.getKey());
+            unscaled[n] = balance.getValue().unscaledValue().toByteArray();
+            scales[n] = balance.getValue().scale();
+            size += stringSize(accounts[n]) + decimalSize(unscaled[n]);
+            n++;
+        }
+        final ByteBuffer buffer = allocate(size);
+        buffer.put(BALANCES);
+        putVarint(buffer, n);
+        for (int i = 0; i < n; i++) {
+            putString(buffer, accounts[i]);
+            putDecimal(buffer, scales[i], unscaled[i]);
+        }
+        return seal(buffer);
+    }
+
+    static byte[] clear() {
+        final ByteBuffer buffer = allocate(1);
+        buffer.put(CLEAR);
+        return seal(buffer);
+    }
+
+    /**
+     * Verifies a record body against its checksum.
+     */
+    static boolean isIntact(final byte[] body, final int crc) {
+        final CRC32 checksum = new CRC32();
+        checksum.update(body, 0, body.length);
+        return (int) checksum.getValue() == crc;
+    }
+
+    /**
+     * Decodes a record body and passes its content to the handler.
+     *
+     * @throws JournalException if the body is malformed
+     */
+    static void decode(final ByteBuffer body, final RecordHandler handler) {
+        try {
+            final byte type = body.get();
+            switch (type) {
+                case CREATE:
+                    handler.onCreate(getString(body), getDecimal(body));
+                    break;
+                case BALANCES:
+                    final int count = getVarint(body);
+                    for (int i = 0; i < count; i++) {
+                        handler.onBalance(getString(body), getDecimal(body));
+                    }
+                    break;
+                case CLEAR:
+                    handler.onClear();
+                    break;
+                default:
+                    throw new JournalException("Unknown journal record type " + type + ".");
+            }
+            handler.onRecordEnd();
+        } catch (final RuntimeException exception) {
+            if (exception instanceof JournalException) {
+                throw exception;
+            }
+            throw new JournalException("Malformed journal record.", exception);
+        }
+    }
+
+    private static ByteBuffer allocate(final int bodySize) {
+        final ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + bodySize);
+        buffer.position(HEADER_BYTES);
+        return buffer;
+    }
+
+    /**
+     * Fills in length and checksum of the record header and returns the record without unused capacity.
+     */
+    private static byte[] seal(final ByteBuffer buffer) {
+        final int length = buffer.position() - HEADER_BYTES;
+        final CRC32 checksum = new CRC32();
+        checksum.update(buffer.array(), HEADER_BYTES, length);
+        buffer.putInt(0, length);
+        buffer.putInt(4, (int) checksum.getValue());
+        final byte[] record = new byte[HEADER_BYTES + length];
+        System.arraycopy(buffer.array(), 0, record, 0, record.length);
+        return record;
+    }
+
+    static byte[] utf8(final String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static int stringSize(final byte[] utf8) {
+        return MAX_VARINT_BYTES + utf8.length;
+    }
+
+    static int decimalSize(final byte[] unscaled) {
+        return 2 * MAX_VARINT_BYTES + unscaled.length;
+    }
+
+    static void putString(final ByteBuffer buffer, final byte[] utf8) {
+        putVarint(buffer, utf8.length);
+        buffer.put(utf8);
+    }
+
+    static String getString(final ByteBuffer buffer) {
+        final byte[] utf8 = new byte[getVarint(buffer)];
+        buffer.get(utf8);
+        return new String(utf8, StandardCharsets.UTF_8);
+    }
+
+    static void putDecimal(final ByteBuffer buffer, final int scale, final byte[] unscaled) {
+        putVarint(buffer, (scale << 1) ^ (scale >> 31));
+        putVarint(buffer, unscaled.length);
+        buffer.put(unscaled);
+    }
+
+    static BigDecimal getDecimal(final ByteBuffer buffer) {
+        final int zigzag = getVarint(buffer);
+        final int scale = (zigzag >>> 1) ^ -(zigzag & 1);
+        final byte[] unscaled = new byte[getVarint(buffer)];
+        buffer.get(unscaled);
+        return new BigDecimal(new BigInteger(unscaled), scale);
+    }
+
+    private static void putVarint(final ByteBuffer buffer, final int value) {
+        int remaining = value;
+        while ((remaining & ~0x7F) != 0) {
+            buffer.put((byte) ((remaining & 0x7F) | 0x80));
+            remaining >>>= 7;
+        }
+        buffer.put((byte) remaining);
+    }
+
+    private static int getVarint(final ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            final byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new JournalException("Malformed varint in journal record.");
+    }
+}
@@ -0,0 +1,32 @@
+package net.lugburz.tinytransfer.journal;
+
+import java.math.BigDecimal;
+
+/**
+ * Receives the records of a journal in order, e.g. to rebuild the account store on startup.
+ */
+public interface RecordHandler {
+
+    /**
+     * An account has been created with the given balance.
+     */
+    void onCreate(String accountNo, BigDecimal balance);
+
+    /**
+     * An existing account has been given a new balance. Unknown accounts must be ignored: they have been removed
+     * by a clear while the change was in flight.
+     */
+    void onBalance(String accountNo, BigDecimal balance);
+
+    /**
+     * All accounts have been removed.
+     */
+    void onClear();
+
+    /**
+     * All changes of the current record have been passed to the handler; a record with several balances is one atomic
+     * change.
+     */
+    default void onRecordEnd() {
+    }
+}
@@ -0,0 +1,19 @@
+package net.lugburz.tinytransfer.journal;
+
+import java.math.BigDecimal;
+import java.util.function.BiConsumer;
+
+/**
+ * Account store whose balances can be written to a snapshot.
+ */
+@FunctionalInterface
+public interface SnapshotSource {
+
+    /**
+     * Passes the balance of every account to the action without blocking changes. Each balance may or may not reflect
+     * changes made while the iteration is in progress.
+     *
+     * @param action receives the account number and the balance of each account
+     */
+    void forEachBalance(BiConsumer<String, BigDecimal> action);
+}
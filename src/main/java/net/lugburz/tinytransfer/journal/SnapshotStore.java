@@ -0,0 +1,280 @@
+package net.lugburz.tinytransfer.journal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Point-in-time snapshots of the account balances, stored next to the journal segments.
+ *
+ * <pre>
+ * snapshot := MAGIC:int32 position:int64 (accountNo:string balance:decimal){count} count:int64 crc32:int32
+ * </pre>
+ *
+ * <p>
+ * Strings and decimals are encoded as in the journal records; the checksum covers everything before it. Each file is
+ * named after the journal position it covers and is written to a temporary file first, so a crash never leaves a
+ * partial snapshot behind. Snapshots are loaded by mapping the file into memory.
+ */
+public final class SnapshotStore {
+
+    private static final Logger log = LoggerFactory.getLogger(SnapshotStore.class);
+
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private static final int MAGIC = 0x54545331;
+    private static final int HEADER_BYTES = 12;
+    private static final int TRAILER_BYTES = 12;
+    private static final int WRITE_BUFFER_BYTES = 1024 * 1024;
+    private static final int MAX_REGION_BYTES = 1 << 30;
+
+    private final Path directory;
+    private final int regionBytes;
+
+    /**
+     * @param directory the directory of the snapshot files
+     * @throws IOException if the directory cannot be created
+     */
+    public SnapshotStore(final Path directory) throws IOException {
+        this(directory, MAX_REGION_BYTES);
+    }
+
+    /**
+     * @param regionBytes the maximum number of bytes mapped at once
+     */
+    SnapshotStore(final Path directory, final int regionBytes) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.regionBytes = regionBytes;
+    }
+
+    /**
+     * Writes a snapshot of all balances and deletes the older snapshots.
+     * <p>
+     * The caller has to make sure that every change up to the given journal position has been applied to the source
+     * before the snapshot is started. Changes after that position may or may not be contained in the snapshot: since
+     * journal records carry resulting balances, replaying them on top of the snapshot restores the same state either
+     * way.
+     *
+     * @param position the journal position covered by the snapshot
+     * @param source   the account store
+     * @return the number of accounts in the snapshot
+     * @throws IOException if the snapshot cannot be written
+     */
+    public long write(final long position, final SnapshotSource source) throws IOException {
+        final Path target = snapshotPath(position);
+        final Path temporary = directory.resolve(target.getFileName() + TEMPORARY_SUFFIX);
+        final long count;
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            final Writer writer = new Writer(channel);
+            writer.header(position);
+            try {
+                source.forEachBalance(writer::entry);
+            } catch (final UncheckedIOException exception) {
+                throw exception.getCause();
+            }
+            count = writer.finish();
+            channel.force(true);
+        } catch (final IOException | RuntimeException exception) {
+            Files.deleteIfExists(temporary);
+            throw exception;
+        }
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory();
+
+        for (final Path older : snapshots()) {
+            if (positionOf(older) < position) {
+                Files.delete(older);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Passes every account of the newest snapshot to the handler.
+     *
+     * @param handler receives an {@link RecordHandler#onCreate(String, BigDecimal)} call per account
+     * @return the journal position covered by the snapshot, or 0 if there is none
+     * @throws IOException if the snapshot cannot be read or is corrupt
+     */
+    public long load(final RecordHandler handler) throws IOException {
+        final List<Path> snapshots = snapshots();
+        if (snapshots.isEmpty()) {
+            return 0;
+        }
+        final Path newest = snapshots.get(snapshots.size() - 1);
+        try (FileChannel channel = FileChannel.open(newest, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size < HEADER_BYTES + TRAILER_BYTES) {
+                throw new IOException("The snapshot " + newest + " is truncated.");
+            }
+            verifyChecksum(channel, size, newest);
+
+            final ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("The file " + newest + " is not a snapshot.");
+            }
+            final long position = header.getLong();
+            final long count = channel.map(FileChannel.MapMode.READ_ONLY, size - TRAILER_BYTES, TRAILER_BYTES)
+                    .getLong();
+
+            final long end = size - TRAILER_BYTES;
+            long regionStart = HEADER_BYTES;
+            MappedByteBuffer region = map(channel, regionStart, end);
+            for (long i = 0; i < count; i++) {
+                final int entryStart = region.position();
+                final String accountNo;
+                final BigDecimal balance;
+                try {
+                    accountNo = RecordCodec.getString(region);
+                    balance = RecordCodec.getDecimal(region);
+                } catch (final BufferUnderflowException exception) {
+                    // The entry crosses the end of the mapped region: map the next region starting at the entry.
+                    if (regionStart + region.limit() == end || entryStart == 0) {
+                        throw new IOException("The snapshot " + newest + " is malformed.", exception);
+                    }
+                    regionStart += entryStart;
+                    region = map(channel, regionStart, end);
+                    i--;
+                    continue;
+                }
+                handler.onCreate(accountNo, balance);
+            }
+            if (regionStart + region.position() != end) {
+                throw new IOException("The snapshot " + newest + " is malformed.");
+            }
+            return position;
+        }
+    }
+
+    private MappedByteBuffer map(final FileChannel channel, final long start, final long end) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(end - start, regionBytes));
+    }
+
+    private void verifyChecksum(final FileChannel channel, final long size, final Path file) throws IOException {
+        final long checked = size - Integer.BYTES;
+        final CRC32 checksum = new CRC32();
+        for (long start = 0; start < checked; start += regionBytes) {
+            checksum.update(map(channel, start, checked));
+        }
+        final int expected = channel.map(FileChannel.MapMode.READ_ONLY, checked, Integer.BYTES).getInt();
+        if ((int) checksum.getValue() != expected) {
+            throw new IOException("The snapshot " + file + " is corrupt.");
+        }
+    }
+
+    /**
+     * Makes the rename of a finished snapshot durable before the journal segments it covers are discarded.
+     */
+    private void forceDirectory() throws IOException {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * @return the snapshot files, ordered by the journal position they cover
+     */
+    private List<Path> snapshots() throws IOException {
+        final List<Path> snapshots = new ArrayList<>();
+        try (DirectoryStream<Path> files =
+                     Files.newDirectoryStream(directory, SNAPSHOT_PREFIX + "*" + SNAPSHOT_SUFFIX)) {
+            for (final Path file : files) {
+                try {
+                    positionOf(file);
+                    snapshots.add(file);
+                } catch (final NumberFormatException exception) {
+                    log.warn("Ignoring unexpected file {} in snapshot directory.", file);
+                }
+            }
+        }
+        snapshots.sort((a, b) -> Long.compare(positionOf(a), positionOf(b)));
+        return snapshots;
+    }
+
+    private Path snapshotPath(final long position) {
+        return directory.resolve(SNAPSHOT_PREFIX + String.format("%020d", position) + SNAPSHOT_SUFFIX);
+    }
+
+    private static long positionOf(final Path snapshot) {
+        final String name = snapshot.getFileName().toString();
+        return Long.parseLong(name.substring(SNAPSHOT_PREFIX.length(), name.length() - SNAPSHOT_SUFFIX.length()));
+    }
+
+    /**
+     * Encodes the entries into a direct buffer which is written out whenever it is full.
+     */
+    private static final class Writer {
+
+        private final FileChannel channel;
+        private final CRC32 checksum = new CRC32();
+        private ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+        private long count;
+
+        private Writer(final FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private void header(final long position) {
+            buffer.putInt(MAGIC);
+            buffer.putLong(position);
+        }
+
+        private void entry(final String accountNo, final BigDecimal balance) {
+            final byte[] account = RecordCodec.utf8(accountNo);
+            final byte[] unscaled = balance.unscaledValue().toByteArray();
+            try {
+                ensure(RecordCodec.stringSize(account) + RecordCodec.decimalSize(unscaled));
+            } catch (final IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+            RecordCodec.putString(buffer, account);
+            RecordCodec.putDecimal(buffer, balance.scale(), unscaled);
+            count++;
+        }
+
+        private long finish() throws IOException {
+            ensure(TRAILER_BYTES);
+            buffer.putLong(count);
+            drain();
+            buffer.putInt((int) checksum.getValue());
+            drain();
+            return count;
+        }
+
+        private void ensure(final int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                drain();
+                if (buffer.capacity() < bytes) {
+                    buffer = ByteBuffer.allocateDirect(bytes);
+                }
+            }
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            checksum.update(buffer.duplicate());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package net.lugburz.tinytransfer.journal;
+
+import io.dropwizard.lifecycle.Managed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically writes a snapshot of the account store and discards the journal segments it covers, so that startup
+ * only has to load the snapshot and replay the records appended after it.
+ *
+ * <p>
+ * Taking a snapshot does not block changes: the journal is rolled over, the barrier waits until every change
+ * journaled before the roll has been applied in memory, and then the balances are read one by one while changes
+ * continue.
+ */
+public final class Snapshotter implements Managed {
+
+    private static final Logger log = LoggerFactory.getLogger(Snapshotter.class);
+
+    private final FileJournal journal;
+    private final SnapshotStore store;
+    private final SnapshotSource source;
+    private final Runnable appliedBarrier;
+    private final long interval;
+    private final TimeUnit intervalUnit;
+
+    private ScheduledExecutorService executor;
+
+    /**
+     * @param journal        the journal of the account store
+     * @param store          where the snapshots are written to
+     * @param source         the account store
+     * @param appliedBarrier blocks until every change whose record has already been appended to the journal has been
+     *                       applied to the account store
+     * @param interval       the time between two snapshots; zero disables periodic snapshots
+     */
+    public Snapshotter(final FileJournal journal,
+                       final SnapshotStore store,
+                       final SnapshotSource source,
+                       final Runnable appliedBarrier,
+                       final long interval,
+                       final TimeUnit intervalUnit) {
+        this.journal = journal;
+        this.store = store;
+        this.source = source;
+        this.appliedBarrier = appliedBarrier;
+        this.interval = interval;
+        this.intervalUnit = intervalUnit;
+    }
+
+    @Override
+    public void start() {
+        if (interval <= 0) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "snapshotter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::snapshotQuietly, interval, interval, intervalUnit);
+    }
+
+    @Override
+    public void stop() throws InterruptedException {
+        if (executor != null) {
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    /**
+     * Writes a snapshot and discards the journal segments it covers.
+     *
+     * @return the journal position covered by the snapshot
+     * @throws IOException if the snapshot cannot be written or a segment cannot be deleted
+     */
+    public synchronized long snapshot() throws IOException {
+        final long started = System.nanoTime();
+        final long position = journal.roll();
+        // The journal has to hold every record up to the position, so that startup can continue right after it.
+        journal.awaitDurable(position);
+        appliedBarrier.run();
+        final long accounts = store.write(position, source);
+        final int segments = journal.discardBefore(position);
+        log.info("Wrote a snapshot of {} accounts at journal position {} in {} ms, discarded {} journal segments.",
+                accounts, position, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started), segments);
+        return position;
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (final IOException | RuntimeException exception) {
+            // The journal still holds every record, so a failed snapshot only delays the next startup.
+            log.error("Failed to write a snapshot.", exception);
+        }
+    }
+}
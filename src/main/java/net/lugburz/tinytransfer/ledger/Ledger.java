@@ -0,0 +1,388 @@
+package net.lugburz.tinytransfer.ledger;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * In-memory history of completed transfers with a statement per account.
+ *
+ * <p>
+ * Entries are numbered consecutively and kept column-wise in fixed-size chunks of arrays, which hold the account
+ * numbers by reference, so an entry takes five slots and a reference to its amount. Every entry links to the previous
+ * entry of its sender and of its receiver; together with the latest entry per account these links form the
+ * per-account index, so a page of a statement costs one step per entry, however long the history is.
+ *
+ * <p>
+ * The per-account index is striped by account number. A transfer holds the stripes of its two accounts while it takes
+ * the next id and links its entry, so transfers between accounts of other stripes record concurrently, and the ids
+ * along the links of an account always decrease. The entries themselves go into a shared ring of chunks without a
+ * lock: each id owns its slot.
+ *
+ * <p>
+ * Once the ring is full, a new chunk replaces the one holding the oldest entries, which bounds memory to the
+ * configured number of entries. Links into a replaced chunk are recognized by the number of the chunk and end the
+ * statement. The accounts whose entries have all been replaced are dropped from the index afterwards.
+ */
+public final class Ledger {
+
+    /**
+     * A ledger which records nothing, for a disabled transfer history.
+     */
+    public static final Ledger NONE = new Ledger();
+
+    static final int CHUNK_BITS = 12;
+    static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    static final int DEFAULT_STRIPES = 64;
+
+    private static final long NO_ENTRY = -1;
+
+    private final Clock clock;
+    private final AtomicReferenceArray<Chunk> chunks;
+    private final Stripe[] stripes;
+    private final AtomicLong nextId = new AtomicLong();
+    private final AtomicLong firstId = new AtomicLong();
+    // Replaced chunks whose accounts have not been checked for remaining entries yet.
+    private final Queue<Chunk> replaced = new ConcurrentLinkedQueue<>();
+
+    private Ledger() {
+        this.clock = null;
+        this.chunks = null;
+        this.stripes = null;
+    }
+
+    /**
+     * @param maxEntries the number of entries that are retained at least; older entries are discarded chunk-wise
+     */
+    public Ledger(final long maxEntries) {
+        this(maxEntries, Clock.systemUTC());
+    }
+
+    Ledger(final long maxEntries, final Clock clock) {
+        this(maxEntries, DEFAULT_STRIPES, clock);
+    }
+
+    /**
+     * @param maxEntries the number of entries that are retained at least; older entries are discarded chunk-wise
+     * @param stripes    the number of stripes of the per-account index
+     * @param clock      the clock of the timestamps
+     */
+    Ledger(final long maxEntries, final int stripes, final Clock clock) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("The number of retained entries must be positive.");
+        }
+        final long retainedChunks = (maxEntries + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        if (retainedChunks >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The number of retained entries is too large.");
+        }
+        this.clock = clock;
+        // One more chunk than needed, so that at least maxEntries are retained while the newest chunk fills up.
+        this.chunks = new AtomicReferenceArray<>((int) retainedChunks + 1);
+        this.stripes = new Stripe[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new Stripe(i);
+        }
+    }
+
+    /**
+     * @return false for {@link #NONE}
+     */
+    public boolean isEnabled() {
+        return stripes != null;
+    }
+
+    /**
+     * Records a completed transfer.
+     *
+     * @param senderAccNo   the account number of the sender
+     * @param receiverAccNo the account number of the receiver
+     * @param amount        the transferred amount
+     */
+    public void record(final String senderAccNo, final String receiverAccNo, final BigDecimal amount) {
+        if (stripes == null) {
+            return;
+        }
+        final long timestamp = clock.millis();
+        final Stripe senderStripe = stripeOf(senderAccNo);
+        final Stripe receiverStripe = stripeOf(receiverAccNo);
+        final Stripe first = senderStripe.index <= receiverStripe.index ? senderStripe : receiverStripe;
+        final Stripe second = first == senderStripe ? receiverStripe : senderStripe;
+        first.lock.lock();
+        try {
+            if (second != first) {
+                second.lock.lock();
+            }
+            try {
+                final AccountIndex sender = senderStripe.index(senderAccNo);
+                final AccountIndex receiver = receiverStripe.index(receiverAccNo);
+                final long id = nextId.getAndIncrement();
+                final int slot = (int) (id & CHUNK_MASK);
+                final Chunk chunk = chunkForAppend(id);
+                chunk.timestamps[slot] = timestamp;
+                chunk.senders[slot] = sender.accountNo;
+                chunk.receivers[slot] = receiver.accountNo;
+                chunk.amounts[slot] = amount;
+                chunk.previousOfSender[slot] = sender.latest;
+                chunk.previousOfReceiver[slot] = receiver.latest;
+                sender.latest = id;
+                receiver.latest = id;
+            } finally {
+                if (second != first) {
+                    second.lock.unlock();
+                }
+            }
+        } finally {
+            first.lock.unlock();
+        }
+        final Chunk chunk = replaced.poll();
+        if (chunk != null) {
+            trim(chunk);
+        }
+    }
+
+    /**
+     * Returns a page of the transfers of an account, newest first.
+     *
+     * @param accountNo the account number
+     * @param after     the cursor returned with the previous page, or null for the first page
+     * @param limit     the maximum number of transfers on the page
+     * @return the page; empty if the account has no retained transfers or the cursor has expired
+     * @throws IllegalArgumentException if the cursor does not refer to a transfer of the account
+     * @throws IllegalStateException    if the ledger is {@link #NONE}
+     */
+    public Statement statement(final String accountNo, final Long after, final int limit) {
+        if (stripes == null) {
+            throw new IllegalStateException("The transfer history is disabled.");
+        }
+        final Stripe stripe = stripeOf(accountNo);
+        stripe.lock.lock();
+        try {
+            if (after != null && (after < 0 || after >= nextId.get())) {
+                throw new IllegalArgumentException("Unknown cursor provided.");
+            }
+            final AccountIndex account = stripe.accounts.get(accountNo);
+            if (account == null) {
+                return new Statement(new ArrayList<>(), null);
+            }
+
+            long id;
+            if (after == null) {
+                id = account.latest;
+            } else if (!isRetained(after)) {
+                id = NO_ENTRY;
+            } else {
+                id = previous(after, accountNo);
+            }
+
+            final List<LedgerEntry> transfers = new ArrayList<>(Math.min(limit, 64));
+            while (isRetained(id) && transfers.size() < limit) {
+                transfers.add(entry(id));
+                id = previous(id, accountNo);
+            }
+            final Long next = isRetained(id) ? transfers.get(transfers.size() - 1).getId() : null;
+            return new Statement(transfers, next);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of retained entries.
+     *
+     * @return the number of entries a statement can still reach
+     */
+    public long size() {
+        return stripes == null ? 0 : nextId.get() - firstId.get();
+    }
+
+    /**
+     * Discards all entries.
+     */
+    public void clear() {
+        if (stripes == null) {
+            return;
+        }
+        for (final Stripe stripe : stripes) {
+            stripe.lock.lock();
+        }
+        try {
+            for (final Stripe stripe : stripes) {
+                stripe.accounts.clear();
+            }
+            replaced.clear();
+            // Ids keep increasing, so that cursors handed out before are recognized as expired.
+            firstId.set(nextId.get());
+        } finally {
+            for (int i = stripes.length - 1; i >= 0; i--) {
+                stripes[i].lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * @return the number of accounts with retained entries, and possibly some whose entries have just been discarded
+     */
+    int indexedAccounts() {
+        int accounts = 0;
+        for (final Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                accounts += stripe.accounts.size();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return accounts;
+    }
+
+    private Chunk chunkForAppend(final long id) {
+        final long chunkNo = id >>> CHUNK_BITS;
+        final int index = (int) (chunkNo % chunks.length());
+        while (true) {
+            final Chunk current = chunks.get(index);
+            if (current != null && current.chunkNo >= chunkNo) {
+                // Only if the ring has wrapped around while this entry was being recorded; the entry is discarded.
+                return current.chunkNo == chunkNo ? current : new Chunk(chunkNo);
+            }
+            final Chunk created = new Chunk(chunkNo);
+            if (chunks.compareAndSet(index, current, created)) {
+                // Starting a chunk discards the oldest one once the ring is full.
+                firstId.accumulateAndGet((chunkNo - chunks.length() + 1) << CHUNK_BITS, Math::max);
+                if (current != null) {
+                    replaced.add(current);
+                }
+                return created;
+            }
+        }
+    }
+
+    /**
+     * Drops the accounts of a replaced chunk from the index unless they have newer entries.
+     */
+    private void trim(final Chunk chunk) {
+        for (int slot = 0; slot < CHUNK_SIZE; slot++) {
+            trim(chunk.senders[slot]);
+            trim(chunk.receivers[slot]);
+        }
+    }
+
+    private void trim(final String accountNo) {
+        if (accountNo == null) {
+            return;
+        }
+        final Stripe stripe = stripeOf(accountNo);
+        stripe.lock.lock();
+        try {
+            final AccountIndex account = stripe.accounts.get(accountNo);
+            if (account != null && !isRetained(account.latest)) {
+                stripe.accounts.remove(accountNo);
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    private boolean isRetained(final long id) {
+        return id >= firstId.get() && chunkOf(id) != null;
+    }
+
+    /**
+     * @return the chunk holding the entry, or null if it has been replaced
+     */
+    private Chunk chunkOf(final long id) {
+        if (id < 0) {
+            return null;
+        }
+        final long chunkNo = id >>> CHUNK_BITS;
+        final Chunk chunk = chunks.get((int) (chunkNo % chunks.length()));
+        return chunk != null && chunk.chunkNo == chunkNo ? chunk : null;
+    }
+
+    /**
+     * To be called while holding the stripe of the account, which guards its entries.
+     */
+    private long previous(final long id, final String accountNo) {
+        final Chunk chunk = chunkOf(id);
+        if (chunk == null) {
+            return NO_ENTRY;
+        }
+        final int slot = (int) (id & CHUNK_MASK);
+        if (accountNo.equals(chunk.senders[slot])) {
+            return chunk.previousOfSender[slot];
+        }
+        if (accountNo.equals(chunk.receivers[slot])) {
+            return chunk.previousOfReceiver[slot];
+        }
+        throw new IllegalArgumentException("The cursor does not refer to a transfer of the account.");
+    }
+
+    private LedgerEntry entry(final long id) {
+        final Chunk chunk = chunkOf(id);
+        final int slot = (int) (id & CHUNK_MASK);
+        return new LedgerEntry(id, chunk.senders[slot], chunk.receivers[slot], chunk.amounts[slot],
+                chunk.timestamps[slot]);
+    }
+
+    private Stripe stripeOf(final String accountNo) {
+        return stripes[(accountNo.hashCode() & Integer.MAX_VALUE) % stripes.length];
+    }
+
+    /**
+     * Latest entries of the accounts whose numbers fall into one stripe, guarded by its lock.
+     */
+    private static final class Stripe {
+
+        private final int index;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<String, AccountIndex> accounts = new HashMap<>();
+
+        private Stripe(final int index) {
+            this.index = index;
+        }
+
+        /**
+         * @return the index entry of the account, created if necessary; its account number is the instance that the
+         * entries refer to
+         */
+        private AccountIndex index(final String accountNo) {
+            return accounts.computeIfAbsent(accountNo, AccountIndex::new);
+        }
+    }
+
+    private static final class AccountIndex {
+
+        private final String accountNo;
+        private long latest = NO_ENTRY;
+
+        private AccountIndex(final String accountNo) {
+            this.accountNo = accountNo;
+        }
+    }
+
+    /**
+     * Columns of {@link #CHUNK_SIZE} consecutive entries.
+     */
+    private static final class Chunk {
+
+        private final long chunkNo;
+        private final long[] timestamps = new long[CHUNK_SIZE];
+        private final String[] senders = new String[CHUNK_SIZE];
+        private final String[] receivers = new String[CHUNK_SIZE];
+        private final BigDecimal[] amounts = new BigDecimal[CHUNK_SIZE];
+        private final long[] previousOfSender = new long[CHUNK_SIZE];
+        private final long[] previousOfReceiver = new long[CHUNK_SIZE];
+
+        private Chunk(final long chunkNo) {
+            this.chunkNo = chunkNo;
+        }
+    }
+}
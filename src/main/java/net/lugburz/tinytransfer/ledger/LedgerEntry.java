@@ -0,0 +1,37 @@
+package net.lugburz.tinytransfer.ledger;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+
+/**
+ * A transfer recorded in the {@link Ledger}.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+public final class LedgerEntry {
+
+    /**
+     * Position of the transfer in the ledger; later transfers have greater ids.
+     */
+    @JsonProperty
+    private final long id;
+
+    @JsonProperty
+    private final String senderAccNo;
+
+    @JsonProperty
+    private final String receiverAccNo;
+
+    @JsonProperty
+    private final BigDecimal amount;
+
+    /**
+     * Time the transfer has been recorded, in milliseconds since the epoch.
+     */
+    @JsonProperty
+    private final long timestamp;
+}
@@ -0,0 +1,33 @@
+package net.lugburz.tinytransfer.ledger;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import lombok.Setter;
+
+import javax.validation.constraints.Min;
+
+/**
+ * Configuration of the transfer history behind the account statements.
+ */
+@Getter
+@Setter
+public class LedgerFactory {
+
+    /**
+     * Whether completed transfers are recorded; without the ledger, account statements are not available.
+     */
+    @JsonProperty
+    private boolean enabled = true;
+
+    /**
+     * Number of transfers that are retained at least; older transfers are discarded in chunks of 4,096. An entry takes
+     * around 40 bytes plus its amount, so the default of 1,000,000 entries stays below 100 megabytes.
+     */
+    @JsonProperty
+    @Min(1)
+    private long maxEntries = 1_000_000;
+
+    public Ledger build() {
+        return enabled ? new Ledger(maxEntries) : Ledger.NONE;
+    }
+}
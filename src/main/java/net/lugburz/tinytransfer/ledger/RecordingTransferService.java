@@ -0,0 +1,72 @@
+package net.lugburz.tinytransfer.ledger;
+
+import net.lugburz.tinytransfer.transfer.BatchMode;
+import net.lugburz.tinytransfer.transfer.BatchResult;
+import net.lugburz.tinytransfer.transfer.Transfer;
+import net.lugburz.tinytransfer.transfer.TransferResult;
+import net.lugburz.tinytransfer.transfer.TransferService;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Transfer service decorator which records every applied transfer in a {@link Ledger}.
+ *
+ * <p>
+ * Transfers are recorded once they have completed, so the order of the ledger is the order of completion; transfers
+ * between disjoint accounts may complete in a different order than they were applied in.
+ */
+public final class RecordingTransferService implements TransferService {
+
+    private final TransferService delegate;
+    private final Ledger ledger;
+
+    public RecordingTransferService(final TransferService delegate, final Ledger ledger) {
+        this.delegate = delegate;
+        this.ledger = ledger;
+    }
+
+    @Override
+    public void transfer(final String senderAccNo, final String receiverAccNo, final BigDecimal amount) {
+        delegate.transfer(senderAccNo, receiverAccNo, amount);
+        ledger.record(senderAccNo, receiverAccNo, amount);
+    }
+
+    /**
+     * Records the transfer once it has succeeded. A failure is passed on as it is, without wrapping it into a
+     * {@link java.util.concurrent.CompletionException}, which would capture a stack trace per rejected transfer.
+     */
+    @Override
+    public CompletableFuture<Void> transferAsync(final String senderAccNo,
+                                                 final String receiverAccNo,
+                                                 final BigDecimal amount) {
+        final CompletableFuture<Void> recorded = new CompletableFuture<>();
+        delegate.transferAsync(senderAccNo, receiverAccNo, amount).handle((ignored, failure) -> {
+            if (failure != null) {
+                recorded.completeExceptionally(failure);
+                return null;
+            }
+            try {
+                ledger.record(senderAccNo, receiverAccNo, amount);
+                recorded.complete(null);
+            } catch (final RuntimeException exception) {
+                recorded.completeExceptionally(exception);
+            }
+            return null;
+        });
+        return recorded;
+    }
+
+    @Override
+    public BatchResult transferAll(final List<Transfer> transfers, final BatchMode mode) {
+        final BatchResult result = delegate.transferAll(transfers, mode);
+        for (final TransferResult transferResult : result.getResults()) {
+            if (transferResult.isSuccess()) {
+                final Transfer transfer = transfers.get(transferResult.getIndex());
+                ledger.record(transfer.getSenderAccNo(), transfer.getReceiverAccNo(), transfer.getAmount());
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,27 @@
+package net.lugburz.tinytransfer.ledger;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * One page of the transfers of an account, newest first.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+public final class Statement {
+
+    @JsonProperty
+    private final List<LedgerEntry> transfers;
+
+    /**
+     * Cursor of the next page, to be passed as {@code after}; null on the last page.
+     */
+    @JsonProperty
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private final Long next;
+}
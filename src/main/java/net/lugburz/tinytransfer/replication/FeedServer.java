@@ -0,0 +1,266 @@
+package net.lugburz.tinytransfer.replication;
+
+import io.dropwizard.lifecycle.Managed;
+import net.lugburz.tinytransfer.journal.ChangeFeed;
+import net.lugburz.tinytransfer.journal.JournalException;
+import net.lugburz.tinytransfer.journal.SnapshotSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Listener of a primary which streams its {@link ChangeFeed} to replicas, see {@link ReplicationProtocol}.
+ *
+ * <p>
+ * Every replica is served by a thread of its own, which sends the records of the feed as soon as they are stored and
+ * polls the feed while it has caught up. Replicas are few, and a slow replica only holds up its own thread; one that
+ * falls behind by more than the capacity of the feed is disconnected and starts over from a snapshot.
+ */
+public final class FeedServer implements Managed {
+
+    private static final int OUTPUT_BUFFER_BYTES = 64 * 1024;
+    private static final long IDLE_POLL_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final InetSocketAddress address;
+    private final ChangeFeed feed;
+    private final SnapshotSource source;
+    private final Runnable appliedBarrier;
+    private final long heartbeatNanos;
+
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+
+    private ServerSocket serverSocket;
+    private Thread acceptor;
+    private volatile boolean running;
+
+    /**
+     * @param address           the address to listen on; port 0 picks a free port, see {@link #getPort()}
+     * @param feed              the journal of the account store
+     * @param source            the account store, for the snapshots new replicas start from
+     * @param appliedBarrier    blocks until every change whose record has already been appended to the feed has been
+     *                          applied to the account store
+     * @param heartbeatInterval the time between two heartbeats to a replica
+     */
+    public FeedServer(final InetSocketAddress address,
+                      final ChangeFeed feed,
+                      final SnapshotSource source,
+                      final Runnable appliedBarrier,
+                      final long heartbeatInterval,
+                      final TimeUnit heartbeatUnit) {
+        this.address = address;
+        this.feed = feed;
+        this.source = source;
+        this.appliedBarrier = appliedBarrier;
+        this.heartbeatNanos = heartbeatUnit.toNanos(heartbeatInterval);
+    }
+
+    @Override
+    public void start() throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.bind(address);
+        running = true;
+        acceptor = new Thread(this::accept, "replication-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        log.info("Change feed listening on {}", serverSocket.getLocalSocketAddress());
+    }
+
+    @Override
+    public void stop() throws Exception {
+        running = false;
+        serverSocket.close();
+        acceptor.join();
+        for (final Connection connection : connections) {
+            connection.close();
+        }
+    }
+
+    /**
+     * @return the port the listener is bound to
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return the number of connected replicas
+     */
+    public int replicas() {
+        return connections.size();
+    }
+
+    /**
+     * @return the largest number of records which have been appended to the feed but not yet sent to a connected
+     * replica
+     */
+    public long backlog() {
+        final long sequence = feed.sequence();
+        long backlog = 0;
+        for (final Connection connection : connections) {
+            backlog = Math.max(backlog, sequence - connection.sent);
+        }
+        return backlog;
+    }
+
+    private void accept() {
+        while (running) {
+            try {
+                final Connection connection = new Connection(serverSocket.accept());
+                connections.add(connection);
+                final Thread sender = new Thread(connection::run,
+                        "replication-sender-" + connection.socket.getRemoteSocketAddress());
+                sender.setDaemon(true);
+                sender.start();
+            } catch (final IOException exception) {
+                if (running) {
+                    log.error("Failed to accept a replica.", exception);
+                }
+            }
+        }
+    }
+
+    /**
+     * The stream to one replica.
+     */
+    private final class Connection {
+
+        private final Socket socket;
+        // The sequence number of the latest record sent.
+        private volatile long sent;
+
+        private Connection(final Socket socket) {
+            this.socket = socket;
+        }
+
+        private void run() {
+            try {
+                socket.setTcpNoDelay(true);
+                final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                final DataOutputStream out =
+                        new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), OUTPUT_BUFFER_BYTES));
+                if (in.readInt() != ReplicationProtocol.MAGIC) {
+                    throw new IOException("Not a replica.");
+                }
+                final long feedId = in.readLong();
+                final long sequence = in.readLong();
+                if (canResume(feedId, sequence)) {
+                    sent = sequence;
+                    log.info("Replica {} resumes after change {}.", socket.getRemoteSocketAddress(), sequence);
+                } else {
+                    sent = sendSnapshot(out);
+                    log.info("Sent a snapshot at change {} to replica {}.", sent, socket.getRemoteSocketAddress());
+                }
+                stream(out);
+            } catch (final IOException | UncheckedIOException | JournalException exception) {
+                // Replicas come and go, and one which fell behind the feed reconnects right away.
+                if (running) {
+                    log.info("Stopped streaming to replica {}: {}", socket.getRemoteSocketAddress(),
+                            exception.toString());
+                }
+            } finally {
+                close();
+            }
+        }
+
+        private boolean canResume(final long feedId, final long sequence) {
+            if (feedId != feed.getId() || sequence > feed.sequence()) {
+                return false;
+            }
+            try {
+                // Records after the next one are newer, so they are still held as well.
+                if (sequence < feed.sequence()) {
+                    feed.read(sequence + 1);
+                }
+                return true;
+            } catch (final JournalException exception) {
+                return false;
+            }
+        }
+
+        /**
+         * @return the sequence number the snapshot covers
+         */
+        private long sendSnapshot(final DataOutputStream out) throws IOException {
+            final long sequence = feed.sequence();
+            // The feed has to hold every change up to the sequence number before it is read from the store.
+            appliedBarrier.run();
+            out.writeByte(ReplicationProtocol.RESET);
+            out.writeLong(feed.getId());
+            out.writeLong(sequence);
+            source.forEachBalance((accountNo, balance) -> {
+                try {
+                    writeRecord(out, ReplicationProtocol.SNAPSHOT, ChangeFeed.snapshotRecord(accountNo, balance));
+                } catch (final IOException exception) {
+                    throw new UncheckedIOException(exception);
+                }
+            });
+            out.writeByte(ReplicationProtocol.SNAPSHOT_END);
+            out.flush();
+            return sequence;
+        }
+
+        private void stream(final DataOutputStream out) throws IOException {
+            long heartbeatDue = System.nanoTime();
+            boolean unflushed = false;
+            while (running) {
+                if (System.nanoTime() - heartbeatDue >= 0) {
+                    out.writeByte(ReplicationProtocol.HEARTBEAT);
+                    out.writeLong(sent);
+                    out.flush();
+                    unflushed = false;
+                    heartbeatDue = System.nanoTime() + heartbeatNanos;
+                }
+                final byte[] record = feed.read(sent + 1);
+                if (record != null) {
+                    out.writeByte(ReplicationProtocol.RECORD);
+                    out.writeLong(sent + 1);
+                    writeRecord(out, record);
+                    sent++;
+                    unflushed = true;
+                } else if (unflushed) {
+                    out.flush();
+                    unflushed = false;
+                } else {
+                    LockSupport.parkNanos(IDLE_POLL_NANOS);
+                }
+            }
+        }
+
+        private void writeRecord(final DataOutputStream out, final byte[] record) throws IOException {
+            out.writeInt(record.length);
+            out.write(record);
+        }
+
+        private void writeRecord(final DataOutputStream out, final byte type, final byte[] record) throws IOException {
+            out.writeByte(type);
+            writeRecord(out, record);
+        }
+
+        private void close() {
+            connections.remove(this);
+            try {
+                socket.close();
+            } catch (final SocketException ignored) {
+                // already closed
+            } catch (final IOException exception) {
+                log.warn("Failed to close the connection to replica {}.", socket.getRemoteSocketAddress(), exception);
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package net.lugburz.tinytransfer.replication;
+
+import io.dropwizard.servlets.tasks.Task;
+
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Admin task which points a replica at another primary, such as a replica promoted after the primary failed. The
+ * replica starts over from a snapshot of the new primary.
+ * <p>
+ * Run with {@code POST http://localhost:8081/tasks/follow?host=10.0.0.3&port=8091}.
+ */
+public final class FollowTask extends Task {
+
+    private final Replica replica;
+
+    public FollowTask(final Replica replica) {
+        super("follow");
+        this.replica = replica;
+    }
+
+    @Override
+    public void execute(final Map<String, List<String>> parameters, final PrintWriter output) {
+        final List<String> host = parameters.get("host");
+        final List<String> port = parameters.get("port");
+        if (host == null || host.isEmpty() || port == null || port.isEmpty()) {
+            throw new IllegalArgumentException("The parameters host and port are required.");
+        }
+        final InetSocketAddress primary = new InetSocketAddress(host.get(0), Integer.parseInt(port.get(0)));
+        replica.follow(primary);
+        output.println("following " + primary);
+        output.flush();
+    }
+}
@@ -0,0 +1,30 @@
+package net.lugburz.tinytransfer.replication;
+
+import io.dropwizard.servlets.tasks.Task;
+
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Admin task which promotes a replica to primary once its primary is gone: the replica stops following, accepts
+ * changes and serves its own change feed.
+ * <p>
+ * Run with {@code POST http://localhost:8081/tasks/promote}.
+ */
+public final class PromoteTask extends Task {
+
+    private final Replica replica;
+
+    public PromoteTask(final Replica replica) {
+        super("promote");
+        this.replica = replica;
+    }
+
+    @Override
+    public void execute(final Map<String, List<String>> parameters, final PrintWriter output) throws Exception {
+        final long sequence = replica.promote();
+        output.println("promoted after change " + sequence);
+        output.flush();
+    }
+}
@@ -0,0 +1,261 @@
+package net.lugburz.tinytransfer.replication;
+
+import io.dropwizard.lifecycle.Managed;
+import net.lugburz.tinytransfer.account.InMemoryAccountRepository;
+import net.lugburz.tinytransfer.journal.ChangeFeed;
+import net.lugburz.tinytransfer.journal.JournalException;
+import net.lugburz.tinytransfer.journal.RecordHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Follows a primary: applies the changes streamed by its {@link FeedServer} to the local account store, which serves
+ * reads meanwhile, and reconnects whenever the connection is lost.
+ *
+ * <p>
+ * The staleness of the replica is the time since the last heartbeat of the primary; since the stream is ordered, every
+ * change the primary had made when it sent the heartbeat has been applied by then. A replica which has lost its
+ * primary keeps its last state and grows staler until it is promoted or pointed at another primary.
+ *
+ * <p>
+ * Once promoted, the replica stops following and starts the feed server of its own store, so that other replicas can
+ * follow it instead.
+ */
+public final class Replica implements Managed {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 1000;
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final InMemoryAccountRepository repository;
+    private final RecordHandler handler;
+    private final FeedServer successor;
+    private final long reconnectMillis;
+    private final int readTimeoutMillis;
+
+    private volatile InetSocketAddress primary;
+    private volatile Socket socket;
+    private volatile boolean running;
+    private volatile boolean promoted;
+    private Thread follower;
+
+    // Written by the follower thread only.
+    private long feedId;
+    private volatile long sequence;
+    private volatile boolean synced;
+    private volatile long freshAt;
+
+    /**
+     * @param repository        the account store, which has to start out empty
+     * @param primary           the address of the feed server of the primary
+     * @param successor         the feed server of the repository, started once the replica is promoted
+     * @param reconnectMillis   the time between two attempts to connect to the primary
+     * @param readTimeoutMillis the time after which a primary that sends nothing, not even heartbeats, is given up
+     */
+    public Replica(final InMemoryAccountRepository repository,
+                   final InetSocketAddress primary,
+                   final FeedServer successor,
+                   final long reconnectMillis,
+                   final int readTimeoutMillis) {
+        this.repository = repository;
+        this.handler = repository.replicationHandler();
+        this.primary = primary;
+        this.successor = successor;
+        this.reconnectMillis = reconnectMillis;
+        this.readTimeoutMillis = readTimeoutMillis;
+    }
+
+    @Override
+    public synchronized void start() {
+        running = true;
+        follower = new Thread(this::follow, "replica-follower");
+        follower.setDaemon(true);
+        follower.start();
+    }
+
+    @Override
+    public synchronized void stop() throws Exception {
+        if (promoted) {
+            successor.stop();
+        } else {
+            stopFollowing();
+        }
+    }
+
+    /**
+     * Stops following the primary and starts serving the feed of the local store. The caller has to make sure that
+     * the primary no longer accepts changes.
+     *
+     * @return the sequence number of the last change applied from the primary
+     * @throws IOException           if the feed server cannot be started
+     * @throws IllegalStateException if the replica has already been promoted
+     */
+    public synchronized long promote() throws IOException, InterruptedException {
+        if (promoted) {
+            throw new IllegalStateException("The replica has already been promoted.");
+        }
+        stopFollowing();
+        promoted = true;
+        successor.start();
+        log.warn("Promoted to primary after change {} of feed {}; {} accounts.", sequence, feedId, repository.size());
+        return sequence;
+    }
+
+    /**
+     * Follows another primary from now on; the current connection, if any, is dropped.
+     *
+     * @param address the address of the feed server of the new primary
+     * @throws IllegalStateException if the replica has been promoted
+     */
+    public synchronized void follow(final InetSocketAddress address) {
+        if (promoted) {
+            throw new IllegalStateException("The replica has been promoted.");
+        }
+        primary = address;
+        closeSocket();
+    }
+
+    public boolean isPromoted() {
+        return promoted;
+    }
+
+    /**
+     * @return whether the store holds a complete state of the primary, possibly a stale one
+     */
+    public boolean isSynced() {
+        return synced;
+    }
+
+    /**
+     * @return the sequence number of the last change applied from the primary
+     */
+    public long sequence() {
+        return sequence;
+    }
+
+    /**
+     * @return the milliseconds since the store was last known to hold every change of the primary, or -1 if it has
+     * not received a complete state yet
+     */
+    public long stalenessMillis() {
+        return synced ? TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - freshAt) : -1;
+    }
+
+    private void stopFollowing() throws InterruptedException {
+        running = false;
+        closeSocket();
+        if (follower != null) {
+            // Cuts short the wait before the next attempt to connect.
+            follower.interrupt();
+            follower.join();
+        }
+    }
+
+    private void follow() {
+        boolean connected = true;
+        while (running) {
+            // Resolved on every attempt, so that a primary which moved to another address is found.
+            final InetSocketAddress address = new InetSocketAddress(primary.getHostString(), primary.getPort());
+            try (Socket connection = new Socket()) {
+                socket = connection;
+                connection.connect(address, CONNECT_TIMEOUT_MILLIS);
+                connection.setSoTimeout(readTimeoutMillis);
+                connected = true;
+                log.info("Following the primary at {}.", address);
+                stream(connection);
+            } catch (final IOException | JournalException exception) {
+                // Reported once per outage, not on every attempt to reconnect.
+                if (running && connected) {
+                    log.warn("Lost the primary at {}: {}", address, exception.toString());
+                }
+                connected = false;
+            }
+            if (running) {
+                sleep(reconnectMillis);
+            }
+        }
+    }
+
+    private void stream(final Socket connection) throws IOException {
+        final DataOutputStream out = new DataOutputStream(connection.getOutputStream());
+        out.writeInt(ReplicationProtocol.MAGIC);
+        out.writeLong(feedId);
+        out.writeLong(sequence);
+        out.flush();
+
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+        long snapshotSequence = 0;
+        while (running) {
+            final byte type = in.readByte();
+            switch (type) {
+                case ReplicationProtocol.RECORD:
+                    final long next = in.readLong();
+                    if (next != sequence + 1) {
+                        throw new IOException("Expected change " + (sequence + 1) + " but got " + next + ".");
+                    }
+                    ChangeFeed.apply(readRecord(in), handler);
+                    sequence = next;
+                    break;
+                case ReplicationProtocol.RESET:
+                    synced = false;
+                    feedId = in.readLong();
+                    snapshotSequence = in.readLong();
+                    handler.onClear();
+                    break;
+                case ReplicationProtocol.SNAPSHOT:
+                    ChangeFeed.apply(readRecord(in), handler);
+                    break;
+                case ReplicationProtocol.SNAPSHOT_END:
+                    sequence = snapshotSequence;
+                    freshAt = System.nanoTime();
+                    synced = true;
+                    log.info("Loaded a snapshot of {} accounts at change {}.", repository.size(), sequence);
+                    break;
+                case ReplicationProtocol.HEARTBEAT:
+                    if (in.readLong() == sequence && synced) {
+                        freshAt = System.nanoTime();
+                    }
+                    break;
+                default:
+                    throw new IOException("Unknown frame type " + type + ".");
+            }
+        }
+    }
+
+    private static byte[] readRecord(final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0 || length > ReplicationProtocol.MAX_RECORD_BYTES) {
+            throw new IOException("Invalid record length " + length + ".");
+        }
+        final byte[] record = new byte[length];
+        in.readFully(record);
+        return record;
+    }
+
+    private void closeSocket() {
+        final Socket current = socket;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (final IOException exception) {
+                log.warn("Failed to close the connection to the primary.", exception);
+            }
+        }
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package net.lugburz.tinytransfer.replication;
+
+import io.dropwizard.jersey.errors.ErrorMessage;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.PathSegment;
+import javax.ws.rs.core.Response;
+import java.util.List;
+
+/**
+ * Restricts a replica which has not been promoted to reads of accounts within a bound of staleness.
+ *
+ * <p>
+ * {@code GET /accounts/{accountNo}}, {@code GET /accounts/export} and {@code POST /accounts/query} are served as long
+ * as the replica is no staler than the configured bound, or than the {@value #MAX_STALENESS} header of the request if
+ * that is lower; every response tells the staleness in the {@value #STALENESS} header. All other requests change
+ * accounts or read state which is not replicated, such as the ledger, and are answered with HTTP 503.
+ */
+public final class ReplicaFilter implements ContainerRequestFilter, ContainerResponseFilter {
+
+    /**
+     * Response header with the staleness of the replica in milliseconds.
+     */
+    public static final String STALENESS = "Replica-Staleness";
+
+    /**
+     * Request header with the highest staleness in milliseconds the client accepts.
+     */
+    public static final String MAX_STALENESS = "Max-Staleness";
+
+    private final Replica replica;
+    private final long maxStalenessMillis;
+
+    /**
+     * @param replica            the replica
+     * @param maxStalenessMillis the highest staleness at which reads are served
+     */
+    public ReplicaFilter(final Replica replica, final long maxStalenessMillis) {
+        this.replica = replica;
+        this.maxStalenessMillis = maxStalenessMillis;
+    }
+
+    @Override
+    public void filter(final ContainerRequestContext request) {
+        if (replica.isPromoted()) {
+            return;
+        }
+        if (!isRead(request.getMethod(), request.getUriInfo().getPathSegments())) {
+            request.abortWith(unavailable("This node is a read-only replica."));
+            return;
+        }
+        final long staleness = replica.stalenessMillis();
+        if (staleness < 0) {
+            request.abortWith(unavailable("The replica has not received the accounts of its primary yet."));
+            return;
+        }
+        final long bound = Math.min(maxStalenessMillis, requestedBound(request.getHeaderString(MAX_STALENESS)));
+        if (staleness > bound) {
+            request.abortWith(unavailable("The replica is " + staleness + " ms behind its primary, more than "
+                    + bound + " ms."));
+        }
+    }
+
+    @Override
+    public void filter(final ContainerRequestContext request, final ContainerResponseContext response) {
+        final long staleness = replica.stalenessMillis();
+        if (!replica.isPromoted() && staleness >= 0) {
+            response.getHeaders().putSingle(STALENESS, staleness);
+        }
+    }
+
+    private static boolean isRead(final String method, final List<PathSegment> segments) {
+        if (segments.size() != 2 || !"accounts".equals(segments.get(0).getPath())) {
+            return false;
+        }
+        // GET /accounts/{accountNo} and /accounts/export, POST /accounts/query.
+        return HttpMethod.GET.equals(method)
+                || HttpMethod.POST.equals(method) && "query".equals(segments.get(1).getPath());
+    }
+
+    private static long requestedBound(final String header) {
+        if (header == null) {
+            return Long.MAX_VALUE;
+        }
+        try {
+            return Math.max(0, Long.parseLong(header.trim()));
+        } catch (final NumberFormatException exception) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private static Response unavailable(final String message) {
+        return Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                .type(MediaType.APPLICATION_JSON_TYPE)
+                .entity(new ErrorMessage(Response.Status.SERVICE_UNAVAILABLE.getStatusCode(), message))
+                .build();
+    }
+}
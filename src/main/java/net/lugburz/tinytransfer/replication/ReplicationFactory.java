@@ -0,0 +1,142 @@
+package net.lugburz.tinytransfer.replication;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+import io.dropwizard.validation.MinDuration;
+import lombok.Getter;
+import lombok.Setter;
+import net.lugburz.tinytransfer.account.InMemoryAccountRepository;
+import net.lugburz.tinytransfer.journal.ChangeFeed;
+import net.lugburz.tinytransfer.journal.Journal;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configuration of primary/replica replication, in which replicas follow the changes of a primary and serve reads.
+ */
+@Getter
+@Setter
+public class ReplicationFactory {
+
+    /**
+     * Roles of a node.
+     */
+    public enum Role {
+        /**
+         * Accepts all requests and streams its changes to the replicas.
+         */
+        PRIMARY,
+        /**
+         * Follows a primary and serves reads of accounts until it is promoted.
+         */
+        REPLICA
+    }
+
+    @JsonProperty
+    private boolean enabled = false;
+
+    @JsonProperty
+    @NotNull
+    private Role role = Role.PRIMARY;
+
+    /**
+     * Address the change feed listener binds to; the loopback address by default, so that only local replicas can
+     * connect. A replica listens once it is promoted.
+     */
+    @JsonProperty
+    @NotEmpty
+    private String bindHost = "127.0.0.1";
+
+    /**
+     * TCP port of the change feed listener; 0 picks a free port.
+     */
+    @JsonProperty
+    @Min(0)
+    @Max(65535)
+    private int port = 8091;
+
+    /**
+     * Host of the change feed listener of the primary a replica follows.
+     */
+    @JsonProperty
+    @NotEmpty
+    private String primaryHost = "127.0.0.1";
+
+    /**
+     * Port of the change feed listener of the primary a replica follows.
+     */
+    @JsonProperty
+    @Min(1)
+    @Max(65535)
+    private int primaryPort = 8091;
+
+    /**
+     * Number of recent changes kept in memory, rounded up to the next power of two. A replica which falls behind by
+     * more, or reconnects after more changes, starts over from a snapshot.
+     */
+    @JsonProperty
+    @Min(1)
+    private int feedCapacity = 65536;
+
+    /**
+     * Time between two heartbeats of the primary; the staleness a replica reports is accurate to this interval.
+     */
+    @JsonProperty
+    @NotNull
+    @MinDuration(value = 1, unit = TimeUnit.MILLISECONDS)
+    private Duration heartbeatInterval = Duration.milliseconds(100);
+
+    /**
+     * Highest staleness at which a replica serves reads; staler replicas answer with HTTP 503.
+     */
+    @JsonProperty
+    @NotNull
+    private Duration maxStaleness = Duration.seconds(5);
+
+    /**
+     * Time between two attempts of a replica to connect to its primary.
+     */
+    @JsonProperty
+    @NotNull
+    @MinDuration(value = 1, unit = TimeUnit.MILLISECONDS)
+    private Duration reconnectInterval = Duration.seconds(1);
+
+    @JsonIgnore
+    public boolean isReplica() {
+        return enabled && role == Role.REPLICA;
+    }
+
+    public ChangeFeed changeFeed(final Journal delegate) {
+        return new ChangeFeed(delegate, feedCapacity);
+    }
+
+    /**
+     * @param appliedBarrier blocks until every change appended to the feed has been applied to the repository
+     */
+    public FeedServer feedServer(final ChangeFeed feed,
+                                 final InMemoryAccountRepository repository,
+                                 final Runnable appliedBarrier) {
+        return new FeedServer(new InetSocketAddress(bindHost, port), feed, repository, appliedBarrier,
+                heartbeatInterval.toMilliseconds(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param successor the feed server of the repository, started once the replica is promoted
+     */
+    public Replica replica(final InMemoryAccountRepository repository, final FeedServer successor) {
+        // A primary which misses ten heartbeats in a row is given up and reconnected to.
+        final int readTimeout = (int) Math.min(Integer.MAX_VALUE, 10 * heartbeatInterval.toMilliseconds());
+        return new Replica(repository, InetSocketAddress.createUnresolved(primaryHost, primaryPort), successor,
+                reconnectInterval.toMilliseconds(), readTimeout);
+    }
+
+    public ReplicaFilter filter(final Replica replica) {
+        return new ReplicaFilter(replica, maxStaleness.toMilliseconds());
+    }
+}
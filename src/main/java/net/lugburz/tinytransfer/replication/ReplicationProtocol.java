@@ -0,0 +1,42 @@
+package net.lugburz.tinytransfer.replication;
+
+/**
+ * Frames of the stream from a primary to a replica, over one TCP connection per replica. All integers are
+ * big-endian.
+ *
+ * <pre>
+ * connection := hello frame*
+ * hello      := MAGIC:int32 feedId:int64 sequence:int64       (replica to primary, once)
+ * frame      := RECORD sequence:int64 length:int32 record[length]
+ *             | RESET feedId:int64 sequence:int64
+ *             | SNAPSHOT length:int32 record[length]
+ *             | SNAPSHOT_END
+ *             | HEARTBEAT sequence:int64
+ * </pre>
+ *
+ * <p>
+ * The hello names the feed and the last sequence number the replica has applied, 0 if it has none. If the primary
+ * still holds the records after it, it continues with them. Otherwise it sends {@code RESET}, upon which the replica
+ * removes all accounts, the balance of every account as a {@code SNAPSHOT} frame and {@code SNAPSHOT_END}, and then
+ * continues with the records after the sequence number of the {@code RESET}. Records are encoded as in the journal,
+ * see {@link net.lugburz.tinytransfer.journal.ChangeFeed}. A {@code HEARTBEAT} tells that every record up to its
+ * sequence number has been sent, which bounds the staleness of the replica.
+ */
+final class ReplicationProtocol {
+
+    static final int MAGIC = 0x54545231;
+
+    static final byte RECORD = 1;
+    static final byte RESET = 2;
+    static final byte SNAPSHOT = 3;
+    static final byte SNAPSHOT_END = 4;
+    static final byte HEARTBEAT = 5;
+
+    /**
+     * Longest record a replica accepts; a batch of 10,000 transfers touches at most 20,000 accounts.
+     */
+    static final int MAX_RECORD_BYTES = 16 * 1024 * 1024;
+
+    private ReplicationProtocol() {
+    }
+}
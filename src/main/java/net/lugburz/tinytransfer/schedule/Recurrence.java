@@ -0,0 +1,37 @@
+package net.lugburz.tinytransfer.schedule;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+/**
+ * Intervals at which a scheduled transfer is repeated, in UTC.
+ */
+public enum Recurrence {
+    DAILY,
+    WEEKLY,
+    /**
+     * On the same day of every month, or on the last day of months which are shorter.
+     */
+    MONTHLY;
+
+    /**
+     * Returns the time of an execution, counted from the first one so that shorter months do not shift later ones.
+     *
+     * @param startAt    the time of the first execution, in milliseconds since the epoch
+     * @param occurrence the number of the execution, 0 for the first one
+     * @return the time of the execution, in milliseconds since the epoch
+     */
+    public long executionTime(final long startAt, final int occurrence) {
+        final ZonedDateTime start = Instant.ofEpochMilli(startAt).atZone(ZoneOffset.UTC);
+        switch (this) {
+            case DAILY:
+                return start.plusDays(occurrence).toInstant().toEpochMilli();
+            case WEEKLY:
+                return start.plusWeeks(occurrence).toInstant().toEpochMilli();
+            case MONTHLY:
+            default:
+                return start.plusMonths(occurrence).toInstant().toEpochMilli();
+        }
+    }
+}
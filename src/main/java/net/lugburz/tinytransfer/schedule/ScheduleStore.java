@@ -0,0 +1,352 @@
+package net.lugburz.tinytransfer.schedule;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only file of the pending scheduled transfers.
+ *
+ * <pre>
+ * file     := MAGIC:int32 nextId:int64 record*
+ * record   := type:int8 length:int32 payload crc32:int32
+ * SCHEDULE := id:int64 startAt:int64 occurrence:int32 recurrence:int8 sender:string receiver:string amount:decimal
+ * ADVANCE  := id:int64 occurrence:int32
+ * REMOVE   := id:int64
+ * string   := length:int32 utf8
+ * decimal  := scale:int32 length:int32 unscaled
+ * </pre>
+ *
+ * <p>
+ * The checksum covers the type, length and payload. Records are appended as transfers are scheduled, executed and
+ * cancelled; on {@link #load()} the file is replayed and rewritten with the pending transfers only, through a
+ * temporary file. While the store is in use, {@link #needsCompaction()} reports once most records have been
+ * superseded, so that recurring transfers which advance forever do not grow the file without bound. An incomplete
+ * record at the end, left behind by a crash during an append, is dropped; a record whose length exceeds
+ * {@value #MAX_RECORD_BYTES} bytes, which is never appended, makes the file corrupt unless the file ends within its
+ * header.
+ *
+ * <p>
+ * Appends are serialized by the caller. {@link #awaitDurable(long)} may be called concurrently with them: one caller
+ * forces the file for all records appended so far, and the others waiting meanwhile only check its result.
+ */
+final class ScheduleStore implements AutoCloseable {
+
+    static final int DEFAULT_MIN_DEAD_RECORDS = 1024;
+
+    private static final Logger log = LoggerFactory.getLogger(ScheduleStore.class);
+
+    private static final int MAGIC = 0x54545431;
+    private static final byte SCHEDULE = 1;
+    private static final byte ADVANCE = 2;
+    private static final byte REMOVE = 3;
+    private static final int HEADER_BYTES = 12;
+    // Type, length and checksum.
+    private static final int RECORD_OVERHEAD = 9;
+    static final int MAX_RECORD_BYTES = 1024 * 1024;
+    private static final int WRITE_BUFFER_BYTES = 1024 * 1024;
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+
+    private final Path file;
+    private final int minDeadRecords;
+    private final CRC32 crc = new CRC32();
+    // Guards the channel against being replaced while it is forced, and the durable position.
+    private final Object forcing = new Object();
+    private volatile FileChannel channel;
+    private long nextId = 1;
+    // Records in the file, and the pending transfers they describe; the others have been superseded.
+    private long records;
+    private long live;
+    private volatile long appendedPosition;
+    private volatile long durablePosition;
+
+    /**
+     * @param file the file of the pending transfers, created if it does not exist
+     */
+    ScheduleStore(final Path file) {
+        this(file, DEFAULT_MIN_DEAD_RECORDS);
+    }
+
+    /**
+     * @param file           the file of the pending transfers, created if it does not exist
+     * @param minDeadRecords the number of superseded records below which the file is not compacted
+     */
+    ScheduleStore(final Path file, final int minDeadRecords) {
+        this.file = file.toAbsolutePath();
+        this.minDeadRecords = minDeadRecords;
+    }
+
+    /**
+     * Reads the pending transfers and compacts the file. Appending requires a prior load.
+     *
+     * @return the pending transfers, in order of scheduling
+     * @throws IOException if the file cannot be read or written, or is corrupt before its end
+     */
+    Collection<ScheduledTransfer> load() throws IOException {
+        Files.createDirectories(file.getParent());
+        final Map<Long, ScheduledTransfer> pending = new LinkedHashMap<>();
+        if (Files.exists(file)) {
+            read(pending);
+        }
+        rewrite(pending.values());
+        channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        records = pending.size();
+        live = pending.size();
+        return pending.values();
+    }
+
+    /**
+     * @return true if more records have been superseded than describe pending transfers, and at least the minimum
+     */
+    boolean needsCompaction() {
+        final long dead = records - live;
+        return dead >= minDeadRecords && dead > live;
+    }
+
+    /**
+     * Replaces the file with one which holds a SCHEDULE record per pending transfer. The new file is durable, and so
+     * is every record appended before.
+     *
+     * @param pending the pending transfers, which include the effect of every record appended so far
+     * @throws IOException if the new file cannot be written; the store keeps appending to the old one then
+     */
+    void compact(final Collection<ScheduledTransfer> pending) throws IOException {
+        synchronized (forcing) {
+            rewrite(pending);
+            channel.close();
+            channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            records = pending.size();
+            live = pending.size();
+            durablePosition = appendedPosition;
+        }
+    }
+
+    /**
+     * @return an id which has never been used for a scheduled transfer
+     */
+    long nextId() {
+        return nextId++;
+    }
+
+    /**
+     * @return the position of the record, see {@link #awaitDurable(long)}
+     * @throws IllegalArgumentException if the record would exceed {@value #MAX_RECORD_BYTES} bytes; nothing is written
+     */
+    long appendSchedule(final ScheduledTransfer transfer) throws IOException {
+        final ByteBuffer record = scheduleRecord(transfer);
+        if (record.remaining() - RECORD_OVERHEAD > MAX_RECORD_BYTES) {
+            throw new IllegalArgumentException("The scheduled transfer exceeds " + MAX_RECORD_BYTES + " bytes.");
+        }
+        final long position = write(record);
+        live++;
+        return position;
+    }
+
+    /**
+     * @return the position of the record, see {@link #awaitDurable(long)}
+     */
+    long appendAdvance(final long id, final int occurrence) throws IOException {
+        return write(record(ADVANCE, ByteBuffer.allocate(12).putLong(id).putInt(occurrence)));
+    }
+
+    /**
+     * @return the position of the record, see {@link #awaitDurable(long)}
+     */
+    long appendRemove(final long id) throws IOException {
+        final long position = write(record(REMOVE, ByteBuffer.allocate(8).putLong(id)));
+        live--;
+        return position;
+    }
+
+    /**
+     * Blocks until the record at a given position and all records before it are on disk. If no other caller is
+     * forcing the file, this one forces it for every record appended so far.
+     *
+     * @param position the position of a record, as returned by one of the append methods
+     * @throws IOException if the file cannot be forced
+     */
+    void awaitDurable(final long position) throws IOException {
+        synchronized (forcing) {
+            if (durablePosition >= position) {
+                return;
+            }
+            final long appended = appendedPosition;
+            channel.force(false);
+            durablePosition = appended;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    private long write(final ByteBuffer record) throws IOException {
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+        records++;
+        appendedPosition++;
+        return appendedPosition;
+    }
+
+    private ByteBuffer scheduleRecord(final ScheduledTransfer transfer) {
+        final byte[] sender = transfer.getSenderAccNo().getBytes(StandardCharsets.UTF_8);
+        final byte[] receiver = transfer.getReceiverAccNo().getBytes(StandardCharsets.UTF_8);
+        final byte[] unscaled = transfer.getAmount().unscaledValue().toByteArray();
+        final ByteBuffer payload =
+                ByteBuffer.allocate(21 + 4 + sender.length + 4 + receiver.length + 8 + unscaled.length);
+        payload.putLong(transfer.getId())
+                .putLong(transfer.getStartAt())
+                .putInt(transfer.getOccurrence())
+                .put((byte) (transfer.getRecurrence() == null ? -1 : transfer.getRecurrence().ordinal()))
+                .putInt(sender.length).put(sender)
+                .putInt(receiver.length).put(receiver)
+                .putInt(transfer.getAmount().scale())
+                .putInt(unscaled.length).put(unscaled);
+        return record(SCHEDULE, payload);
+    }
+
+    /**
+     * @return the record, ready to be written
+     */
+    private ByteBuffer record(final byte type, final ByteBuffer payload) {
+        payload.flip();
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_OVERHEAD + payload.remaining());
+        record.put(type).putInt(payload.remaining()).put(payload);
+        crc.reset();
+        crc.update(record.array(), 0, record.position());
+        record.putInt((int) crc.getValue());
+        record.flip();
+        return record;
+    }
+
+    private void read(final Map<Long, ScheduledTransfer> pending) throws IOException {
+        final long size = Files.size(file);
+        try (InputStream input = Files.newInputStream(file)) {
+            final DataInputStream in = new DataInputStream(new BufferedInputStream(input));
+            if (in.readInt() != MAGIC) {
+                throw new IOException("The file " + file + " holds no scheduled transfers.");
+            }
+            nextId = in.readLong();
+            long position = HEADER_BYTES;
+            while (position < size) {
+                final byte type = in.readByte();
+                final int length = in.readInt();
+                final long end = position + RECORD_OVERHEAD + length;
+                if (position + RECORD_OVERHEAD > size || length >= 0 && length <= MAX_RECORD_BYTES && end > size) {
+                    log.warn("Dropping {} bytes of an incomplete record at the end of {}.", size - position, file);
+                    return;
+                }
+                if (length < 0 || length > MAX_RECORD_BYTES) {
+                    // No record of that length is ever appended, so this is no append cut short by a crash.
+                    throw new IOException("The file " + file + " is corrupt at position " + position + ".");
+                }
+                final byte[] payload = new byte[length];
+                in.readFully(payload);
+                final int checksum = in.readInt();
+                crc.reset();
+                crc.update(type);
+                crc.update(ByteBuffer.allocate(4).putInt(length).array());
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    if (end == size) {
+                        log.warn("Dropping an incomplete record at the end of {}.", file);
+                        return;
+                    }
+                    throw new IOException("The file " + file + " is corrupt at position " + position + ".");
+                }
+                apply(type, ByteBuffer.wrap(payload), pending);
+                position = end;
+            }
+        } catch (final EOFException exception) {
+            log.warn("Dropping an incomplete record at the end of {}.", file);
+        }
+    }
+
+    private void apply(final byte type, final ByteBuffer payload, final Map<Long, ScheduledTransfer> pending)
+            throws IOException {
+        final long id = payload.getLong();
+        switch (type) {
+            case SCHEDULE:
+                final long startAt = payload.getLong();
+                final int occurrence = payload.getInt();
+                final byte recurrence = payload.get();
+                final String sender = string(payload);
+                final String receiver = string(payload);
+                final int scale = payload.getInt();
+                final byte[] unscaled = new byte[payload.getInt()];
+                payload.get(unscaled);
+                pending.put(id, new ScheduledTransfer(id, sender, receiver,
+                        new BigDecimal(new BigInteger(unscaled), scale), startAt,
+                        recurrence < 0 ? null : Recurrence.values()[recurrence], occurrence));
+                nextId = Math.max(nextId, id + 1);
+                break;
+            case ADVANCE:
+                final ScheduledTransfer current = pending.get(id);
+                if (current != null) {
+                    pending.put(id, current.withOccurrence(payload.getInt()));
+                }
+                break;
+            case REMOVE:
+                pending.remove(id);
+                break;
+            default:
+                throw new IOException("Unknown record type " + type + " in " + file + ".");
+        }
+    }
+
+    private static String string(final ByteBuffer payload) {
+        final byte[] bytes = new byte[payload.getInt()];
+        payload.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Replaces the file with one which holds a SCHEDULE record per pending transfer.
+     */
+    private void rewrite(final Collection<ScheduledTransfer> pending) throws IOException {
+        final Path temporary = file.resolveSibling(file.getFileName() + TEMPORARY_SUFFIX);
+        try (OutputStream output = Files.newOutputStream(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE, StandardOpenOption.SYNC)) {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(output, WRITE_BUFFER_BYTES));
+            out.writeInt(MAGIC);
+            out.writeLong(nextId);
+            for (final ScheduledTransfer transfer : pending) {
+                final ByteBuffer record = scheduleRecord(transfer);
+                out.write(record.array(), 0, record.limit());
+            }
+            out.flush();
+        } catch (final IOException | RuntimeException exception) {
+            Files.deleteIfExists(temporary);
+            throw exception;
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        try (FileChannel directory = FileChannel.open(file.getParent(), StandardOpenOption.READ)) {
+            directory.force(true);
+        }
+    }
+}
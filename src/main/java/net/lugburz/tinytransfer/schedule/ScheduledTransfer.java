@@ -0,0 +1,80 @@
+package net.lugburz.tinytransfer.schedule;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+
+/**
+ * A pending execution of a scheduled transfer. A recurring transfer is replaced by its next execution, with the same
+ * id, once it falls due.
+ */
+@Getter
+public final class ScheduledTransfer extends TimingWheel.Entry {
+
+    @JsonProperty
+    private final long id;
+
+    @JsonProperty
+    private final String senderAccNo;
+
+    @JsonProperty
+    private final String receiverAccNo;
+
+    @JsonProperty
+    private final BigDecimal amount;
+
+    /**
+     * Time of the execution, in milliseconds since the epoch.
+     */
+    @JsonProperty
+    private final long executeAt;
+
+    /**
+     * Interval at which the transfer is repeated, or null for a single execution.
+     */
+    @JsonProperty
+    private final Recurrence recurrence;
+
+    /**
+     * Time of the first execution, in milliseconds since the epoch.
+     */
+    @JsonIgnore
+    private final long startAt;
+
+    /**
+     * Number of the execution, 0 for the first one.
+     */
+    @JsonIgnore
+    private final int occurrence;
+
+    ScheduledTransfer(final long id,
+                      final String senderAccNo,
+                      final String receiverAccNo,
+                      final BigDecimal amount,
+                      final long startAt,
+                      final Recurrence recurrence,
+                      final int occurrence) {
+        this.id = id;
+        this.senderAccNo = senderAccNo;
+        this.receiverAccNo = receiverAccNo;
+        this.amount = amount;
+        this.startAt = startAt;
+        this.recurrence = recurrence;
+        this.occurrence = occurrence;
+        this.executeAt = recurrence == null ? startAt : recurrence.executionTime(startAt, occurrence);
+    }
+
+    /**
+     * @param occurrence the number of the execution
+     * @return another execution of the same recurring transfer
+     */
+    ScheduledTransfer withOccurrence(final int occurrence) {
+        return new ScheduledTransfer(id, senderAccNo, receiverAccNo, amount, startAt, recurrence, occurrence);
+    }
+
+    boolean involves(final String accountNo) {
+        return senderAccNo.equals(accountNo) || receiverAccNo.equals(accountNo);
+    }
+}
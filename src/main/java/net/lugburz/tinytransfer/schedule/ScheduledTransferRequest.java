@@ -0,0 +1,64 @@
+package net.lugburz.tinytransfer.schedule;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.validation.ValidationMethod;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import net.lugburz.tinytransfer.transfer.Amounts;
+
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Positive;
+import javax.validation.constraints.Size;
+import java.math.BigDecimal;
+
+/**
+ * DTO for a scheduled transfer request contained in the request body.
+ */
+@Getter
+@Setter
+@NoArgsConstructor(access = AccessLevel.PACKAGE)
+final class ScheduledTransferRequest {
+
+    /**
+     * Bounds the account numbers, so that every scheduled transfer fits into a record of the {@link ScheduleStore}.
+     */
+    static final int MAX_ACCOUNT_NO_LENGTH = 1024;
+
+    @JsonProperty
+    @NotEmpty
+    @Size(max = MAX_ACCOUNT_NO_LENGTH)
+    private String senderAccNo;
+
+    @JsonProperty
+    @NotEmpty
+    @Size(max = MAX_ACCOUNT_NO_LENGTH)
+    private String receiverAccNo;
+
+    @JsonProperty
+    @NotNull
+    @Positive
+    private BigDecimal amount;
+
+    /**
+     * Time of the first execution, in milliseconds since the epoch; a past time executes the transfer right away.
+     */
+    @JsonProperty
+    @NotNull
+    private Long executeAt;
+
+    /**
+     * Optional interval at which the transfer is repeated.
+     */
+    @JsonProperty
+    private Recurrence recurrence;
+
+    @JsonIgnore
+    @ValidationMethod(message = "amount " + Amounts.UNSUPPORTED_SCALE)
+    public boolean isAmountScaleSupported() {
+        return Amounts.hasSupportedScale(amount);
+    }
+}
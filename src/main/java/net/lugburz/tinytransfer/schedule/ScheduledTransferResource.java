@@ -0,0 +1,118 @@
+package net.lugburz.tinytransfer.schedule;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.InternalServerErrorException;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriBuilder;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * REST API for transfers which are performed at a later time, once or repeatedly.
+ */
+@Path("/transfers/scheduled")
+@Produces(MediaType.APPLICATION_JSON)
+@Consumes(MediaType.APPLICATION_JSON)
+public final class ScheduledTransferResource {
+
+    private static final String UNKNOWN_SCHEDULED_TRANSFER = "Unknown scheduled transfer provided";
+    private static final int MAX_LIST_LIMIT = 1000;
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+
+    private final TransferScheduler scheduler;
+
+    public ScheduledTransferResource(final TransferScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Schedules a transfer. The accounts are only checked once the transfer is performed; a transfer which is rejected
+     * then is logged and dropped, and a recurring one continues with its next execution.
+     *
+     * @param request JSON representation of the transfer. Example: {"senderAccNo": "123", "receiverAccNo": "456",
+     *                "amount": 10.42, "executeAt": 1767225600000, "recurrence": "MONTHLY"}
+     * @return HTTP 201 with the {@link ScheduledTransfer} and its id, HTTP 422 on invalid parameters,
+     * HTTP 500 on internal errors
+     */
+    @POST
+    public Response schedule(@NotNull @Valid final ScheduledTransferRequest request) {
+        try {
+            final ScheduledTransfer transfer = scheduler.schedule(request.getSenderAccNo(),
+                    request.getReceiverAccNo(), request.getAmount(), request.getExecuteAt(), request.getRecurrence());
+            return Response.created(UriBuilder.fromResource(ScheduledTransferResource.class)
+                    .path(Long.toString(transfer.getId())).build())
+                    .entity(transfer)
+                    .build();
+        } catch (final UncheckedIOException exception) {
+            log.error("Failed to store a scheduled transfer.", exception);
+            throw new InternalServerErrorException(exception.getMessage());
+        }
+    }
+
+    /**
+     * Lists pending transfers in order of their next execution.
+     *
+     * @param accountNo optional account number; only transfers from or to this account are listed
+     * @param limit     the maximum number of transfers, between 1 and 1000, 100 by default
+     * @return HTTP 200 with the next executions of the transfers which are due first, HTTP 400 on an invalid limit
+     */
+    @GET
+    public List<ScheduledTransfer> list(@QueryParam("accountNo") final String accountNo,
+                                        @QueryParam("limit") @DefaultValue("100") @Min(1) @Max(MAX_LIST_LIMIT)
+                                        final int limit) {
+        return scheduler.list(accountNo, limit);
+    }
+
+    /**
+     * Returns the next execution of a pending transfer.
+     *
+     * @return HTTP 200 with the {@link ScheduledTransfer}, HTTP 404 if it is not pending
+     */
+    @GET
+    @Path("/{id}")
+    public ScheduledTransfer get(@PathParam("id") final long id) {
+        final ScheduledTransfer transfer = scheduler.find(id);
+        if (transfer == null) {
+            throw new WebApplicationException(UNKNOWN_SCHEDULED_TRANSFER, Response.Status.NOT_FOUND);
+        }
+        return transfer;
+    }
+
+    /**
+     * Cancels a pending transfer, including all further executions of a recurring one.
+     *
+     * @return HTTP 204 on success, HTTP 404 if it is not pending, e.g. because it has already been performed,
+     * HTTP 500 on internal errors
+     */
+    @DELETE
+    @Path("/{id}")
+    public Response cancel(@PathParam("id") final long id) {
+        try {
+            if (!scheduler.cancel(id)) {
+                throw new WebApplicationException(UNKNOWN_SCHEDULED_TRANSFER, Response.Status.NOT_FOUND);
+            }
+            return Response.noContent().build();
+        } catch (final UncheckedIOException exception) {
+            log.error("Failed to store the cancellation of scheduled transfer {}.", id, exception);
+            throw new InternalServerErrorException(exception.getMessage());
+        }
+    }
+}
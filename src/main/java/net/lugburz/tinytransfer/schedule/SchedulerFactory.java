@@ -0,0 +1,59 @@
+package net.lugburz.tinytransfer.schedule;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+import io.dropwizard.validation.MinDuration;
+import lombok.Getter;
+import lombok.Setter;
+import net.lugburz.tinytransfer.transfer.TransferService;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import java.nio.file.Paths;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configuration of scheduled transfers, see {@link TransferScheduler}.
+ */
+@Getter
+@Setter
+public class SchedulerFactory {
+
+    @JsonProperty
+    private boolean enabled = false;
+
+    /**
+     * File of the pending transfers.
+     */
+    @JsonProperty
+    @NotEmpty
+    private String file = "data/scheduled-transfers.bin";
+
+    /**
+     * Granularity of the execution times; a transfer is performed within one tick after its time.
+     */
+    @JsonProperty
+    @NotNull
+    @MinDuration(value = 1, unit = TimeUnit.MILLISECONDS)
+    private Duration tickDuration = Duration.seconds(1);
+
+    /**
+     * Maximum number of scheduled transfers performed at once.
+     */
+    @JsonProperty
+    @Min(1)
+    private int parallelism = 4;
+
+    /**
+     * Creates the scheduler, which loads the pending transfers once it is started.
+     *
+     * @param transferService performs the transfers
+     * @param executor        an executor with {@link #getParallelism()} threads
+     */
+    public TransferScheduler build(final TransferService transferService, final ExecutorService executor) {
+        return new TransferScheduler(new ScheduleStore(Paths.get(file)), transferService, executor,
+                tickDuration.toMilliseconds());
+    }
+}
@@ -0,0 +1,166 @@
+package net.lugburz.tinytransfer.schedule;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel of entries which fall due at a tick, with constant-time insertion and removal.
+ *
+ * <p>
+ * Ticks are split into eight digits of eight bits, and every digit has a wheel of 256 slots. An entry is held by the
+ * wheel of the highest digit in which its tick differs from the current tick, in the slot of that digit. Whenever the
+ * current tick reaches a new value of a digit, the entries of that slot are moved down to the wheels of the lower
+ * digits, and the entries in the slot of the lowest digit fall due. Eight digits cover every tick, so no entry is ever
+ * too far ahead to be held, and an entry is moved at most seven times on its way down.
+ *
+ * <p>
+ * The slots are intrusive doubly linked lists, so that holding an entry takes no memory besides the entry itself and
+ * removing it needs no search. The wheel is not thread-safe.
+ */
+final class TimingWheel<E extends TimingWheel.Entry> {
+
+    private static final int DIGIT_BITS = 8;
+    private static final int SLOTS = 1 << DIGIT_BITS;
+    private static final int DIGITS = Long.SIZE / DIGIT_BITS;
+
+    /**
+     * Base class of the entries of a wheel, which carries their links.
+     */
+    abstract static class Entry {
+
+        private long tick;
+        private Entry previous;
+        private Entry next;
+
+        /**
+         * @return whether the entry is held by a wheel
+         */
+        final boolean isScheduled() {
+            return previous != null;
+        }
+    }
+
+    // Sentinels of the circular lists of the slots, by digit and slot.
+    private final Entry[][] slots = new Entry[DIGITS][SLOTS];
+    private long currentTick;
+    private int size;
+
+    /**
+     * @param currentTick the tick the wheel starts at
+     */
+    TimingWheel(final long currentTick) {
+        this.currentTick = currentTick;
+        for (final Entry[] wheel : slots) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                final Entry sentinel = new Entry() {
+                };
+                sentinel.previous = sentinel;
+                sentinel.next = sentinel;
+                wheel[slot] = sentinel;
+            }
+        }
+    }
+
+    /**
+     * Adds an entry which falls due at the given tick, or at the next tick if that has already passed.
+     *
+     * @param entry an entry which is not held by a wheel
+     * @param tick  the tick at which it falls due
+     */
+    void add(final E entry, final long tick) {
+        if (entry.isScheduled()) {
+            throw new IllegalStateException("The entry is already scheduled.");
+        }
+        final Entry held = entry;
+        held.tick = Math.max(tick, currentTick + 1);
+        link(held);
+        size++;
+    }
+
+    /**
+     * Removes an entry before it falls due.
+     *
+     * @return whether the entry had been held by the wheel
+     */
+    boolean remove(final E entry) {
+        if (!entry.isScheduled()) {
+            return false;
+        }
+        unlink(entry);
+        size--;
+        return true;
+    }
+
+    /**
+     * Advances the wheel tick by tick and passes the entries which fall due, in order of their ticks.
+     *
+     * @param tick the tick to advance to
+     * @param due  receives the entries which fall due; they are no longer held by the wheel
+     */
+    void advanceTo(final long tick, final Consumer<? super E> due) {
+        while (currentTick - tick < 0) {
+            if (size == 0) {
+                // Nothing left to move down or fall due, so the remaining ticks can be skipped.
+                currentTick = tick;
+                return;
+            }
+            currentTick++;
+            // Entries move down from the highest digit first, so that a digit they reach is emptied in turn.
+            int digit = 0;
+            while (digit < DIGITS - 1 && (currentTick & ((1L << (DIGIT_BITS * (digit + 1))) - 1)) == 0) {
+                digit++;
+            }
+            for (; digit > 0; digit--) {
+                final Entry sentinel = slots[digit][slotOf(currentTick, digit)];
+                while (sentinel.next != sentinel) {
+                    final Entry entry = sentinel.next;
+                    unlink(entry);
+                    link(entry);
+                }
+            }
+            final Entry sentinel = slots[0][slotOf(currentTick, 0)];
+            while (sentinel.next != sentinel) {
+                final Entry entry = sentinel.next;
+                unlink(entry);
+                size--;
+                @SuppressWarnings("unchecked") final E cast = (E) entry;
+                due.accept(cast);
+            }
+        }
+    }
+
+    /**
+     * @return the tick the wheel has advanced to
+     */
+    long currentTick() {
+        return currentTick;
+    }
+
+    /**
+     * @return the number of held entries
+     */
+    int size() {
+        return size;
+    }
+
+    private void link(final Entry entry) {
+        // The highest digit in which the tick of the entry differs from the current one; 0 if they are equal.
+        final long difference = entry.tick ^ currentTick;
+        final int digit = difference == 0 ? 0 : (Long.SIZE - 1 - Long.numberOfLeadingZeros(difference)) / DIGIT_BITS;
+        final Entry sentinel = slots[digit][slotOf(entry.tick, digit)];
+        entry.previous = sentinel.previous;
+        entry.next = sentinel;
+        sentinel.previous.next = entry;
+        sentinel.previous = entry;
+    }
+
+    private static void unlink(final Entry entry) {
+        entry.previous.next = entry.next;
+        entry.next.previous = entry.previous;
+        entry.previous = null;
+        entry.next = null;
+    }
+
+    private static int slotOf(final long tick, final int digit) {
+        return (int) (tick >>> (DIGIT_BITS * digit)) & (SLOTS - 1);
+    }
+}
@@ -0,0 +1,364 @@
+package net.lugburz.tinytransfer.schedule;
+
+import io.dropwizard.lifecycle.Managed;
+import net.lugburz.tinytransfer.api.RejectionLog;
+import net.lugburz.tinytransfer.transfer.TransferException;
+import net.lugburz.tinytransfer.transfer.TransferService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds scheduled transfers until they fall due and performs them through a {@link TransferService}.
+ *
+ * <p>
+ * Pending transfers are kept in a {@link TimingWheel} whose ticks are the configured tick duration, so scheduling and
+ * cancelling take constant time however many transfers are pending, and a transfer falls due within one tick after
+ * its time. A single thread advances the wheel and hands due transfers to the executor, whose threads bound the
+ * transfers performed at once; transfers which fall due together wait in its queue.
+ *
+ * <p>
+ * Every change is appended to the {@link ScheduleStore} under the lock and forced to disk after the lock has been
+ * released, so that changes made at the same time share one force and the lock is never held while the disk syncs.
+ * Scheduling and cancelling return, and a due transfer is performed, only once the change is durable, which makes
+ * scheduled transfers survive restarts; if the change cannot be forced, it is undone in memory. A transfer is removed
+ * from the store, or a recurring one advanced to its next execution, before it is performed: a crash in between skips
+ * that execution rather than perform it twice. A recurring transfer whose time has passed while the application was
+ * down is performed once, and then continues with its next future execution.
+ *
+ * <p>
+ * The store is compacted under the lock once most of its records have been superseded, see
+ * {@link ScheduleStore#needsCompaction()}.
+ */
+public final class TransferScheduler implements Managed {
+
+    private final Logger log = LoggerFactory.getLogger(this.getClass());
+    private final RejectionLog rejections = new RejectionLog(log, 1, TimeUnit.SECONDS);
+
+    private final ScheduleStore store;
+    private final TransferService transferService;
+    private final ExecutorService executor;
+    private final long tickMillis;
+    private final Clock clock;
+
+    // Readable without the lock; changed together with the wheel and the store under the lock.
+    private final Map<Long, ScheduledTransfer> pending = new ConcurrentHashMap<>();
+    private TimingWheel<ScheduledTransfer> wheel;
+
+    private Thread ticker;
+    private volatile boolean running;
+
+    /**
+     * @param store           the file of the pending transfers
+     * @param transferService performs the transfers
+     * @param executor        the threads which perform the transfers
+     * @param tickMillis      the granularity of the execution times, in milliseconds
+     */
+    TransferScheduler(final ScheduleStore store,
+                      final TransferService transferService,
+                      final ExecutorService executor,
+                      final long tickMillis) {
+        this(store, transferService, executor, tickMillis, Clock.systemUTC());
+    }
+
+    TransferScheduler(final ScheduleStore store,
+                      final TransferService transferService,
+                      final ExecutorService executor,
+                      final long tickMillis,
+                      final Clock clock) {
+        this.store = store;
+        this.transferService = transferService;
+        this.executor = executor;
+        this.tickMillis = tickMillis;
+        this.clock = clock;
+    }
+
+    @Override
+    public void start() throws IOException {
+        final long started = System.nanoTime();
+        synchronized (this) {
+            wheel = new TimingWheel<>(tickOf(clock.millis()));
+            for (final ScheduledTransfer transfer : store.load()) {
+                pending.put(transfer.getId(), transfer);
+                wheel.add(transfer, tickOf(transfer.getExecuteAt()));
+            }
+        }
+        log.info("Loaded {} scheduled transfers in {} ms.", pending.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        running = true;
+        ticker = new Thread(this::tick, "transfer-scheduler");
+        ticker.setDaemon(true);
+        ticker.start();
+    }
+
+    @Override
+    public void stop() throws Exception {
+        running = false;
+        ticker.interrupt();
+        ticker.join();
+        synchronized (this) {
+            store.close();
+        }
+    }
+
+    /**
+     * Schedules a transfer.
+     *
+     * @param senderAccNo   the account number of the sender
+     * @param receiverAccNo the account number of the receiver
+     * @param amount        the amount to be transferred
+     * @param executeAt     the time of the first execution, in milliseconds since the epoch
+     * @param recurrence    the interval at which the transfer is repeated, or null for a single execution
+     * @return the scheduled transfer
+     * @throws UncheckedIOException if the transfer cannot be stored
+     */
+    public ScheduledTransfer schedule(final String senderAccNo,
+                                      final String receiverAccNo,
+                                      final BigDecimal amount,
+                                      final long executeAt,
+                                      final Recurrence recurrence) {
+        final ScheduledTransfer transfer;
+        final long position;
+        synchronized (this) {
+            transfer = new ScheduledTransfer(store.nextId(), senderAccNo, receiverAccNo, amount, executeAt,
+                    recurrence, 0);
+            try {
+                position = store.appendSchedule(transfer);
+            } catch (final IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+            pending.put(transfer.getId(), transfer);
+            wheel.add(transfer, tickOf(executeAt));
+            compactIfNeeded();
+        }
+        try {
+            store.awaitDurable(position);
+        } catch (final IOException exception) {
+            synchronized (this) {
+                // A recurring transfer may have been advanced meanwhile.
+                final ScheduledTransfer current = pending.remove(transfer.getId());
+                if (current != null) {
+                    wheel.remove(current);
+                }
+            }
+            throw new UncheckedIOException(exception);
+        }
+        return transfer;
+    }
+
+    /**
+     * Cancels a pending transfer, and all further executions of a recurring one.
+     *
+     * @param id the id of the transfer
+     * @return whether the transfer had been pending
+     * @throws UncheckedIOException if the cancellation cannot be stored
+     */
+    public boolean cancel(final long id) {
+        final ScheduledTransfer transfer;
+        final long position;
+        synchronized (this) {
+            transfer = pending.get(id);
+            if (transfer == null) {
+                return false;
+            }
+            try {
+                position = store.appendRemove(id);
+            } catch (final IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+            pending.remove(id);
+            wheel.remove(transfer);
+            compactIfNeeded();
+        }
+        try {
+            store.awaitDurable(position);
+        } catch (final IOException exception) {
+            synchronized (this) {
+                // Stays pending as long as it is not known to be cancelled; no one else can have removed it.
+                pending.put(id, transfer);
+                wheel.add(transfer, tickOf(transfer.getExecuteAt()));
+            }
+            throw new UncheckedIOException(exception);
+        }
+        return true;
+    }
+
+    /**
+     * @param id the id of a transfer
+     * @return the next execution of the transfer, or null if it is not pending
+     */
+    public ScheduledTransfer find(final long id) {
+        return pending.get(id);
+    }
+
+    /**
+     * Lists pending transfers in order of their execution times.
+     *
+     * @param accountNo the account whose transfers are listed, as sender or receiver, or null for all transfers
+     * @param limit     the maximum number of transfers
+     * @return the next executions of the transfers which are due first
+     */
+    public List<ScheduledTransfer> list(final String accountNo, final int limit) {
+        final Comparator<ScheduledTransfer> order = Comparator.comparingLong(ScheduledTransfer::getExecuteAt)
+                .thenComparingLong(ScheduledTransfer::getId);
+        // Keeps the first transfers in a heap whose head is the latest of them.
+        final PriorityQueue<ScheduledTransfer> first = new PriorityQueue<>(limit + 1, order.reversed());
+        for (final ScheduledTransfer transfer : pending.values()) {
+            if (accountNo != null && !transfer.involves(accountNo)) {
+                continue;
+            }
+            first.add(transfer);
+            if (first.size() > limit) {
+                first.poll();
+            }
+        }
+        final List<ScheduledTransfer> result = new ArrayList<>(first);
+        result.sort(order);
+        return result;
+    }
+
+    /**
+     * @return the number of pending transfers
+     */
+    public int size() {
+        return pending.size();
+    }
+
+    private void tick() {
+        final List<ScheduledTransfer> due = new ArrayList<>();
+        // The next execution of each due transfer, or null if it is not recurring.
+        final List<ScheduledTransfer> next = new ArrayList<>();
+        while (running) {
+            try {
+                Thread.sleep(tickMillis - Math.floorMod(clock.millis(), tickMillis));
+            } catch (final InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            long position = 0;
+            synchronized (this) {
+                wheel.advanceTo(tickOf(clock.millis()), due::add);
+                if (due.isEmpty()) {
+                    continue;
+                }
+                final long now = clock.millis();
+                try {
+                    for (final ScheduledTransfer transfer : due) {
+                        if (transfer.getRecurrence() == null) {
+                            position = store.appendRemove(transfer.getId());
+                            next.add(null);
+                        } else {
+                            final ScheduledTransfer advanced =
+                                    transfer.withOccurrence(nextOccurrence(transfer, now));
+                            position = store.appendAdvance(transfer.getId(), advanced.getOccurrence());
+                            next.add(advanced);
+                        }
+                    }
+                } catch (final IOException exception) {
+                    // The transfers stay pending and fall due again at the next tick.
+                    log.error("Failed to store the execution of {} scheduled transfers.", due.size(), exception);
+                    for (final ScheduledTransfer transfer : due) {
+                        wheel.add(transfer, tickOf(transfer.getExecuteAt()));
+                    }
+                    due.clear();
+                    next.clear();
+                    continue;
+                }
+                for (int i = 0; i < due.size(); i++) {
+                    if (next.get(i) == null) {
+                        pending.remove(due.get(i).getId());
+                    } else {
+                        pending.put(next.get(i).getId(), next.get(i));
+                        wheel.add(next.get(i), tickOf(next.get(i).getExecuteAt()));
+                    }
+                }
+                compactIfNeeded();
+            }
+            try {
+                store.awaitDurable(position);
+                for (final ScheduledTransfer transfer : due) {
+                    executor.execute(() -> execute(transfer));
+                }
+            } catch (final IOException exception) {
+                log.error("Failed to store the execution of {} scheduled transfers.", due.size(), exception);
+                restore(due, next);
+            }
+            due.clear();
+            next.clear();
+        }
+    }
+
+    /**
+     * Makes due transfers whose execution could not be stored pending again, so that they fall due at the next tick;
+     * transfers which have been cancelled meanwhile stay cancelled.
+     */
+    private synchronized void restore(final List<ScheduledTransfer> due, final List<ScheduledTransfer> next) {
+        for (int i = 0; i < due.size(); i++) {
+            final ScheduledTransfer transfer = due.get(i);
+            if (next.get(i) == null) {
+                // Only this thread removes due transfers, and cancel ignores them.
+                pending.put(transfer.getId(), transfer);
+            } else if (pending.get(transfer.getId()) == next.get(i)) {
+                wheel.remove(next.get(i));
+                pending.put(transfer.getId(), transfer);
+            } else {
+                continue;
+            }
+            wheel.add(transfer, tickOf(transfer.getExecuteAt()));
+        }
+    }
+
+    /**
+     * Rewrites the store with the pending transfers in order of scheduling once most of its records are superseded.
+     * A failure is logged and the store keeps growing until the next attempt.
+     */
+    private void compactIfNeeded() {
+        if (!store.needsCompaction()) {
+            return;
+        }
+        final List<ScheduledTransfer> transfers = new ArrayList<>(pending.values());
+        transfers.sort(Comparator.comparingLong(ScheduledTransfer::getId));
+        try {
+            store.compact(transfers);
+        } catch (final IOException exception) {
+            log.warn("Failed to compact the scheduled transfers.", exception);
+        }
+    }
+
+    /**
+     * @return the number of the first execution of a recurring transfer after the given one which is still ahead
+     */
+    private static int nextOccurrence(final ScheduledTransfer transfer, final long now) {
+        int occurrence = transfer.getOccurrence() + 1;
+        while (transfer.getRecurrence().executionTime(transfer.getStartAt(), occurrence) <= now) {
+            occurrence++;
+        }
+        return occurrence;
+    }
+
+    private void execute(final ScheduledTransfer transfer) {
+        try {
+            transferService.transfer(transfer.getSenderAccNo(), transfer.getReceiverAccNo(), transfer.getAmount());
+        } catch (final TransferException exception) {
+            rejections.reject("Scheduled transfer " + transfer.getId(), exception.getMessage());
+        } catch (final RuntimeException exception) {
+            log.error("Scheduled transfer {} failed.", transfer.getId(), exception);
+        }
+    }
+
+    private long tickOf(final long millis) {
+        return Math.floorDiv(millis, tickMillis);
+    }
+}
@@ -0,0 +1,140 @@
+package net.lugburz.tinytransfer.server;
+
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Jetty thread pool which runs every job on a new virtual thread instead of a pooled platform thread.
+ *
+ * <p>
+ * A request that blocks, e.g. on a lock stripe or on a journal fsync, only parks its virtual thread; the carrier
+ * thread is free to run other requests. There is no upper bound on the number of threads, so Jetty never considers
+ * the pool to be low on threads.
+ *
+ * <p>
+ * The application is compiled for Java 8, so virtual threads are created reflectively. Starting the pool fails on a
+ * JVM older than Java 21.
+ */
+public final class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool {
+
+    private final String namePrefix;
+    private final Function<String, ExecutorService> executors;
+    private final AtomicInteger threads = new AtomicInteger();
+
+    private volatile ExecutorService executor;
+
+    /**
+     * @param namePrefix the prefix of the thread names, followed by a sequence number
+     */
+    public VirtualThreadPool(final String namePrefix) {
+        this(namePrefix, VirtualThreadPool::newVirtualThreadPerTaskExecutor);
+    }
+
+    /**
+     * Creates a pool which starts a thread per job from another executor, such as one of platform threads for tests
+     * on a JVM without virtual threads.
+     *
+     * @param namePrefix the prefix of the thread names, followed by a sequence number
+     * @param executors  creates the executor on start, given the name prefix
+     */
+    VirtualThreadPool(final String namePrefix, final Function<String, ExecutorService> executors) {
+        this.namePrefix = namePrefix;
+        this.executors = executors;
+    }
+
+    /**
+     * Returns whether the running JVM supports virtual threads.
+     *
+     * @return true on Java 21 or later
+     */
+    public static boolean isSupported() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (final NoSuchMethodException exception) {
+            return false;
+        }
+    }
+
+    @Override
+    protected void doStart() {
+        executor = executors.apply(namePrefix);
+    }
+
+    @Override
+    protected void doStop() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public void execute(final Runnable job) {
+        final ExecutorService current = executor;
+        if (current == null) {
+            throw new RejectedExecutionException("The thread pool has not been started.");
+        }
+        current.execute(() -> {
+            threads.incrementAndGet();
+            try {
+                job.run();
+            } finally {
+                threads.decrementAndGet();
+            }
+        });
+    }
+
+    @Override
+    public void join() throws InterruptedException {
+        final ExecutorService current = executor;
+        if (current != null) {
+            current.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Returns the number of jobs currently running, each on a thread of its own.
+     */
+    @Override
+    public int getThreads() {
+        return threads.get();
+    }
+
+    @Override
+    public int getIdleThreads() {
+        return 0;
+    }
+
+    @Override
+    public boolean isLowOnThreads() {
+        return false;
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor(final String namePrefix) {
+        if (!isSupported()) {
+            throw new IllegalStateException("Virtual threads require Java 21 or later, running on Java "
+                    + System.getProperty("java.specification.version") + ".");
+        }
+        try {
+            final Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            final ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, factory);
+        } catch (final ClassNotFoundException | NoSuchMethodException | IllegalAccessException
+                | InvocationTargetException exception) {
+            throw new IllegalStateException("Failed to create virtual threads.", exception);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package net.lugburz.tinytransfer.server;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+import io.dropwizard.server.DefaultServerFactory;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+/**
+ * Server factory which runs the application connectors, and thereby the Jersey resource methods, on virtual threads.
+ *
+ * <p>
+ * Selected with {@code server.type: virtual-threads}; all other options are those of the default server. The options
+ * {@code minThreads}, {@code maxThreads} and {@code maxQueuedRequests} do not apply, since every request gets a thread
+ * of its own. The admin connectors keep their pool of platform threads.
+ *
+ * <p>
+ * Reports the number of running jobs as the gauge {@code VirtualThreadPool.dw.threads}.
+ */
+@JsonTypeName("virtual-threads")
+public class VirtualThreadServerFactory extends DefaultServerFactory {
+
+    @Override
+    protected ThreadPool createThreadPool(final MetricRegistry metricRegistry) {
+        final VirtualThreadPool threadPool = new VirtualThreadPool("dw-virtual-");
+        metricRegistry.register(MetricRegistry.name(VirtualThreadPool.class, "dw", "threads"),
+                (Gauge<Integer>) threadPool::getThreads);
+        return threadPool;
+    }
+}
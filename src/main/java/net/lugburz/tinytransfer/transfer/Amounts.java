@@ -0,0 +1,28 @@
+package net.lugburz.tinytransfer.transfer;
+
+import java.math.BigDecimal;
+
+/**
+ * Limits of the amounts and balances clients may send.
+ *
+ * <p>
+ * A balance takes the largest scale of the amounts that have changed it, and the binary protocol carries the scale of
+ * a decimal in a byte, so decimals whose scale does not fit into a byte are rejected where they enter the application.
+ */
+public final class Amounts {
+
+    public static final int MIN_SCALE = Byte.MIN_VALUE;
+    public static final int MAX_SCALE = Byte.MAX_VALUE;
+    public static final String UNSUPPORTED_SCALE = "must have a scale between " + MIN_SCALE + " and " + MAX_SCALE;
+
+    private Amounts() {
+    }
+
+    /**
+     * @param value the amount or balance, may be null
+     * @return true if the value is null or its scale is supported
+     */
+    public static boolean hasSupportedScale(final BigDecimal value) {
+        return value == null || value.scale() >= MIN_SCALE && value.scale() <= MAX_SCALE;
+    }
+}
@@ -0,0 +1,177 @@
+package net.lugburz.tinytransfer.transfer;
+
+import net.lugburz.tinytransfer.account.Account;
+import net.lugburz.tinytransfer.account.AccountException;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Bookkeeping for a batch of transfers while it is being applied: collects the error of each failed transfer and
+ * provides the validation and netting steps shared by the {@link TransferService} implementations.
+ */
+final class Batch {
+
+    static final String NOT_APPLIED = "Not applied because another transfer of the batch failed.";
+
+    private final List<Transfer> transfers;
+    private final String[] errors;
+    private boolean failed;
+
+    /**
+     * @param transfers the transfers of the batch; transfers with a non-positive amount are marked as failed
+     */
+    Batch(final List<Transfer> transfers) {
+        this.transfers = transfers;
+        this.errors = new String[transfers.size()];
+        for (int i = 0; i < errors.length; i++) {
+            final BigDecimal amount = transfers.get(i).getAmount();
+            if (amount == null || amount.compareTo(BigDecimal.ZERO) <= 0) {
+                fail(i, "The provided amount is not greater than zero.");
+            }
+        }
+    }
+
+    int size() {
+        return errors.length;
+    }
+
+    Transfer get(final int index) {
+        return transfers.get(index);
+    }
+
+    boolean isFailed(final int index) {
+        return errors[index] != null;
+    }
+
+    boolean hasFailures() {
+        return failed;
+    }
+
+    /**
+     * Marks a transfer as failed; the first error of a transfer wins.
+     */
+    void fail(final int index, final String error) {
+        if (errors[index] == null) {
+            errors[index] = error;
+            failed = true;
+        }
+    }
+
+    /**
+     * Marks every transfer that has not failed yet and is sent from a given account as failed.
+     */
+    void failSender(final String senderAccNo, final String error) {
+        for (int i = 0; i < errors.length; i++) {
+            if (errors[i] == null && transfers.get(i).getSenderAccNo().equals(senderAccNo)) {
+                fail(i, error);
+            }
+        }
+    }
+
+    /**
+     * Looks up each account of the batch exactly once. Transfers referring to an unknown account are marked as
+     * failed and do not contribute to the returned map.
+     *
+     * @param finder looks up an account, throws {@link AccountException} on unknown accounts
+     * @return the accounts by account number
+     */
+    <A> Map<String, A> resolveAccounts(final Function<String, A> finder) {
+        final Map<String, A> accounts = new HashMap<>();
+        for (int i = 0; i < errors.length; i++) {
+            if (errors[i] != null) {
+                continue;
+            }
+            final Transfer transfer = transfers.get(i);
+            try {
+                resolve(accounts, transfer.getSenderAccNo(), finder);
+                resolve(accounts, transfer.getReceiverAccNo(), finder);
+            } catch (final AccountException exception) {
+                fail(i, "Money transfer failed: " + exception.getMessage());
+            }
+        }
+        return accounts;
+    }
+
+    /**
+     * Sums up the effect of all transfers that have not failed into one balance delta per account.
+     *
+     * @param accounts the accounts by account number, as returned by {@link #resolveAccounts(Function)}
+     * @return the delta per account in order of first appearance; zero deltas are included
+     */
+    <A> Map<A, BigDecimal> netDeltas(final Map<String, A> accounts) {
+        return netDeltas(accounts, null);
+    }
+
+    /**
+     * Sums up the effect of all transfers that have not failed into one balance delta per account, where the receiver
+     * of a transfer may be credited another amount than the sender is debited, such as after a currency conversion.
+     *
+     * @param accounts the accounts by account number, as returned by {@link #resolveAccounts(Function)}
+     * @param credited the amount credited to the receiver by position in the batch, null where it is the amount of the
+     *                 transfer; or null if it is the amount of every transfer
+     * @return the delta per account in order of first appearance; zero deltas are included
+     */
+    <A> Map<A, BigDecimal> netDeltas(final Map<String, A> accounts, final BigDecimal[] credited) {
+        final Map<A, BigDecimal> deltas = new LinkedHashMap<>();
+        for (int i = 0; i < errors.length; i++) {
+            if (errors[i] != null) {
+                continue;
+            }
+            final Transfer transfer = transfers.get(i);
+            final BigDecimal credit = credited == null || credited[i] == null ? transfer.getAmount() : credited[i];
+            deltas.merge(accounts.get(transfer.getSenderAccNo()), transfer.getAmount().negate(), BigDecimal::add);
+            deltas.merge(accounts.get(transfer.getReceiverAccNo()), credit, BigDecimal::add);
+        }
+        return deltas;
+    }
+
+    /**
+     * Selects the accounts on which a change is announced, see {@link Account#beginUpdate()}: every account except
+     * split accounts which are not changed and the first split account which is only credited.
+     *
+     * @param deltas the change of every account, as returned by {@link #netDeltas(Map)}
+     * @return the accounts to announce the change on
+     */
+    static List<Account> announced(final Map<Account, BigDecimal> deltas) {
+        final List<Account> announced = new ArrayList<>(deltas.size());
+        boolean creditLeftOut = false;
+        for (final Map.Entry<Account, BigDecimal> delta : deltas.entrySet()) {
+            final Account account = delta.getKey();
+            final int signum = delta.getValue().signum();
+            if (account.isSplit() && (signum == 0 || signum > 0 && !creditLeftOut)) {
+                creditLeftOut |= signum > 0;
+                continue;
+            }
+            announced.add(account);
+        }
+        return announced;
+    }
+
+    BatchResult toResult(final BatchMode mode) {
+        final List<TransferResult> results = new ArrayList<>(errors.length);
+        for (int i = 0; i < errors.length; i++) {
+            if (errors[i] != null) {
+                results.add(new TransferResult(i, false, errors[i]));
+            } else if (failed && mode == BatchMode.ATOMIC) {
+                results.add(new TransferResult(i, false, NOT_APPLIED));
+            } else {
+                results.add(new TransferResult(i, true, null));
+            }
+        }
+        return new BatchResult(mode, !failed, results);
+    }
+
+    private static <A> void resolve(final Map<String, A> accounts,
+                                    final String accountNo,
+                                    final Function<String, A> finder) {
+        if (!accounts.containsKey(accountNo)) {
+            accounts.put(accountNo, finder.apply(accountNo));
+        }
+    }
+}
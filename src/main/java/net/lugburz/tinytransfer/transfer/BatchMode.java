@@ -0,0 +1,18 @@
+package net.lugburz.tinytransfer.transfer;
+
+/**
+ * Modes for applying a batch of transfers.
+ */
+public enum BatchMode {
+
+    /**
+     * The batch is applied as a whole or not at all. Balances are checked against the net effect of the batch on
+     * each account, so the order of the transfers within the batch does not matter.
+     */
+    ATOMIC,
+
+    /**
+     * The transfers are applied one after another in the given order; a failed transfer does not affect the others.
+     */
+    BEST_EFFORT
+}
@@ -0,0 +1,50 @@
+package net.lugburz.tinytransfer.transfer;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Outcome of a batch of transfers.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+public final class BatchResult {
+
+    @JsonProperty
+    private final BatchMode mode;
+
+    /**
+     * True if every transfer of the batch has been applied.
+     */
+    @JsonProperty
+    private final boolean committed;
+
+    /**
+     * One result per transfer, in the order of the batch.
+     */
+    @JsonProperty
+    private final List<TransferResult> results;
+
+    /**
+     * Builds the result of a batch whose transfers have been applied or rejected one by one, rather than by a
+     * {@link TransferService} as a whole.
+     *
+     * @param mode   the mode of the batch
+     * @param errors the reason of the failure of each transfer in the order of the batch, null if it has been applied
+     * @return the result of the batch, committed if no transfer has failed
+     */
+    public static BatchResult of(final BatchMode mode, final List<String> errors) {
+        final List<TransferResult> results = new ArrayList<>(errors.size());
+        boolean committed = true;
+        for (int i = 0; i < errors.size(); i++) {
+            results.add(new TransferResult(i, errors.get(i) == null, errors.get(i)));
+            committed &= errors.get(i) == null;
+        }
+        return new BatchResult(mode, committed, results);
+    }
+}
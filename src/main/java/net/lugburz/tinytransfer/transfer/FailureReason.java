@@ -0,0 +1,23 @@
+package net.lugburz.tinytransfer.transfer;
+
+/**
+ * Reasons for a transfer to be rejected.
+ */
+public enum FailureReason {
+    /**
+     * The sender's balance does not cover the amount.
+     */
+    INSUFFICIENT_FUNDS,
+    /**
+     * The sender or the receiver account does not exist.
+     */
+    UNKNOWN_ACCOUNT,
+    /**
+     * The amount is not positive or cannot be represented by the account store.
+     */
+    INVALID_AMOUNT,
+    /**
+     * The accounts hold different currencies and there is no exchange rate between them.
+     */
+    UNSUPPORTED_CURRENCY
+}
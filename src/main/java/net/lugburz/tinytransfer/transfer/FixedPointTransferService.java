@@ -0,0 +1,114 @@
+package net.lugburz.tinytransfer.transfer;
+
+import net.lugburz.tinytransfer.account.AccountException;
+import net.lugburz.tinytransfer.account.MinorUnitAccountRepository;
+import net.lugburz.tinytransfer.account.MinorUnits;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Transfer service implementation for the account stores which keep balances in minor units, the fixed-point and the
+ * off-heap store.
+ *
+ * <p>
+ * The amount is converted into minor units once at the boundary; the transfer itself runs on primitive balances
+ * without allocations.
+ *
+ * <p>
+ * An atomic batch is netted into one delta per account, which the store applies as a whole, see
+ * {@link MinorUnitAccountRepository#applyDeltas}.
+ */
+public final class FixedPointTransferService implements TransferService {
+
+    private final MinorUnitAccountRepository repository;
+
+    public FixedPointTransferService(final MinorUnitAccountRepository repository) {
+        this.repository = repository;
+    }
+
+
+    @Override
+    public void transfer(final String senderAccNo, final String receiverAccNo, final BigDecimal amount) {
+
+        validateAmount(amount);
+
+        final long units;
+        try {
+            units = repository.getMinorUnits().toMinorUnits(amount);
+        } catch (final AccountException exception) {
+            throw new TransferException(FailureReason.INVALID_AMOUNT,
+                    "Money transfer failed: " + exception.getMessage(), exception);
+        }
+
+        final boolean transferred;
+        try {
+            transferred = repository.transfer(senderAccNo, receiverAccNo, units);
+        } catch (final AccountException exception) {
+            throw TransferException.rejected(FailureReason.UNKNOWN_ACCOUNT);
+        }
+        if (!transferred) {
+            throw TransferException.rejected(FailureReason.INSUFFICIENT_FUNDS);
+        }
+    }
+
+    @Override
+    public BatchResult transferAll(final List<Transfer> transfers, final BatchMode mode) {
+        final Batch batch = new Batch(transfers);
+        if (mode == BatchMode.BEST_EFFORT) {
+            for (int i = 0; i < batch.size(); i++) {
+                if (batch.isFailed(i)) {
+                    continue;
+                }
+                final Transfer transfer = batch.get(i);
+                try {
+                    transfer(transfer.getSenderAccNo(), transfer.getReceiverAccNo(), transfer.getAmount());
+                } catch (final TransferException exception) {
+                    batch.fail(i, exception.getMessage());
+                }
+            }
+            return batch.toResult(mode);
+        }
+
+        final MinorUnits minorUnits = repository.getMinorUnits();
+        for (int i = 0; i < batch.size(); i++) {
+            if (!batch.isFailed(i)) {
+                try {
+                    minorUnits.toMinorUnits(batch.get(i).getAmount());
+                } catch (final AccountException exception) {
+                    batch.fail(i, "Money transfer failed: " + exception.getMessage());
+                }
+            }
+        }
+        final Map<String, String> accounts =
+                batch.resolveAccounts(accountNo -> repository.find(accountNo).getAccountNo());
+        if (batch.hasFailures()) {
+            return batch.toResult(mode);
+        }
+
+        try {
+            final Map<String, Long> deltas = new LinkedHashMap<>();
+            for (final Map.Entry<String, BigDecimal> delta : batch.netDeltas(accounts).entrySet()) {
+                deltas.put(delta.getKey(), minorUnits.toMinorUnits(delta.getValue()));
+            }
+            final String uncovered = repository.applyDeltas(deltas);
+            if (uncovered != null) {
+                batch.failSender(uncovered,
+                        "Money transfer failed: The account does not have sufficient balance for the batch.");
+            }
+        } catch (final AccountException exception) {
+            for (int i = 0; i < batch.size(); i++) {
+                batch.fail(i, "Money transfer failed: " + exception.getMessage());
+            }
+        }
+        return batch.toResult(mode);
+    }
+
+    private void validateAmount(final BigDecimal amount) {
+        if (amount.compareTo(BigDecimal.ZERO) <= 0) {
+            throw TransferException.rejected(FailureReason.INVALID_AMOUNT);
+        }
+    }
+}
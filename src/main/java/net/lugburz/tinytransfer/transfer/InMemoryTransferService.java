@@ -1,47 +1,244 @@
 package net.lugburz.tinytransfer.transfer;
 
 import net.lugburz.tinytransfer.account.Account;
-import net.lugburz.tinytransfer.account.AccountException;
-import net.lugburz.tinytransfer.account.AccountRepository;
+import net.lugburz.tinytransfer.account.BalanceTracker;
+import net.lugburz.tinytransfer.account.InMemoryAccountRepository;
+import net.lugburz.tinytransfer.fx.ExchangeRateTable;
+import net.lugburz.tinytransfer.fx.ExchangeRates;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Transfer service implementation for in-memory account store.
+ *
+ * <p>
+ * Batches are applied without a lock spanning the batch: an atomic batch first withdraws every net debit and puts
+ * the money back if one of them fails, so other threads may observe a batch while it is being applied. Snapshot
+ * reads do not: every change is announced on all accounts it spans, see {@link Account#beginUpdate()}, except for a
+ * credit to a split account, which is atomic by itself.
+ * <p>
+ * Between accounts of different currencies, the sender is debited the amount in its currency and the receiver is
+ * credited the amount converted at the current {@link ExchangeRates}. A conversion brings more or less money into the
+ * store than it takes out, so it moves the expected total of the repository like a transfer to another node.
  */
 public final class InMemoryTransferService implements TransferService {
 
-    private final AccountRepository repository;
+    private static final String INSUFFICIENT_FUNDS =
+            TransferException.rejected(FailureReason.INSUFFICIENT_FUNDS).getMessage();
 
-    public InMemoryTransferService(final AccountRepository repository) {
+    private final InMemoryAccountRepository repository;
+    private final BalanceTracker tracker;
+    private final ExchangeRateTable rates;
+
+    public InMemoryTransferService(final InMemoryAccountRepository repository) {
+        this(repository, ExchangeRateTable.of(ExchangeRates.NONE));
+    }
+
+    /**
+     * @param repository the accounts
+     * @param rates      the rates at which amounts are converted between accounts of different currencies
+     */
+    public InMemoryTransferService(final InMemoryAccountRepository repository, final ExchangeRateTable rates) {
         this.repository = repository;
+        this.tracker = repository.getTracker();
+        this.rates = rates;
     }
 
 
     @Override
     public void transfer(final String senderAccNo, final String receiverAccNo, final BigDecimal amount) {
 
+        final Account sender = repository.lookup(senderAccNo).orElse(null);
+        final Account receiver = repository.lookup(receiverAccNo).orElse(null);
+        if (sender == null || receiver == null) {
+            throw TransferException.rejected(FailureReason.UNKNOWN_ACCOUNT);
+        }
+
+        validateAmount(amount);
+        final BigDecimal credited = convert(rates.current(), amount, sender, receiver);
+
+        if (!adjustBalances(amount, credited, sender, receiver)) {
+            throw TransferException.rejected(FailureReason.INSUFFICIENT_FUNDS);
+        }
+    }
+
+    @Override
+    public BatchResult transferAll(final List<Transfer> transfers, final BatchMode mode) {
+        final Batch batch = new Batch(transfers);
+        final Map<String, Account> accounts = batch.resolveAccounts(repository::find);
+        final BigDecimal[] credited = convertAll(batch, accounts);
+        if (mode == BatchMode.BEST_EFFORT) {
+            applyInOrder(batch, accounts, credited);
+        } else if (!batch.hasFailures()) {
+            applyNetted(batch, accounts, credited);
+        }
+        return batch.toResult(mode);
+    }
+
+    /**
+     * Converts the amounts of the transfers between accounts of different currencies, all at the rates of one table,
+     * and marks the transfers which cannot be converted as failed.
+     *
+     * @return the amount credited to the receiver by position in the batch, as taken by
+     * {@link Batch#netDeltas(Map, BigDecimal[])}
+     */
+    private BigDecimal[] convertAll(final Batch batch, final Map<String, Account> accounts) {
+        final ExchangeRates current = rates.current();
+        BigDecimal[] credited = null;
+        for (int i = 0; i < batch.size(); i++) {
+            if (batch.isFailed(i)) {
+                continue;
+            }
+            final Transfer transfer = batch.get(i);
+            final BigDecimal converted;
+            try {
+                converted = convert(current, transfer.getAmount(),
+                        accounts.get(transfer.getSenderAccNo()), accounts.get(transfer.getReceiverAccNo()));
+            } catch (final TransferException exception) {
+                batch.fail(i, exception.getMessage());
+                continue;
+            }
+            if (converted != transfer.getAmount()) {
+                if (credited == null) {
+                    credited = new BigDecimal[batch.size()];
+                }
+                credited[i] = converted;
+            }
+        }
+        return credited;
+    }
+
+    private void applyNetted(final Batch batch, final Map<String, Account> accounts, final BigDecimal[] credited) {
+        final Map<Account, BigDecimal> deltas = batch.netDeltas(accounts, credited);
+        final List<Account> announced = Batch.announced(deltas);
+        announced.forEach(Account::beginUpdate);
         try {
-            final Account sender = repository.find(senderAccNo);
-            final Account receiver = repository.find(receiverAccNo);
+            applyDeltas(batch, deltas);
+        } finally {
+            announced.forEach(Account::endUpdate);
+        }
+    }
+
+    private void applyDeltas(final Batch batch, final Map<Account, BigDecimal> deltas) {
+        final List<Map.Entry<Account, BigDecimal>> withdrawn = new ArrayList<>();
+        for (final Map.Entry<Account, BigDecimal> delta : deltas.entrySet()) {
+            if (delta.getValue().signum() >= 0) {
+                continue;
+            }
+            if (delta.getKey().tryWithdraw(delta.getValue().negate()) == null) {
+                batch.failSender(delta.getKey().getAccountNo(), INSUFFICIENT_FUNDS);
+                for (final Map.Entry<Account, BigDecimal> refund : withdrawn) {
+                    refund.getKey().deposit(refund.getValue().negate());
+                }
+                return;
+            }
+            withdrawn.add(delta);
+        }
+        BigDecimal sum = BigDecimal.ZERO;
+        int negatives = 0;
+        for (final Map.Entry<Account, BigDecimal> delta : deltas.entrySet()) {
+            final BigDecimal balance = delta.getValue().signum() > 0
+                    ? delta.getKey().deposit(delta.getValue())
+                    : delta.getKey().getBalance();
+            sum = sum.add(delta.getValue());
+            negatives += BalanceTracker.negativeChange(balance.subtract(delta.getValue()), balance);
+        }
+        // Reported once the whole batch has been applied, so the running sum never contains a partial batch. The sum
+        // only changes by conversions, which move the expected total as well.
+        tracker.onExternalChange(sum, negatives);
+    }
 
-            validateAmount(amount);
+    private void applyInOrder(final Batch batch, final Map<String, Account> accounts, final BigDecimal[] credited) {
+        for (int i = 0; i < batch.size(); i++) {
+            if (batch.isFailed(i)) {
+                continue;
+            }
+            final Transfer transfer = batch.get(i);
+            final BigDecimal credit = credited == null || credited[i] == null ? transfer.getAmount() : credited[i];
+            if (!adjustBalances(transfer.getAmount(), credit,
+                    accounts.get(transfer.getSenderAccNo()), accounts.get(transfer.getReceiverAccNo()))) {
+                batch.fail(i, INSUFFICIENT_FUNDS);
+            }
+        }
+    }
 
-            adjustBalances(amount, sender, receiver);
+    /**
+     * @param amount   the amount debited to the sender
+     * @param credited the amount credited to the receiver, the same instance as the amount unless it was converted
+     * @return false if the sender's balance does not cover the amount; nothing has been transferred in this case
+     */
+    private boolean adjustBalances(final BigDecimal amount,
+                                   final BigDecimal credited,
+                                   final Account sender,
+                                   final Account receiver) {
+        // A split receiver is only credited, which is atomic by itself; see Account#credit.
+        final boolean announceReceiver = receiver != sender && !receiver.isSplit();
+        sender.beginUpdate();
+        if (announceReceiver) {
+            receiver.beginUpdate();
+        }
+        try {
+            return transferBetween(amount, credited, sender, receiver);
+        } finally {
+            sender.endUpdate();
+            if (announceReceiver) {
+                receiver.endUpdate();
+            }
+        }
+    }
 
-        } catch (final AccountException exception) {
-            throw new TransferException("Money transfer failed: " + exception.getMessage(), exception);
+    private boolean transferBetween(final BigDecimal amount,
+                                    final BigDecimal credited,
+                                    final Account sender,
+                                    final Account receiver) {
+        final BigDecimal senderBalance = sender.tryWithdraw(amount);
+        if (senderBalance == null) {
+            return false;
         }
+        // The sum of the balances and the expected total only change by a conversion.
+        final BigDecimal entering = credited == amount ? BigDecimal.ZERO : credited.subtract(amount);
+        final int senderNegatives = BalanceTracker.negativeChange(senderBalance.add(amount), senderBalance);
+        if (receiver.isSplit()) {
+            // Avoids summing up the cells of a hot account, which cannot turn negative.
+            receiver.credit(credited);
+            tracker.onExternalChange(entering, senderNegatives);
+            return true;
+        }
+        final BigDecimal receiverBalance = receiver.deposit(credited);
+        tracker.onExternalChange(entering,
+                senderNegatives + BalanceTracker.negativeChange(receiverBalance.subtract(credited), receiverBalance));
+        return true;
     }
 
-    private void adjustBalances(final BigDecimal amount, final Account sender, final Account receiver) {
-        sender.withdraw(amount);
-        receiver.deposit(amount);
+    /**
+     * @return the amount itself if both accounts hold the same currency, otherwise the amount converted into the
+     * currency of the receiver
+     * @throws TransferException if there is no rate between the currencies or the converted amount rounds to zero
+     */
+    private static BigDecimal convert(final ExchangeRates current,
+                                      final BigDecimal amount,
+                                      final Account sender,
+                                      final Account receiver) {
+        // Currency instances are unique per currency code.
+        if (sender.getCurrency() == receiver.getCurrency()) {
+            return amount;
+        }
+        final BigDecimal converted = current.convert(amount, sender.getCurrency(), receiver.getCurrency());
+        if (converted == null) {
+            throw TransferException.rejected(FailureReason.UNSUPPORTED_CURRENCY);
+        }
+        if (converted.signum() == 0) {
+            throw TransferException.rejected(FailureReason.INVALID_AMOUNT);
+        }
+        return converted;
     }
 
     private void validateAmount(final BigDecimal amount) {
         if (amount.compareTo(BigDecimal.ZERO) <= 0) {
-            throw new TransferException("The provided amount is not greater than zero.");
+            throw TransferException.rejected(FailureReason.INVALID_AMOUNT);
         }
     }
 }
@@ -0,0 +1,150 @@
+package net.lugburz.tinytransfer.transfer;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.SlidingTimeWindowArrayReservoir;
+import com.codahale.metrics.Timer;
+
+import java.math.BigDecimal;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Transfer service decorator which reports latencies and outcomes to a {@link MetricRegistry}.
+ *
+ * <p>
+ * All metrics are looked up once on construction. Recording does not allocate: latencies are measured with
+ * {@link System#nanoTime()} instead of timer contexts, meters are backed by striped counters and the timers keep their
+ * samples in the primitive arrays of a {@link SlidingTimeWindowArrayReservoir}.
+ *
+ * <p>
+ * Reported metrics, prefixed with the name of {@link TransferService}:
+ * <ul>
+ * <li>{@code transfers}: timer of the latency of single transfers, whatever their outcome</li>
+ * <li>{@code transfers.succeeded}: meter of successful single transfers</li>
+ * <li>{@code transfers.failed.<reason>}: meter of rejected single transfers per {@link FailureReason}</li>
+ * <li>{@code transfers.errors}: meter of single transfers which failed unexpectedly</li>
+ * <li>{@code batches}: timer of the latency of batches</li>
+ * <li>{@code batches.succeeded}, {@code batches.failed}: meters of the transfers within batches by outcome</li>
+ * </ul>
+ */
+public final class MeteredTransferService implements TransferService {
+
+    private final TransferService delegate;
+
+    private final Timer transfers;
+    private final Meter succeeded;
+    private final Map<FailureReason, Meter> failed = new EnumMap<>(FailureReason.class);
+    private final Meter errors;
+    private final Timer batches;
+    private final Meter batchSucceeded;
+    private final Meter batchFailed;
+
+    public MeteredTransferService(final TransferService delegate, final MetricRegistry registry) {
+        this.delegate = delegate;
+        this.transfers = timer(registry, "transfers");
+        this.succeeded = registry.meter(name("transfers", "succeeded"));
+        for (final FailureReason reason : FailureReason.values()) {
+            failed.put(reason, registry.meter(
+                    name("transfers", "failed", reason.name().toLowerCase(Locale.ROOT).replace('_', '-'))));
+        }
+        this.errors = registry.meter(name("transfers", "errors"));
+        this.batches = timer(registry, "batches");
+        this.batchSucceeded = registry.meter(name("batches", "succeeded"));
+        this.batchFailed = registry.meter(name("batches", "failed"));
+    }
+
+    /**
+     * Creates a timer whose histogram covers a sliding window instead of the default exponentially decaying sample,
+     * which allocates on every update.
+     */
+    private static Timer timer(final MetricRegistry registry, final String metric) {
+        return registry.timer(name(metric), () -> new Timer(new SlidingTimeWindowArrayReservoir(1, TimeUnit.MINUTES)));
+    }
+
+    @Override
+    public void transfer(final String senderAccNo, final String receiverAccNo, final BigDecimal amount) {
+        final long start = System.nanoTime();
+        try {
+            delegate.transfer(senderAccNo, receiverAccNo, amount);
+        } catch (final RuntimeException exception) {
+            record(start, exception);
+            throw exception;
+        }
+        record(start, null);
+    }
+
+    /**
+     * Records the transfer once the returned future completes; unlike the synchronous path, this allocates a
+     * callback per transfer. The returned future fails with the delegate's exception itself rather than with a
+     * {@link CompletionException} wrapping it, which would capture a stack trace per rejected transfer.
+     */
+    @Override
+    public CompletableFuture<Void> transferAsync(final String senderAccNo,
+                                                 final String receiverAccNo,
+                                                 final BigDecimal amount) {
+        final long start = System.nanoTime();
+        final CompletableFuture<Void> result;
+        try {
+            result = delegate.transferAsync(senderAccNo, receiverAccNo, amount);
+        } catch (final RuntimeException exception) {
+            record(start, exception);
+            throw exception;
+        }
+        final CompletableFuture<Void> recorded = new CompletableFuture<>();
+        result.handle((ignored, failure) -> {
+            try {
+                record(start, failure);
+            } finally {
+                if (failure != null) {
+                    recorded.completeExceptionally(failure);
+                } else {
+                    recorded.complete(null);
+                }
+            }
+            return null;
+        });
+        return recorded;
+    }
+
+    @Override
+    public BatchResult transferAll(final List<Transfer> transfers, final BatchMode mode) {
+        final long start = System.nanoTime();
+        try {
+            final BatchResult result = delegate.transferAll(transfers, mode);
+            final List<TransferResult> results = result.getResults();
+            int successes = 0;
+            for (int i = 0; i < results.size(); i++) {
+                if (results.get(i).isSuccess()) {
+                    successes++;
+                }
+            }
+            batchSucceeded.mark(successes);
+            batchFailed.mark(results.size() - successes);
+            return result;
+        } finally {
+            batches.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void record(final long start, final Throwable failure) {
+        final Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+        if (cause == null) {
+            succeeded.mark();
+        } else if (cause instanceof TransferException) {
+            failed.get(((TransferException) cause).getReason()).mark();
+        } else {
+            errors.mark();
+        }
+        transfers.update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    private static String name(final String... names) {
+        return MetricRegistry.name(TransferService.class, names);
+    }
+}
@@ -0,0 +1,118 @@
+package net.lugburz.tinytransfer.transfer;
+
+import net.lugburz.tinytransfer.account.AccountException;
+import net.lugburz.tinytransfer.account.ShardedAccountRepository;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Transfer service implementation for the sharded account store.
+ *
+ * <p>
+ * Single transfers are asynchronous: {@link #transferAsync} hands the transfer to the shards and returns at once.
+ * The returned futures are completed on the given executor rather than on a shard thread, so that the continuations
+ * of callers never hold up a shard.
+ *
+ * <p>
+ * Batches are applied synchronously. An atomic batch is netted into one delta per account, whose debits are reserved
+ * on their shards first and refunded if one of them fails; other threads may observe a batch while it is being
+ * applied.
+ */
+public final class ShardedTransferService implements TransferService {
+
+    private final ShardedAccountRepository repository;
+    private final Executor completions;
+
+    /**
+     * @param repository  the account store
+     * @param completions runs the completion of the futures returned by {@link #transferAsync}
+     */
+    public ShardedTransferService(final ShardedAccountRepository repository, final Executor completions) {
+        this.repository = repository;
+        this.completions = completions;
+    }
+
+
+    @Override
+    public void transfer(final String senderAccNo, final String receiverAccNo, final BigDecimal amount) {
+        try {
+            transferAsync(senderAccNo, receiverAccNo, amount).join();
+        } catch (final CompletionException exception) {
+            if (exception.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) exception.getCause();
+            }
+            throw exception;
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> transferAsync(final String senderAccNo,
+                                                 final String receiverAccNo,
+                                                 final BigDecimal amount) {
+        if (amount.compareTo(BigDecimal.ZERO) <= 0) {
+            final CompletableFuture<Void> result = new CompletableFuture<>();
+            result.completeExceptionally(TransferException.rejected(FailureReason.INVALID_AMOUNT));
+            return result;
+        }
+        // Completed explicitly rather than by throwing from the callback, which would wrap a rejection into a
+        // CompletionException with a stack trace.
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        repository.transfer(senderAccNo, receiverAccNo, amount).handleAsync((transferred, failure) -> {
+            final Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+            if (cause instanceof AccountException) {
+                result.completeExceptionally(TransferException.rejected(FailureReason.UNKNOWN_ACCOUNT));
+            } else if (cause != null) {
+                result.completeExceptionally(cause);
+            } else if (!transferred) {
+                result.completeExceptionally(TransferException.rejected(FailureReason.INSUFFICIENT_FUNDS));
+            } else {
+                result.complete(null);
+            }
+            return null;
+        }, completions);
+        return result;
+    }
+
+    @Override
+    public BatchResult transferAll(final List<Transfer> transfers, final BatchMode mode) {
+        final Batch batch = new Batch(transfers);
+        if (mode == BatchMode.BEST_EFFORT) {
+            for (int i = 0; i < batch.size(); i++) {
+                if (batch.isFailed(i)) {
+                    continue;
+                }
+                final Transfer transfer = batch.get(i);
+                try {
+                    transfer(transfer.getSenderAccNo(), transfer.getReceiverAccNo(), transfer.getAmount());
+                } catch (final TransferException exception) {
+                    batch.fail(i, exception.getMessage());
+                }
+            }
+            return batch.toResult(mode);
+        }
+
+        final Map<String, String> accounts =
+                batch.resolveAccounts(accountNo -> repository.find(accountNo).getAccountNo());
+        if (batch.hasFailures()) {
+            return batch.toResult(mode);
+        }
+
+        try {
+            final String uncovered = repository.applyDeltas(batch.netDeltas(accounts));
+            if (uncovered != null) {
+                batch.failSender(uncovered,
+                        "Money transfer failed: The account does not have sufficient balance for the batch.");
+            }
+        } catch (final AccountException exception) {
+            for (int i = 0; i < batch.size(); i++) {
+                batch.fail(i, "Money transfer failed: " + exception.getMessage());
+            }
+        }
+        return batch.toResult(mode);
+    }
+}
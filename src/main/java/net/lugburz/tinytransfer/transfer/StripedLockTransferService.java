@@ -0,0 +1,431 @@
+package net.lugburz.tinytransfer.transfer;
+
+import net.lugburz.tinytransfer.account.Account;
+import net.lugburz.tinytransfer.account.BalanceTracker;
+import net.lugburz.tinytransfer.account.InMemoryAccountRepository;
+import net.lugburz.tinytransfer.journal.Journal;
+
+import java.math.BigDecimal;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongConsumer;
+
+/**
+ * Transfer service implementation for in-memory account store which performs the withdrawal and the deposit of a
+ * transfer as one atomic step.
+ *
+ * <p>
+ * Accounts are mapped by the hash of their account number onto a fixed array of lock stripes. A transfer holds the
+ * stripes of both accounts for its whole duration. Stripes are always acquired in ascending index order, so two
+ * transfers in opposite directions can never deadlock.
+ *
+ * <p>
+ * A batch acquires the stripes of all accounts it touches once, in the same order, and holds them while it is applied.
+ *
+ * <p>
+ * A transfer to a split account, see {@link Account#split}, holds only the stripe of the sender; the deposit is added
+ * to the receiver without a lock, so that many senders can pay into the same hot account at once.
+ *
+ * <p>
+ * Every change is announced on all accounts it spans, see {@link Account#beginUpdate()}, so snapshot reads of several
+ * accounts never see part of a transfer or batch. A credit to a split account is left out, so that neither deposits
+ * into a hot account nor snapshot reads of it contend on its update counter.
+ *
+ * <p>
+ * Changes are written to the {@link Journal} of the repository while the stripes are held, before they are applied,
+ * so the journal orders changes to the same account exactly like memory does. Accounts are looked up and changed within
+ * one epoch of the repository, see {@link InMemoryAccountRepository#beginChange()}, so a clear cannot slip in between.
+ * Waiting for the record to become durable happens after the stripes have been released and the change closed.
+ */
+public final class StripedLockTransferService implements TransferService {
+
+    public static final int DEFAULT_STRIPES = 1024;
+
+    private final InMemoryAccountRepository repository;
+    private final Journal journal;
+    private final BalanceTracker tracker;
+    private final ReentrantLock[] stripes;
+    private final int mask;
+    private final LongConsumer lockWaits;
+
+    public StripedLockTransferService(final InMemoryAccountRepository repository) {
+        this(repository, DEFAULT_STRIPES);
+    }
+
+    public StripedLockTransferService(final InMemoryAccountRepository repository, final int stripes) {
+        this(repository, stripes, nanos -> {
+        });
+    }
+
+    /**
+     * @param repository the account store
+     * @param stripes    the number of lock stripes, rounded up to the next power of two
+     * @param lockWaits  receives the time in nanoseconds a transfer or batch had to wait for a stripe held by another
+     *                   thread; uncontended acquisitions are not reported
+     */
+    public StripedLockTransferService(final InMemoryAccountRepository repository,
+                                      final int stripes,
+                                      final LongConsumer lockWaits) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("The number of lock stripes must be positive.");
+        }
+        this.repository = repository;
+        this.journal = repository.getJournal();
+        this.tracker = repository.getTracker();
+        this.stripes = new ReentrantLock[ceilingPowerOfTwo(stripes)];
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.mask = this.stripes.length - 1;
+        this.lockWaits = lockWaits;
+    }
+
+    @Override
+    public void transfer(final String senderAccNo, final String receiverAccNo, final BigDecimal amount) {
+        final long position;
+        try (InMemoryAccountRepository.Change change = repository.beginChange()) {
+            final Account sender = change.lookup(senderAccNo).orElse(null);
+            final Account receiver = change.lookup(receiverAccNo).orElse(null);
+            if (sender == null || receiver == null) {
+                throw TransferException.rejected(FailureReason.UNKNOWN_ACCOUNT);
+            }
+
+            validateAmount(amount);
+
+            position = adjustBalances(amount, sender, receiver);
+        }
+        journal.awaitDurable(position);
+    }
+
+    @Override
+    public BatchResult transferAll(final List<Transfer> transfers, final BatchMode mode) {
+        final Batch batch = new Batch(transfers);
+        long position = 0;
+        try (InMemoryAccountRepository.Change change = repository.beginChange()) {
+            final Map<String, Account> accounts = batch.resolveAccounts(change::find);
+            if (mode == BatchMode.ATOMIC && batch.hasFailures()) {
+                return batch.toResult(mode);
+            }
+
+            final int[] locked = lockAll(accounts.values());
+            try {
+                final Map<Account, BigDecimal> deltas =
+                        mode == BatchMode.ATOMIC ? planNetted(batch, accounts) : planInOrder(batch, accounts);
+                if (!deltas.isEmpty()) {
+                    position = journal.appendBalances(balancesAfter(deltas));
+                    apply(deltas);
+                }
+            } finally {
+                unlockAll(locked);
+            }
+        }
+        journal.awaitDurable(position);
+        return batch.toResult(mode);
+    }
+
+    /**
+     * Withdraws an amount which leaves this store, such as the debit of a transfer to an account held by another node.
+     * The amount is taken off the expected total of the repository as well.
+     *
+     * @param accountNo the account number
+     * @param amount    the amount to withdraw, must be positive
+     * @throws TransferException if the account is unknown, the amount is not positive or exceeds the balance
+     */
+    public void withdraw(final String accountNo, final BigDecimal amount) {
+        final long position;
+        try (InMemoryAccountRepository.Change change = repository.beginChange()) {
+            final Account account = change.lookup(accountNo)
+                    .orElseThrow(() -> TransferException.rejected(FailureReason.UNKNOWN_ACCOUNT));
+            validateAmount(amount);
+
+            final ReentrantLock stripe = stripes[stripeOf(accountNo)];
+            lock(stripe);
+            try {
+                // Deposits into a split account may raise the balance meanwhile, but never lower it.
+                final BigDecimal balance = account.getBalance().subtract(amount);
+                if (balance.compareTo(BigDecimal.ZERO) < 0) {
+                    throw TransferException.rejected(FailureReason.INSUFFICIENT_FUNDS);
+                }
+                position = journal.appendBalances(Collections.singletonMap(accountNo, balance));
+                account.beginUpdate();
+                try {
+                    account.withdraw(amount);
+                } finally {
+                    account.endUpdate();
+                }
+            } finally {
+                stripe.unlock();
+            }
+            tracker.onExternalChange(amount.negate(), 0);
+        }
+        journal.awaitDurable(position);
+    }
+
+    /**
+     * Deposits an amount which enters this store, such as the credit of a transfer from an account held by another
+     * node. The amount is added to the expected total of the repository as well.
+     *
+     * @param accountNo the account number
+     * @param amount    the amount to deposit, must be positive
+     * @throws TransferException if the account is unknown or the amount is not positive
+     */
+    public void deposit(final String accountNo, final BigDecimal amount) {
+        final long position;
+        try (InMemoryAccountRepository.Change change = repository.beginChange()) {
+            final Account account = change.lookup(accountNo)
+                    .orElseThrow(() -> TransferException.rejected(FailureReason.UNKNOWN_ACCOUNT));
+            validateAmount(amount);
+
+            if (account.isSplit()) {
+                // Repositories with split accounts have no journal, see creditSplit; the credit is atomic by itself.
+                account.credit(amount);
+                tracker.onExternalChange(amount, 0);
+                return;
+            }
+            final ReentrantLock stripe = stripes[stripeOf(accountNo)];
+            final BigDecimal before;
+            final BigDecimal balance;
+            lock(stripe);
+            try {
+                before = account.getBalance();
+                balance = before.add(amount);
+                position = journal.appendBalances(Collections.singletonMap(accountNo, balance));
+                account.beginUpdate();
+                try {
+                    account.deposit(amount);
+                } finally {
+                    account.endUpdate();
+                }
+            } finally {
+                stripe.unlock();
+            }
+            tracker.onExternalChange(amount, BalanceTracker.negativeChange(before, balance));
+        }
+        journal.awaitDurable(position);
+    }
+
+    /**
+     * Blocks until every change whose record has been appended to the journal has been applied, by acquiring each
+     * stripe once. Only one stripe is held at a time, so transfers are delayed by at most one critical section.
+     */
+    public void awaitAppliedChanges() {
+        for (final ReentrantLock stripe : stripes) {
+            stripe.lock();
+            stripe.unlock();
+        }
+    }
+
+    /**
+     * Computes the change of every account for the netted batch, or none if a debit is not covered.
+     */
+    private Map<Account, BigDecimal> planNetted(final Batch batch, final Map<String, Account> accounts) {
+        final Map<Account, BigDecimal> deltas = batch.netDeltas(accounts);
+        for (final Map.Entry<Account, BigDecimal> delta : deltas.entrySet()) {
+            if (delta.getKey().getBalance().add(delta.getValue()).compareTo(BigDecimal.ZERO) < 0) {
+                batch.failSender(delta.getKey().getAccountNo(),
+                        "Money transfer failed: The account does not have sufficient balance for the batch.");
+            }
+        }
+        if (batch.hasFailures()) {
+            return Collections.emptyMap();
+        }
+        return deltas;
+    }
+
+    /**
+     * Computes the change of every account for the transfers in order; transfers that are not covered are skipped.
+     */
+    private Map<Account, BigDecimal> planInOrder(final Batch batch, final Map<String, Account> accounts) {
+        final Map<Account, BigDecimal> balances = new HashMap<>();
+        final Map<Account, BigDecimal> deltas = new LinkedHashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            if (batch.isFailed(i)) {
+                continue;
+            }
+            final Transfer transfer = batch.get(i);
+            final Account sender = accounts.get(transfer.getSenderAccNo());
+            final Account receiver = accounts.get(transfer.getReceiverAccNo());
+            final BigDecimal senderBalance = balances.computeIfAbsent(sender, Account::getBalance);
+            if (senderBalance.compareTo(transfer.getAmount()) < 0) {
+                batch.fail(i,
+                        "Money transfer failed: The account does not have sufficient balance for the withdrawal.");
+                continue;
+            }
+            balances.put(sender, senderBalance.subtract(transfer.getAmount()));
+            balances.put(receiver, balances.computeIfAbsent(receiver, Account::getBalance).add(transfer.getAmount()));
+            deltas.merge(sender, transfer.getAmount().negate(), BigDecimal::add);
+            deltas.merge(receiver, transfer.getAmount(), BigDecimal::add);
+        }
+        return deltas;
+    }
+
+    /**
+     * Applies the planned changes; all stripes are held and every debit is covered, so none of the steps can fail.
+     * <p>
+     * Changes rather than target balances are applied, since a split account may receive deposits outside of its
+     * stripe while the batch is planned.
+     */
+    private void apply(final Map<Account, BigDecimal> deltas) {
+        BigDecimal sum = BigDecimal.ZERO;
+        int negatives = 0;
+        final List<Account> announced = Batch.announced(deltas);
+        announced.forEach(Account::beginUpdate);
+        try {
+            for (final Map.Entry<Account, BigDecimal> delta : deltas.entrySet()) {
+                final BigDecimal before = delta.getKey().getBalance();
+                if (delta.getValue().signum() < 0) {
+                    delta.getKey().withdraw(delta.getValue().negate());
+                } else if (delta.getValue().signum() > 0) {
+                    delta.getKey().deposit(delta.getValue());
+                }
+                sum = sum.add(delta.getValue());
+                negatives += BalanceTracker.negativeChange(before, before.add(delta.getValue()));
+            }
+        } finally {
+            announced.forEach(Account::endUpdate);
+        }
+        tracker.add(sum, negatives);
+    }
+
+    private static Map<String, BigDecimal> balancesAfter(final Map<Account, BigDecimal> deltas) {
+        final Map<String, BigDecimal> balances = new LinkedHashMap<>();
+        deltas.forEach((account, delta) -> balances.put(account.getAccountNo(), account.getBalance().add(delta)));
+        return balances;
+    }
+
+    private int[] lockAll(final Collection<Account> accounts) {
+        final BitSet indices = new BitSet(stripes.length);
+        for (final Account account : accounts) {
+            indices.set(stripeOf(account.getAccountNo()));
+        }
+        final int[] locked = indices.stream().toArray();
+        for (final int index : locked) {
+            lock(stripes[index]);
+        }
+        return locked;
+    }
+
+    private void unlockAll(final int[] locked) {
+        for (int i = locked.length - 1; i >= 0; i--) {
+            stripes[locked[i]].unlock();
+        }
+    }
+
+    /**
+     * @return the journal position of the transfer, to be awaited once the change has been closed
+     */
+    private long adjustBalances(final BigDecimal amount, final Account sender, final Account receiver) {
+        if (receiver.isSplit() && sender != receiver) {
+            creditSplit(amount, sender, receiver);
+            return 0;
+        }
+        final int senderStripe = stripeOf(sender.getAccountNo());
+        final int receiverStripe = stripeOf(receiver.getAccountNo());
+        final ReentrantLock first = stripes[Math.min(senderStripe, receiverStripe)];
+        final ReentrantLock second = stripes[Math.max(senderStripe, receiverStripe)];
+
+        final long position;
+        lock(first);
+        try {
+            lock(second);
+            try {
+                final BigDecimal senderBefore = sender.getBalance();
+                final BigDecimal receiverBefore = receiver.getBalance();
+                final BigDecimal senderBalance = senderBefore.subtract(amount);
+                if (senderBalance.compareTo(BigDecimal.ZERO) < 0) {
+                    throw TransferException.rejected(FailureReason.INSUFFICIENT_FUNDS);
+                }
+                final BigDecimal receiverBalance =
+                        (sender == receiver ? senderBalance : receiverBefore).add(amount);
+                position = journal.appendTransfer(
+                        sender.getAccountNo(), senderBalance, receiver.getAccountNo(), receiverBalance);
+                // The withdrawal is covered and the amount is positive, so neither step can fail after journaling. A
+                // split receiver only gets here as its own sender.
+                sender.beginUpdate();
+                if (receiver != sender) {
+                    receiver.beginUpdate();
+                }
+                try {
+                    sender.withdraw(amount);
+                    receiver.deposit(amount);
+                } finally {
+                    sender.endUpdate();
+                    if (receiver != sender) {
+                        receiver.endUpdate();
+                    }
+                }
+                // Planned rather than re-read balances, which could include deposits into a split account made
+                // meanwhile.
+                tracker.onTransfer(senderBefore, senderBalance, sender == receiver ? senderBalance : receiverBefore,
+                        receiverBalance);
+            } finally {
+                second.unlock();
+            }
+        } finally {
+            first.unlock();
+        }
+        return position;
+    }
+
+    /**
+     * Transfers to a split account while holding only the stripe of the sender: the deposit goes into a cell of the
+     * receiver without a lock. Repositories with split accounts have no journal, so there is nothing to write ahead.
+     * The change is only announced on the sender, see {@link Account#credit}.
+     */
+    private void creditSplit(final BigDecimal amount, final Account sender, final Account receiver) {
+        final ReentrantLock stripe = stripes[stripeOf(sender.getAccountNo())];
+        final BigDecimal senderBalance;
+        // Announced before the withdrawal, so that snapshot readers never see the amount in neither account.
+        sender.beginUpdate();
+        try {
+            lock(stripe);
+            try {
+                senderBalance = sender.tryWithdraw(amount);
+            } finally {
+                stripe.unlock();
+            }
+            if (senderBalance == null) {
+                throw TransferException.rejected(FailureReason.INSUFFICIENT_FUNDS);
+            }
+            receiver.credit(amount);
+        } finally {
+            sender.endUpdate();
+        }
+        // The sum of the balances is unchanged and the receiver cannot turn negative.
+        tracker.add(BigDecimal.ZERO, BalanceTracker.negativeChange(senderBalance.add(amount), senderBalance));
+    }
+
+    /**
+     * Acquires a stripe and reports the time spent waiting if another thread held it.
+     */
+    private void lock(final ReentrantLock stripe) {
+        if (stripe.tryLock()) {
+            return;
+        }
+        final long start = System.nanoTime();
+        stripe.lock();
+        lockWaits.accept(System.nanoTime() - start);
+    }
+
+    private int stripeOf(final String accountNo) {
+        final int hash = accountNo.hashCode();
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private void validateAmount(final BigDecimal amount) {
+        if (amount.compareTo(BigDecimal.ZERO) <= 0) {
+            throw TransferException.rejected(FailureReason.INVALID_AMOUNT);
+        }
+    }
+
+    private static int ceilingPowerOfTwo(final int value) {
+        final int highestBit = Integer.highestOneBit(value);
+        return highestBit == value ? value : highestBit << 1;
+    }
+}
@@ -0,0 +1,18 @@
+package net.lugburz.tinytransfer.transfer;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+
+/**
+ * A single money transfer of a batch.
+ */
+@Getter
+@AllArgsConstructor
+public final class Transfer {
+
+    private final String senderAccNo;
+    private final String receiverAccNo;
+    private final BigDecimal amount;
+}
@@ -1,14 +1,59 @@
 package net.lugburz.tinytransfer.transfer;
 
+import java.util.EnumMap;
+import java.util.Map;
+
 /**
  * Thrown on failure to perform money transfer.
+ *
+ * <p>
+ * Rejections are routine outcomes rather than programming errors, so the ones with a fixed message are thrown as
+ * shared instances without a stack trace, see {@link #rejected(FailureReason)}.
  */
 public final class TransferException extends RuntimeException {
 
-    public TransferException(final String message) {
+    private static final Map<FailureReason, TransferException> REJECTIONS = new EnumMap<>(FailureReason.class);
+
+    static {
+        REJECTIONS.put(FailureReason.INSUFFICIENT_FUNDS, new TransferException(FailureReason.INSUFFICIENT_FUNDS,
+                "Money transfer failed: The account does not have sufficient balance for the withdrawal.", false));
+        REJECTIONS.put(FailureReason.UNKNOWN_ACCOUNT, new TransferException(FailureReason.UNKNOWN_ACCOUNT,
+                "Money transfer failed: Unknown account provided", false));
+        REJECTIONS.put(FailureReason.INVALID_AMOUNT, new TransferException(FailureReason.INVALID_AMOUNT,
+                "The provided amount is not greater than zero.", false));
+        REJECTIONS.put(FailureReason.UNSUPPORTED_CURRENCY, new TransferException(FailureReason.UNSUPPORTED_CURRENCY,
+                "Money transfer failed: No exchange rate between the currencies of the accounts.", false));
+    }
+
+    private final FailureReason reason;
+
+    public TransferException(final FailureReason reason, final String message) {
         super(message);
+        this.reason = reason;
     }
-    public TransferException(final String message, final Throwable cause) {
+
+    public TransferException(final FailureReason reason, final String message, final Throwable cause) {
         super(message, cause);
+        this.reason = reason;
+    }
+
+    private TransferException(final FailureReason reason, final String message, final boolean writableStackTrace) {
+        super(message, null, false, writableStackTrace);
+        this.reason = reason;
+    }
+
+    /**
+     * Returns the shared instance for a rejection with the standard message of its reason. The instance has neither
+     * a stack trace nor suppressed exceptions, so throwing it allocates nothing.
+     *
+     * @param reason the reason of the rejection
+     * @return the preallocated exception
+     */
+    public static TransferException rejected(final FailureReason reason) {
+        return REJECTIONS.get(reason);
+    }
+
+    public FailureReason getReason() {
+        return reason;
     }
 }
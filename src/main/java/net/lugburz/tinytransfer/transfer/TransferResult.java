@@ -0,0 +1,31 @@
+package net.lugburz.tinytransfer.transfer;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Outcome of a single transfer of a batch.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PACKAGE)
+public final class TransferResult {
+
+    /**
+     * Position of the transfer within the batch.
+     */
+    @JsonProperty
+    private final int index;
+
+    @JsonProperty
+    private final boolean success;
+
+    /**
+     * Reason of the failure, null on success.
+     */
+    @JsonProperty
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private final String error;
+}
@@ -1,6 +1,8 @@
 package net.lugburz.tinytransfer.transfer;
 
 import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Interface for money transfer functionality.
@@ -16,4 +18,39 @@ public interface TransferService {
      * @throws TransferException on failure to transfer due to unknown sender or receiver account,
      */
     void transfer(String senderAccNo, String receiverAccNo, BigDecimal amount);
+
+    /**
+     * Performs a money transfer without blocking the caller, if the implementation supports it.
+     * <p>
+     * By default the transfer is performed on the calling thread and the returned future is already completed.
+     *
+     * @param senderAccNo   the account number of the sender
+     * @param receiverAccNo the account number of the receiver
+     * @param amount        the amount to be transferred, must be a non-zero positive value
+     * @return a future which completes once the transfer has been performed, or exceptionally with a
+     * {@link TransferException} on failure to transfer
+     */
+    default CompletableFuture<Void> transferAsync(final String senderAccNo,
+                                                  final String receiverAccNo,
+                                                  final BigDecimal amount) {
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        try {
+            transfer(senderAccNo, receiverAccNo, amount);
+            result.complete(null);
+        } catch (final RuntimeException exception) {
+            result.completeExceptionally(exception);
+        }
+        return result;
+    }
+
+    /**
+     * Performs a batch of money transfers.
+     * <p>
+     * Failures of single transfers are reported in the result instead of being thrown.
+     *
+     * @param transfers the transfers to perform, in order
+     * @param mode      whether the batch is applied as a whole or transfer by transfer, see {@link BatchMode}
+     * @return the outcome of the batch with one result per transfer
+     */
+    BatchResult transferAll(List<Transfer> transfers, BatchMode mode);
 }
@@ -0,0 +1,50 @@
+package net.lugburz.tinytransfer;
+
+import net.lugburz.tinytransfer.account.InMemoryAccountRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link VerifyConsistencyTask}.
+ */
+class VerifyConsistencyTaskTest {
+
+    private InMemoryAccountRepository repo;
+    private VerifyConsistencyTask sut;
+
+    @BeforeEach
+    public void setup() {
+        repo = new InMemoryAccountRepository();
+        repo.create("123", BigDecimal.valueOf(10));
+        sut = new VerifyConsistencyTask(repo);
+    }
+
+    @Test
+    public void execute_onConsistentStore_shouldReportConsistent() {
+        final String output = execute();
+
+        assertThat(output).contains("accounts: 1").contains("sum of balances: 10").endsWith("consistent\n");
+    }
+
+    @Test
+    public void execute_onUntrackedBalanceChange_shouldReportInconsistent() {
+        repo.find("123").withdraw(BigDecimal.ONE);
+
+        final String output = execute();
+
+        assertThat(output).contains("sum of balances: 9").contains("expected total: 10").endsWith("INCONSISTENT\n");
+    }
+
+    private String execute() {
+        final StringWriter output = new StringWriter();
+        sut.execute(Collections.emptyMap(), new PrintWriter(output));
+        return output.toString().replace(System.lineSeparator(), "\n");
+    }
+}
@@ -0,0 +1,85 @@
+package net.lugburz.tinytransfer.account;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+
+/**
+ * Tests for {@link AccountIds}.
+ */
+class AccountIdsTest {
+
+    private AccountIds sut;
+
+    @BeforeEach
+    public void setup() {
+        sut = new AccountIds();
+    }
+
+    @Test
+    public void pack_onCanonicalNumber_shouldReturnNumber() {
+        assertThat(AccountIds.pack("0")).isZero();
+        assertThat(AccountIds.pack("123")).isEqualTo(123L);
+        assertThat(AccountIds.pack("999999999999999999")).isEqualTo(999_999_999_999_999_999L);
+    }
+
+    @Test
+    public void pack_onOtherFormats_shouldNotPack() {
+        assertThat(AccountIds.pack("")).isEqualTo(AccountIds.NOT_PACKED);
+        assertThat(AccountIds.pack("0123")).isEqualTo(AccountIds.NOT_PACKED);
+        assertThat(AccountIds.pack("1000000000000000000")).isEqualTo(AccountIds.NOT_PACKED);
+        assertThat(AccountIds.pack("12a")).isEqualTo(AccountIds.NOT_PACKED);
+        assertThat(AccountIds.pack("-12")).isEqualTo(AccountIds.NOT_PACKED);
+    }
+
+    @Test
+    public void putIfAbsent_onNumericAndOtherAccountNos_shouldKeepThemApart() {
+        assertThat(sut.putIfAbsent("123", 0)).isTrue();
+        assertThat(sut.putIfAbsent("0123", 1)).isTrue();
+        assertThat(sut.putIfAbsent("0", 2)).isTrue();
+
+        assertThat(sut.get("123")).isZero();
+        assertThat(sut.get("0123")).isEqualTo(1);
+        assertThat(sut.get("0")).isEqualTo(2);
+        assertThat(sut.get("1234")).isEqualTo(-1);
+        assertThat(sut.get("acc")).isEqualTo(-1);
+    }
+
+    @Test
+    public void putIfAbsent_onKnownAccountNo_shouldKeepFirstId() {
+        sut.putIfAbsent("123", 0);
+        sut.putIfAbsent("acc", 1);
+
+        assertThat(sut.putIfAbsent("123", 2)).isFalse();
+        assertThat(sut.putIfAbsent("acc", 3)).isFalse();
+        assertThat(sut.get("123")).isZero();
+        assertThat(sut.get("acc")).isEqualTo(1);
+    }
+
+    @Test
+    public void putIfAbsent_beyondInitialCapacity_shouldKeepAllIds() {
+        for (int i = 0; i < 100_000; i++) {
+            sut.putIfAbsent(Integer.toString(i * 7919), i);
+        }
+
+        for (int i = 0; i < 100_000; i++) {
+            assertThat(sut.get(Integer.toString(i * 7919))).isEqualTo(i);
+        }
+    }
+
+    @Test
+    public void forEach_shouldVisitEveryAccountNo() {
+        sut.putIfAbsent("123", 0);
+        sut.putIfAbsent("acc", 1);
+        final Map<String, Integer> visited = new HashMap<>();
+
+        sut.forEach(visited::put);
+
+        assertThat(visited).containsOnly(entry("123", 0), entry("acc", 1));
+    }
+}
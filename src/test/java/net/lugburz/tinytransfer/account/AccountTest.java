@@ -44,6 +44,13 @@ class AccountTest {
         assertThat(sut.getBalance()).isEqualTo(BigDecimal.valueOf(0.01));
     }
 
+    @Test
+    public void tryWithdraw_amountGtBalance_shouldReturnNullAndKeepBalance() {
+        assertThat(sut.tryWithdraw(BigDecimal.valueOf(10.421))).isNull();
+
+        assertThat(sut.getBalance()).isEqualTo(BigDecimal.valueOf(10.42));
+    }
+
     @Test
     public void deposit_negativeAmount_shouldThrowAccountException() {
         assertThrows(AccountException.class, () -> sut.deposit(BigDecimal.valueOf(-1)));
@@ -55,4 +62,40 @@ class AccountTest {
 
         assertThat(sut.getBalance()).isEqualTo(BigDecimal.valueOf(10.84));
     }
+
+    @Test
+    public void deposit_onSplitAccountFromManyThreads_shouldAddEveryAmount() throws InterruptedException {
+        final Account split = Account.split("hot", BigDecimal.valueOf(10.42), 4);
+        final Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 1_000; i++) {
+                    split.credit(BigDecimal.valueOf(0.01));
+                }
+            });
+            threads[t].start();
+        }
+        for (final Thread thread : threads) {
+            thread.join();
+        }
+
+        assertThat(split.getBalance()).isEqualByComparingTo(BigDecimal.valueOf(90.42));
+    }
+
+    @Test
+    public void tryWithdraw_onSplitAccount_shouldBorrowAcrossCells() throws InterruptedException {
+        final Account split = Account.split("hot", BigDecimal.valueOf(10), 4);
+        final Thread depositor = new Thread(() -> split.deposit(BigDecimal.valueOf(5)));
+        depositor.start();
+        depositor.join();
+
+        assertThat(split.tryWithdraw(BigDecimal.valueOf(15.01))).isNull();
+        assertThat(split.tryWithdraw(BigDecimal.valueOf(14))).isEqualByComparingTo(BigDecimal.ONE);
+        assertThat(split.getBalance()).isEqualByComparingTo(BigDecimal.ONE);
+    }
+
+    @Test
+    public void credit_onUnsplitAccount_shouldThrowIllegalStateException() {
+        assertThrows(IllegalStateException.class, () -> sut.credit(BigDecimal.ONE));
+    }
 }
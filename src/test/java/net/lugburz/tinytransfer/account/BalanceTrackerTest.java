@@ -0,0 +1,98 @@
+package net.lugburz.tinytransfer.account;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link BalanceTracker}.
+ */
+class BalanceTrackerTest {
+
+    private BalanceTracker sut;
+
+    @BeforeEach
+    public void setup() {
+        sut = new BalanceTracker(4);
+        sut.onCreate(BigDecimal.valueOf(10));
+        sut.onCreate(new BigDecimal("2.5"));
+    }
+
+    @Test
+    public void onCreate_shouldAddBalanceToSum() {
+        assertThat(sut.sum()).isEqualByComparingTo("12.5");
+        assertThat(sut.negativeBalances()).isZero();
+    }
+
+    @Test
+    public void onTransfer_conservingMoney_shouldKeepSum() {
+        sut.onTransfer(BigDecimal.valueOf(10), BigDecimal.valueOf(7), new BigDecimal("2.5"), new BigDecimal("5.5"));
+
+        assertThat(sut.sum()).isEqualByComparingTo("12.5");
+    }
+
+    @Test
+    public void onTransfer_creatingMoney_shouldChangeSum() {
+        sut.onTransfer(BigDecimal.valueOf(10), BigDecimal.valueOf(7), new BigDecimal("2.5"), new BigDecimal("6.5"));
+
+        assertThat(sut.sum()).isEqualByComparingTo("13.5");
+    }
+
+    @Test
+    public void onTransfer_toNegativeAndBack_shouldCountNegativeBalances() {
+        sut.onTransfer(BigDecimal.valueOf(10), BigDecimal.valueOf(-1), new BigDecimal("2.5"), new BigDecimal("13.5"));
+        assertThat(sut.negativeBalances()).isEqualTo(1);
+
+        sut.onTransfer(new BigDecimal("13.5"), new BigDecimal("12.5"), BigDecimal.valueOf(-1), BigDecimal.ZERO);
+        assertThat(sut.negativeBalances()).isZero();
+    }
+
+    @Test
+    public void onExternalChange_shouldMoveSumAndExpectedTotal() {
+        sut.onExternalChange(new BigDecimal("-2.5"), 0);
+
+        assertThat(sut.sum()).isEqualByComparingTo("10");
+        assertThat(sut.expected()).isEqualByComparingTo("10");
+        assertThat(sut.check(2).isConsistent()).isTrue();
+    }
+
+    @Test
+    public void add_withoutExpectedChange_shouldBeReportedInconsistent() {
+        sut.add(BigDecimal.ONE, 0);
+
+        assertThat(sut.expected()).isEqualByComparingTo("12.5");
+        assertThat(sut.check(2).isConsistent()).isFalse();
+    }
+
+    @Test
+    public void reset_shouldForgetAllBalances() {
+        sut.add(BigDecimal.ONE, 1);
+
+        sut.reset();
+
+        assertThat(sut.sum()).isEqualByComparingTo("0");
+        assertThat(sut.negativeBalances()).isZero();
+    }
+
+    @Test
+    public void add_fromManyThreads_shouldSumAllDeltas() throws InterruptedException {
+        final ExecutorService es = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            es.execute(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    sut.add(BigDecimal.ONE, 0);
+                }
+            });
+        }
+        es.shutdown();
+
+        assertThat(es.awaitTermination(60, TimeUnit.SECONDS)).isTrue();
+        assertThat(sut.sum()).isEqualByComparingTo("80012.5");
+    }
+}
@@ -0,0 +1,191 @@
+package net.lugburz.tinytransfer.account;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link FixedPointAccountRepository}.
+ */
+class FixedPointAccountRepositoryTest {
+
+    private static final String ACCOUNT_NO_1 = "123";
+    private static final String ACCOUNT_NO_2 = "456";
+
+    private FixedPointAccountRepository sut;
+
+    @BeforeEach
+    public void setup() {
+        sut = new FixedPointAccountRepository(new MinorUnits(2));
+        sut.create(ACCOUNT_NO_1, BigDecimal.valueOf(100));
+        sut.create(ACCOUNT_NO_2, new BigDecimal("20.5"));
+    }
+
+    @Test
+    public void lookup_onUnknownAccount_shouldReturnEmpty() {
+        assertThat(sut.lookup("789")).isEmpty();
+    }
+
+    @Test
+    public void find_onUnknownAccount_shouldThrowAccountException() {
+        assertThrows(AccountException.class, () -> sut.find("789"));
+    }
+
+    @Test
+    public void find_onExistingAccount_shouldReturnScaledBalance() {
+        final Account acc = sut.find(ACCOUNT_NO_2);
+
+        assertThat(acc.getAccountNo()).isEqualTo(ACCOUNT_NO_2);
+        assertThat(acc.getBalance()).isEqualTo(new BigDecimal("20.50"));
+    }
+
+    @Test
+    public void create_onExistingAccountNo_shouldThrowAccountException() {
+        assertThrows(AccountException.class, () -> sut.create(ACCOUNT_NO_1, BigDecimal.valueOf(0)));
+    }
+
+    @Test
+    public void create_onBlankAccountNo_shouldThrowAccountException() {
+        assertThrows(AccountException.class, () -> sut.create(" ", BigDecimal.valueOf(0)));
+    }
+
+    @Test
+    public void create_onNegativeBalance_shouldThrowAccountException() {
+        assertThrows(AccountException.class, () -> sut.create("789", BigDecimal.valueOf(-1)));
+    }
+
+    @Test
+    public void create_onTooManyFractionalDigits_shouldThrowAccountException() {
+        assertThrows(AccountException.class, () -> sut.create("789", new BigDecimal("0.001")));
+    }
+
+    @Test
+    public void create_onTotalBalanceOverflow_shouldThrowAccountException() {
+        sut.create("789", new BigDecimal("92233720368547600"));
+
+        assertThrows(AccountException.class, () -> sut.create("790", new BigDecimal("100000")));
+    }
+
+    @Test
+    public void create_beyondCapacity_shouldThrowAccountException() {
+        sut = new FixedPointAccountRepository(new MinorUnits(2), 1);
+        sut.create(ACCOUNT_NO_1, BigDecimal.ONE);
+
+        assertThrows(AccountException.class, () -> sut.create(ACCOUNT_NO_2, BigDecimal.ONE));
+    }
+
+    @Test
+    public void create_beyondOneChunk_shouldKeepAllBalances() {
+        for (int i = 0; i < 20_000; i++) {
+            sut.create("acc-" + i, BigDecimal.valueOf(i));
+        }
+
+        assertThat(sut.find("acc-0").getBalance()).isEqualTo(new BigDecimal("0.00"));
+        assertThat(sut.find("acc-19999").getBalance()).isEqualTo(new BigDecimal("19999.00"));
+        assertThat(sut.isConsistent()).isTrue();
+    }
+
+    @Test
+    public void transfer_onInsufficientBalance_shouldReturnFalseAndKeepBalance() {
+        assertThat(sut.transfer(ACCOUNT_NO_2, ACCOUNT_NO_1, 2051)).isFalse();
+
+        assertThat(sut.find(ACCOUNT_NO_2).getBalance()).isEqualTo(new BigDecimal("20.50"));
+    }
+
+    @Test
+    public void transfer_onValidAmount_shouldMoveMinorUnits() {
+        assertThat(sut.transfer(ACCOUNT_NO_2, ACCOUNT_NO_1, 2050)).isTrue();
+
+        assertThat(sut.find(ACCOUNT_NO_1).getBalance()).isEqualTo(new BigDecimal("120.50"));
+        assertThat(sut.find(ACCOUNT_NO_2).getBalance()).isEqualTo(new BigDecimal("0.00"));
+    }
+
+    @Test
+    public void clear_shouldRemoveAllAccounts() {
+        sut.clear();
+
+        assertThrows(AccountException.class, () -> sut.find(ACCOUNT_NO_1));
+        sut.create(ACCOUNT_NO_1, BigDecimal.ONE);
+        assertThat(sut.find(ACCOUNT_NO_1).getBalance()).isEqualTo(new BigDecimal("1.00"));
+    }
+
+    @Test
+    public void totalBalance_afterTransfer_shouldStayUnchanged() {
+        sut.transfer(ACCOUNT_NO_1, ACCOUNT_NO_2, 1000);
+
+        assertThat(sut.size()).isEqualTo(2);
+        assertThat(sut.totalBalance()).isEqualTo(new BigDecimal("120.50"));
+    }
+
+    @Test
+    public void verifyConsistency_afterTransfers_shouldMatchCounters() {
+        sut.transfer(ACCOUNT_NO_1, ACCOUNT_NO_2, 5000);
+        sut.transfer(ACCOUNT_NO_2, ACCOUNT_NO_1, 1);
+
+        final Consistency scanned = sut.verifyConsistency();
+
+        assertThat(scanned.isConsistent()).isTrue();
+        assertThat(scanned.getAccounts()).isEqualTo(2);
+        assertThat(scanned.getBalanceSum()).isEqualTo(sut.checkConsistency().getBalanceSum());
+    }
+
+    @Test
+    public void checkConsistency_duringTransfersAndBatches_shouldMatchScan() throws Exception {
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicBoolean inconsistent = new AtomicBoolean();
+        final ExecutorService es = Executors.newFixedThreadPool(4);
+        final Future<?> checker = es.submit(() -> {
+            while (running.get()) {
+                if (!sut.checkConsistency().isConsistent()) {
+                    inconsistent.set(true);
+                }
+            }
+        });
+        final List<Future<?>> writers = new ArrayList<>();
+        for (int t = 0; t < 3; t++) {
+            writers.add(es.submit(() -> {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 10_000; i++) {
+                    final boolean forward = random.nextBoolean();
+                    final String sender = forward ? ACCOUNT_NO_1 : ACCOUNT_NO_2;
+                    final String receiver = forward ? ACCOUNT_NO_2 : ACCOUNT_NO_1;
+                    if (i % 10 == 0) {
+                        final Map<String, Long> deltas = new LinkedHashMap<>();
+                        deltas.put(sender, -300L);
+                        deltas.put(receiver, 300L);
+                        sut.applyDeltas(deltas);
+                    } else {
+                        sut.transfer(sender, receiver, random.nextInt(1, 500));
+                    }
+                }
+            }));
+        }
+        for (final Future<?> writer : writers) {
+            writer.get(60, TimeUnit.SECONDS);
+        }
+        running.set(false);
+        checker.get(10, TimeUnit.SECONDS);
+        es.shutdown();
+
+        final Consistency tracked = sut.checkConsistency();
+        final Consistency scanned = sut.verifyConsistency();
+        assertThat(inconsistent.get()).isFalse();
+        assertThat(tracked.getBalanceSum()).isEqualTo(scanned.getBalanceSum());
+        assertThat(tracked.getNegativeBalances()).isEqualTo(scanned.getNegativeBalances());
+        assertThat(tracked.getExpectedTotal()).isEqualTo(new BigDecimal("120.50"));
+    }
+}
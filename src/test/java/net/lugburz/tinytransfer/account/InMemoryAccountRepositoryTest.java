@@ -0,0 +1,335 @@
+package net.lugburz.tinytransfer.account;
+
+import net.lugburz.tinytransfer.journal.RecordHandler;
+import net.lugburz.tinytransfer.transfer.BatchMode;
+import net.lugburz.tinytransfer.transfer.InMemoryTransferService;
+import net.lugburz.tinytransfer.transfer.StripedLockTransferService;
+import net.lugburz.tinytransfer.transfer.Transfer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link InMemoryAccountRepository}.
+ */
+class InMemoryAccountRepositoryTest {
+
+    private static final String ACCOUNT_NO_1 = "123";
+    private static final String ACCOUNT_NO_2 = "456";
+    private static final BigDecimal ACCOUNT_BALANCE_1 = BigDecimal.valueOf(100);
+    private static final BigDecimal ACCOUNT_BALANCE_2 = BigDecimal.valueOf(20);
+
+    private InMemoryAccountRepository sut;
+
+    @BeforeEach
+    public void setup() {
+        final Account foo = new Account(ACCOUNT_NO_1, ACCOUNT_BALANCE_1);
+        final Account bar = new Account(ACCOUNT_NO_2, ACCOUNT_BALANCE_2);
+
+        sut = new InMemoryAccountRepository();
+        sut.create(foo.getAccountNo(), foo.getBalance());
+        sut.create(bar.getAccountNo(), bar.getBalance());
+    }
+
+    @Test
+    public void find_onUnknownAccount_shouldThrowAccountException() {
+        assertThrows(AccountException.class, () -> sut.find("789"));
+    }
+
+    @Test
+    public void find_onExistingAccount_shouldReturnAccount() {
+        final Account acc = sut.find(ACCOUNT_NO_1);
+
+        assertThat(acc.getAccountNo()).isEqualTo(ACCOUNT_NO_1);
+        assertThat(acc.getBalance()).isEqualTo(ACCOUNT_BALANCE_1);
+    }
+
+    @Test
+    public void snapshotAll_shouldReturnDetachedCopiesOfKnownAccountsInOrder() {
+        final List<Account> snapshot = sut.snapshotAll(Arrays.asList(ACCOUNT_NO_2, "789", ACCOUNT_NO_1));
+        sut.find(ACCOUNT_NO_1).deposit(BigDecimal.ONE);
+
+        assertThat(snapshot).extracting(Account::getAccountNo).containsExactly(ACCOUNT_NO_2, ACCOUNT_NO_1);
+        assertThat(snapshot).extracting(Account::getBalance).containsExactly(ACCOUNT_BALANCE_2, ACCOUNT_BALANCE_1);
+        assertThat(sut.snapshot("789")).isEmpty();
+    }
+
+    @Test
+    public void snapshot_onSplitAccount_shouldReturnSumOfCells() {
+        sut = new InMemoryAccountRepository(Collections.singleton(ACCOUNT_NO_1), 4);
+        sut.create(ACCOUNT_NO_1, ACCOUNT_BALANCE_1);
+        sut.find(ACCOUNT_NO_1).credit(BigDecimal.TEN);
+
+        assertThat(sut.snapshot(ACCOUNT_NO_1).map(Account::getBalance)).contains(BigDecimal.valueOf(110));
+    }
+
+    @Test
+    public void transfer_toSplitAccount_shouldNotAnnounceTheCreditOnIt() {
+        sut = new InMemoryAccountRepository(Collections.singleton("hot"), 4);
+        sut.create("hot", BigDecimal.ZERO);
+        sut.create("cold", BigDecimal.valueOf(100));
+        final Account hot = sut.find("hot");
+        final Account cold = sut.find("cold");
+        final long hotUpdates = hot.updates();
+        final long coldUpdates = cold.updates();
+        final StripedLockTransferService striped = new StripedLockTransferService(sut);
+        final InMemoryTransferService unlocked = new InMemoryTransferService(sut);
+
+        striped.transfer("cold", "hot", BigDecimal.ONE);
+        striped.deposit("hot", BigDecimal.ONE);
+        unlocked.transfer("cold", "hot", BigDecimal.ONE);
+        for (final BatchMode mode : BatchMode.values()) {
+            final List<Transfer> batch = Collections.singletonList(new Transfer("cold", "hot", BigDecimal.ONE));
+            striped.transferAll(batch, mode);
+            unlocked.transferAll(batch, mode);
+        }
+
+        assertThat(hot.getBalance()).isEqualByComparingTo("7");
+        assertThat(hot.updates()).isEqualTo(hotUpdates);
+        assertThat(cold.updates()).isNotEqualTo(coldUpdates);
+        assertThat(Account.isUpdating(cold.updates())).isFalse();
+    }
+
+    @Test
+    public void lookup_onUnknownOrNullAccount_shouldReturnEmpty() {
+        assertThat(sut.lookup("789")).isEmpty();
+        assertThat(sut.lookup(null)).isEmpty();
+    }
+
+    @Test
+    public void lookup_onExistingAccount_shouldReturnLiveAccount() {
+        assertThat(sut.lookup(ACCOUNT_NO_1)).containsSame(sut.find(ACCOUNT_NO_1));
+    }
+
+    @Test
+    public void create_onExistingAccountNo_shouldThrowAccountException() {
+        assertThrows(AccountException.class, () -> sut.create(ACCOUNT_NO_1, BigDecimal.valueOf(0)));
+    }
+
+    @Test
+    public void create_onNullAccountNo_shouldThrowAccountException() {
+        assertThrows(AccountException.class, () -> sut.create(null, BigDecimal.valueOf(0)));
+    }
+
+    @Test
+    public void create_onBlankAccountNo_shouldThrowAccountException() {
+        assertThrows(AccountException.class, () -> sut.create(" ", BigDecimal.valueOf(0)));
+    }
+
+    @Test
+    public void create_onNegativeBalance_shouldThrowAccountException() {
+        assertThrows(AccountException.class, () -> sut.create(ACCOUNT_NO_1, BigDecimal.valueOf(-1)));
+    }
+
+    @Test
+    public void create_onNewAccountNo_shouldCreateAccount() {
+        sut.create("789", BigDecimal.valueOf(42));
+
+        assertThat(sut.find("789").getBalance()).isEqualTo(BigDecimal.valueOf(42));
+    }
+
+    @Test
+    public void createAll_onMixedAccounts_shouldCreateValidAccountsAndReportOthers() {
+        final Map<Integer, String> errors = sut.createAll(Arrays.asList(
+                new Account("789", BigDecimal.valueOf(1)),
+                new Account(ACCOUNT_NO_1, BigDecimal.valueOf(2)),
+                new Account(" ", BigDecimal.valueOf(3)),
+                new Account("012", BigDecimal.valueOf(4))));
+
+        assertThat(errors).containsOnlyKeys(1, 2);
+        assertThat(sut.find("789").getBalance()).isEqualTo(BigDecimal.valueOf(1));
+        assertThat(sut.find("012").getBalance()).isEqualTo(BigDecimal.valueOf(4));
+        assertThat(sut.totalBalance()).isEqualTo(BigDecimal.valueOf(125));
+    }
+
+    @Test
+    public void forEachBalance_shouldVisitEveryAccount() {
+        final Map<String, BigDecimal> balances = new HashMap<>();
+
+        sut.forEachBalance(balances::put);
+
+        assertThat(balances).containsOnly(
+                entry(ACCOUNT_NO_1, ACCOUNT_BALANCE_1), entry(ACCOUNT_NO_2, ACCOUNT_BALANCE_2));
+    }
+
+    @Test
+    public void totalBalance_afterCreateAndClear_shouldTrackSumOfBalances() {
+        assertThat(sut.size()).isEqualTo(2);
+        assertThat(sut.totalBalance()).isEqualTo(BigDecimal.valueOf(120));
+
+        sut.clear();
+
+        assertThat(sut.size()).isZero();
+        assertThat(sut.totalBalance()).isEqualTo(BigDecimal.ZERO);
+    }
+
+    @Test
+    public void create_concurrentlyWithClears_shouldKeepTotalInLineWithAccounts() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<?>> creators = new ArrayList<>();
+            for (int t = 0; t < 3; t++) {
+                final int thread = t;
+                creators.add(executor.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        sut.create(thread + "-" + i, BigDecimal.ONE);
+                    }
+                }));
+            }
+            for (int i = 0; i < 100; i++) {
+                sut.clear();
+            }
+            for (final Future<?> creator : creators) {
+                creator.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(sut.totalBalance()).isEqualByComparingTo(BigDecimal.valueOf(sut.size()));
+        assertThat(sut.verifyConsistency().isConsistent()).isTrue();
+    }
+
+    @Test
+    public void checkConsistency_concurrentlyWithCreations_shouldNeverReportInconsistency() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            final List<Future<?>> creators = new ArrayList<>();
+            for (int t = 0; t < 3; t++) {
+                final int thread = t;
+                creators.add(executor.submit(() -> {
+                    for (int i = 0; i < 20_000; i++) {
+                        sut.create(thread + "-" + i, BigDecimal.ONE);
+                    }
+                }));
+            }
+            int inconsistent = 0;
+            while (!creators.stream().allMatch(Future::isDone)) {
+                if (!sut.checkConsistency().isConsistent()) {
+                    inconsistent++;
+                }
+            }
+            for (final Future<?> creator : creators) {
+                creator.get(30, TimeUnit.SECONDS);
+            }
+            assertThat(inconsistent).isZero();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void create_onHotAccountNo_shouldCreateSplitAccount() {
+        sut = new InMemoryAccountRepository(Collections.singleton("hot"), 4);
+        sut.create("hot", BigDecimal.TEN);
+        sut.create("cold", BigDecimal.TEN);
+
+        assertThat(sut.find("hot").isSplit()).isTrue();
+        assertThat(sut.find("hot").getBalance()).isEqualTo(BigDecimal.TEN);
+        assertThat(sut.find("cold").isSplit()).isFalse();
+    }
+
+    @Test
+    public void create_withCurrency_shouldKeepCurrencyAndDefaultOthers() {
+        final Currency eur = Currency.getInstance("EUR");
+        final Currency usd = Currency.getInstance("USD");
+        sut = new InMemoryAccountRepository(Collections.singleton("hot"), 2, eur);
+
+        sut.create(ACCOUNT_NO_1, ACCOUNT_BALANCE_1);
+        sut.create(ACCOUNT_NO_2, ACCOUNT_BALANCE_2, usd);
+        sut.create("hot", BigDecimal.ONE, usd);
+        sut.createAll(Collections.singletonList(new Account("789", BigDecimal.ONE, usd)));
+
+        assertThat(sut.find(ACCOUNT_NO_1).getCurrency()).isEqualTo(eur);
+        assertThat(sut.find("hot").getCurrency()).isEqualTo(usd);
+        assertThat(sut.find("789").getCurrency()).isEqualTo(usd);
+        assertThat(sut.snapshotAll(Arrays.asList(ACCOUNT_NO_1, ACCOUNT_NO_2)))
+                .extracting(Account::getCurrency)
+                .containsExactly(eur, usd);
+    }
+
+    @Test
+    public void create_withCurrencyWithoutDefaultCurrency_shouldThrowAccountException() {
+        final Currency usd = Currency.getInstance("USD");
+
+        assertThrows(AccountException.class, () -> sut.create("789", BigDecimal.ONE, usd));
+        assertThat(sut.createAll(Collections.singletonList(new Account("789", BigDecimal.ONE, usd))))
+                .containsOnlyKeys(0);
+        assertThat(sut.lookup("789")).isEmpty();
+    }
+
+    @Test
+    public void checkConsistency_onCreatedAccounts_shouldBeConsistent() {
+        final Consistency consistency = sut.checkConsistency();
+
+        assertThat(consistency.isConsistent()).isTrue();
+        assertThat(consistency.getAccounts()).isEqualTo(2);
+        assertThat(consistency.getBalanceSum()).isEqualByComparingTo("120");
+    }
+
+    @Test
+    public void verifyConsistency_onUntrackedBalanceChange_shouldDetectMismatch() {
+        sut.find(ACCOUNT_NO_1).deposit(BigDecimal.ONE);
+
+        assertThat(sut.checkConsistency().isConsistent()).isTrue();
+        assertThat(sut.verifyConsistency().isConsistent()).isFalse();
+        assertThat(sut.verifyConsistency().getBalanceSum()).isEqualByComparingTo("121");
+    }
+
+    @Test
+    public void checkConsistency_onNegativeBalanceRecovered_shouldCountIt() {
+        sut.recoveryHandler().onBalance(ACCOUNT_NO_2, BigDecimal.valueOf(-5));
+
+        assertThat(sut.checkConsistency().getNegativeBalances()).isEqualTo(1);
+        assertThat(sut.isConsistent()).isFalse();
+        assertThat(sut.verifyConsistency().getNegativeBalances()).isEqualTo(1);
+    }
+
+    @Test
+    public void replicationHandler_onRecordInProgress_shouldHoldBackSnapshotReadsUntilRecordEnds() {
+        final Account foo = sut.find(ACCOUNT_NO_1);
+        final RecordHandler handler = sut.replicationHandler();
+
+        handler.onBalance(ACCOUNT_NO_1, BigDecimal.valueOf(90));
+        handler.onBalance(ACCOUNT_NO_2, BigDecimal.valueOf(30));
+
+        assertThat(Account.isUpdating(foo.updates())).isTrue();
+        handler.onRecordEnd();
+        assertThat(Account.isUpdating(foo.updates())).isFalse();
+        assertThat(sut.find(ACCOUNT_NO_1)).isSameAs(foo);
+        assertThat(sut.snapshotAll(Arrays.asList(ACCOUNT_NO_1, ACCOUNT_NO_2)))
+                .extracting(Account::getBalance)
+                .containsExactly(BigDecimal.valueOf(90), BigDecimal.valueOf(30));
+        assertThat(sut.isConsistent()).isTrue();
+    }
+
+    @Test
+    public void replicationHandler_onCreateOfExistingAccount_shouldReplaceBalanceAndTrackTotal() {
+        final RecordHandler handler = sut.replicationHandler();
+
+        handler.onCreate(ACCOUNT_NO_1, BigDecimal.valueOf(70));
+        handler.onCreate("789", BigDecimal.ONE);
+        handler.onRecordEnd();
+
+        assertThat(sut.find(ACCOUNT_NO_1).getBalance()).isEqualByComparingTo("70");
+        assertThat(sut.size()).isEqualTo(3);
+        assertThat(sut.totalBalance()).isEqualByComparingTo("91");
+        assertThat(sut.verifyConsistency().isConsistent()).isTrue();
+    }
+}
@@ -0,0 +1,55 @@
+package net.lugburz.tinytransfer.account;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link MinorUnits}.
+ */
+class MinorUnitsTest {
+
+    private final MinorUnits sut = new MinorUnits(2);
+
+    @Test
+    public void toMinorUnits_onAmountWithinScale_shouldScaleAmount() {
+        assertThat(sut.toMinorUnits(new BigDecimal("10.42"))).isEqualTo(1042L);
+        assertThat(sut.toMinorUnits(new BigDecimal("10.4"))).isEqualTo(1040L);
+        assertThat(sut.toMinorUnits(new BigDecimal("1E+2"))).isEqualTo(10000L);
+    }
+
+    @Test
+    public void toMinorUnits_onTrailingZeros_shouldScaleAmount() {
+        assertThat(sut.toMinorUnits(new BigDecimal("10.4200"))).isEqualTo(1042L);
+    }
+
+    @Test
+    public void toMinorUnits_onTooManyFractionalDigits_shouldThrowAccountException() {
+        assertThrows(AccountException.class, () -> sut.toMinorUnits(new BigDecimal("10.421")));
+    }
+
+    @Test
+    public void toMinorUnits_onOverflow_shouldThrowAccountException() {
+        assertThrows(AccountException.class, () -> sut.toMinorUnits(new BigDecimal("92233720368547758.08")));
+        assertThrows(AccountException.class, () -> sut.toMinorUnits(new BigDecimal("1E+1000000")));
+    }
+
+    @Test
+    public void toMinorUnits_onLargestValue_shouldScaleAmount() {
+        assertThat(sut.toMinorUnits(new BigDecimal("92233720368547758.07"))).isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void toDecimal_shouldApplyScale() {
+        assertThat(sut.toDecimal(1042L)).isEqualTo(new BigDecimal("10.42"));
+    }
+
+    @Test
+    public void constructor_onScaleOutOfRange_shouldThrowIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> new MinorUnits(-1));
+        assertThrows(IllegalArgumentException.class, () -> new MinorUnits(MinorUnits.MAX_SCALE + 1));
+    }
+}
@@ -0,0 +1,283 @@
+package net.lugburz.tinytransfer.account;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link OffHeapAccountRepository}.
+ */
+class OffHeapAccountRepositoryTest {
+
+    private static final String ACCOUNT_NO_1 = "123";
+    private static final String ACCOUNT_NO_2 = "456";
+
+    private OffHeapAccountRepository sut;
+
+    @BeforeEach
+    public void setup() {
+        sut = new OffHeapAccountRepository(new MinorUnits(2));
+        sut.create(ACCOUNT_NO_1, BigDecimal.valueOf(100));
+        sut.create(ACCOUNT_NO_2, new BigDecimal("20.5"));
+    }
+
+    @Test
+    public void lookup_onUnknownOrNullAccount_shouldReturnEmpty() {
+        assertThat(sut.lookup("789")).isEmpty();
+        assertThat(sut.lookup(null)).isEmpty();
+    }
+
+    @Test
+    public void find_onExistingAccount_shouldReturnScaledBalance() {
+        final Account acc = sut.find(ACCOUNT_NO_2);
+
+        assertThat(acc.getAccountNo()).isEqualTo(ACCOUNT_NO_2);
+        assertThat(acc.getBalance()).isEqualTo(new BigDecimal("20.50"));
+    }
+
+    @Test
+    public void create_onExistingAccountNo_shouldThrowAccountException() {
+        assertThrows(AccountException.class, () -> sut.create(ACCOUNT_NO_1, BigDecimal.valueOf(0)));
+    }
+
+    @Test
+    public void create_onTooLongAccountNo_shouldThrowAccountException() {
+        final String accountNo = String.join("", Collections.nCopies(OffHeapAccountRepository.MAX_ACCOUNT_NO_BYTES, "ä"));
+
+        assertThrows(AccountException.class, () -> sut.create(accountNo, BigDecimal.ONE));
+    }
+
+    @Test
+    public void create_onNonAsciiAccountNo_shouldFindAccount() {
+        sut.create("kønto-ü", BigDecimal.ONE);
+
+        assertThat(sut.find("kønto-ü").getBalance()).isEqualTo(new BigDecimal("1.00"));
+        assertThat(sut.lookup("kønto-u")).isEmpty();
+    }
+
+    @Test
+    public void create_onNumericAccountNos_shouldTellPackedFromOtherForms() {
+        sut.create("0123", BigDecimal.ONE);
+        sut.create("999999999999999999", BigDecimal.TEN);
+        final Map<String, BigDecimal> balances = new HashMap<>();
+
+        sut.forEachBalance(balances::put);
+
+        assertThat(sut.find(ACCOUNT_NO_1).getBalance()).isEqualTo(new BigDecimal("100.00"));
+        assertThat(sut.find("0123").getBalance()).isEqualTo(new BigDecimal("1.00"));
+        assertThat(sut.lookup("1234")).isEmpty();
+        assertThat(balances).containsKeys("0123", "999999999999999999");
+    }
+
+    @Test
+    public void create_onTooManyFractionalDigits_shouldThrowAccountException() {
+        assertThrows(AccountException.class, () -> sut.create("789", new BigDecimal("0.001")));
+    }
+
+    @Test
+    public void create_beyondCapacity_shouldThrowAccountException() {
+        sut = new OffHeapAccountRepository(new MinorUnits(2), 1);
+        sut.create(ACCOUNT_NO_1, BigDecimal.ONE);
+
+        assertThrows(AccountException.class, () -> sut.create(ACCOUNT_NO_2, BigDecimal.ONE));
+    }
+
+    @Test
+    public void create_beyondIndexAndChunkSize_shouldKeepAllAccounts() {
+        for (int i = 0; i < 100_000; i++) {
+            sut.create("acc-" + i, BigDecimal.valueOf(i));
+        }
+
+        assertThat(sut.size()).isEqualTo(100_002);
+        for (int i = 0; i < 100_000; i += 997) {
+            assertThat(sut.find("acc-" + i).getBalance()).isEqualTo(BigDecimal.valueOf(i).setScale(2));
+        }
+        assertThat(sut.verifyConsistency().isConsistent()).isTrue();
+    }
+
+    @Test
+    public void transfer_onInsufficientBalance_shouldReturnFalseAndKeepBalance() {
+        assertThat(sut.transfer(ACCOUNT_NO_2, ACCOUNT_NO_1, 2051)).isFalse();
+
+        assertThat(sut.find(ACCOUNT_NO_2).getBalance()).isEqualTo(new BigDecimal("20.50"));
+    }
+
+    @Test
+    public void transfer_onValidAmount_shouldMoveMinorUnits() {
+        assertThat(sut.transfer(ACCOUNT_NO_2, ACCOUNT_NO_1, 2050)).isTrue();
+
+        assertThat(sut.find(ACCOUNT_NO_1).getBalance()).isEqualTo(new BigDecimal("120.50"));
+        assertThat(sut.find(ACCOUNT_NO_2).getBalance()).isEqualTo(new BigDecimal("0.00"));
+    }
+
+    @Test
+    public void transfer_onUnknownAccount_shouldThrowAccountException() {
+        assertThrows(AccountException.class, () -> sut.transfer(ACCOUNT_NO_1, "789", 1));
+    }
+
+    @Test
+    public void applyDeltas_onUncoveredDebit_shouldApplyNothing() {
+        final Map<String, Long> deltas = new LinkedHashMap<>();
+        deltas.put(ACCOUNT_NO_1, 3000L);
+        deltas.put(ACCOUNT_NO_2, -3000L);
+
+        assertThat(sut.applyDeltas(deltas)).isEqualTo(ACCOUNT_NO_2);
+        assertThat(sut.find(ACCOUNT_NO_1).getBalance()).isEqualTo(new BigDecimal("100.00"));
+        assertThat(sut.find(ACCOUNT_NO_2).getBalance()).isEqualTo(new BigDecimal("20.50"));
+    }
+
+    @Test
+    public void applyDeltas_onCoveredDebits_shouldApplyAll() {
+        final Map<String, Long> deltas = new LinkedHashMap<>();
+        deltas.put(ACCOUNT_NO_1, -10000L);
+        deltas.put(ACCOUNT_NO_2, 10000L);
+
+        assertThat(sut.applyDeltas(deltas)).isNull();
+        assertThat(sut.find(ACCOUNT_NO_1).getBalance()).isEqualTo(new BigDecimal("0.00"));
+        assertThat(sut.find(ACCOUNT_NO_2).getBalance()).isEqualTo(new BigDecimal("120.50"));
+    }
+
+    @Test
+    public void forEachBalance_shouldVisitEveryAccount() {
+        final Map<String, BigDecimal> balances = new HashMap<>();
+
+        sut.forEachBalance(balances::put);
+
+        assertThat(balances).containsOnly(
+                entry(ACCOUNT_NO_1, new BigDecimal("100.00")), entry(ACCOUNT_NO_2, new BigDecimal("20.50")));
+    }
+
+    @Test
+    public void clear_shouldRemoveAllAccounts() {
+        sut.clear();
+
+        assertThat(sut.size()).isZero();
+        assertThrows(AccountException.class, () -> sut.find(ACCOUNT_NO_1));
+        sut.create(ACCOUNT_NO_1, BigDecimal.ONE);
+        assertThat(sut.find(ACCOUNT_NO_1).getBalance()).isEqualTo(new BigDecimal("1.00"));
+    }
+
+    @Test
+    public void transfer_concurrentlyWithCreations_shouldConserveTotalMoney() throws InterruptedException {
+        final ExecutorService es = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 7; t++) {
+            es.execute(() -> {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 20_000; i++) {
+                    final boolean forward = random.nextBoolean();
+                    sut.transfer(forward ? ACCOUNT_NO_1 : ACCOUNT_NO_2, forward ? ACCOUNT_NO_2 : ACCOUNT_NO_1,
+                            random.nextInt(1, 500));
+                }
+            });
+        }
+        es.execute(() -> {
+            for (int i = 0; i < 50_000; i++) {
+                sut.create("acc-" + i, BigDecimal.ONE);
+            }
+        });
+        es.shutdown();
+
+        assertThat(es.awaitTermination(60, TimeUnit.SECONDS)).isTrue();
+        assertThat(sut.find("acc-49999").getBalance()).isEqualTo(new BigDecimal("1.00"));
+        final Consistency scanned = sut.verifyConsistency();
+        assertThat(scanned.isConsistent()).isTrue();
+        assertThat(scanned.getBalanceSum()).isEqualTo(new BigDecimal("50120.50"));
+    }
+
+    @Test
+    public void snapshotAll_concurrentlyWithTransfers_shouldAlwaysSeeTotalMoney() throws InterruptedException {
+        final int accounts = 8;
+        final List<String> accountNos = new ArrayList<>();
+        for (int i = 0; i < accounts; i++) {
+            accountNos.add("acc-" + i);
+            sut.create("acc-" + i, BigDecimal.valueOf(100));
+        }
+
+        final ExecutorService es = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            es.execute(() -> {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 20_000; i++) {
+                    sut.transfer("acc-" + random.nextInt(accounts), "acc-" + random.nextInt(accounts),
+                            random.nextInt(1, 5_000));
+                    final Map<String, Long> deltas = new LinkedHashMap<>();
+                    deltas.put("acc-" + random.nextInt(accounts), -100L);
+                    deltas.merge("acc-" + random.nextInt(accounts), 100L, Long::sum);
+                    sut.applyDeltas(deltas);
+                }
+            });
+        }
+        es.shutdown();
+
+        do {
+            BigDecimal total = BigDecimal.ZERO;
+            for (final Account account : sut.snapshotAll(accountNos)) {
+                total = total.add(account.getBalance());
+            }
+            assertThat(total).isEqualByComparingTo(BigDecimal.valueOf(100L * accounts));
+        } while (!es.awaitTermination(0, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void checkConsistency_duringTransfersAndBatches_shouldMatchScan() throws Exception {
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicBoolean inconsistent = new AtomicBoolean();
+        final ExecutorService es = Executors.newFixedThreadPool(4);
+        final Future<?> checker = es.submit(() -> {
+            while (running.get()) {
+                if (!sut.checkConsistency().isConsistent()) {
+                    inconsistent.set(true);
+                }
+            }
+        });
+        final List<Future<?>> writers = new ArrayList<>();
+        for (int t = 0; t < 3; t++) {
+            writers.add(es.submit(() -> {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 10_000; i++) {
+                    final boolean forward = random.nextBoolean();
+                    final String sender = forward ? ACCOUNT_NO_1 : ACCOUNT_NO_2;
+                    final String receiver = forward ? ACCOUNT_NO_2 : ACCOUNT_NO_1;
+                    if (i % 10 == 0) {
+                        final Map<String, Long> deltas = new LinkedHashMap<>();
+                        deltas.put(sender, -300L);
+                        deltas.put(receiver, 300L);
+                        sut.applyDeltas(deltas);
+                    } else {
+                        sut.transfer(sender, receiver, random.nextInt(1, 500));
+                    }
+                }
+            }));
+        }
+        for (final Future<?> writer : writers) {
+            writer.get(60, TimeUnit.SECONDS);
+        }
+        running.set(false);
+        checker.get(10, TimeUnit.SECONDS);
+        es.shutdown();
+
+        final Consistency tracked = sut.checkConsistency();
+        final Consistency scanned = sut.verifyConsistency();
+        assertThat(inconsistent.get()).isFalse();
+        assertThat(tracked.getBalanceSum()).isEqualTo(scanned.getBalanceSum());
+        assertThat(tracked.getNegativeBalances()).isEqualTo(scanned.getNegativeBalances());
+        assertThat(tracked.getExpectedTotal()).isEqualTo(new BigDecimal("120.50"));
+    }
+}
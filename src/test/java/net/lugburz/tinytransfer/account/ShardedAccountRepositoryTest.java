@@ -0,0 +1,170 @@
+package net.lugburz.tinytransfer.account;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link ShardedAccountRepository}.
+ */
+class ShardedAccountRepositoryTest {
+
+    // With two shards, 123 and 789 share a shard, 456 and 43 belong to the other one.
+    private static final String ACCOUNT_NO_1 = "123";
+    private static final String ACCOUNT_NO_2 = "456";
+    private static final String SAME_SHARD_AS_1 = "789";
+    private static final String UNKNOWN_ON_SHARD_OF_2 = "43";
+
+    private ShardedAccountRepository sut;
+
+    @BeforeEach
+    public void setup() {
+        sut = new ShardedAccountRepository(2);
+        sut.create(ACCOUNT_NO_1, BigDecimal.valueOf(100));
+        sut.create(ACCOUNT_NO_2, new BigDecimal("20.5"));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        sut.close();
+    }
+
+    @Test
+    public void lookup_onUnknownAccount_shouldReturnEmpty() {
+        assertThat(sut.lookup("789")).isEmpty();
+    }
+
+    @Test
+    public void find_onUnknownAccount_shouldThrowAccountException() {
+        assertThrows(AccountException.class, () -> sut.find("789"));
+    }
+
+    @Test
+    public void find_onExistingAccount_shouldReturnDetachedAccount() {
+        final Account acc = sut.find(ACCOUNT_NO_2);
+        acc.deposit(BigDecimal.ONE);
+
+        assertThat(acc.getAccountNo()).isEqualTo(ACCOUNT_NO_2);
+        assertThat(sut.find(ACCOUNT_NO_2).getBalance()).isEqualTo(new BigDecimal("20.5"));
+    }
+
+    @Test
+    public void create_onExistingAccountNo_shouldThrowAccountException() {
+        assertThrows(AccountException.class, () -> sut.create(ACCOUNT_NO_1, BigDecimal.valueOf(0)));
+    }
+
+    @Test
+    public void create_onBlankAccountNo_shouldThrowAccountException() {
+        assertThrows(AccountException.class, () -> sut.create(" ", BigDecimal.valueOf(0)));
+    }
+
+    @Test
+    public void create_onNegativeBalance_shouldThrowAccountException() {
+        assertThrows(AccountException.class, () -> sut.create("789", BigDecimal.valueOf(-1)));
+    }
+
+    @Test
+    public void transfer_acrossShards_shouldMoveAmount() {
+        assertThat(sut.transfer(ACCOUNT_NO_2, ACCOUNT_NO_1, new BigDecimal("20.5")).join()).isTrue();
+
+        assertThat(sut.find(ACCOUNT_NO_1).getBalance()).isEqualTo(new BigDecimal("120.5"));
+        assertThat(sut.find(ACCOUNT_NO_2).getBalance()).isEqualByComparingTo(BigDecimal.ZERO);
+        assertThat(sut.isConsistent()).isTrue();
+    }
+
+    @Test
+    public void transfer_withinShard_shouldMoveAmount() {
+        sut.create(SAME_SHARD_AS_1, BigDecimal.ZERO);
+
+        assertThat(sut.transfer(ACCOUNT_NO_1, SAME_SHARD_AS_1, BigDecimal.TEN).join()).isTrue();
+
+        assertThat(sut.find(ACCOUNT_NO_1).getBalance()).isEqualTo(BigDecimal.valueOf(90));
+        assertThat(sut.find(SAME_SHARD_AS_1).getBalance()).isEqualTo(BigDecimal.TEN);
+    }
+
+    @Test
+    public void transfer_onInsufficientBalance_shouldReturnFalseAndKeepBalance() {
+        assertThat(sut.transfer(ACCOUNT_NO_2, ACCOUNT_NO_1, new BigDecimal("20.51")).join()).isFalse();
+
+        assertThat(sut.find(ACCOUNT_NO_2).getBalance()).isEqualTo(new BigDecimal("20.5"));
+    }
+
+    @Test
+    public void transfer_onUnknownReceiverOnOtherShard_shouldRefundSender() {
+        final CompletionException exception = assertThrows(CompletionException.class,
+                () -> sut.transfer(ACCOUNT_NO_1, UNKNOWN_ON_SHARD_OF_2, BigDecimal.TEN).join());
+
+        assertThat(exception).hasCauseInstanceOf(AccountException.class);
+        assertThat(sut.find(ACCOUNT_NO_1).getBalance()).isEqualTo(BigDecimal.valueOf(100));
+        assertThat(sut.checkConsistency().isConsistent()).isTrue();
+        assertThat(sut.verifyConsistency().isConsistent()).isTrue();
+    }
+
+    @Test
+    public void applyDeltas_onUncoveredDebit_shouldApplyNothing() {
+        final Map<String, BigDecimal> deltas = new LinkedHashMap<>();
+        deltas.put(ACCOUNT_NO_1, BigDecimal.valueOf(-50));
+        deltas.put(ACCOUNT_NO_2, BigDecimal.valueOf(-21));
+        deltas.put(SAME_SHARD_AS_1, BigDecimal.valueOf(71));
+        sut.create(SAME_SHARD_AS_1, BigDecimal.ZERO);
+
+        assertThat(sut.applyDeltas(deltas)).isEqualTo(ACCOUNT_NO_2);
+
+        assertThat(sut.find(ACCOUNT_NO_1).getBalance()).isEqualTo(BigDecimal.valueOf(100));
+        assertThat(sut.find(SAME_SHARD_AS_1).getBalance()).isEqualTo(BigDecimal.ZERO);
+        assertThat(sut.verifyConsistency().isConsistent()).isTrue();
+    }
+
+    @Test
+    public void applyDeltas_onUnknownReceiver_shouldThrowAccountException() {
+        final Map<String, BigDecimal> deltas = new LinkedHashMap<>();
+        deltas.put(ACCOUNT_NO_1, BigDecimal.valueOf(-50));
+        deltas.put(UNKNOWN_ON_SHARD_OF_2, BigDecimal.valueOf(50));
+
+        assertThrows(AccountException.class, () -> sut.applyDeltas(deltas));
+
+        assertThat(sut.find(ACCOUNT_NO_1).getBalance()).isEqualTo(BigDecimal.valueOf(100));
+    }
+
+    @Test
+    public void applyDeltas_onCoveredDebits_shouldApplyAllDeltas() {
+        final Map<String, BigDecimal> deltas = new LinkedHashMap<>();
+        deltas.put(ACCOUNT_NO_1, BigDecimal.valueOf(-50));
+        deltas.put(ACCOUNT_NO_2, BigDecimal.valueOf(50));
+
+        assertThat(sut.applyDeltas(deltas)).isNull();
+
+        assertThat(sut.find(ACCOUNT_NO_1).getBalance()).isEqualTo(BigDecimal.valueOf(50));
+        assertThat(sut.find(ACCOUNT_NO_2).getBalance()).isEqualTo(new BigDecimal("70.5"));
+    }
+
+    @Test
+    public void clear_shouldRemoveAllAccounts() {
+        sut.clear();
+
+        assertThrows(AccountException.class, () -> sut.find(ACCOUNT_NO_1));
+        assertThat(sut.size()).isZero();
+        assertThat(sut.totalBalance()).isEqualByComparingTo(BigDecimal.ZERO);
+    }
+
+    @Test
+    public void verifyConsistency_afterTransfers_shouldMatchCounters() {
+        sut.transfer(ACCOUNT_NO_1, ACCOUNT_NO_2, BigDecimal.valueOf(50)).join();
+        sut.transfer(ACCOUNT_NO_2, ACCOUNT_NO_1, BigDecimal.ONE).join();
+
+        final Consistency scanned = sut.verifyConsistency();
+
+        assertThat(scanned.isConsistent()).isTrue();
+        assertThat(scanned.getAccounts()).isEqualTo(2);
+        assertThat(scanned.getBalanceSum()).isEqualTo(sut.checkConsistency().getBalanceSum());
+        assertThat(sut.totalBalance()).isEqualTo(new BigDecimal("120.5"));
+    }
+}
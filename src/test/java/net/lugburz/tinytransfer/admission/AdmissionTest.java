@@ -0,0 +1,104 @@
+package net.lugburz.tinytransfer.admission;
+
+import io.dropwizard.testing.DropwizardTestSupport;
+import net.lugburz.tinytransfer.TinyTransferApplication;
+import net.lugburz.tinytransfer.TinyTransferConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for the {@link AdmissionFilter} of the application.
+ */
+class AdmissionTest {
+
+    private static final String TRANSFER = "{\"senderAccNo\":\"foo\",\"receiverAccNo\":\"bar\",\"amount\":1}";
+
+    private Path config;
+    private DropwizardTestSupport<TinyTransferConfiguration> app;
+    private Client client;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        config = Files.createTempFile("admission-test", ".yml");
+        Files.write(config, Arrays.asList(
+                "server:",
+                "  applicationConnectors: [{type: http, port: 0}]",
+                "  adminConnectors: [{type: http, port: 0}]",
+                "  requestLog:",
+                "    appenders: []",
+                "logging:",
+                "  level: WARN",
+                "admission:",
+                "  enabled: true",
+                "  ratePerSecond: 0.1",
+                "  burst: 2"));
+        app = new DropwizardTestSupport<>(TinyTransferApplication.class, config.toString());
+        app.before();
+        client = ClientBuilder.newClient();
+        post("/accounts", null, "{\"accountNo\":\"foo\",\"balance\":100}");
+        post("/accounts", null, "{\"accountNo\":\"bar\",\"balance\":0}");
+    }
+
+    @AfterEach
+    public void teardown() throws Exception {
+        client.close();
+        app.after();
+        Files.delete(config);
+    }
+
+    @Test
+    public void transfer_beyondBurstOfClient_shouldReturn429WithRetryAfter() {
+        assertThat(post("/transfer", "batch", TRANSFER).getStatus()).isEqualTo(200);
+        assertThat(post("/transfer", "batch", TRANSFER).getStatus()).isEqualTo(200);
+
+        final Response rejected = post("/transfer", "batch", TRANSFER);
+
+        assertThat(rejected.getStatus()).isEqualTo(429);
+        assertThat(Long.parseLong(rejected.getHeaderString(HttpHeaders.RETRY_AFTER))).isBetween(1L, 10L);
+    }
+
+    @Test
+    public void transfer_ofOtherClient_shouldBeAdmitted() {
+        post("/transfer", "batch", TRANSFER);
+        post("/transfer", "batch", TRANSFER);
+
+        assertThat(post("/transfer", "batch", TRANSFER).getStatus()).isEqualTo(429);
+        assertThat(post("/transfer", "other", TRANSFER).getStatus()).isEqualTo(200);
+        // Without a key the client is told by its address.
+        assertThat(post("/transfer", null, TRANSFER).getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    public void getAccount_ofRateLimitedClient_shouldNotBeLimited() {
+        for (int i = 0; i < 3; i++) {
+            post("/transfer", "batch", TRANSFER);
+        }
+
+        assertThat(client.target(url("/accounts/foo")).request().header("Api-Key", "batch").get().getStatus())
+                .isEqualTo(200);
+    }
+
+    private Response post(final String path, final String apiKey, final String json) {
+        final Response response = client.target(url(path)).request().header("Api-Key", apiKey)
+                .post(Entity.json(json));
+        response.bufferEntity();
+        response.close();
+        return response;
+    }
+
+    private String url(final String path) {
+        return "http://127.0.0.1:" + app.getLocalPort() + path;
+    }
+}
@@ -0,0 +1,73 @@
+package net.lugburz.tinytransfer.admission;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link ClientRateLimiter}.
+ */
+class ClientRateLimiterTest {
+
+    private final AtomicLong now = new AtomicLong(1_000);
+
+    @Test
+    public void tryAcquire_withinBurst_shouldAdmit() {
+        final ClientRateLimiter sut = new ClientRateLimiter(10, 3, 100, now::get);
+
+        assertThat(sut.tryAcquire("foo")).isZero();
+        assertThat(sut.tryAcquire("foo")).isZero();
+        assertThat(sut.tryAcquire("foo")).isZero();
+    }
+
+    @Test
+    public void tryAcquire_beyondBurst_shouldReturnTimeUntilNextToken() {
+        final ClientRateLimiter sut = new ClientRateLimiter(10, 2, 100, now::get);
+        sut.tryAcquire("foo");
+        sut.tryAcquire("foo");
+
+        assertThat(sut.tryAcquire("foo")).isEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(40));
+        assertThat(sut.tryAcquire("foo")).isEqualTo(TimeUnit.MILLISECONDS.toNanos(60));
+    }
+
+    @Test
+    public void tryAcquire_afterRefill_shouldAdmitAtRate() {
+        final ClientRateLimiter sut = new ClientRateLimiter(10, 1, 100, now::get);
+        sut.tryAcquire("foo");
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+        assertThat(sut.tryAcquire("foo")).isZero();
+        assertThat(sut.tryAcquire("foo")).isPositive();
+    }
+
+    @Test
+    public void tryAcquire_ofOtherClient_shouldUseOwnBucket() {
+        final ClientRateLimiter sut = new ClientRateLimiter(10, 1, 100, now::get);
+        sut.tryAcquire("foo");
+
+        assertThat(sut.tryAcquire("foo")).isPositive();
+        assertThat(sut.tryAcquire("bar")).isZero();
+    }
+
+    @Test
+    public void tryAcquire_beyondMaxClients_shouldDropFullBuckets() {
+        final ClientRateLimiter sut = new ClientRateLimiter(10, 2, 5, now::get);
+        for (int i = 0; i < 4; i++) {
+            sut.tryAcquire("idle-" + i);
+        }
+        sut.tryAcquire("busy");
+        sut.tryAcquire("busy");
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+
+        sut.tryAcquire("new");
+
+        // Only the bucket of the busy client has not been refilled.
+        assertThat(sut.clients()).isEqualTo(2);
+        assertThat(sut.tryAcquire("busy")).isZero();
+        assertThat(sut.tryAcquire("busy")).isPositive();
+    }
+}
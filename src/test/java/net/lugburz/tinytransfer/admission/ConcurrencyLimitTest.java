@@ -0,0 +1,84 @@
+package net.lugburz.tinytransfer.admission;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link ConcurrencyLimit}.
+ */
+class ConcurrencyLimitTest {
+
+    private static final long THRESHOLD = 1_000;
+
+    @Test
+    public void tryAcquire_atLimit_shouldRejectUntilReleased() {
+        final ConcurrencyLimit sut = new ConcurrencyLimit(2, 1, 10, THRESHOLD, 0.5, 0);
+
+        assertThat(sut.tryAcquire()).isTrue();
+        assertThat(sut.tryAcquire()).isTrue();
+        assertThat(sut.tryAcquire()).isFalse();
+        sut.release(1, 2);
+
+        assertThat(sut.tryAcquire()).isTrue();
+        assertThat(sut.inFlight()).isEqualTo(2);
+    }
+
+    @Test
+    public void release_ofFastRequestsAtLimit_shouldRaiseLimitByAboutOnePerLimitRequests() {
+        final ConcurrencyLimit sut = new ConcurrencyLimit(4, 1, 10, THRESHOLD, 0.5, 0);
+        for (int i = 0; i < 4; i++) {
+            sut.tryAcquire();
+        }
+
+        // Every completion is replaced right away, so the limit stays in use.
+        for (int i = 0; i < 4; i++) {
+            sut.release(1, 2);
+            sut.tryAcquire();
+        }
+        assertThat(sut.limit()).isEqualTo(4);
+        sut.release(1, 2);
+
+        assertThat(sut.limit()).isEqualTo(5);
+    }
+
+    @Test
+    public void release_ofFastRequestsBelowHalfOfLimit_shouldKeepLimit() {
+        final ConcurrencyLimit sut = new ConcurrencyLimit(8, 1, 10, THRESHOLD, 0.5, 0);
+
+        for (int i = 0; i < 100; i++) {
+            sut.tryAcquire();
+            sut.release(1, 2);
+        }
+
+        assertThat(sut.limit()).isEqualTo(8);
+    }
+
+    @Test
+    public void release_ofSlowRequests_shouldCutLimitOncePerRoundTrip() {
+        final ConcurrencyLimit sut = new ConcurrencyLimit(8, 1, 10, THRESHOLD, 0.5, 0);
+        for (int i = 0; i < 3; i++) {
+            sut.tryAcquire();
+        }
+
+        // All three were admitted before the first cut.
+        sut.release(10, 10 + 2 * THRESHOLD);
+        sut.release(20, 20 + 2 * THRESHOLD);
+        sut.release(30, 30 + 2 * THRESHOLD);
+        assertThat(sut.limit()).isEqualTo(4);
+
+        sut.tryAcquire();
+        sut.release(5_000, 5_000 + 2 * THRESHOLD);
+        assertThat(sut.limit()).isEqualTo(2);
+    }
+
+    @Test
+    public void release_ofSlowRequests_shouldNotCutBelowMinimum() {
+        final ConcurrencyLimit sut = new ConcurrencyLimit(4, 3, 10, THRESHOLD, 0.5, 0);
+        sut.tryAcquire();
+
+        sut.release(10, 10 + 2 * THRESHOLD);
+
+        assertThat(sut.limit()).isEqualTo(3);
+    }
+}
@@ -1,11 +1,15 @@
 package net.lugburz.tinytransfer.api;
 
+import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import io.dropwizard.testing.junit5.DropwizardAppExtension;
 import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import io.restassured.config.RestAssuredConfig;
+import io.restassured.http.ContentType;
 import net.lugburz.tinytransfer.TinyTransferApplication;
 import net.lugburz.tinytransfer.TinyTransferConfiguration;
 import net.lugburz.tinytransfer.account.Account;
+import net.lugburz.tinytransfer.transfer.Amounts;
 import org.junit.ClassRule;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -19,7 +23,13 @@ import java.math.BigDecimal;
 
 import static io.restassured.RestAssured.given;
 import static io.restassured.RestAssured.when;
+import static io.restassured.config.EncoderConfig.encoderConfig;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
 
 /**
  * Integration tests for the REST endpoints in {@link BankingResource}.
@@ -57,6 +67,23 @@ public class BankingResourceTest {
                 then().statusCode(404);
     }
 
+    @Test
+    public void queryAccounts_onKnownAndUnknownAccounts_shouldReturn200WithSnapshot() {
+        JsonArray accountNos = new JsonArray();
+        accountNos.add("bar");
+        accountNos.add("baz");
+        accountNos.add("foo");
+        JsonObject payload = new JsonObject();
+        payload.add("accountNos", accountNos);
+
+        given().contentType(MediaType.APPLICATION_JSON).body(payload.toString()).
+                when().post("/accounts/query").
+                then().statusCode(200).
+                body("accounts.accountNo", contains("bar", "foo")).
+                body("accounts.balance", contains(200, 100.42f)).
+                body("unknownAccountNos", contains("baz"));
+    }
+
     @Test
     public void transfer_onValidRequest_shouldTransferAmount() {
         JsonObject payload = new JsonObject();
@@ -73,6 +100,80 @@ public class BankingResourceTest {
                 then().body("balance", is(100));
     }
 
+    @Test
+    public void transfer_onRetryWithIdempotencyKey_shouldTransferOnceAndReplayOutcome() {
+        JsonObject payload = new JsonObject();
+        payload.addProperty("senderAccNo", "bar");
+        payload.addProperty("receiverAccNo", "foo");
+        payload.addProperty("amount", 100);
+
+        given().contentType(MediaType.APPLICATION_JSON).header(BankingResource.IDEMPOTENCY_KEY, "key-1").
+                body(payload.toString()).
+                when().post("/transfer").
+                then().statusCode(200).
+                header(BankingResource.IDEMPOTENT_REPLAYED, nullValue());
+        given().contentType(MediaType.APPLICATION_JSON).header(BankingResource.IDEMPOTENCY_KEY, "key-1").
+                body(payload.toString()).
+                when().post("/transfer").
+                then().statusCode(200).
+                header(BankingResource.IDEMPOTENT_REPLAYED, "true");
+        when().get("/accounts/bar").
+                then().body("balance", is(100));
+    }
+
+    @Test
+    public void transfer_onRetryOfRejectedTransfer_shouldReplayRejection() {
+        JsonObject payload = new JsonObject();
+        payload.addProperty("senderAccNo", "foo");
+        payload.addProperty("receiverAccNo", "bar");
+        payload.addProperty("amount", 1000);
+
+        given().contentType(MediaType.APPLICATION_JSON).header(BankingResource.IDEMPOTENCY_KEY, "key-2").
+                body(payload.toString()).
+                when().post("/transfer").
+                then().statusCode(400);
+        given().contentType(MediaType.APPLICATION_JSON).header(BankingResource.IDEMPOTENCY_KEY, "key-2").
+                body(payload.toString()).
+                when().post("/transfer").
+                then().statusCode(400).
+                header(BankingResource.IDEMPOTENT_REPLAYED, "true");
+    }
+
+    @Test
+    public void transfer_onIdempotencyKeyReusedForDifferentTransfer_shouldReturn422() {
+        JsonObject payload = new JsonObject();
+        payload.addProperty("senderAccNo", "bar");
+        payload.addProperty("receiverAccNo", "foo");
+        payload.addProperty("amount", 100);
+        given().contentType(MediaType.APPLICATION_JSON).header(BankingResource.IDEMPOTENCY_KEY, "key-3").
+                body(payload.toString()).
+                when().post("/transfer").
+                then().statusCode(200);
+
+        payload.addProperty("amount", 50);
+        given().contentType(MediaType.APPLICATION_JSON).header(BankingResource.IDEMPOTENCY_KEY, "key-3").
+                body(payload.toString()).
+                when().post("/transfer").
+                then().statusCode(422);
+        when().get("/accounts/bar").
+                then().body("balance", is(100));
+    }
+
+    @Test
+    public void transfer_onTooLongIdempotencyKey_shouldReturn400() {
+        JsonObject payload = new JsonObject();
+        payload.addProperty("senderAccNo", "bar");
+        payload.addProperty("receiverAccNo", "foo");
+        payload.addProperty("amount", 100);
+
+        String key = new String(new char[256]).replace('\0', 'k');
+
+        given().contentType(MediaType.APPLICATION_JSON).header(BankingResource.IDEMPOTENCY_KEY, key).
+                body(payload.toString()).
+                when().post("/transfer").
+                then().statusCode(400);
+    }
+
     @Test
     public void transfer_onEmptyPayload_shouldReturn422() {
         given().contentType(MediaType.APPLICATION_JSON).
@@ -115,6 +216,26 @@ public class BankingResourceTest {
                 then().statusCode(422);
     }
 
+    @Test
+    public void transfer_onAmountScaleBeyondProtocolRange_shouldReturn422() {
+        final String payload = "{\"senderAccNo\": \"foo\", \"receiverAccNo\": \"bar\", \"amount\": 1E-200}";
+
+        given().contentType(MediaType.APPLICATION_JSON).body(payload).
+                when().post("/transfer").
+                then().statusCode(422);
+    }
+
+    @Test
+    public void createAccount_onBalanceScaleBeyondProtocolRange_shouldReturn422() {
+        final String payload = "{\"accountNo\": \"baz\", \"balance\": 1E-200}";
+
+        given().contentType(MediaType.APPLICATION_JSON).body(payload).
+                when().post("/accounts").
+                then().statusCode(422);
+        when().get("/accounts/baz").
+                then().statusCode(404);
+    }
+
     @Test
     public void transfer_onUnknownReceiver_shouldReturn400() {
         JsonObject payload = new JsonObject();
@@ -185,6 +306,182 @@ public class BankingResourceTest {
                 then().statusCode(422);
     }
 
+    @Test
+    public void transferBatch_onCoveredAtomicBatch_shouldReturn200AndTransferAmounts() {
+        given().contentType(MediaType.APPLICATION_JSON).body(batchPayload("ATOMIC", 150, 60).toString()).
+                when().post("/transfers/batch").
+                then().statusCode(200).
+                body("committed", is(true));
+        when().get("/accounts/foo").
+                then().body("balance", is(190.42f));
+        when().get("/accounts/bar").
+                then().body("balance", is(110));
+    }
+
+    @Test
+    public void transferBatch_onUncoveredAtomicBatch_shouldReturn400AndKeepBalances() {
+        given().contentType(MediaType.APPLICATION_JSON).body(batchPayload("ATOMIC", 250, 10).toString()).
+                when().post("/transfers/batch").
+                then().statusCode(400).
+                body("committed", is(false)).
+                body("results[0].success", is(false)).
+                body("results[1].success", is(false));
+        when().get("/accounts/bar").
+                then().body("balance", is(200));
+    }
+
+    @Test
+    public void transferBatch_onBestEffortBatch_shouldReturn200WithResultPerTransfer() {
+        given().contentType(MediaType.APPLICATION_JSON).body(batchPayload("BEST_EFFORT", 250, 10).toString()).
+                when().post("/transfers/batch").
+                then().statusCode(200).
+                body("committed", is(false)).
+                body("results[0].success", is(false)).
+                body("results[1].success", is(true));
+        when().get("/accounts/bar").
+                then().body("balance", is(210));
+    }
+
+    @Test
+    public void transferBatch_onEmptyBatch_shouldReturn422() {
+        JsonObject payload = new JsonObject();
+        payload.add("transfers", new JsonArray());
+
+        given().contentType(MediaType.APPLICATION_JSON).body(payload.toString()).
+                when().post("/transfers/batch").
+                then().statusCode(422);
+    }
+
+    @Test
+    public void getTransfers_afterTransfers_shouldReturnPagesNewestFirst() {
+        given().contentType(MediaType.APPLICATION_JSON).body(batchPayload("BEST_EFFORT", 1, 2).toString()).
+                when().post("/transfers/batch").
+                then().statusCode(200);
+
+        final Integer next = given().queryParam("limit", 1).
+                when().get("/accounts/foo/transfers").
+                then().statusCode(200).
+                body("transfers.size()", is(1)).
+                body("transfers[0].senderAccNo", is("foo")).
+                body("transfers[0].amount", is(2)).
+                extract().path("next");
+        given().queryParam("after", next).queryParam("limit", 1).
+                when().get("/accounts/foo/transfers").
+                then().statusCode(200).
+                body("transfers[0].senderAccNo", is("bar")).
+                body("next", nullValue());
+    }
+
+    @Test
+    public void getTransfers_onUnknownAccount_shouldReturn404() {
+        when().get("/accounts/baz/transfers").
+                then().statusCode(404);
+    }
+
+    @Test
+    public void getTransfers_onInvalidLimit_shouldReturn400() {
+        given().queryParam("limit", 0).
+                when().get("/accounts/foo/transfers").
+                then().statusCode(400);
+        given().queryParam("after", "x").
+                when().get("/accounts/foo/transfers").
+                then().statusCode(400);
+    }
+
+    @Test
+    public void importAccounts_onMixedLines_shouldCreateValidAccountsAndReportOthers() {
+        final String body = "{\"accountNo\": \"baz\", \"balance\": 5}\n"
+                + "{\"accountNo\": \"foo\", \"balance\": 1}\n"
+                + "\n"
+                + "not json\n"
+                + "{\"accountNo\": \"qux\", \"balance\": 7.5}\n"
+                + "{\"accountNo\": \"quux\", \"balance\": 1E-200}\n";
+
+        // RestAssured has no encoder for NDJSON; the body is sent as it is.
+        given().config(RestAssuredConfig.config().encoderConfig(
+                encoderConfig().encodeContentTypeAs(BankingResource.APPLICATION_NDJSON, ContentType.TEXT))).
+                contentType(BankingResource.APPLICATION_NDJSON).body(body).
+                when().post("/accounts/bulk").
+                then().statusCode(200).
+                body("created", is(2)).
+                body("failed", is(3)).
+                body("errors", hasSize(3)).
+                body("errors[0].line", is(2)).
+                body("errors[0].error", is("Account No. already exists.")).
+                body("errors[1].line", is(4)).
+                body("errors[1].error", startsWith("Invalid JSON: ")).
+                body("errors[2].line", is(6)).
+                body("errors[2].error", is("balance " + Amounts.UNSUPPORTED_SCALE + "."));
+        when().get("/accounts/baz").
+                then().statusCode(200).
+                body("balance", is(5));
+        when().get("/accounts/qux").
+                then().statusCode(200).
+                body("balance", is(7.5f));
+        when().get("/accounts/foo").
+                then().statusCode(200).
+                body("balance", is(100.42f));
+    }
+
+    @Test
+    public void importAccounts_onOverlongLine_shouldReportItAndContinueWithNextLine() {
+        final StringBuilder padding = new StringBuilder();
+        while (padding.length() <= AccountImport.MAX_LINE_BYTES) {
+            padding.append("          ");
+        }
+        final String body = "{\"accountNo\": \"baz\", \"balance\": 5, \"note\": \"" + padding + "\"}\r\n"
+                + "{\"accountNo\": \"qux\", \"balance\": 7.5}\r\n";
+
+        given().config(RestAssuredConfig.config().encoderConfig(
+                encoderConfig().encodeContentTypeAs(BankingResource.APPLICATION_NDJSON, ContentType.TEXT))).
+                contentType(BankingResource.APPLICATION_NDJSON).body(body).
+                when().post("/accounts/bulk").
+                then().statusCode(200).
+                body("created", is(1)).
+                body("failed", is(1)).
+                body("errors[0].line", is(1)).
+                body("errors[0].error", is("The line exceeds " + AccountImport.MAX_LINE_BYTES + " bytes."));
+        when().get("/accounts/baz").
+                then().statusCode(404);
+        when().get("/accounts/qux").
+                then().statusCode(200).
+                body("balance", is(7.5f));
+    }
+
+    @Test
+    public void exportAccounts_shouldStreamEveryAccount() {
+        final String ndjson = given().accept(BankingResource.APPLICATION_NDJSON).
+                when().get("/accounts/export").
+                then().statusCode(200).
+                extract().asString();
+        assertThat(ndjson.split("\n")).containsExactlyInAnyOrder(
+                "{\"accountNo\":\"foo\",\"balance\":100.42}", "{\"accountNo\":\"bar\",\"balance\":200}");
+
+        final String csv = given().accept(BankingResource.TEXT_CSV).
+                when().get("/accounts/export").
+                then().statusCode(200).
+                extract().asString();
+        assertThat(csv).startsWith("accountNo,balance\n").contains("foo,100.42\n", "bar,200\n");
+    }
+
+    private static JsonObject batchPayload(String mode, int barToFoo, int fooToBar) {
+        JsonObject first = new JsonObject();
+        first.addProperty("senderAccNo", "bar");
+        first.addProperty("receiverAccNo", "foo");
+        first.addProperty("amount", barToFoo);
+        JsonObject second = new JsonObject();
+        second.addProperty("senderAccNo", "foo");
+        second.addProperty("receiverAccNo", "bar");
+        second.addProperty("amount", fooToBar);
+        JsonArray transfers = new JsonArray();
+        transfers.add(first);
+        transfers.add(second);
+        JsonObject payload = new JsonObject();
+        payload.addProperty("mode", mode);
+        payload.add("transfers", transfers);
+        return payload;
+    }
+
     private static String getPath(String path) {
         return String.format("http://localhost:%d" + path, APP.getLocalPort());
     }
@@ -0,0 +1,116 @@
+package net.lugburz.tinytransfer.api;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link IdempotencyCache}.
+ */
+class IdempotencyCacheTest {
+
+    private IdempotencyCache sut;
+
+    @BeforeEach
+    public void setup() {
+        sut = new IdempotencyCache(100, 1, TimeUnit.HOURS);
+    }
+
+    @Test
+    public void computeIfAbsent_onKnownKey_shouldReturnRememberedOutcome() {
+        final TransferOutcome first = sut.computeIfAbsent("key", () -> outcome(null)).join();
+
+        final TransferOutcome second = sut.computeIfAbsent("key", () -> outcome("failed")).join();
+
+        assertThat(second).isSameAs(first);
+    }
+
+    @Test
+    public void computeIfAbsent_onException_shouldNotRememberKey() {
+        final CompletableFuture<TransferOutcome> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException());
+        final CompletionException exception =
+                assertThrows(CompletionException.class, () -> sut.computeIfAbsent("key", () -> failed).join());
+        assertThat(exception).hasCauseInstanceOf(IllegalStateException.class);
+
+        final TransferOutcome outcome = sut.computeIfAbsent("key", () -> outcome(null)).join();
+
+        assertThat(outcome.getFailure()).isNull();
+    }
+
+    @Test
+    public void computeIfAbsent_whileInProgress_shouldReturnPendingOutcome() {
+        final CompletableFuture<TransferOutcome> pending = new CompletableFuture<>();
+        final CompletableFuture<TransferOutcome> first = sut.computeIfAbsent("key", () -> pending);
+
+        final CompletableFuture<TransferOutcome> second = sut.computeIfAbsent("key", () -> outcome("failed"));
+
+        assertThat(second).isNotDone();
+        pending.complete(new TransferOutcome(request(), null));
+        assertThat(second.join()).isSameAs(first.join());
+    }
+
+    @Test
+    public void computeIfAbsent_concurrentRequestsWithSameKey_shouldExecuteOnce() throws InterruptedException {
+        final AtomicInteger executions = new AtomicInteger();
+        final ExecutorService es = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            es.execute(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    sut.computeIfAbsent("key-" + i, () -> {
+                        executions.incrementAndGet();
+                        return outcome(null);
+                    });
+                }
+            });
+        }
+        es.shutdown();
+
+        assertThat(es.awaitTermination(60, TimeUnit.SECONDS)).isTrue();
+        // The cache holds 100 keys; later keys may evict earlier ones, so only the lower bound is exact.
+        assertThat(executions.get()).isGreaterThanOrEqualTo(1000);
+        assertThat(sut.size()).isLessThanOrEqualTo(100);
+    }
+
+    @Test
+    public void clear_shouldForgetAllKeys() {
+        sut.computeIfAbsent("key", () -> outcome(null)).join();
+
+        sut.clear();
+
+        assertThat(sut.computeIfAbsent("key", () -> outcome("failed")).join().getFailure()).isEqualTo("failed");
+    }
+
+    @Test
+    public void matches_onSameTransferWithDifferentScale_shouldMatch() {
+        final TransferOutcome outcome = new TransferOutcome(request(), null);
+        final TransferRequest retry = request();
+        retry.setAmount(new BigDecimal("10.00"));
+
+        assertThat(outcome.matches(retry)).isTrue();
+        retry.setReceiverAccNo("789");
+        assertThat(outcome.matches(retry)).isFalse();
+    }
+
+    private static CompletableFuture<TransferOutcome> outcome(final String failure) {
+        return CompletableFuture.completedFuture(new TransferOutcome(request(), failure));
+    }
+
+    private static TransferRequest request() {
+        final TransferRequest request = new TransferRequest();
+        request.setSenderAccNo("123");
+        request.setReceiverAccNo("456");
+        request.setAmount(BigDecimal.TEN);
+        return request;
+    }
+}
@@ -0,0 +1,54 @@
+package net.lugburz.tinytransfer.api;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests for {@link RejectionLog}.
+ */
+class RejectionLogTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final Logger log = mock(Logger.class);
+
+    private RejectionLog sut;
+
+    @BeforeEach
+    public void setup() {
+        sut = new RejectionLog(log, 1, TimeUnit.SECONDS, clock::get);
+    }
+
+    @Test
+    public void reject_withinInterval_shouldLogOnlyOnce() {
+        sut.reject("Transfer", "no funds");
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+        sut.reject("Transfer", "no funds");
+
+        verify(log, times(1)).warn(anyString(), any(), any(), any());
+    }
+
+    @Test
+    public void reject_afterInterval_shouldLogAgainWithCountSinceLastReport() {
+        sut.reject("Transfer", "no funds");
+        sut.reject("Transfer", "no funds");
+        sut.reject("Transfer", "no funds");
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        sut.reject("Transfer", "unknown account");
+
+        verify(log).warn(anyString(), any(), any(), eq(1L));
+        verify(log).warn(anyString(), any(), eq("unknown account"), eq(3L));
+        verify(log, never()).error(anyString(), any(Throwable.class));
+    }
+}
@@ -0,0 +1,238 @@
+package net.lugburz.tinytransfer.binary;
+
+import net.lugburz.tinytransfer.account.AccountRepository;
+import net.lugburz.tinytransfer.account.InMemoryAccountRepository;
+import net.lugburz.tinytransfer.transfer.StripedLockTransferService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link BinaryServer} and {@link BinaryClient}.
+ */
+class BinaryServerTest {
+
+    private static final int MAX_FRAME_BYTES = 1024;
+    private static final int MAX_IN_FLIGHT = 64;
+
+    private InMemoryAccountRepository repository;
+    private ExecutorService workers;
+    private BinaryServer server;
+    private BinaryClient client;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        repository = new InMemoryAccountRepository();
+        workers = Executors.newFixedThreadPool(4);
+        server = new BinaryServer(new InetSocketAddress("127.0.0.1", 0), MAX_FRAME_BYTES, MAX_IN_FLIGHT, repository,
+                new StripedLockTransferService(repository), workers);
+        server.start();
+        client = BinaryClient.connect("127.0.0.1", server.getPort());
+    }
+
+    @AfterEach
+    public void teardown() throws Exception {
+        client.close();
+        server.stop();
+        workers.shutdown();
+    }
+
+    @Test
+    public void create_onNewAccount_shouldCreateAccount() throws Exception {
+        client.create("foo", new BigDecimal("12.50")).get();
+
+        assertThat(repository.find("foo").getBalance()).isEqualByComparingTo("12.50");
+    }
+
+    @Test
+    public void create_onExistingAccount_shouldBeRejected() throws Exception {
+        repository.create("foo", BigDecimal.ONE);
+
+        assertFailure(client.create("foo", BigDecimal.ONE), BinaryProtocol.Status.REJECTED);
+    }
+
+    @Test
+    public void balance_onKnownAccount_shouldReturnBalance() throws Exception {
+        repository.create("foo", new BigDecimal("0.01"));
+        repository.create("bar", new BigDecimal("123456789012345678901234567890.12"));
+
+        assertThat(client.balance("foo").get()).isEqualByComparingTo("0.01");
+        assertThat(client.balance("bar").get()).isEqualByComparingTo("123456789012345678901234567890.12");
+    }
+
+    @Test
+    public void balance_onUnknownAccount_shouldReturnNotFound() {
+        assertFailure(client.balance("foo"), BinaryProtocol.Status.NOT_FOUND);
+    }
+
+    @Test
+    public void balance_onFailingRepository_shouldReturnErrorAndReleaseSlot() throws Exception {
+        final AccountRepository failing = mock(AccountRepository.class);
+        when(failing.snapshot("foo")).thenThrow(new IllegalStateException("broken"));
+        final BinaryServer limited = new BinaryServer(new InetSocketAddress("127.0.0.1", 0), MAX_FRAME_BYTES, 1,
+                failing, new StripedLockTransferService(repository), workers);
+        limited.start();
+        try (BinaryClient single = BinaryClient.connect("127.0.0.1", limited.getPort())) {
+            assertFailure(single.balance("foo"), BinaryProtocol.Status.ERROR);
+            assertFailure(single.balance("foo"), BinaryProtocol.Status.ERROR);
+        } finally {
+            limited.stop();
+        }
+    }
+
+    @Test
+    public void transfer_onSufficientFunds_shouldTransfer() throws Exception {
+        repository.create("foo", new BigDecimal("100"));
+        repository.create("bar", BigDecimal.ZERO);
+
+        client.transfer("foo", "bar", new BigDecimal("40.25")).get();
+
+        assertThat(repository.find("foo").getBalance()).isEqualByComparingTo("59.75");
+        assertThat(repository.find("bar").getBalance()).isEqualByComparingTo("40.25");
+    }
+
+    @Test
+    public void transfer_onInsufficientFundsOrUnknownAccount_shouldBeRejected() throws Exception {
+        repository.create("foo", BigDecimal.ONE);
+        repository.create("bar", BigDecimal.ZERO);
+
+        assertFailure(client.transfer("foo", "bar", BigDecimal.TEN), BinaryProtocol.Status.REJECTED);
+        assertFailure(client.transfer("foo", "baz", BigDecimal.ONE), BinaryProtocol.Status.REJECTED);
+        assertThat(repository.find("foo").getBalance()).isEqualByComparingTo("1");
+    }
+
+    @Test
+    public void transfer_onNonPositiveAmount_shouldBeInvalid() {
+        assertFailure(client.transfer("foo", "bar", BigDecimal.ZERO), BinaryProtocol.Status.INVALID);
+    }
+
+    @Test
+    public void transfer_onPipelinedRequests_shouldAnswerEveryRequest() throws Exception {
+        repository.create("foo", new BigDecimal("1000"));
+        repository.create("bar", BigDecimal.ZERO);
+
+        final List<CompletableFuture<Void>> transfers = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            transfers.add(client.transfer("foo", "bar", BigDecimal.ONE));
+        }
+
+        int rejected = 0;
+        for (final CompletableFuture<Void> transfer : transfers) {
+            try {
+                transfer.get();
+            } catch (final ExecutionException exception) {
+                rejected++;
+            }
+        }
+        assertThat(rejected).isEqualTo(1000);
+        assertThat(repository.find("foo").getBalance()).isEqualByComparingTo("0");
+        assertThat(repository.find("bar").getBalance()).isEqualByComparingTo("1000");
+    }
+
+    @Test
+    public void request_beyondInFlightLimit_shouldWaitUntilResponsesAreWritten() throws Exception {
+        repository.create("foo", BigDecimal.ONE);
+        final ThreadPoolExecutor blocked = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>());
+        final CountDownLatch release = new CountDownLatch(1);
+        blocked.execute(() -> awaitQuietly(release));
+        final BinaryServer limited = new BinaryServer(new InetSocketAddress("127.0.0.1", 0), MAX_FRAME_BYTES, 4,
+                repository, new StripedLockTransferService(repository), blocked);
+        limited.start();
+        try (BinaryClient pipelining = BinaryClient.connect("127.0.0.1", limited.getPort())) {
+            final List<CompletableFuture<BigDecimal>> balances = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                balances.add(pipelining.balance("foo"));
+            }
+
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (blocked.getQueue().size() < 4 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(200);
+            assertThat(blocked.getQueue()).hasSize(4);
+
+            release.countDown();
+            for (final CompletableFuture<BigDecimal> balance : balances) {
+                assertThat(balance.get(5, TimeUnit.SECONDS)).isEqualByComparingTo("1");
+            }
+        } finally {
+            release.countDown();
+            limited.stop();
+            blocked.shutdown();
+        }
+    }
+
+    @Test
+    public void request_onUnknownOperation_shouldBeInvalid() throws Exception {
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", server.getPort()))) {
+            final ByteBuffer request = ByteBuffer.allocate(13);
+            request.putInt(BinaryProtocol.HEADER_BYTES).put((byte) 42).putLong(7).flip();
+            channel.write(request);
+
+            final ByteBuffer response = read(channel);
+            assertThat(BinaryProtocol.Status.of(response.get())).isEqualTo(BinaryProtocol.Status.INVALID);
+            assertThat(response.getLong()).isEqualTo(7);
+        }
+    }
+
+    @Test
+    public void request_onOversizedFrame_shouldCloseConnection() throws Exception {
+        try (SocketChannel channel = SocketChannel.open(new InetSocketAddress("127.0.0.1", server.getPort()))) {
+            final ByteBuffer request = ByteBuffer.allocate(4);
+            request.putInt(MAX_FRAME_BYTES + 1).flip();
+            channel.write(request);
+
+            assertThat(channel.read(ByteBuffer.allocate(1))).isEqualTo(-1);
+        }
+    }
+
+    private static void awaitQuietly(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ByteBuffer read(final SocketChannel channel) throws IOException {
+        final ByteBuffer length = ByteBuffer.allocate(4);
+        while (length.hasRemaining()) {
+            channel.read(length);
+        }
+        final ByteBuffer frame = ByteBuffer.allocate(length.getInt(0));
+        while (frame.hasRemaining()) {
+            channel.read(frame);
+        }
+        frame.flip();
+        return frame;
+    }
+
+    private static void assertFailure(final CompletableFuture<?> response, final BinaryProtocol.Status status) {
+        assertThatThrownBy(response::get)
+                .hasCauseInstanceOf(BinaryProtocolException.class)
+                .satisfies(thrown -> assertThat(((BinaryProtocolException) thrown.getCause()).getStatus())
+                        .isEqualTo(status));
+    }
+}
@@ -0,0 +1,257 @@
+package net.lugburz.tinytransfer.cluster;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dropwizard.jackson.Jackson;
+import io.dropwizard.testing.DropwizardTestSupport;
+import net.lugburz.tinytransfer.TinyTransferApplication;
+import net.lugburz.tinytransfer.TinyTransferConfiguration;
+import net.lugburz.tinytransfer.api.BankingResource;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for cluster mode with three nodes on localhost.
+ */
+class ClusterTest {
+
+    private static final int NODES = 3;
+    private static final Partitioner PARTITIONER = new Partitioner(NODES);
+    private static final ObjectMapper MAPPER = Jackson.newObjectMapper();
+
+    private static final List<DropwizardTestSupport<TinyTransferConfiguration>> APPS = new ArrayList<>();
+    private static final List<Path> CONFIGS = new ArrayList<>();
+    private static final List<String> URLS = new ArrayList<>();
+    private static Client client;
+
+    @BeforeAll
+    public static void startNodes() throws Exception {
+        for (int i = 0; i < NODES; i++) {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                URLS.add("http://127.0.0.1:" + socket.getLocalPort());
+            }
+        }
+        for (int i = 0; i < NODES; i++) {
+            final Path config = Files.createTempFile("cluster-test", ".yml");
+            Files.write(config, nodeConfig(i));
+            CONFIGS.add(config);
+            final DropwizardTestSupport<TinyTransferConfiguration> app =
+                    new DropwizardTestSupport<>(TinyTransferApplication.class, config.toString());
+            app.before();
+            APPS.add(app);
+        }
+        client = ClientBuilder.newClient();
+    }
+
+    @AfterAll
+    public static void stopNodes() throws IOException {
+        client.close();
+        for (final DropwizardTestSupport<TinyTransferConfiguration> app : APPS) {
+            app.after();
+        }
+        for (final Path config : CONFIGS) {
+            Files.delete(config);
+        }
+    }
+
+    @AfterEach
+    public void reset() {
+        for (final String url : URLS) {
+            client.target(url + "/accounts/reset").request().post(null).close();
+        }
+    }
+
+    @Test
+    public void createAccount_onAnyNode_shouldCreateItOnItsNode() throws IOException {
+        for (int i = 0; i < 30; i++) {
+            assertThat(createAccount(i % NODES, "acc-" + i, BigDecimal.ONE)).isEqualTo(200);
+        }
+
+        for (int node = 0; node < NODES; node++) {
+            final String export = client.target(URLS.get(node) + "/accounts/export")
+                    .request(BankingResource.APPLICATION_NDJSON).get(String.class);
+            for (final String line : export.split("\n")) {
+                assertThat(PARTITIONER.ownerOf(MAPPER.readTree(line).path("accountNo").asText())).isEqualTo(node);
+            }
+        }
+        for (int i = 0; i < 30; i++) {
+            assertThat(balance((i + 1) % NODES, "acc-" + i)).isEqualByComparingTo("1");
+        }
+    }
+
+    @Test
+    public void createAccount_onExistingAccountOfOtherNode_shouldReturn400() {
+        final String accountNo = accountOfNode(1, 0);
+        createAccount(1, accountNo, BigDecimal.ONE);
+
+        assertThat(createAccount(0, accountNo, BigDecimal.ONE)).isEqualTo(400);
+    }
+
+    @Test
+    public void getAccount_onUnknownAccountOfOtherNode_shouldReturn404() {
+        final Response response = client.target(URLS.get(0) + "/accounts/" + accountOfNode(2, 0)).request().get();
+
+        assertThat(response.getStatus()).isEqualTo(404);
+        response.close();
+    }
+
+    @Test
+    public void transfer_betweenNodes_shouldMoveMoneyAndRecordItOnBothNodes() throws IOException {
+        final String sender = accountOfNode(0, 0);
+        final String receiver = accountOfNode(1, 0);
+        createAccount(0, sender, new BigDecimal("100"));
+        createAccount(0, receiver, BigDecimal.ZERO);
+
+        // Sent to the third node, which hands the transfer to the node of the sender.
+        assertThat(transfer(2, sender, receiver, new BigDecimal("40.50"))).isEqualTo(200);
+
+        assertThat(balance(2, sender)).isEqualByComparingTo("59.50");
+        assertThat(balance(2, receiver)).isEqualByComparingTo("40.50");
+        for (final String accountNo : new String[]{sender, receiver}) {
+            final JsonNode statement = MAPPER.readTree(client.target(URLS.get(2) + "/accounts/" + accountNo
+                    + "/transfers").request().get(String.class));
+            assertThat(statement.path("transfers")).hasSize(1);
+        }
+    }
+
+    @Test
+    public void transfer_toUnknownAccountOfOtherNode_shouldReturn400AndKeepBalance() throws IOException {
+        final String sender = accountOfNode(0, 0);
+        createAccount(0, sender, new BigDecimal("100"));
+
+        assertThat(transfer(0, sender, accountOfNode(1, 0), BigDecimal.TEN)).isEqualTo(400);
+
+        assertThat(balance(0, sender)).isEqualByComparingTo("100");
+    }
+
+    @Test
+    public void transferBatch_atomicAcrossNodes_shouldReturn400AndKeepBalances() throws IOException {
+        final String sender = accountOfNode(0, 0);
+        final String receiver = accountOfNode(1, 0);
+        createAccount(0, sender, new BigDecimal("100"));
+        createAccount(0, receiver, BigDecimal.ZERO);
+
+        final Response response = client.target(URLS.get(0) + "/transfers/batch").request()
+                .post(Entity.json("{\"mode\":\"ATOMIC\",\"transfers\":[{\"senderAccNo\":\"" + sender
+                        + "\",\"receiverAccNo\":\"" + receiver + "\",\"amount\":1}]}"));
+
+        assertThat(response.getStatus()).isEqualTo(400);
+        response.close();
+        assertThat(balance(1, sender)).isEqualByComparingTo("100");
+    }
+
+    @Test
+    public void transferBatch_bestEffortAcrossNodes_shouldApplyEachTransfer() throws IOException {
+        final String first = accountOfNode(0, 0);
+        final String second = accountOfNode(1, 0);
+        final String third = accountOfNode(2, 0);
+        createAccount(0, first, new BigDecimal("100"));
+        createAccount(0, second, BigDecimal.ZERO);
+        createAccount(0, third, BigDecimal.ZERO);
+
+        final JsonNode result = MAPPER.readTree(client.target(URLS.get(1) + "/transfers/batch").request()
+                .post(Entity.json("{\"mode\":\"BEST_EFFORT\",\"transfers\":["
+                        + "{\"senderAccNo\":\"" + first + "\",\"receiverAccNo\":\"" + second + "\",\"amount\":60},"
+                        + "{\"senderAccNo\":\"" + second + "\",\"receiverAccNo\":\"" + third + "\",\"amount\":70},"
+                        + "{\"senderAccNo\":\"" + second + "\",\"receiverAccNo\":\"" + third + "\",\"amount\":50}]}"),
+                        String.class));
+
+        assertThat(result.path("results").path(0).path("success").asBoolean()).isTrue();
+        assertThat(result.path("results").path(1).path("success").asBoolean()).isFalse();
+        assertThat(result.path("results").path(2).path("success").asBoolean()).isTrue();
+        assertThat(balance(0, third)).isEqualByComparingTo("50");
+    }
+
+    @Test
+    public void transfer_concurrentlyAcrossNodes_shouldConserveTotal() throws Exception {
+        final int accounts = 24;
+        for (int i = 0; i < accounts; i++) {
+            createAccount(0, "acc-" + i, new BigDecimal("100"));
+        }
+
+        final ExecutorService es = Executors.newFixedThreadPool(6);
+        for (int t = 0; t < 6; t++) {
+            es.execute(() -> {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 100; i++) {
+                    transfer(random.nextInt(NODES), "acc-" + random.nextInt(accounts),
+                            "acc-" + random.nextInt(accounts), BigDecimal.valueOf(random.nextInt(1, 60)));
+                }
+            });
+        }
+        es.shutdown();
+        assertThat(es.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < accounts; i++) {
+            total = total.add(balance(0, "acc-" + i));
+        }
+        assertThat(total).isEqualByComparingTo(BigDecimal.valueOf(100L * accounts));
+    }
+
+    private static List<String> nodeConfig(final int self) {
+        final List<String> lines = new ArrayList<>();
+        lines.add("server:");
+        lines.add("  applicationConnectors: [{type: http, port: " + URLS.get(self).substring(17) + "}]");
+        lines.add("  adminConnectors: [{type: http, port: 0}]");
+        lines.add("  requestLog:");
+        lines.add("    appenders: []");
+        lines.add("logging:");
+        lines.add("  level: WARN");
+        lines.add("cluster:");
+        lines.add("  enabled: true");
+        lines.add("  self: " + self);
+        lines.add("  nodes: [" + String.join(", ", URLS) + "]");
+        return lines;
+    }
+
+    private static int createAccount(final int node, final String accountNo, final BigDecimal balance) {
+        final Response response = client.target(URLS.get(node) + "/accounts").request()
+                .post(Entity.json("{\"accountNo\":\"" + accountNo + "\",\"balance\":" + balance + "}"));
+        response.close();
+        return response.getStatus();
+    }
+
+    private static int transfer(final int node, final String senderAccNo, final String receiverAccNo,
+                                final BigDecimal amount) {
+        final Response response = client.target(URLS.get(node) + "/transfer").request()
+                .post(Entity.json("{\"senderAccNo\":\"" + senderAccNo + "\",\"receiverAccNo\":\"" + receiverAccNo
+                        + "\",\"amount\":" + amount + "}"));
+        response.close();
+        return response.getStatus();
+    }
+
+    private static BigDecimal balance(final int node, final String accountNo) throws IOException {
+        final String account = client.target(URLS.get(node) + "/accounts/" + accountNo).request().get(String.class);
+        return MAPPER.readTree(account).path("balance").decimalValue();
+    }
+
+    private static String accountOfNode(final int node, final int rank) {
+        int found = 0;
+        for (int i = 0; ; i++) {
+            if (PARTITIONER.ownerOf("acc-" + i) == node && found++ == rank) {
+                return "acc-" + i;
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package net.lugburz.tinytransfer.cluster;
+
+import net.lugburz.tinytransfer.account.InMemoryAccountRepository;
+import net.lugburz.tinytransfer.ledger.Ledger;
+import net.lugburz.tinytransfer.transfer.StripedLockTransferService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link IncomingCredits}.
+ */
+class IncomingCreditsTest {
+
+    private InMemoryAccountRepository repository;
+    private Ledger ledger;
+    private IncomingCredits sut;
+
+    @BeforeEach
+    public void setup() {
+        repository = new InMemoryAccountRepository();
+        repository.create("bar", BigDecimal.TEN);
+        ledger = new Ledger(100);
+        sut = new IncomingCredits(repository, new StripedLockTransferService(repository), ledger);
+    }
+
+    @Test
+    public void prepare_onUnknownReceiver_shouldRefuse() {
+        assertThat(sut.prepare("t-1", "foo", "baz", BigDecimal.ONE)).isFalse();
+        assertThat(sut.preparedCount()).isZero();
+    }
+
+    @Test
+    public void commit_repeated_shouldCreditOnceAndMoveExpectedTotal() {
+        assertThat(sut.prepare("t-1", "foo", "bar", new BigDecimal("2.50"))).isTrue();
+
+        sut.commit("t-1");
+        sut.commit("t-1");
+
+        assertThat(repository.find("bar").getBalance()).isEqualByComparingTo("12.50");
+        assertThat(repository.totalBalance()).isEqualByComparingTo("12.50");
+        assertThat(repository.isConsistent()).isTrue();
+        assertThat(ledger.statement("bar", null, 10).getTransfers()).hasSize(1);
+        assertThat(sut.preparedCount()).isZero();
+    }
+
+    @Test
+    public void commit_afterAbort_shouldNotCredit() {
+        sut.prepare("t-1", "foo", "bar", BigDecimal.ONE);
+
+        sut.abort("t-1");
+        sut.commit("t-1");
+
+        assertThat(repository.find("bar").getBalance()).isEqualByComparingTo("10");
+    }
+
+    @Test
+    public void prepare_afterAbort_shouldRefuse() {
+        sut.abort("t-1");
+
+        assertThat(sut.prepare("t-1", "foo", "bar", BigDecimal.ONE)).isFalse();
+        sut.commit("t-1");
+        assertThat(repository.find("bar").getBalance()).isEqualByComparingTo("10");
+    }
+}
@@ -0,0 +1,47 @@
+package net.lugburz.tinytransfer.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link Partitioner}.
+ */
+class PartitionerTest {
+
+    @Test
+    public void ownerOf_onSingleNode_shouldAssignEveryAccountToIt() {
+        final Partitioner sut = new Partitioner(1);
+
+        assertThat(sut.ownerOf("")).isZero();
+        assertThat(sut.ownerOf("acc-1")).isZero();
+        assertThat(sut.ownerOf("￿￿")).isZero();
+    }
+
+    @Test
+    public void ownerOf_onConsecutiveAccountNos_shouldSpreadThemEvenly() {
+        final Partitioner sut = new Partitioner(4);
+        final int[] counts = new int[4];
+
+        for (int i = 0; i < 40_000; i++) {
+            counts[sut.ownerOf(Integer.toString(i))]++;
+        }
+
+        for (final int count : counts) {
+            assertThat(count).isBetween(9_000, 11_000);
+        }
+    }
+
+    @Test
+    public void ownerOf_onSameAccountNo_shouldAlwaysReturnSameNode() {
+        final Partitioner sut = new Partitioner(3);
+
+        assertThat(sut.ownerOf("acc-42")).isEqualTo(new Partitioner(3).ownerOf(new String("acc-42")));
+    }
+
+    @Test
+    public void constructor_onNoNodes_shouldThrowIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> new Partitioner(0));
+    }
+}
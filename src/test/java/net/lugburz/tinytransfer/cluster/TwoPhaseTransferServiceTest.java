@@ -0,0 +1,181 @@
+package net.lugburz.tinytransfer.cluster;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.dropwizard.jackson.Jackson;
+import net.lugburz.tinytransfer.account.InMemoryAccountRepository;
+import net.lugburz.tinytransfer.transfer.FailureReason;
+import net.lugburz.tinytransfer.transfer.StripedLockTransferService;
+import net.lugburz.tinytransfer.transfer.TransferException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link TwoPhaseTransferService} against a stub of the node of the receivers.
+ */
+class TwoPhaseTransferServiceTest {
+
+    private static final int TIMEOUT_MILLIS = 500;
+
+    private final Partitioner partitioner = new Partitioner(2);
+    private final String sender = accountOfNode(0, 0);
+    private final String localReceiver = accountOfNode(0, 1);
+    private final String remoteReceiver = accountOfNode(1, 0);
+
+    private final List<String> calls = new CopyOnWriteArrayList<>();
+    private volatile int prepareStatus = 200;
+    private volatile long prepareDelayMillis = 0;
+    private final AtomicInteger commitFailures = new AtomicInteger();
+
+    private ExecutorService stubThreads;
+    private HttpServer stub;
+    private InMemoryAccountRepository repository;
+    private TwoPhaseTransferService sut;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        stubThreads = Executors.newCachedThreadPool();
+        stub = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        stub.createContext("/cluster/credits/", this::handle);
+        stub.setExecutor(stubThreads);
+        stub.start();
+
+        repository = new InMemoryAccountRepository();
+        repository.create(sender, new BigDecimal("100"));
+        repository.create(localReceiver, BigDecimal.ZERO);
+        final NodeClient client = new NodeClient(Arrays.asList("http://127.0.0.1:1",
+                "http://127.0.0.1:" + stub.getAddress().getPort()), Jackson.newObjectMapper(), TIMEOUT_MILLIS);
+        sut = new TwoPhaseTransferService(new StripedLockTransferService(repository), partitioner, 0, client,
+                60_000);
+    }
+
+    @AfterEach
+    public void teardown() {
+        stub.stop(0);
+        stubThreads.shutdownNow();
+    }
+
+    @Test
+    public void transfer_onReceiverOfSameNode_shouldNotCallOtherNodes() {
+        sut.transfer(sender, localReceiver, BigDecimal.TEN);
+
+        assertThat(repository.find(localReceiver).getBalance()).isEqualByComparingTo("10");
+        assertThat(calls).isEmpty();
+    }
+
+    @Test
+    public void transfer_onReceiverOfOtherNode_shouldReserveAndCommit() {
+        sut.transfer(sender, remoteReceiver, BigDecimal.TEN);
+
+        assertThat(repository.find(sender).getBalance()).isEqualByComparingTo("90");
+        assertThat(repository.totalBalance()).isEqualByComparingTo("90");
+        assertThat(repository.isConsistent()).isTrue();
+        assertThat(calls).containsExactly("prepare", "commit");
+        assertThat(sut.undeliveredCount()).isZero();
+    }
+
+    @Test
+    public void transfer_onInsufficientFunds_shouldNotCallOtherNodes() {
+        final TransferException exception = assertThrows(TransferException.class,
+                () -> sut.transfer(sender, remoteReceiver, new BigDecimal("100.01")));
+
+        assertThat(exception.getReason()).isEqualTo(FailureReason.INSUFFICIENT_FUNDS);
+        assertThat(calls).isEmpty();
+    }
+
+    @Test
+    public void transfer_onRefusedPreparation_shouldRefundSenderAndAbort() {
+        prepareStatus = 409;
+
+        final TransferException exception = assertThrows(TransferException.class,
+                () -> sut.transfer(sender, remoteReceiver, BigDecimal.TEN));
+
+        assertThat(exception.getReason()).isEqualTo(FailureReason.UNKNOWN_ACCOUNT);
+        assertThat(repository.find(sender).getBalance()).isEqualByComparingTo("100");
+        assertThat(repository.totalBalance()).isEqualByComparingTo("100");
+        assertThat(calls).containsExactly("prepare", "abort");
+    }
+
+    @Test
+    public void transfer_onPreparationTimeout_shouldRefundSenderAndAbort() {
+        prepareDelayMillis = 4 * TIMEOUT_MILLIS;
+
+        assertThrows(UncheckedIOException.class, () -> sut.transfer(sender, remoteReceiver, BigDecimal.TEN));
+
+        assertThat(repository.find(sender).getBalance()).isEqualByComparingTo("100");
+        assertThat(calls).containsExactly("prepare", "abort");
+    }
+
+    @Test
+    public void redeliver_onUnacknowledgedCommit_shouldRetryUntilAcknowledged() {
+        commitFailures.set(2);
+
+        sut.transfer(sender, remoteReceiver, BigDecimal.TEN);
+        assertThat(sut.undeliveredCount()).isEqualTo(1);
+
+        sut.redeliver();
+        assertThat(sut.undeliveredCount()).isEqualTo(1);
+        sut.redeliver();
+        assertThat(sut.undeliveredCount()).isZero();
+        assertThat(calls).containsExactly("prepare", "commit", "commit", "commit");
+        assertThat(repository.find(sender).getBalance()).isEqualByComparingTo("90");
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        final String path = exchange.getRequestURI().getPath();
+        final String phase = path.substring(path.lastIndexOf('/') + 1);
+        calls.add(phase);
+        int status = 200;
+        byte[] body = new byte[0];
+        if ("prepare".equals(phase)) {
+            sleep(prepareDelayMillis);
+            status = prepareStatus;
+            if (status == 409) {
+                body = "{\"reason\":\"UNKNOWN_ACCOUNT\"}".getBytes(StandardCharsets.UTF_8);
+            }
+        } else if ("commit".equals(phase) && commitFailures.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+            status = 503;
+        }
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            exchange.getResponseBody().write(body);
+        }
+        exchange.close();
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the account number of the given rank among the accounts held by a node
+     */
+    private String accountOfNode(final int node, final int rank) {
+        int found = 0;
+        for (int i = 0; ; i++) {
+            if (partitioner.ownerOf("acc-" + i) == node && found++ == rank) {
+                return "acc-" + i;
+            }
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package net.lugburz.tinytransfer.fx;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dropwizard.jackson.Jackson;
+import io.dropwizard.testing.DropwizardTestSupport;
+import net.lugburz.tinytransfer.TinyTransferApplication;
+import net.lugburz.tinytransfer.TinyTransferConfiguration;
+import net.lugburz.tinytransfer.api.BankingResource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.Response;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for accounts in several currencies.
+ */
+class CurrenciesTest {
+
+    private static final ObjectMapper MAPPER = Jackson.newObjectMapper();
+
+    @TempDir
+    Path directory;
+
+    private Path rates;
+    private DropwizardTestSupport<TinyTransferConfiguration> app;
+    private Client client;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        rates = directory.resolve("rates.txt");
+        Files.write(rates, Collections.singletonList("EUR USD 1.0842"));
+        final Path config = directory.resolve("config.yml");
+        Files.write(config, Arrays.asList(
+                "server:",
+                "  applicationConnectors: [{type: http, port: 0}]",
+                "  adminConnectors: [{type: http, port: 0}]",
+                "  requestLog:",
+                "    appenders: []",
+                "logging:",
+                "  level: WARN",
+                "currencies:",
+                "  enabled: true",
+                "  defaultCurrency: EUR",
+                "  ratesFile: " + rates));
+        app = new DropwizardTestSupport<>(TinyTransferApplication.class, config.toString());
+        app.before();
+        client = ClientBuilder.newClient();
+        post("/accounts", "{\"accountNo\":\"foo\",\"balance\":100}").close();
+        post("/accounts", "{\"accountNo\":\"bar\",\"balance\":0,\"currency\":\"USD\"}").close();
+    }
+
+    @AfterEach
+    public void teardown() {
+        client.close();
+        app.after();
+    }
+
+    @Test
+    public void transfer_betweenCurrencies_shouldCreditConvertedAmount() throws Exception {
+        assertThat(post("/transfer", transfer("foo", "bar", "10")).getStatus()).isEqualTo(200);
+
+        final JsonNode foo = account("foo");
+        final JsonNode bar = account("bar");
+        assertThat(foo.get("currency").asText()).isEqualTo("EUR");
+        assertThat(foo.get("balance").decimalValue()).isEqualByComparingTo("90");
+        assertThat(bar.get("currency").asText()).isEqualTo("USD");
+        assertThat(bar.get("balance").decimalValue()).isEqualByComparingTo("10.84");
+        // The conversion moves the expected total along with the balances.
+        assertThat(client.target(adminUrl("/healthcheck")).request().get().getStatus()).isEqualTo(200);
+    }
+
+    @Test
+    public void reload_shouldConvertAtNewRates() throws Exception {
+        assertThat(post("/transfer", transfer("bar", "foo", "1")).getStatus()).isEqualTo(400);
+
+        Files.write(rates, Arrays.asList("EUR USD 1.5", "USD EUR 0.5"));
+        assertThat(client.target(adminUrl("/tasks/reload-exchange-rates")).request().post(Entity.text(""))
+                .getStatus()).isEqualTo(200);
+
+        assertThat(post("/transfer", transfer("foo", "bar", "10")).getStatus()).isEqualTo(200);
+        assertThat(post("/transfer", transfer("bar", "foo", "1")).getStatus()).isEqualTo(200);
+        assertThat(account("bar").get("balance").decimalValue()).isEqualByComparingTo(new BigDecimal("14"));
+        assertThat(account("foo").get("balance").decimalValue()).isEqualByComparingTo(new BigDecimal("90.5"));
+    }
+
+    @Test
+    public void createAccount_withUnknownCurrency_shouldReturn400() {
+        final Response response = post("/accounts", "{\"accountNo\":\"baz\",\"balance\":0,\"currency\":\"XYZ\"}");
+
+        assertThat(response.getStatus()).isEqualTo(400);
+    }
+
+    @Test
+    public void exportAndImport_shouldKeepCurrencies() throws Exception {
+        final String ndjson = client.target(url("/accounts/export")).request(BankingResource.APPLICATION_NDJSON)
+                .get(String.class);
+        assertThat(ndjson.split("\n")).containsExactlyInAnyOrder(
+                "{\"accountNo\":\"foo\",\"balance\":100,\"currency\":\"EUR\"}",
+                "{\"accountNo\":\"bar\",\"balance\":0,\"currency\":\"USD\"}");
+        final String csv = client.target(url("/accounts/export")).request(BankingResource.TEXT_CSV).get(String.class);
+        assertThat(csv).startsWith("accountNo,balance,currency\n").contains("foo,100,EUR\n", "bar,0,USD\n");
+
+        post("/accounts/reset", "{}").close();
+        final JsonNode result = MAPPER.readTree(client.target(url("/accounts/bulk")).request()
+                .post(Entity.entity(ndjson, BankingResource.APPLICATION_NDJSON), String.class));
+
+        assertThat(result.get("created").asLong()).isEqualTo(2);
+        assertThat(account("foo").get("currency").asText()).isEqualTo("EUR");
+        assertThat(account("bar").get("currency").asText()).isEqualTo("USD");
+    }
+
+    private static String transfer(final String sender, final String receiver, final String amount) {
+        return "{\"senderAccNo\":\"" + sender + "\",\"receiverAccNo\":\"" + receiver + "\",\"amount\":" + amount + "}";
+    }
+
+    private JsonNode account(final String accountNo) throws Exception {
+        return MAPPER.readTree(client.target(url("/accounts/" + accountNo)).request().get(String.class));
+    }
+
+    private Response post(final String path, final String json) {
+        return client.target(url(path)).request().post(Entity.json(json));
+    }
+
+    private String url(final String path) {
+        return "http://127.0.0.1:" + app.getLocalPort() + path;
+    }
+
+    private String adminUrl(final String path) {
+        return "http://127.0.0.1:" + app.getAdminPort() + path;
+    }
+}
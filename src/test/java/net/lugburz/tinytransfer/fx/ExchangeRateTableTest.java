@@ -0,0 +1,66 @@
+package net.lugburz.tinytransfer.fx;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Currency;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link ExchangeRateTable}.
+ */
+class ExchangeRateTableTest {
+
+    private static final Currency EUR = Currency.getInstance("EUR");
+    private static final Currency USD = Currency.getInstance("USD");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void reload_shouldReplaceRatesButKeepPreviousTable() throws IOException {
+        final Path file = write("EUR USD 1.08");
+        final ExchangeRateTable sut = ExchangeRateTable.load(file);
+        final ExchangeRates before = sut.current();
+
+        write("EUR USD 1.10", "USD EUR 0.9");
+        sut.reload();
+
+        assertThat(sut.current().convert(BigDecimal.TEN, EUR, USD)).isEqualTo(new BigDecimal("11.00"));
+        assertThat(sut.current().convert(BigDecimal.TEN, USD, EUR)).isEqualTo(new BigDecimal("9.00"));
+        // Readers holding the previous table keep converting at its rates.
+        assertThat(before.convert(BigDecimal.TEN, EUR, USD)).isEqualTo(new BigDecimal("10.80"));
+    }
+
+    @Test
+    public void reload_onInvalidFile_shouldKeepCurrentRates() throws IOException {
+        final ExchangeRateTable sut = ExchangeRateTable.load(write("EUR USD 1.08"));
+        final ExchangeRates before = sut.current();
+
+        write("EUR USD 1.10", "EUR");
+
+        assertThrows(IOException.class, sut::reload);
+        assertThat(sut.current()).isSameAs(before);
+    }
+
+    @Test
+    public void reload_withoutFile_shouldThrowIllegalStateException() {
+        final ExchangeRateTable sut = ExchangeRateTable.of(ExchangeRates.NONE);
+
+        assertThrows(IllegalStateException.class, sut::reload);
+        assertThat(sut.current()).isSameAs(ExchangeRates.NONE);
+    }
+
+    private Path write(final String... lines) throws IOException {
+        final Path file = directory.resolve("rates.txt");
+        Files.write(file, Arrays.asList(lines));
+        return file;
+    }
+}
@@ -0,0 +1,87 @@
+package net.lugburz.tinytransfer.fx;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.util.Currency;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link ExchangeRates}.
+ */
+class ExchangeRatesTest {
+
+    private static final Currency EUR = Currency.getInstance("EUR");
+    private static final Currency USD = Currency.getInstance("USD");
+    private static final Currency JPY = Currency.getInstance("JPY");
+
+    @Test
+    public void convert_shouldRoundToFractionDigitsOfTargetCurrency() throws IOException {
+        final ExchangeRates sut = parse("# rates of the day", "", "EUR USD 1.0842", "EUR  JPY\t162.5",
+                "JPY EUR 0.006154");
+
+        assertThat(sut.size()).isEqualTo(3);
+        assertThat(sut.convert(new BigDecimal("100"), EUR, USD)).isEqualTo(new BigDecimal("108.42"));
+        assertThat(sut.convert(new BigDecimal("0.05"), EUR, USD)).isEqualTo(new BigDecimal("0.05"));
+        assertThat(sut.convert(new BigDecimal("1.01"), EUR, JPY)).isEqualTo(new BigDecimal("164"));
+        assertThat(sut.convert(new BigDecimal("1000"), JPY, EUR)).isEqualTo(new BigDecimal("6.15"));
+    }
+
+    @Test
+    public void convert_onTie_shouldRoundHalfEven() throws IOException {
+        final ExchangeRates sut = parse("EUR USD 1.5");
+
+        assertThat(sut.convert(new BigDecimal("0.01"), EUR, USD)).isEqualTo(new BigDecimal("0.02"));
+        assertThat(sut.convert(new BigDecimal("0.03"), EUR, USD)).isEqualTo(new BigDecimal("0.04"));
+    }
+
+    @Test
+    public void convert_shouldMatchDecimalArithmetic() throws IOException {
+        final ExchangeRates sut = parse("EUR USD 1.084213579", "USD JPY 151.73");
+        final Random random = new Random(42);
+
+        for (int i = 0; i < 10_000; i++) {
+            // Up to 20 digits, so that both the long and the decimal path are taken.
+            final BigDecimal amount = new BigDecimal(
+                    new BigInteger(1 + random.nextInt(66), random), random.nextInt(5));
+            assertThat(sut.convert(amount, EUR, USD)).as("%s EUR", amount)
+                    .isEqualTo(amount.multiply(new BigDecimal("1.084213579")).setScale(2, RoundingMode.HALF_EVEN));
+            assertThat(sut.convert(amount, USD, JPY)).as("%s USD", amount)
+                    .isEqualTo(amount.multiply(new BigDecimal("151.73")).setScale(0, RoundingMode.HALF_EVEN));
+        }
+    }
+
+    @Test
+    public void convert_withoutRate_shouldReturnNull() throws IOException {
+        final ExchangeRates sut = parse("EUR USD 1.0842");
+
+        assertThat(sut.convert(BigDecimal.ONE, USD, EUR)).isNull();
+        assertThat(sut.convert(BigDecimal.ONE, EUR, JPY)).isNull();
+        assertThat(ExchangeRates.NONE.convert(BigDecimal.ONE, EUR, USD)).isNull();
+    }
+
+    @Test
+    public void parse_onInvalidLine_shouldThrowIOException() {
+        assertThrows(IOException.class, () -> parse("EUR USD"));
+        assertThrows(IOException.class, () -> parse("EUR XYZ 1"));
+        assertThrows(IOException.class, () -> parse("EUR EUR 1"));
+        assertThrows(IOException.class, () -> parse("EUR USD 0"));
+        assertThrows(IOException.class, () -> parse("EUR USD abc"));
+        assertThrows(IOException.class, () -> parse("EUR USD 1.0000000001"));
+        assertThrows(IOException.class, () -> parse("EUR XAU 0.0004"));
+
+        final IOException duplicate = assertThrows(IOException.class, () -> parse("EUR USD 1.08", "EUR USD 1.09"));
+        assertThat(duplicate.getMessage()).contains("line 2");
+    }
+
+    private static ExchangeRates parse(final String... lines) throws IOException {
+        return ExchangeRates.parse(new StringReader(String.join("\n", lines)), "rates");
+    }
+}
@@ -0,0 +1,101 @@
+package net.lugburz.tinytransfer.journal;
+
+import net.lugburz.tinytransfer.account.InMemoryAccountRepository;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link ChangeFeed}.
+ */
+class ChangeFeedTest {
+
+    @Test
+    public void read_afterAppends_shouldReturnRecordsInOrderOfSequence() {
+        final ChangeFeed sut = new ChangeFeed(Journal.NONE, 8);
+
+        sut.appendCreate("foo", BigDecimal.TEN);
+        sut.appendCreate("bar", BigDecimal.ZERO);
+        sut.appendTransfer("foo", new BigDecimal("7.50"), "bar", new BigDecimal("2.50"));
+
+        final InMemoryAccountRepository replica = new InMemoryAccountRepository();
+        for (long sequence = 1; sequence <= sut.sequence(); sequence++) {
+            ChangeFeed.apply(sut.read(sequence), replica.replicationHandler());
+        }
+        assertThat(sut.sequence()).isEqualTo(3);
+        assertThat(replica.find("foo").getBalance()).isEqualByComparingTo("7.50");
+        assertThat(replica.find("bar").getBalance()).isEqualByComparingTo("2.50");
+        assertThat(replica.totalBalance()).isEqualByComparingTo("10");
+    }
+
+    @Test
+    public void read_beyondLatestRecord_shouldReturnNull() {
+        final ChangeFeed sut = new ChangeFeed(Journal.NONE, 8);
+        sut.appendClear();
+
+        assertThat(sut.read(2)).isNull();
+    }
+
+    @Test
+    public void read_onOverwrittenRecord_shouldThrowJournalException() {
+        final ChangeFeed sut = new ChangeFeed(Journal.NONE, 3);
+        for (int i = 0; i < 5; i++) {
+            sut.appendCreate("acc-" + i, BigDecimal.ONE);
+        }
+
+        assertThrows(JournalException.class, () -> sut.read(1));
+        assertThat(sut.read(2)).isNotNull();
+    }
+
+    @Test
+    public void append_onFailingDelegate_shouldNotPublishRecord() {
+        final ChangeFeed sut = new ChangeFeed(new FailingJournal(), 8);
+
+        assertThrows(JournalException.class,
+                () -> sut.appendBalances(Collections.singletonMap("foo", BigDecimal.ONE)));
+
+        assertThat(sut.sequence()).isZero();
+    }
+
+    @Test
+    public void apply_onCorruptRecord_shouldThrowJournalException() {
+        final byte[] record = ChangeFeed.snapshotRecord("foo", BigDecimal.ONE);
+        record[record.length - 1] ^= 1;
+
+        assertThrows(JournalException.class,
+                () -> ChangeFeed.apply(record, new InMemoryAccountRepository().replicationHandler()));
+    }
+
+    private static final class FailingJournal implements Journal {
+
+        @Override
+        public long appendCreate(final String accountNo, final BigDecimal balance) {
+            throw new JournalException("failed");
+        }
+
+        @Override
+        public long appendTransfer(final String senderAccNo, final BigDecimal senderBalance,
+                                   final String receiverAccNo, final BigDecimal receiverBalance) {
+            throw new JournalException("failed");
+        }
+
+        @Override
+        public long appendBalances(final Map<String, BigDecimal> balances) {
+            throw new JournalException("failed");
+        }
+
+        @Override
+        public long appendClear() {
+            throw new JournalException("failed");
+        }
+
+        @Override
+        public void awaitDurable(final long position) {
+        }
+    }
+}
@@ -0,0 +1,355 @@
+package net.lugburz.tinytransfer.journal;
+
+import net.lugburz.tinytransfer.account.InMemoryAccountRepository;
+import net.lugburz.tinytransfer.transfer.BatchMode;
+import net.lugburz.tinytransfer.transfer.StripedLockTransferService;
+import net.lugburz.tinytransfer.transfer.Transfer;
+import net.lugburz.tinytransfer.transfer.TransferException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link FileJournal}.
+ */
+class FileJournalTest {
+
+    @TempDir
+    Path dir;
+
+    private Path file;
+    private FileJournal sut;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        file = dir.resolve("journal-00000000000000000001.log");
+        sut = open(true);
+        sut.replay(recorder(new ArrayList<>()));
+        sut.start();
+    }
+
+    @AfterEach
+    public void teardown() throws Exception {
+        sut.stop();
+    }
+
+    @Test
+    public void replay_afterAppends_shouldPassRecordsInOrder() throws Exception {
+        final Map<String, BigDecimal> balances = new LinkedHashMap<>();
+        balances.put("foo", BigDecimal.ONE);
+        balances.put("bär", new BigDecimal("123456789012345678901234567890.123"));
+        sut.appendCreate("foo", BigDecimal.valueOf(10.42));
+        sut.appendTransfer("foo", BigDecimal.ZERO, "bar", BigDecimal.valueOf(-7, -3));
+        sut.appendClear();
+        sut.awaitDurable(sut.appendBalances(balances));
+        sut.stop();
+
+        final List<String> records = new ArrayList<>();
+        sut = open(true);
+
+        assertThat(sut.replay(recorder(records))).isEqualTo(4);
+        assertThat(records).containsExactly("create foo 10.42", "balance foo 0", "balance bar -7E+3", "clear",
+                "balance foo 1", "balance bär 123456789012345678901234567890.123");
+    }
+
+    @Test
+    public void replay_onTornTail_shouldTruncateIncompleteRecord() throws Exception {
+        sut.appendCreate("foo", BigDecimal.ONE);
+        sut.awaitDurable(sut.appendCreate("bar", BigDecimal.ONE));
+        sut.stop();
+        final long intactSize = Files.size(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            // a record header announcing more bytes than have been written before the crash
+            channel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 42, 1, 2, 3, 4, 1, 3}));
+        }
+
+        final List<String> records = new ArrayList<>();
+        sut = open(true);
+
+        assertThat(sut.replay(recorder(records))).isEqualTo(2);
+        assertThat(Files.size(file)).isEqualTo(intactSize);
+
+        sut.start();
+        sut.awaitDurable(sut.appendClear());
+        sut.stop();
+        sut = open(true);
+        assertThat(sut.replay(recorder(new ArrayList<>()))).isEqualTo(3);
+    }
+
+    @Test
+    public void replay_onCorruptRecord_shouldTruncateFromThere() throws Exception {
+        sut.appendCreate("foo", BigDecimal.ONE);
+        sut.awaitDurable(sut.appendCreate("bar", BigDecimal.ONE));
+        sut.stop();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{'x'}), Files.size(file) - 1);
+        }
+
+        final List<String> records = new ArrayList<>();
+        sut = open(true);
+
+        assertThat(sut.replay(recorder(records))).isEqualTo(1);
+        assertThat(records).containsExactly("create foo 1");
+    }
+
+    @Test
+    public void append_beforeStart_shouldThrowJournalException() throws Exception {
+        sut.stop();
+        sut = open(true);
+
+        assertThrows(JournalException.class, () -> sut.appendClear());
+    }
+
+    @Test
+    public void start_withoutReplay_shouldThrowIllegalStateException() throws Exception {
+        sut.stop();
+        sut = open(true);
+
+        assertThrows(IllegalStateException.class, () -> sut.start());
+    }
+
+    @Test
+    public void replay_afterDiscardingRolledSegments_shouldReplayOnlyLaterRecords() throws Exception {
+        sut.appendCreate("foo", BigDecimal.ONE);
+        sut.awaitDurable(sut.appendCreate("bar", BigDecimal.ONE));
+        final long position = sut.roll();
+        sut.awaitDurable(sut.appendTransfer("foo", BigDecimal.ZERO, "bar", BigDecimal.valueOf(2)));
+        sut.roll();
+        sut.awaitDurable(sut.appendClear());
+
+        assertThat(position).isEqualTo(2);
+        assertThat(sut.discardBefore(position)).isEqualTo(1);
+        assertThat(Files.exists(file)).isFalse();
+        sut.stop();
+
+        final List<String> records = new ArrayList<>();
+        sut = open(true);
+        assertThat(sut.replay(recorder(records), position)).isEqualTo(2);
+        assertThat(records).containsExactly("balance foo 0", "balance bar 2", "clear");
+
+        sut.start();
+        assertThat(sut.appendClear()).isEqualTo(5);
+    }
+
+    @Test
+    public void replay_withRecordsMissingAfterPosition_shouldThrowIOException() throws Exception {
+        sut.awaitDurable(sut.appendCreate("foo", BigDecimal.ONE));
+        sut.roll();
+        sut.awaitDurable(sut.appendCreate("bar", BigDecimal.ONE));
+        sut.discardBefore(1);
+        sut.stop();
+
+        sut = open(true);
+
+        assertThrows(IOException.class, () -> sut.replay(recorder(new ArrayList<>())));
+    }
+
+    @Test
+    public void roll_beforeFirstWrite_shouldKeepAppending() throws Exception {
+        sut.roll();
+        sut.awaitDurable(sut.appendClear());
+        sut.stop();
+
+        sut = open(true);
+
+        assertThat(sut.replay(recorder(new ArrayList<>()))).isEqualTo(1);
+    }
+
+    @Test
+    public void awaitDurable_concurrentAppendsWithGroupCommit_shouldPersistAllRecords() throws Exception {
+        appendConcurrently(16, 500);
+        sut.stop();
+        sut = open(true);
+
+        assertThat(sut.replay(recorder(new ArrayList<>()))).isEqualTo(16 * 500);
+    }
+
+    @Test
+    public void awaitDurable_concurrentAppendsWithoutGroupCommit_shouldPersistAllRecords() throws Exception {
+        sut.stop();
+        sut = open(false);
+        sut.replay(recorder(new ArrayList<>()));
+        sut.start();
+
+        appendConcurrently(8, 50);
+        sut.stop();
+        sut = open(false);
+
+        assertThat(sut.replay(recorder(new ArrayList<>()))).isEqualTo(8 * 50);
+    }
+
+    @Test
+    public void replay_afterConcurrentTransfers_shouldRestoreBalances() throws Exception {
+        final InMemoryAccountRepository repository = new InMemoryAccountRepository(sut);
+        final StripedLockTransferService transferService = new StripedLockTransferService(repository, 8);
+        repository.create("gone", BigDecimal.TEN);
+        repository.clear();
+        final int accounts = 32;
+        for (int i = 0; i < accounts; i++) {
+            repository.create("acc-" + i, BigDecimal.valueOf(100));
+        }
+
+        final ExecutorService es = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            es.execute(() -> {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 500; i++) {
+                    try {
+                        transferService.transfer("acc-" + random.nextInt(accounts), "acc-" + random.nextInt(accounts),
+                                BigDecimal.valueOf(random.nextInt(1, 3000), 2));
+                    } catch (final TransferException ignored) {
+                        // insufficient funds are expected
+                    }
+                    if (i % 50 == 0) {
+                        transferService.transferAll(Arrays.asList(
+                                new Transfer("acc-" + random.nextInt(accounts), "acc-0", BigDecimal.ONE),
+                                new Transfer("acc-0", "acc-" + random.nextInt(accounts), BigDecimal.TEN)),
+                                random.nextBoolean() ? BatchMode.ATOMIC : BatchMode.BEST_EFFORT);
+                    }
+                }
+            });
+        }
+        es.shutdown();
+        assertThat(es.awaitTermination(60, TimeUnit.SECONDS)).isTrue();
+        sut.stop();
+
+        sut = open(true);
+        final InMemoryAccountRepository recovered = new InMemoryAccountRepository(sut);
+        sut.replay(recovered.recoveryHandler());
+
+        for (int i = 0; i < accounts; i++) {
+            assertThat(recovered.find("acc-" + i).getBalance())
+                    .isEqualByComparingTo(repository.find("acc-" + i).getBalance());
+        }
+        assertThrows(RuntimeException.class, () -> recovered.find("gone"));
+    }
+
+    @Test
+    public void replay_afterTransferRacingClearAndCreation_shouldRestoreBalances() throws Exception {
+        final CountDownLatch appending = new CountDownLatch(1);
+        final CountDownLatch resume = new CountDownLatch(1);
+        // Holds the transfer between the lookup of its accounts and its journal record.
+        final Journal journal = new Journal() {
+            @Override
+            public long appendCreate(final String accountNo, final BigDecimal balance) {
+                return sut.appendCreate(accountNo, balance);
+            }
+
+            @Override
+            public long appendTransfer(final String senderAccNo, final BigDecimal senderBalance,
+                                       final String receiverAccNo, final BigDecimal receiverBalance) {
+                appending.countDown();
+                try {
+                    resume.await();
+                } catch (final InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                }
+                return sut.appendTransfer(senderAccNo, senderBalance, receiverAccNo, receiverBalance);
+            }
+
+            @Override
+            public long appendBalances(final Map<String, BigDecimal> balances) {
+                return sut.appendBalances(balances);
+            }
+
+            @Override
+            public long appendClear() {
+                return sut.appendClear();
+            }
+
+            @Override
+            public void awaitDurable(final long position) {
+                sut.awaitDurable(position);
+            }
+        };
+        final InMemoryAccountRepository repository = new InMemoryAccountRepository(journal);
+        final StripedLockTransferService transferService = new StripedLockTransferService(repository, 8);
+        repository.create("foo", BigDecimal.TEN);
+        repository.create("bar", BigDecimal.TEN);
+
+        final ExecutorService es = Executors.newFixedThreadPool(2);
+        final Future<?> transfer = es.submit(() -> transferService.transfer("foo", "bar", BigDecimal.ONE));
+        assertThat(appending.await(10, TimeUnit.SECONDS)).isTrue();
+        final Future<?> reset = es.submit(() -> {
+            repository.clear();
+            repository.create("foo", BigDecimal.valueOf(100));
+            repository.create("bar", BigDecimal.valueOf(100));
+        });
+        // The clear has to wait for the transfer which looked up the retired accounts.
+        assertThrows(TimeoutException.class, () -> reset.get(200, TimeUnit.MILLISECONDS));
+        resume.countDown();
+        transfer.get(10, TimeUnit.SECONDS);
+        reset.get(10, TimeUnit.SECONDS);
+        es.shutdown();
+        sut.stop();
+
+        sut = open(true);
+        final InMemoryAccountRepository recovered = new InMemoryAccountRepository(sut);
+        sut.replay(recovered.recoveryHandler());
+
+        assertThat(repository.find("foo").getBalance()).isEqualByComparingTo("100");
+        assertThat(recovered.find("foo").getBalance()).isEqualByComparingTo("100");
+        assertThat(recovered.find("bar").getBalance()).isEqualByComparingTo("100");
+        assertThat(repository.totalBalance()).isEqualByComparingTo("200");
+    }
+
+    private void appendConcurrently(final int threads, final int appendsPerThread) throws InterruptedException {
+        final ExecutorService es = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            es.execute(() -> {
+                for (int i = 0; i < appendsPerThread; i++) {
+                    sut.awaitDurable(sut.appendTransfer("foo", BigDecimal.ONE, "bar", BigDecimal.TEN));
+                }
+            });
+        }
+        es.shutdown();
+        assertThat(es.awaitTermination(60, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private FileJournal open(final boolean groupCommit) throws IOException {
+        return new FileJournal(dir, groupCommit, 1, TimeUnit.MILLISECONDS, 64);
+    }
+
+    private static RecordHandler recorder(final List<String> records) {
+        return new RecordHandler() {
+            @Override
+            public void onCreate(final String accountNo, final BigDecimal balance) {
+                records.add("create " + accountNo + " " + balance);
+            }
+
+            @Override
+            public void onBalance(final String accountNo, final BigDecimal balance) {
+                records.add("balance " + accountNo + " " + balance);
+            }
+
+            @Override
+            public void onClear() {
+                records.add("clear");
+            }
+        };
+    }
+}
@@ -0,0 +1,115 @@
+package net.lugburz.tinytransfer.journal;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link SnapshotStore}.
+ */
+class SnapshotStoreTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void load_withoutSnapshot_shouldReturnZero() throws IOException {
+        final Map<String, BigDecimal> loaded = new LinkedHashMap<>();
+
+        assertThat(new SnapshotStore(dir).load(collector(loaded))).isEqualTo(0);
+        assertThat(loaded).isEmpty();
+    }
+
+    @Test
+    public void load_afterWrite_shouldRestoreAllBalances() throws IOException {
+        final Map<String, BigDecimal> balances = balances(1000);
+        final SnapshotStore sut = new SnapshotStore(dir);
+
+        assertThat(sut.write(42, balances::forEach)).isEqualTo(1000);
+
+        final Map<String, BigDecimal> loaded = new LinkedHashMap<>();
+        assertThat(sut.load(collector(loaded))).isEqualTo(42);
+        assertThat(loaded).isEqualTo(balances);
+    }
+
+    @Test
+    public void load_withEntriesCrossingMappedRegions_shouldRestoreAllBalances() throws IOException {
+        final Map<String, BigDecimal> balances = balances(1000);
+        final SnapshotStore sut = new SnapshotStore(dir, 64);
+        sut.write(7, balances::forEach);
+
+        final Map<String, BigDecimal> loaded = new LinkedHashMap<>();
+
+        assertThat(sut.load(collector(loaded))).isEqualTo(7);
+        assertThat(loaded).isEqualTo(balances);
+    }
+
+    @Test
+    public void write_shouldReplaceOlderSnapshots() throws IOException {
+        final SnapshotStore sut = new SnapshotStore(dir);
+        sut.write(1, balances(3)::forEach);
+        sut.write(5, balances(2)::forEach);
+
+        final Map<String, BigDecimal> loaded = new LinkedHashMap<>();
+
+        assertThat(sut.load(collector(loaded))).isEqualTo(5);
+        assertThat(loaded).hasSize(2);
+        try (Stream<Path> files = Files.list(dir)) {
+            assertThat(files.map(file -> file.getFileName().toString()).collect(Collectors.toList()))
+                    .containsExactly("snapshot-00000000000000000005.bin");
+        }
+    }
+
+    @Test
+    public void load_onCorruptSnapshot_shouldThrowIOException() throws IOException {
+        final SnapshotStore sut = new SnapshotStore(dir);
+        sut.write(3, balances(10)::forEach);
+        try (FileChannel channel = FileChannel.open(dir.resolve("snapshot-00000000000000000003.bin"),
+                StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{'x'}), 20);
+        }
+
+        assertThrows(IOException.class, () -> sut.load(collector(new LinkedHashMap<>())));
+    }
+
+    private static Map<String, BigDecimal> balances(final int accounts) {
+        final Map<String, BigDecimal> balances = new LinkedHashMap<>();
+        for (int i = 0; i < accounts; i++) {
+            balances.put("acc-" + i + "-ä", BigDecimal.valueOf(i * 1_000_003L, i % 5));
+        }
+        return balances;
+    }
+
+    private static RecordHandler collector(final Map<String, BigDecimal> loaded) {
+        return new RecordHandler() {
+            @Override
+            public void onCreate(final String accountNo, final BigDecimal balance) {
+                loaded.put(accountNo, balance);
+            }
+
+            @Override
+            public void onBalance(final String accountNo, final BigDecimal balance) {
+                throw new AssertionError("Snapshots only create accounts.");
+            }
+
+            @Override
+            public void onClear() {
+                throw new AssertionError("Snapshots only create accounts.");
+            }
+        };
+    }
+}
@@ -0,0 +1,107 @@
+package net.lugburz.tinytransfer.journal;
+
+import net.lugburz.tinytransfer.account.InMemoryAccountRepository;
+import net.lugburz.tinytransfer.transfer.StripedLockTransferService;
+import net.lugburz.tinytransfer.transfer.TransferException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link Snapshotter}.
+ */
+class SnapshotterTest {
+
+    private static final int ACCOUNTS = 64;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void snapshot_duringConcurrentTransfers_shouldRecoverSameBalances() throws Exception {
+        final FileJournal journal = open();
+        journal.replay(new InMemoryAccountRepository().recoveryHandler());
+        journal.start();
+        final InMemoryAccountRepository repository = new InMemoryAccountRepository(journal);
+        final StripedLockTransferService transferService = new StripedLockTransferService(repository, 8);
+        final Snapshotter sut = new Snapshotter(journal, new SnapshotStore(dir), repository, () -> {
+            repository.awaitAppliedChanges();
+            transferService.awaitAppliedChanges();
+        }, 0, TimeUnit.SECONDS);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            repository.create("acc-" + i, BigDecimal.valueOf(100));
+        }
+
+        final ExecutorService es = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            es.execute(() -> {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 2_000; i++) {
+                    try {
+                        transferService.transfer("acc-" + random.nextInt(ACCOUNTS), "acc-" + random.nextInt(ACCOUNTS),
+                                BigDecimal.valueOf(random.nextInt(1, 3000), 2));
+                    } catch (final TransferException ignored) {
+                        // insufficient funds are expected
+                    }
+                }
+            });
+        }
+        es.shutdown();
+        long position = 0;
+        while (!es.awaitTermination(20, TimeUnit.MILLISECONDS)) {
+            position = sut.snapshot();
+        }
+        journal.stop();
+
+        final FileJournal reopened = open();
+        final InMemoryAccountRepository recovered = new InMemoryAccountRepository(reopened);
+        final long covered = new SnapshotStore(dir).load(recovered.recoveryHandler());
+        reopened.replay(recovered.recoveryHandler(), covered);
+
+        assertThat(covered).isEqualTo(position);
+        for (int i = 0; i < ACCOUNTS; i++) {
+            assertThat(recovered.find("acc-" + i).getBalance())
+                    .isEqualByComparingTo(repository.find("acc-" + i).getBalance());
+        }
+        reopened.stop();
+    }
+
+    @Test
+    public void snapshot_shouldDiscardCoveredSegments() throws Exception {
+        final FileJournal journal = open();
+        journal.replay(new InMemoryAccountRepository().recoveryHandler());
+        journal.start();
+        final InMemoryAccountRepository repository = new InMemoryAccountRepository(journal);
+        final Snapshotter sut = new Snapshotter(journal, new SnapshotStore(dir), repository,
+                repository::awaitAppliedChanges, 0, TimeUnit.SECONDS);
+        for (int i = 0; i < 5; i++) {
+            repository.create("acc-" + i, BigDecimal.ONE);
+            sut.snapshot();
+        }
+        journal.stop();
+
+        assertThat(countFiles("journal-")).isEqualTo(1);
+        assertThat(countFiles("snapshot-")).isEqualTo(1);
+    }
+
+    private FileJournal open() throws IOException {
+        return new FileJournal(dir, true, 1, TimeUnit.MILLISECONDS, 64);
+    }
+
+    private long countFiles(final String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(file -> file.getFileName().toString().startsWith(prefix)).count();
+        }
+    }
+}
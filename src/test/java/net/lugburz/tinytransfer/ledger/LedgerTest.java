@@ -0,0 +1,181 @@
+package net.lugburz.tinytransfer.ledger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link Ledger}.
+ */
+class LedgerTest {
+
+    private static final String ACC_NO_1 = "123";
+    private static final String ACC_NO_2 = "456";
+    private static final String ACC_NO_3 = "789";
+
+    private Ledger sut;
+
+    @BeforeEach
+    public void setup() {
+        sut = new Ledger(100, Clock.fixed(Instant.ofEpochMilli(42), ZoneOffset.UTC));
+    }
+
+    @Test
+    public void statement_onUnknownAccount_shouldBeEmpty() {
+        final Statement statement = sut.statement(ACC_NO_1, null, 10);
+
+        assertThat(statement.getTransfers()).isEmpty();
+        assertThat(statement.getNext()).isNull();
+    }
+
+    @Test
+    public void statement_shouldListTransfersOfAccountNewestFirst() {
+        sut.record(ACC_NO_1, ACC_NO_2, BigDecimal.ONE);
+        sut.record(ACC_NO_2, ACC_NO_3, BigDecimal.TEN);
+        sut.record(ACC_NO_3, ACC_NO_1, BigDecimal.valueOf(5));
+
+        final Statement statement = sut.statement(ACC_NO_1, null, 10);
+
+        assertThat(statement.getTransfers()).extracting(LedgerEntry::getId).containsExactly(2L, 0L);
+        assertThat(statement.getTransfers().get(0).getSenderAccNo()).isEqualTo(ACC_NO_3);
+        assertThat(statement.getTransfers().get(0).getAmount()).isEqualTo(BigDecimal.valueOf(5));
+        assertThat(statement.getTransfers().get(0).getTimestamp()).isEqualTo(42);
+        assertThat(statement.getNext()).isNull();
+    }
+
+    @Test
+    public void statement_withCursor_shouldContinueAfterPreviousPage() {
+        for (int i = 0; i < 5; i++) {
+            sut.record(ACC_NO_1, ACC_NO_2, BigDecimal.valueOf(i + 1));
+            sut.record(ACC_NO_2, ACC_NO_3, BigDecimal.ONE);
+        }
+
+        final Statement first = sut.statement(ACC_NO_1, null, 2);
+        final Statement second = sut.statement(ACC_NO_1, first.getNext(), 2);
+        final Statement third = sut.statement(ACC_NO_1, second.getNext(), 2);
+
+        assertThat(first.getTransfers()).extracting(LedgerEntry::getId).containsExactly(8L, 6L);
+        assertThat(second.getTransfers()).extracting(LedgerEntry::getId).containsExactly(4L, 2L);
+        assertThat(third.getTransfers()).extracting(LedgerEntry::getId).containsExactly(0L);
+        assertThat(third.getNext()).isNull();
+    }
+
+    @Test
+    public void statement_onTransferToSelf_shouldListItOnce() {
+        sut.record(ACC_NO_1, ACC_NO_1, BigDecimal.ONE);
+        sut.record(ACC_NO_1, ACC_NO_2, BigDecimal.ONE);
+
+        assertThat(sut.statement(ACC_NO_1, null, 10).getTransfers()).extracting(LedgerEntry::getId)
+                .containsExactly(1L, 0L);
+    }
+
+    @Test
+    public void statement_onCursorOfOtherAccount_shouldThrowIllegalArgumentException() {
+        sut.record(ACC_NO_1, ACC_NO_2, BigDecimal.ONE);
+        sut.record(ACC_NO_2, ACC_NO_3, BigDecimal.ONE);
+
+        assertThrows(IllegalArgumentException.class, () -> sut.statement(ACC_NO_1, 1L, 10));
+        assertThrows(IllegalArgumentException.class, () -> sut.statement(ACC_NO_1, 2L, 10));
+    }
+
+    @Test
+    public void record_beyondRetention_shouldDiscardOldestChunk() {
+        final int total = Ledger.CHUNK_SIZE * 3;
+        for (int i = 0; i < total; i++) {
+            sut.record(ACC_NO_1, ACC_NO_2, BigDecimal.ONE);
+        }
+
+        // 100 entries fit into one chunk; the ring keeps it plus the chunk being filled.
+        assertThat(sut.size()).isEqualTo(Ledger.CHUNK_SIZE * 2);
+        final Statement statement = sut.statement(ACC_NO_1, (long) Ledger.CHUNK_SIZE + 1, Ledger.CHUNK_SIZE);
+        assertThat(statement.getTransfers()).extracting(LedgerEntry::getId)
+                .containsExactly((long) Ledger.CHUNK_SIZE);
+        assertThat(statement.getNext()).isNull();
+        assertThat(sut.statement(ACC_NO_1, 0L, 10).getTransfers()).isEmpty();
+    }
+
+    @Test
+    public void clear_shouldDiscardAllEntriesAndExpireCursors() {
+        sut.record(ACC_NO_1, ACC_NO_2, BigDecimal.ONE);
+        sut.record(ACC_NO_1, ACC_NO_2, BigDecimal.ONE);
+
+        sut.clear();
+        sut.record(ACC_NO_2, ACC_NO_1, BigDecimal.TEN);
+
+        assertThat(sut.size()).isEqualTo(1);
+        assertThat(sut.statement(ACC_NO_1, null, 10).getTransfers()).extracting(LedgerEntry::getId)
+                .containsExactly(2L);
+        assertThat(sut.statement(ACC_NO_1, 1L, 10).getTransfers()).isEmpty();
+    }
+
+    @Test
+    public void record_beyondRetention_shouldDropAccountsWithoutRetainedEntries() {
+        for (int i = 0; i < Ledger.CHUNK_SIZE; i++) {
+            sut.record("old-" + i, ACC_NO_1, BigDecimal.ONE);
+        }
+        for (int i = 0; i < Ledger.CHUNK_SIZE * 2; i++) {
+            sut.record(ACC_NO_2, ACC_NO_3, BigDecimal.ONE);
+        }
+
+        // Only the accounts of the entries which are still retained remain indexed.
+        assertThat(sut.indexedAccounts()).isEqualTo(2);
+        assertThat(sut.statement("old-0", null, 10).getTransfers()).isEmpty();
+        assertThat(sut.statement(ACC_NO_2, null, 1).getTransfers()).hasSize(1);
+    }
+
+    @Test
+    public void record_fromManyThreads_shouldLinkEveryEntryOfAnAccountNewestFirst() throws Exception {
+        sut = new Ledger(1_000_000, 4, Clock.systemUTC());
+        final int threads = 8;
+        final int transfers = 5_000;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<?>> recorders = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final String sender = "sender-" + t;
+                recorders.add(executor.submit(() -> {
+                    for (int i = 0; i < transfers; i++) {
+                        sut.record(sender, i % 2 == 0 ? ACC_NO_1 : "receiver-" + (i % 16), BigDecimal.ONE);
+                    }
+                }));
+            }
+            for (final Future<?> recorder : recorders) {
+                recorder.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertThat(sut.size()).isEqualTo(threads * transfers);
+        final List<LedgerEntry> received = sut.statement(ACC_NO_1, null, threads * transfers).getTransfers();
+        assertThat(received).hasSize(threads * transfers / 2);
+        for (int i = 1; i < received.size(); i++) {
+            assertThat(received.get(i).getId()).isLessThan(received.get(i - 1).getId());
+        }
+        assertThat(sut.statement("sender-3", null, transfers * 2).getTransfers()).hasSize(transfers)
+                .allMatch(entry -> entry.getSenderAccNo().equals("sender-3"));
+    }
+
+    @Test
+    public void none_shouldRecordNothing() {
+        Ledger.NONE.record(ACC_NO_1, ACC_NO_2, BigDecimal.ONE);
+
+        assertFalse(Ledger.NONE.isEnabled());
+        assertThat(Ledger.NONE.size()).isZero();
+        assertThrows(IllegalStateException.class, () -> Ledger.NONE.statement(ACC_NO_1, null, 10));
+    }
+}
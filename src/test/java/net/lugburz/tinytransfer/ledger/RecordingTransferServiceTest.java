@@ -0,0 +1,67 @@
+package net.lugburz.tinytransfer.ledger;
+
+import net.lugburz.tinytransfer.account.InMemoryAccountRepository;
+import net.lugburz.tinytransfer.transfer.BatchMode;
+import net.lugburz.tinytransfer.transfer.StripedLockTransferService;
+import net.lugburz.tinytransfer.transfer.Transfer;
+import net.lugburz.tinytransfer.transfer.TransferException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link RecordingTransferService}.
+ */
+class RecordingTransferServiceTest {
+
+    private static final String ACC_NO_1 = "123";
+    private static final String ACC_NO_2 = "456";
+
+    private Ledger ledger;
+    private RecordingTransferService sut;
+
+    @BeforeEach
+    public void setup() {
+        final InMemoryAccountRepository repo = new InMemoryAccountRepository();
+        repo.create(ACC_NO_1, BigDecimal.valueOf(10));
+        repo.create(ACC_NO_2, BigDecimal.valueOf(10));
+        ledger = new Ledger(100);
+        sut = new RecordingTransferService(new StripedLockTransferService(repo), ledger);
+    }
+
+    @Test
+    public void transfer_onValidTransfer_shouldRecordEntry() {
+        sut.transfer(ACC_NO_1, ACC_NO_2, BigDecimal.ONE);
+
+        assertThat(ledger.statement(ACC_NO_2, null, 10).getTransfers()).hasSize(1);
+    }
+
+    @Test
+    public void transfer_onRejectedTransfer_shouldRecordNothing() {
+        assertThrows(TransferException.class, () -> sut.transfer(ACC_NO_1, ACC_NO_2, BigDecimal.valueOf(11)));
+
+        assertThat(ledger.size()).isZero();
+    }
+
+    @Test
+    public void transferAsync_onValidTransfer_shouldRecordEntry() {
+        sut.transferAsync(ACC_NO_1, ACC_NO_2, BigDecimal.ONE).join();
+
+        assertThat(ledger.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void transferAll_bestEffort_shouldRecordAppliedTransfersOnly() {
+        sut.transferAll(Arrays.asList(
+                new Transfer(ACC_NO_1, ACC_NO_2, BigDecimal.valueOf(11)),
+                new Transfer(ACC_NO_1, ACC_NO_2, BigDecimal.valueOf(3))), BatchMode.BEST_EFFORT);
+
+        assertThat(ledger.statement(ACC_NO_1, null, 10).getTransfers()).extracting(LedgerEntry::getAmount)
+                .containsExactly(BigDecimal.valueOf(3));
+    }
+}
@@ -0,0 +1,183 @@
+package net.lugburz.tinytransfer.replication;
+
+import net.lugburz.tinytransfer.account.Account;
+import net.lugburz.tinytransfer.account.InMemoryAccountRepository;
+import net.lugburz.tinytransfer.journal.ChangeFeed;
+import net.lugburz.tinytransfer.journal.Journal;
+import net.lugburz.tinytransfer.transfer.StripedLockTransferService;
+import net.lugburz.tinytransfer.transfer.TransferException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link Replica} following a {@link FeedServer} on localhost.
+ */
+class ReplicaTest {
+
+    private static final int ACCOUNTS = 32;
+
+    private final List<Node> nodes = new ArrayList<>();
+
+    private Node primary;
+    private FeedServer primaryServer;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        primary = new Node(1024);
+        primaryServer = primary.server();
+        primaryServer.start();
+    }
+
+    @AfterEach
+    public void teardown() throws Exception {
+        for (final Node node : nodes) {
+            if (node.replica != null) {
+                node.replica.stop();
+            }
+        }
+        primaryServer.stop();
+    }
+
+    @Test
+    public void replica_onConnect_shouldLoadSnapshotAndFollowChanges() throws Exception {
+        primary.repository.create("foo", BigDecimal.TEN);
+        final Node replica = follow(primaryServer, 1024);
+
+        await(() -> replica.replica.isSynced());
+        primary.repository.create("bar", BigDecimal.ZERO);
+        primary.transferService.transfer("foo", "bar", new BigDecimal("2.50"));
+
+        await(() -> replica.replica.sequence() == primary.feed.sequence());
+        assertThat(replica.repository.find("foo").getBalance()).isEqualByComparingTo("7.50");
+        assertThat(replica.repository.find("bar").getBalance()).isEqualByComparingTo("2.50");
+        assertThat(replica.replica.stalenessMillis()).isBetween(0L, 1000L);
+        assertThat(primaryServer.replicas()).isEqualTo(1);
+    }
+
+    @Test
+    public void replica_duringConcurrentTransfers_shouldConvergeToBalancesOfPrimary() throws Exception {
+        for (int i = 0; i < ACCOUNTS; i++) {
+            primary.repository.create("acc-" + i, BigDecimal.valueOf(100));
+        }
+        final ExecutorService es = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            es.execute(() -> {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 5_000; i++) {
+                    try {
+                        primary.transferService.transfer("acc-" + random.nextInt(ACCOUNTS),
+                                "acc-" + random.nextInt(ACCOUNTS), BigDecimal.valueOf(random.nextInt(1, 3000), 2));
+                    } catch (final TransferException ignored) {
+                        // insufficient funds are expected
+                    }
+                }
+            });
+        }
+        // Joins while transfers run, starting from a snapshot which already contains part of them.
+        final Node replica = follow(primaryServer, 64);
+        es.shutdown();
+        assertThat(es.awaitTermination(1, TimeUnit.MINUTES)).isTrue();
+
+        await(() -> replica.replica.isSynced() && replica.replica.sequence() == primary.feed.sequence());
+        for (int i = 0; i < ACCOUNTS; i++) {
+            assertThat(replica.repository.find("acc-" + i).getBalance())
+                    .isEqualByComparingTo(primary.repository.find("acc-" + i).getBalance());
+        }
+        assertThat(replica.repository.totalBalance()).isEqualByComparingTo(BigDecimal.valueOf(100L * ACCOUNTS));
+        assertThat(replica.repository.isConsistent()).isTrue();
+    }
+
+    @Test
+    public void replica_onReconnect_shouldResumeWithoutSnapshot() throws Exception {
+        primary.repository.create("foo", BigDecimal.TEN);
+        final Node replica = follow(primaryServer, 1024);
+        await(() -> replica.replica.isSynced());
+        final Account foo = replica.repository.find("foo");
+
+        primaryServer.stop();
+        primary.repository.create("bar", BigDecimal.ONE);
+        primaryServer = primary.server(primaryServer.getPort());
+        primaryServer.start();
+
+        await(() -> replica.replica.sequence() == primary.feed.sequence());
+        assertThat(replica.repository.find("bar").getBalance()).isEqualByComparingTo("1");
+        // A snapshot would have replaced the account instances.
+        assertThat(replica.repository.find("foo")).isSameAs(foo);
+    }
+
+    @Test
+    public void promote_afterPrimaryFailed_shouldServeFeedToOtherReplicas() throws Exception {
+        primary.repository.create("foo", BigDecimal.TEN);
+        final Node first = follow(primaryServer, 1024);
+        final Node second = follow(primaryServer, 1024);
+        await(() -> first.replica.isSynced() && second.replica.isSynced());
+
+        primaryServer.stop();
+        first.replica.promote();
+        second.replica.follow(new InetSocketAddress("127.0.0.1", first.successor.getPort()));
+        first.repository.create("bar", BigDecimal.ZERO);
+        first.transferService.transfer("foo", "bar", BigDecimal.ONE);
+
+        await(() -> second.replica.sequence() == first.feed.sequence() && second.repository.size() == 2);
+        assertThat(first.replica.isPromoted()).isTrue();
+        assertThat(second.repository.find("bar").getBalance()).isEqualByComparingTo("1");
+        assertThat(second.repository.find("foo").getBalance()).isEqualByComparingTo("9");
+    }
+
+    private Node follow(final FeedServer server, final int capacity) {
+        final Node node = new Node(capacity);
+        node.successor = node.server();
+        node.replica = new Replica(node.repository, new InetSocketAddress("127.0.0.1", server.getPort()),
+                node.successor, 10, 1000);
+        node.replica.start();
+        return node;
+    }
+
+    private static void await(final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition met in time").isLessThan(deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private final class Node {
+
+        private final ChangeFeed feed;
+        private final InMemoryAccountRepository repository;
+        private final StripedLockTransferService transferService;
+        private FeedServer successor;
+        private Replica replica;
+
+        private Node(final int capacity) {
+            feed = new ChangeFeed(Journal.NONE, capacity);
+            repository = new InMemoryAccountRepository(feed);
+            transferService = new StripedLockTransferService(repository, 8);
+            nodes.add(this);
+        }
+
+        private FeedServer server() {
+            return server(0);
+        }
+
+        private FeedServer server(final int port) {
+            return new FeedServer(new InetSocketAddress("127.0.0.1", port), feed, repository, () -> {
+                repository.awaitAppliedChanges();
+                transferService.awaitAppliedChanges();
+            }, 10, TimeUnit.MILLISECONDS);
+        }
+    }
+}
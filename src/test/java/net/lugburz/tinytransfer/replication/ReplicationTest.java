@@ -0,0 +1,177 @@
+package net.lugburz.tinytransfer.replication;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dropwizard.jackson.Jackson;
+import io.dropwizard.testing.DropwizardTestSupport;
+import net.lugburz.tinytransfer.TinyTransferApplication;
+import net.lugburz.tinytransfer.TinyTransferConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for a primary and a replica on localhost.
+ */
+class ReplicationTest {
+
+    private static final ObjectMapper MAPPER = Jackson.newObjectMapper();
+
+    private final List<Path> configs = new ArrayList<>();
+    private DropwizardTestSupport<TinyTransferConfiguration> primary;
+    private DropwizardTestSupport<TinyTransferConfiguration> replica;
+    private Client client;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        final int feedPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            feedPort = socket.getLocalPort();
+        }
+        primary = start("role: PRIMARY", "port: " + feedPort);
+        replica = start("role: REPLICA", "primaryPort: " + feedPort, "port: 0", "maxStaleness: 1s");
+        client = ClientBuilder.newClient();
+    }
+
+    @AfterEach
+    public void teardown() throws IOException {
+        client.close();
+        replica.after();
+        if (primary != null) {
+            primary.after();
+        }
+        for (final Path config : configs) {
+            Files.delete(config);
+        }
+    }
+
+    @Test
+    public void getAccount_onReplica_shouldReturnBalanceOfPrimaryWithStaleness() throws Exception {
+        post(primary, "/accounts", "{\"accountNo\":\"foo\",\"balance\":100}");
+        post(primary, "/accounts", "{\"accountNo\":\"bar\",\"balance\":0}");
+        post(primary, "/transfer", "{\"senderAccNo\":\"foo\",\"receiverAccNo\":\"bar\",\"amount\":40}");
+
+        awaitBalance(replica, "bar", "40");
+        final Response response = client.target(url(replica, "/accounts/foo")).request().get();
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(MAPPER.readTree(response.readEntity(String.class)).path("balance").decimalValue())
+                .isEqualByComparingTo("60");
+        assertThat(Long.parseLong(response.getHeaderString(ReplicaFilter.STALENESS))).isBetween(0L, 1000L);
+    }
+
+    @Test
+    public void transfer_onReplica_shouldReturn503() throws Exception {
+        post(primary, "/accounts", "{\"accountNo\":\"foo\",\"balance\":100}");
+        post(primary, "/accounts", "{\"accountNo\":\"bar\",\"balance\":0}");
+        awaitBalance(replica, "bar", "0");
+
+        assertThat(post(replica, "/transfer", "{\"senderAccNo\":\"foo\",\"receiverAccNo\":\"bar\",\"amount\":1}"))
+                .isEqualTo(503);
+        assertThat(client.target(url(replica, "/accounts/foo/transfers")).request().get().getStatus())
+                .isEqualTo(503);
+    }
+
+    @Test
+    public void getAccount_onReplicaOfFailedPrimary_shouldReturn503OnceStalerThanBound() throws Exception {
+        post(primary, "/accounts", "{\"accountNo\":\"foo\",\"balance\":100}");
+        awaitBalance(replica, "foo", "100");
+
+        primary.after();
+        primary = null;
+        Thread.sleep(300);
+
+        final Response stricter = client.target(url(replica, "/accounts/foo")).request()
+                .header(ReplicaFilter.MAX_STALENESS, "200").get();
+        assertThat(stricter.getStatus()).isEqualTo(503);
+        assertThat(client.target(url(replica, "/accounts/foo")).request().get().getStatus()).isEqualTo(200);
+        Thread.sleep(1000);
+        assertThat(client.target(url(replica, "/accounts/foo")).request().get().getStatus()).isEqualTo(503);
+    }
+
+    @Test
+    public void promote_afterPrimaryFailed_shouldAcceptTransfersOnReplica() throws Exception {
+        post(primary, "/accounts", "{\"accountNo\":\"foo\",\"balance\":100}");
+        post(primary, "/accounts", "{\"accountNo\":\"bar\",\"balance\":0}");
+        awaitBalance(replica, "bar", "0");
+
+        primary.after();
+        primary = null;
+        final Response promoted = client.target("http://127.0.0.1:" + replica.getAdminPort() + "/tasks/promote")
+                .request().post(null);
+
+        assertThat(promoted.getStatus()).isEqualTo(200);
+        assertThat(post(replica, "/transfer", "{\"senderAccNo\":\"foo\",\"receiverAccNo\":\"bar\",\"amount\":25}"))
+                .isEqualTo(200);
+        final Response response = client.target(url(replica, "/accounts/bar")).request().get();
+        assertThat(response.getHeaderString(ReplicaFilter.STALENESS)).isNull();
+        assertThat(MAPPER.readTree(response.readEntity(String.class)).path("balance").decimalValue())
+                .isEqualByComparingTo("25");
+    }
+
+    private DropwizardTestSupport<TinyTransferConfiguration> start(final String... replication) throws Exception {
+        final List<String> lines = new ArrayList<>(Arrays.asList(
+                "server:",
+                "  applicationConnectors: [{type: http, port: 0}]",
+                "  adminConnectors: [{type: http, port: 0}]",
+                "  requestLog:",
+                "    appenders: []",
+                "logging:",
+                "  level: WARN",
+                "replication:",
+                "  enabled: true",
+                "  heartbeatInterval: 20ms",
+                "  reconnectInterval: 20ms"));
+        for (final String option : replication) {
+            lines.add("  " + option);
+        }
+        final Path config = Files.createTempFile("replication-test", ".yml");
+        Files.write(config, lines);
+        configs.add(config);
+        final DropwizardTestSupport<TinyTransferConfiguration> app =
+                new DropwizardTestSupport<>(TinyTransferApplication.class, config.toString());
+        app.before();
+        return app;
+    }
+
+    private int post(final DropwizardTestSupport<TinyTransferConfiguration> app, final String path,
+                     final String json) {
+        final Response response = client.target(url(app, path)).request().post(Entity.json(json));
+        response.close();
+        return response.getStatus();
+    }
+
+    private void awaitBalance(final DropwizardTestSupport<TinyTransferConfiguration> app, final String accountNo,
+                              final String balance) throws Exception {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (true) {
+            final Response response = client.target(url(app, "/accounts/" + accountNo)).request().get();
+            final String body = response.readEntity(String.class);
+            if (response.getStatus() == 200
+                    && MAPPER.readTree(body).path("balance").decimalValue().compareTo(new BigDecimal(balance)) == 0) {
+                return;
+            }
+            assertThat(System.nanoTime()).as("replicated in time").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static String url(final DropwizardTestSupport<TinyTransferConfiguration> app, final String path) {
+        return "http://127.0.0.1:" + app.getLocalPort() + path;
+    }
+}
@@ -0,0 +1,214 @@
+package net.lugburz.tinytransfer.schedule;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link ScheduleStore}.
+ */
+class ScheduleStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void load_afterAppends_shouldReturnPendingTransfers() throws IOException {
+        final Path file = directory.resolve("scheduled.bin");
+        try (ScheduleStore store = new ScheduleStore(file)) {
+            assertThat(store.load()).isEmpty();
+            store.appendSchedule(transfer(store.nextId(), null));
+            store.appendSchedule(transfer(store.nextId(), Recurrence.MONTHLY));
+            store.appendSchedule(transfer(store.nextId(), null));
+            store.appendRemove(1);
+            store.awaitDurable(store.appendAdvance(2, 3));
+        }
+
+        try (ScheduleStore store = new ScheduleStore(file)) {
+            final List<ScheduledTransfer> pending = new ArrayList<>(store.load());
+
+            assertThat(pending).extracting(ScheduledTransfer::getId).containsExactly(2L, 3L);
+            final ScheduledTransfer recurring = pending.get(0);
+            assertThat(recurring.getOccurrence()).isEqualTo(3);
+            assertThat(recurring.getRecurrence()).isEqualTo(Recurrence.MONTHLY);
+            assertThat(recurring.getSenderAccNo()).isEqualTo("foo");
+            assertThat(recurring.getReceiverAccNo()).isEqualTo("bär");
+            assertThat(recurring.getAmount()).isEqualTo(new BigDecimal("12.50"));
+            assertThat(recurring.getExecuteAt()).isEqualTo(Recurrence.MONTHLY.executionTime(1_000, 3));
+        }
+    }
+
+    @Test
+    public void nextId_afterRestart_shouldNotReuseIdsOfRemovedTransfers() throws IOException {
+        final Path file = directory.resolve("scheduled.bin");
+        try (ScheduleStore store = new ScheduleStore(file)) {
+            store.load();
+            store.appendSchedule(transfer(store.nextId(), null));
+            store.appendSchedule(transfer(store.nextId(), null));
+            store.appendRemove(1);
+            store.awaitDurable(store.appendRemove(2));
+        }
+        // The second start compacts the file down to its header.
+        try (ScheduleStore store = new ScheduleStore(file)) {
+            assertThat(store.load()).isEmpty();
+        }
+
+        try (ScheduleStore store = new ScheduleStore(file)) {
+            store.load();
+            assertThat(store.nextId()).isEqualTo(3);
+        }
+    }
+
+    @Test
+    public void load_withIncompleteLastRecord_shouldDropIt() throws IOException {
+        final Path file = directory.resolve("scheduled.bin");
+        try (ScheduleStore store = new ScheduleStore(file)) {
+            store.load();
+            store.appendSchedule(transfer(store.nextId(), null));
+            store.awaitDurable(store.appendSchedule(transfer(store.nextId(), null)));
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(file) - 3);
+        }
+
+        try (ScheduleStore store = new ScheduleStore(file)) {
+            final Collection<ScheduledTransfer> pending = store.load();
+
+            assertThat(pending).extracting(ScheduledTransfer::getId).containsExactly(1L);
+        }
+    }
+
+    @Test
+    public void load_withCorruptRecordBeforeEnd_shouldThrowIOException() throws IOException {
+        final Path file = directory.resolve("scheduled.bin");
+        try (ScheduleStore store = new ScheduleStore(file)) {
+            store.load();
+            store.appendSchedule(transfer(store.nextId(), null));
+            store.awaitDurable(store.appendSchedule(transfer(store.nextId(), null)));
+        }
+        final byte[] bytes = Files.readAllBytes(file);
+        // Within the account number of the first record.
+        bytes[12 + 5 + 27] ^= 1;
+        Files.write(file, bytes);
+
+        assertThrows(IOException.class, () -> new ScheduleStore(file).load());
+    }
+
+    @Test
+    public void load_withOversizeLengthBeforeEnd_shouldThrowIOException() throws IOException {
+        final Path file = directory.resolve("scheduled.bin");
+        try (ScheduleStore store = new ScheduleStore(file)) {
+            store.load();
+            store.appendSchedule(transfer(store.nextId(), null));
+            store.awaitDurable(store.appendSchedule(transfer(store.nextId(), null)));
+        }
+        final byte[] bytes = Files.readAllBytes(file);
+        // The high byte of the length of the first record.
+        bytes[12 + 1] = 0x7f;
+        Files.write(file, bytes);
+
+        assertThrows(IOException.class, () -> new ScheduleStore(file).load());
+    }
+
+    @Test
+    public void load_withInvalidLengthInHeaderAtEnd_shouldDropIt() throws IOException {
+        final Path file = directory.resolve("scheduled.bin");
+        try (ScheduleStore store = new ScheduleStore(file)) {
+            store.load();
+            store.awaitDurable(store.appendSchedule(transfer(store.nextId(), null)));
+        }
+        final long size = Files.size(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            // The type and a torn length of a second record.
+            channel.write(ByteBuffer.wrap(new byte[]{1, -1, -1, -1, -1, 0}));
+        }
+
+        try (ScheduleStore store = new ScheduleStore(file)) {
+            assertThat(store.load()).extracting(ScheduledTransfer::getId).containsExactly(1L);
+        }
+        assertThat(Files.size(file)).isEqualTo(size);
+    }
+
+    @Test
+    public void appendSchedule_onOversizeRecord_shouldRejectItAndKeepAppending() throws IOException {
+        final Path file = directory.resolve("scheduled.bin");
+        final char[] sender = new char[ScheduleStore.MAX_RECORD_BYTES / 2 + 1];
+        Arrays.fill(sender, 'ä');
+        try (ScheduleStore store = new ScheduleStore(file)) {
+            store.load();
+            final ScheduledTransfer oversize =
+                    new ScheduledTransfer(store.nextId(), new String(sender), "bar", BigDecimal.ONE, 1_000, null, 0);
+            assertThrows(IllegalArgumentException.class, () -> store.appendSchedule(oversize));
+            store.awaitDurable(store.appendSchedule(transfer(store.nextId(), null)));
+        }
+
+        try (ScheduleStore store = new ScheduleStore(file)) {
+            assertThat(store.load()).extracting(ScheduledTransfer::getId).containsExactly(2L);
+        }
+    }
+
+    @Test
+    public void compact_afterManyAdvances_shouldShrinkFileAndKeepAppending() throws IOException {
+        final Path file = directory.resolve("scheduled.bin");
+        try (ScheduleStore store = new ScheduleStore(file, 16)) {
+            store.load();
+            store.appendSchedule(transfer(store.nextId(), Recurrence.DAILY));
+            store.appendSchedule(transfer(store.nextId(), null));
+            for (int occurrence = 1; occurrence <= 16; occurrence++) {
+                assertThat(store.needsCompaction()).isFalse();
+                store.appendAdvance(1, occurrence);
+            }
+            assertThat(store.needsCompaction()).isTrue();
+            final long before = Files.size(file);
+
+            store.compact(Arrays.asList(transfer(1, Recurrence.DAILY).withOccurrence(16), transfer(2, null)));
+
+            assertThat(store.needsCompaction()).isFalse();
+            assertThat(Files.size(file)).isLessThan(before - 16 * 17);
+            store.awaitDurable(store.appendRemove(2));
+        }
+
+        try (ScheduleStore store = new ScheduleStore(file)) {
+            final List<ScheduledTransfer> pending = new ArrayList<>(store.load());
+
+            assertThat(pending).extracting(ScheduledTransfer::getId).containsExactly(1L);
+            assertThat(pending.get(0).getOccurrence()).isEqualTo(16);
+            assertThat(store.nextId()).isEqualTo(3);
+        }
+    }
+
+    @Test
+    public void needsCompaction_shouldWaitUntilMostRecordsAreSuperseded() throws IOException {
+        try (ScheduleStore store = new ScheduleStore(directory.resolve("scheduled.bin"), 4)) {
+            store.load();
+            for (int i = 0; i < 10; i++) {
+                store.appendSchedule(transfer(store.nextId(), null));
+            }
+            store.appendRemove(1);
+            store.appendRemove(2);
+            // Two removed transfers and their removals make four superseded records, against eight pending ones.
+            assertThat(store.needsCompaction()).isFalse();
+            store.appendRemove(3);
+            store.appendRemove(4);
+            assertThat(store.needsCompaction()).isTrue();
+        }
+    }
+
+    private static ScheduledTransfer transfer(final long id, final Recurrence recurrence) {
+        return new ScheduledTransfer(id, "foo", "bär", new BigDecimal("12.50"), 1_000, recurrence, 0);
+    }
+}
@@ -0,0 +1,136 @@
+package net.lugburz.tinytransfer.schedule;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.dropwizard.jackson.Jackson;
+import io.dropwizard.testing.DropwizardTestSupport;
+import net.lugburz.tinytransfer.TinyTransferApplication;
+import net.lugburz.tinytransfer.TinyTransferConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.ClientBuilder;
+import javax.ws.rs.client.Entity;
+import javax.ws.rs.core.Response;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Integration tests for {@link ScheduledTransferResource}.
+ */
+class ScheduledTransferResourceTest {
+
+    private static final ObjectMapper MAPPER = Jackson.newObjectMapper();
+
+    @TempDir
+    Path directory;
+
+    private DropwizardTestSupport<TinyTransferConfiguration> app;
+    private Client client;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        final Path config = directory.resolve("config.yml");
+        Files.write(config, Arrays.asList(
+                "server:",
+                "  applicationConnectors: [{type: http, port: 0}]",
+                "  adminConnectors: [{type: http, port: 0}]",
+                "  requestLog:",
+                "    appenders: []",
+                "logging:",
+                "  level: WARN",
+                "scheduler:",
+                "  enabled: true",
+                "  file: " + directory.resolve("scheduled.bin"),
+                "  tickDuration: 10ms"));
+        app = new DropwizardTestSupport<>(TinyTransferApplication.class, config.toString());
+        app.before();
+        client = ClientBuilder.newClient();
+        post("/accounts", "{\"accountNo\":\"foo\",\"balance\":100}").close();
+        post("/accounts", "{\"accountNo\":\"bar\",\"balance\":0}").close();
+    }
+
+    @AfterEach
+    public void teardown() {
+        client.close();
+        app.after();
+    }
+
+    @Test
+    public void schedule_shouldReturn201AndPerformTransferOnceDue() throws Exception {
+        final Response response = post("/transfers/scheduled", "{\"senderAccNo\":\"foo\",\"receiverAccNo\":\"bar\","
+                + "\"amount\":12.5,\"executeAt\":" + (System.currentTimeMillis() + 200) + "}");
+
+        assertThat(response.getStatus()).isEqualTo(201);
+        final JsonNode transfer = MAPPER.readTree(response.readEntity(String.class));
+        assertThat(response.getLocation().getPath()).isEqualTo("/transfers/scheduled/" + transfer.get("id").asLong());
+        assertThat(transfer.has("occurrence")).isFalse();
+        awaitBalance("bar", "12.5");
+        assertThat(get("/transfers/scheduled/" + transfer.get("id").asLong()).getStatus()).isEqualTo(404);
+    }
+
+    @Test
+    public void cancel_shouldRemoveTransferFromList() throws Exception {
+        final long executeAt = System.currentTimeMillis() + TimeUnit.DAYS.toMillis(1);
+        final long id = MAPPER.readTree(post("/transfers/scheduled", "{\"senderAccNo\":\"foo\","
+                + "\"receiverAccNo\":\"bar\",\"amount\":1,\"executeAt\":" + executeAt + ",\"recurrence\":\"WEEKLY\"}")
+                .readEntity(String.class)).get("id").asLong();
+
+        final JsonNode listed = MAPPER.readTree(get("/transfers/scheduled?accountNo=bar").readEntity(String.class));
+        assertThat(listed).hasSize(1);
+        assertThat(listed.get(0).get("recurrence").asText()).isEqualTo("WEEKLY");
+        assertThat(listed.get(0).get("executeAt").asLong()).isEqualTo(executeAt);
+
+        assertThat(client.target(url("/transfers/scheduled/" + id)).request().delete().getStatus()).isEqualTo(204);
+        assertThat(client.target(url("/transfers/scheduled/" + id)).request().delete().getStatus()).isEqualTo(404);
+        assertThat(MAPPER.readTree(get("/transfers/scheduled").readEntity(String.class))).isEmpty();
+    }
+
+    @Test
+    public void schedule_withoutExecutionTime_shouldReturn422() {
+        final Response response =
+                post("/transfers/scheduled", "{\"senderAccNo\":\"foo\",\"receiverAccNo\":\"bar\",\"amount\":1}");
+
+        assertThat(response.getStatus()).isEqualTo(422);
+    }
+
+    @Test
+    public void schedule_withOverlongAccountNo_shouldReturn422() throws Exception {
+        final char[] sender = new char[ScheduledTransferRequest.MAX_ACCOUNT_NO_LENGTH + 1];
+        Arrays.fill(sender, 'f');
+        final Response response = post("/transfers/scheduled", "{\"senderAccNo\":\"" + new String(sender)
+                + "\",\"receiverAccNo\":\"bar\",\"amount\":1,\"executeAt\":0}");
+
+        assertThat(response.getStatus()).isEqualTo(422);
+        assertThat(MAPPER.readTree(get("/transfers/scheduled").readEntity(String.class))).isEmpty();
+    }
+
+    private Response post(final String path, final String json) {
+        return client.target(url(path)).request().post(Entity.json(json));
+    }
+
+    private Response get(final String path) {
+        return client.target(url(path)).request().get();
+    }
+
+    private void awaitBalance(final String accountNo, final String balance) throws Exception {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (MAPPER.readTree(get("/accounts/" + accountNo).readEntity(String.class)).path("balance")
+                .decimalValue().compareTo(new BigDecimal(balance)) != 0) {
+            assertThat(System.nanoTime()).as("transferred in time").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private String url(final String path) {
+        return "http://127.0.0.1:" + app.getLocalPort() + path;
+    }
+}
@@ -0,0 +1,117 @@
+package net.lugburz.tinytransfer.schedule;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link TimingWheel}.
+ */
+class TimingWheelTest {
+
+    @Test
+    public void advanceTo_shouldPassEntriesAtTheirTicksAcrossAllDigits() {
+        final long start = 1_700_000_000_123L;
+        final TimingWheel<Timer> sut = new TimingWheel<>(start);
+        final Random random = new Random(42);
+        final List<Timer> timers = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            // Up to 2^20 ticks ahead, so that entries are moved down from the third digit.
+            final Timer timer = new Timer(start + 1 + random.nextInt(1 << 20));
+            timers.add(timer);
+            sut.add(timer, timer.deadline);
+        }
+
+        final List<Timer> due = new ArrayList<>();
+        for (long tick = start + 997; tick <= start + (1 << 20) + 997; tick += 997) {
+            final long current = tick;
+            sut.advanceTo(tick, timer -> {
+                assertThat(timer.deadline).isGreaterThan(current - 997).isLessThanOrEqualTo(current);
+                due.add(timer);
+            });
+        }
+
+        assertThat(due).containsExactlyInAnyOrderElementsOf(timers);
+        assertThat(sut.size()).isZero();
+    }
+
+    @Test
+    public void advanceTo_shouldPassEntriesInOrderOfTicks() {
+        final TimingWheel<Timer> sut = new TimingWheel<>(250);
+        final Timer later = new Timer(70_000);
+        final Timer sooner = new Timer(300);
+        sut.add(later, later.deadline);
+        sut.add(sooner, sooner.deadline);
+
+        final List<Timer> due = new ArrayList<>();
+        sut.advanceTo(100_000, due::add);
+
+        assertThat(due).containsExactly(sooner, later);
+    }
+
+    @Test
+    public void remove_beforeTick_shouldNeverPassEntry() {
+        final TimingWheel<Timer> sut = new TimingWheel<>(0);
+        final Timer removed = new Timer(500);
+        final Timer kept = new Timer(500);
+        sut.add(removed, removed.deadline);
+        sut.add(kept, kept.deadline);
+
+        assertThat(sut.remove(removed)).isTrue();
+        assertThat(sut.remove(removed)).isFalse();
+        final List<Timer> due = new ArrayList<>();
+        sut.advanceTo(1_000, due::add);
+
+        assertThat(due).containsExactly(kept);
+    }
+
+    @Test
+    public void add_ofPastTick_shouldPassEntryAtNextTick() {
+        final TimingWheel<Timer> sut = new TimingWheel<>(1_000);
+        final Timer timer = new Timer(10);
+        sut.add(timer, timer.deadline);
+
+        final List<Timer> due = new ArrayList<>();
+        sut.advanceTo(1_001, due::add);
+
+        assertThat(due).containsExactly(timer);
+    }
+
+    @Test
+    public void add_ofScheduledEntry_shouldThrowIllegalStateException() {
+        final TimingWheel<Timer> sut = new TimingWheel<>(0);
+        final Timer timer = new Timer(10);
+        sut.add(timer, timer.deadline);
+
+        assertThrows(IllegalStateException.class, () -> sut.add(timer, 20));
+    }
+
+    @Test
+    public void advanceTo_onEmptyWheel_shouldSkipToTick() {
+        final TimingWheel<Timer> sut = new TimingWheel<>(0);
+
+        sut.advanceTo(Long.MAX_VALUE / 2, timer -> {
+        });
+        final Timer timer = new Timer(Long.MAX_VALUE / 2 + 300);
+        sut.add(timer, timer.deadline);
+        final List<Timer> due = new ArrayList<>();
+        sut.advanceTo(Long.MAX_VALUE / 2 + 300, due::add);
+
+        assertThat(sut.currentTick()).isEqualTo(Long.MAX_VALUE / 2 + 300);
+        assertThat(due).containsExactly(timer);
+    }
+
+    private static final class Timer extends TimingWheel.Entry {
+
+        private final long deadline;
+
+        private Timer(final long deadline) {
+            this.deadline = deadline;
+        }
+    }
+}
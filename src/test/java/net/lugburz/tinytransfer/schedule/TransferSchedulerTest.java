@@ -0,0 +1,238 @@
+package net.lugburz.tinytransfer.schedule;
+
+import net.lugburz.tinytransfer.account.InMemoryAccountRepository;
+import net.lugburz.tinytransfer.transfer.StripedLockTransferService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link TransferScheduler}.
+ */
+class TransferSchedulerTest {
+
+    private static final long NOW = Instant.parse("2024-01-31T09:00:00Z").toEpochMilli();
+    private static final long TICK_MILLIS = 10;
+
+    @TempDir
+    Path directory;
+
+    private final MutableClock clock = new MutableClock(NOW);
+    private final InMemoryAccountRepository repository = new InMemoryAccountRepository();
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private TransferScheduler sut;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        repository.create("foo", BigDecimal.valueOf(100));
+        repository.create("bar", BigDecimal.ZERO);
+        sut = start();
+    }
+
+    @AfterEach
+    public void teardown() throws Exception {
+        sut.stop();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void schedule_shouldPerformTransferOnceDue() throws Exception {
+        final ScheduledTransfer transfer = sut.schedule("foo", "bar", BigDecimal.TEN, NOW + 60_000, null);
+        Thread.sleep(5 * TICK_MILLIS);
+        assertThat(repository.find("bar").getBalance()).isEqualByComparingTo("0");
+        assertThat(sut.find(transfer.getId())).isSameAs(transfer);
+
+        clock.set(NOW + 60_000);
+
+        await(() -> repository.find("bar").getBalance().compareTo(BigDecimal.TEN) == 0);
+        await(() -> sut.find(transfer.getId()) == null);
+        assertThat(sut.size()).isZero();
+    }
+
+    @Test
+    public void cancel_beforeDue_shouldNeverPerformTransfer() throws Exception {
+        final ScheduledTransfer transfer = sut.schedule("foo", "bar", BigDecimal.TEN, NOW + 60_000, null);
+
+        assertThat(sut.cancel(transfer.getId())).isTrue();
+        assertThat(sut.cancel(transfer.getId())).isFalse();
+        clock.set(NOW + 120_000);
+        Thread.sleep(5 * TICK_MILLIS);
+
+        assertThat(repository.find("bar").getBalance()).isEqualByComparingTo("0");
+        assertThat(sut.size()).isZero();
+    }
+
+    @Test
+    public void schedule_withRecurrence_shouldPerformTransferAtEveryInterval() throws Exception {
+        final ScheduledTransfer transfer =
+                sut.schedule("foo", "bar", BigDecimal.ONE, NOW + 1_000, Recurrence.MONTHLY);
+
+        clock.set(NOW + 1_000);
+        await(() -> sut.find(transfer.getId()).getOccurrence() == 1);
+        // From January 31st to the last day of February, a leap year.
+        assertThat(sut.find(transfer.getId()).getExecuteAt())
+                .isEqualTo(Instant.parse("2024-02-29T09:00:01Z").toEpochMilli());
+        clock.set(Instant.parse("2024-02-29T09:00:01Z").toEpochMilli());
+
+        await(() -> sut.find(transfer.getId()).getOccurrence() == 2);
+        assertThat(sut.find(transfer.getId()).getExecuteAt())
+                .isEqualTo(Instant.parse("2024-03-31T09:00:01Z").toEpochMilli());
+        await(() -> repository.find("bar").getBalance().compareTo(BigDecimal.valueOf(2)) == 0);
+    }
+
+    @Test
+    public void start_afterRestart_shouldKeepPendingTransfers() throws Exception {
+        final ScheduledTransfer once = sut.schedule("foo", "bar", BigDecimal.TEN, NOW + 60_000, null);
+        final ScheduledTransfer cancelled = sut.schedule("foo", "bar", BigDecimal.ONE, NOW + 60_000, null);
+        final ScheduledTransfer daily = sut.schedule("foo", "bar", BigDecimal.ONE, NOW + 1_000, Recurrence.DAILY);
+        sut.cancel(cancelled.getId());
+        clock.set(NOW + 1_000);
+        await(() -> sut.find(daily.getId()).getOccurrence() == 1);
+
+        sut.stop();
+        sut = start();
+
+        assertThat(sut.list(null, 10)).extracting(ScheduledTransfer::getId)
+                .containsExactly(once.getId(), daily.getId());
+        assertThat(sut.find(daily.getId()).getOccurrence()).isEqualTo(1);
+        assertThat(sut.schedule("foo", "bar", BigDecimal.ONE, NOW + 60_000, null).getId())
+                .isGreaterThan(daily.getId());
+    }
+
+    @Test
+    public void start_afterMissedExecutions_shouldPerformRecurringTransferOnce() throws Exception {
+        final ScheduledTransfer daily = sut.schedule("foo", "bar", BigDecimal.ONE, NOW + 1_000, Recurrence.DAILY);
+        sut.stop();
+
+        clock.set(NOW + TimeUnit.DAYS.toMillis(3));
+        sut = start();
+        // Overdue transfers fall due at the next tick.
+        clock.set(NOW + TimeUnit.DAYS.toMillis(3) + TICK_MILLIS);
+
+        await(() -> repository.find("bar").getBalance().compareTo(BigDecimal.ONE) == 0);
+        assertThat(sut.find(daily.getId()).getOccurrence()).isEqualTo(3);
+        Thread.sleep(5 * TICK_MILLIS);
+        assertThat(repository.find("bar").getBalance()).isEqualByComparingTo("1");
+    }
+
+    @Test
+    public void schedule_andCancelConcurrently_shouldCompactStoreAndKeepPendingTransfers() throws Exception {
+        sut.stop();
+        sut = start(16);
+        final ExecutorService clients = Executors.newFixedThreadPool(4);
+        final List<Future<List<Long>>> kept = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            kept.add(clients.submit(() -> {
+                final List<Long> ids = new ArrayList<>();
+                for (int i = 0; i < 250; i++) {
+                    final ScheduledTransfer transfer =
+                            sut.schedule("foo", "bar", BigDecimal.ONE, NOW + 60_000, Recurrence.DAILY);
+                    if (i % 10 == 0) {
+                        ids.add(transfer.getId());
+                    } else {
+                        assertThat(sut.cancel(transfer.getId())).isTrue();
+                    }
+                }
+                return ids;
+            }));
+        }
+        final Set<Long> expected = new HashSet<>();
+        for (final Future<List<Long>> ids : kept) {
+            expected.addAll(ids.get(10, TimeUnit.SECONDS));
+        }
+        clients.shutdown();
+
+        // 1000 records of 53 bytes and 900 of 17 bytes without compaction.
+        assertThat(Files.size(directory.resolve("scheduled.bin"))).isLessThan(20_000);
+        sut.stop();
+        sut = start();
+        assertThat(sut.list(null, 1_000)).extracting(ScheduledTransfer::getId)
+                .containsExactlyInAnyOrderElementsOf(expected);
+    }
+
+    @Test
+    public void list_shouldReturnTransfersOfAccountInOrderOfExecution() {
+        repository.create("baz", BigDecimal.ZERO);
+        final ScheduledTransfer third = sut.schedule("foo", "bar", BigDecimal.ONE, NOW + 30_000, null);
+        final ScheduledTransfer first = sut.schedule("bar", "foo", BigDecimal.ONE, NOW + 10_000, null);
+        sut.schedule("foo", "baz", BigDecimal.ONE, NOW + 5_000, null);
+        final ScheduledTransfer second = sut.schedule("foo", "bar", BigDecimal.ONE, NOW + 20_000, null);
+
+        assertThat(sut.list("bar", 10)).containsExactly(first, second, third);
+        assertThat(sut.list("bar", 2)).containsExactly(first, second);
+    }
+
+    private TransferScheduler start() throws Exception {
+        return start(ScheduleStore.DEFAULT_MIN_DEAD_RECORDS);
+    }
+
+    private TransferScheduler start(final int minDeadRecords) throws Exception {
+        final TransferScheduler scheduler = new TransferScheduler(
+                new ScheduleStore(directory.resolve("scheduled.bin"), minDeadRecords),
+                new StripedLockTransferService(repository, 8), executor, TICK_MILLIS, clock);
+        scheduler.start();
+        return scheduler;
+    }
+
+    private static void await(final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition met in time").isLessThan(deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private static final class MutableClock extends Clock {
+
+        private final AtomicLong millis;
+
+        private MutableClock(final long millis) {
+            this.millis = new AtomicLong(millis);
+        }
+
+        private void set(final long value) {
+            millis.set(value);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(final ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public long millis() {
+            return millis.get();
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis());
+        }
+    }
+}
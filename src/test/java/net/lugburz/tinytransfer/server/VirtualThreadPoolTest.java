@@ -0,0 +1,97 @@
+package net.lugburz.tinytransfer.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Tests for {@link VirtualThreadPool}.
+ */
+class VirtualThreadPoolTest {
+
+    @Test
+    public void execute_beforeStart_shouldReject() {
+        final VirtualThreadPool sut = new VirtualThreadPool("test-");
+
+        assertThrows(RejectedExecutionException.class, () -> sut.execute(() -> {
+        }));
+    }
+
+    @Test
+    public void start_withoutVirtualThreads_shouldFail() {
+        assumeFalse(VirtualThreadPool.isSupported());
+        final VirtualThreadPool sut = new VirtualThreadPool("test-");
+
+        assertThrows(IllegalStateException.class, sut::start);
+    }
+
+    @Test
+    public void execute_withVirtualThreads_shouldRunOnNamedVirtualThread() throws Exception {
+        assumeTrue(VirtualThreadPool.isSupported());
+        final VirtualThreadPool sut = new VirtualThreadPool("test-");
+        sut.start();
+        try {
+            final CompletableFuture<String> name = new CompletableFuture<>();
+            sut.execute(() -> name.complete(Thread.currentThread().getName()));
+
+            assertThat(name.get(10, TimeUnit.SECONDS)).isEqualTo("test-0");
+            assertThat(sut.isLowOnThreads()).isFalse();
+        } finally {
+            sut.stop();
+        }
+    }
+
+    @Test
+    public void execute_withPlatformThreads_shouldCountRunningJobsAndStop() throws Exception {
+        final VirtualThreadPool sut = new VirtualThreadPool("test-", VirtualThreadPoolTest::threadPerTask);
+        sut.start();
+        final CountDownLatch release = new CountDownLatch(1);
+        final CompletableFuture<String> name = new CompletableFuture<>();
+        try {
+            sut.execute(() -> {
+                name.complete(Thread.currentThread().getName());
+                awaitQuietly(release);
+            });
+
+            assertThat(name.get(10, TimeUnit.SECONDS)).isEqualTo("test-0");
+            assertThat(sut.getThreads()).isEqualTo(1);
+            assertThat(sut.getIdleThreads()).isZero();
+            assertThat(sut.isLowOnThreads()).isFalse();
+        } finally {
+            release.countDown();
+            sut.stop();
+        }
+
+        assertThat(sut.getThreads()).isZero();
+        assertThat(sut.isStopped()).isTrue();
+        assertThrows(RejectedExecutionException.class, () -> sut.execute(() -> {
+        }));
+    }
+
+    /**
+     * Stands in for a virtual thread per task executor on JVMs without virtual threads.
+     */
+    private static ExecutorService threadPerTask(final String namePrefix) {
+        final AtomicInteger next = new AtomicInteger();
+        return Executors.newCachedThreadPool(job -> new Thread(job, namePrefix + next.getAndIncrement()));
+    }
+
+    private static void awaitQuietly(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (final InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
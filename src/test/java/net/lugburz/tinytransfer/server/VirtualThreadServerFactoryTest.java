@@ -0,0 +1,21 @@
+package net.lugburz.tinytransfer.server;
+
+import io.dropwizard.jackson.Jackson;
+import io.dropwizard.server.ServerFactory;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests for {@link VirtualThreadServerFactory}.
+ */
+class VirtualThreadServerFactoryTest {
+
+    @Test
+    public void serverType_virtualThreads_shouldBeDiscovered() throws Exception {
+        final ServerFactory factory =
+                Jackson.newObjectMapper().readValue("{\"type\": \"virtual-threads\"}", ServerFactory.class);
+
+        assertThat(factory).isInstanceOf(VirtualThreadServerFactory.class);
+    }
+}
@@ -0,0 +1,171 @@
+package net.lugburz.tinytransfer.transfer;
+
+import net.lugburz.tinytransfer.account.FixedPointAccountRepository;
+import net.lugburz.tinytransfer.account.MinorUnits;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link FixedPointTransferService}.
+ */
+class FixedPointTransferServiceTest {
+
+    private static final String ACC_NO_1 = "123";
+    private static final String ACC_NO_2 = "456";
+
+    private FixedPointAccountRepository repo;
+    private FixedPointTransferService sut;
+
+    @BeforeEach
+    public void setup() {
+        repo = new FixedPointAccountRepository(new MinorUnits(2));
+        repo.create(ACC_NO_1, BigDecimal.valueOf(10));
+        repo.create(ACC_NO_2, BigDecimal.valueOf(10));
+        sut = new FixedPointTransferService(repo);
+    }
+
+    @Test
+    public void transfer_onZeroAmount_shouldThrowTransferException() {
+        final TransferException exception =
+                assertThrows(TransferException.class, () -> sut.transfer(ACC_NO_1, ACC_NO_2, BigDecimal.valueOf(0)));
+
+        assertThat(exception.getReason()).isEqualTo(FailureReason.INVALID_AMOUNT);
+    }
+
+    @Test
+    public void transfer_onNegativeAmount_shouldThrowTransferException() {
+        assertThrows(TransferException.class, () -> sut.transfer(ACC_NO_1, ACC_NO_2, BigDecimal.valueOf(-1)));
+    }
+
+    @Test
+    public void transfer_onTooManyFractionalDigits_shouldThrowTransferException() {
+        final TransferException exception =
+                assertThrows(TransferException.class, () -> sut.transfer(ACC_NO_1, ACC_NO_2, new BigDecimal("0.001")));
+
+        assertThat(exception.getReason()).isEqualTo(FailureReason.INVALID_AMOUNT);
+    }
+
+    @Test
+    public void transfer_onInsufficientSenderBalance_shouldThrowTransferException() {
+        final TransferException exception =
+                assertThrows(TransferException.class, () -> sut.transfer(ACC_NO_1, ACC_NO_2, BigDecimal.valueOf(11)));
+
+        assertThat(exception.getReason()).isEqualTo(FailureReason.INSUFFICIENT_FUNDS);
+    }
+
+    @Test
+    public void transfer_onUnknownSender_shouldThrowTransferException() {
+        final TransferException exception =
+                assertThrows(TransferException.class, () -> sut.transfer("42", ACC_NO_1, BigDecimal.valueOf(5)));
+
+        assertThat(exception.getReason()).isEqualTo(FailureReason.UNKNOWN_ACCOUNT);
+    }
+
+    @Test
+    public void transfer_onUnknownReceiver_shouldThrowTransferException() {
+        final TransferException exception =
+                assertThrows(TransferException.class, () -> sut.transfer(ACC_NO_1, "42", BigDecimal.valueOf(5)));
+
+        assertThat(exception.getReason()).isEqualTo(FailureReason.UNKNOWN_ACCOUNT);
+
+        assertThat(repo.find(ACC_NO_1).getBalance()).isEqualTo(new BigDecimal("10.00"));
+    }
+
+    @Test
+    public void transfer_onValidTransfer_shouldAdjustBalancesCorrectly() {
+        sut.transfer(ACC_NO_1, ACC_NO_2, new BigDecimal("9.99"));
+
+        assertThat(repo.find(ACC_NO_1).getBalance()).isEqualTo(new BigDecimal("0.01"));
+        assertThat(repo.find(ACC_NO_2).getBalance()).isEqualTo(new BigDecimal("19.99"));
+    }
+
+    @Test
+    public void transfer_manyThreadsRandomAccounts_shouldConserveTotalMoney() throws InterruptedException {
+        final int accounts = 64;
+        final int threads = 32;
+        repo.clear();
+        for (int i = 0; i < accounts; i++) {
+            repo.create("acc-" + i, BigDecimal.valueOf(100));
+        }
+
+        final ExecutorService es = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            es.execute(() -> {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 5_000; i++) {
+                    try {
+                        sut.transfer("acc-" + random.nextInt(accounts), "acc-" + random.nextInt(accounts),
+                                BigDecimal.valueOf(random.nextInt(1, 3000), 2));
+                    } catch (final TransferException ignored) {
+                        // insufficient funds are expected
+                    }
+                }
+            });
+        }
+        es.shutdown();
+
+        assertThat(es.awaitTermination(60, TimeUnit.SECONDS)).isTrue();
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < accounts; i++) {
+            total = total.add(repo.find("acc-" + i).getBalance());
+        }
+        assertThat(total).isEqualTo(new BigDecimal("6400.00"));
+        assertThat(repo.isConsistent()).isTrue();
+    }
+
+    @Test
+    public void transferAll_atomicUncoveredBatch_shouldApplyNothing() {
+        repo.create("789", BigDecimal.valueOf(1));
+
+        final BatchResult result = sut.transferAll(Arrays.asList(
+                new Transfer(ACC_NO_1, "789", BigDecimal.valueOf(5)),
+                new Transfer(ACC_NO_2, "789", BigDecimal.valueOf(11))), BatchMode.ATOMIC);
+
+        assertThat(result.isCommitted()).isFalse();
+        assertThat(result.getResults()).extracting(TransferResult::isSuccess).containsExactly(false, false);
+        assertThat(repo.find(ACC_NO_1).getBalance()).isEqualTo(new BigDecimal("10.00"));
+        assertThat(repo.find(ACC_NO_2).getBalance()).isEqualTo(new BigDecimal("10.00"));
+        assertThat(repo.find("789").getBalance()).isEqualTo(new BigDecimal("1.00"));
+    }
+
+    @Test
+    public void transferAll_atomicBatchWithTooManyFractionalDigits_shouldApplyNothing() {
+        final BatchResult result = sut.transferAll(Arrays.asList(
+                new Transfer(ACC_NO_1, ACC_NO_2, BigDecimal.valueOf(1)),
+                new Transfer(ACC_NO_1, ACC_NO_2, new BigDecimal("0.001"))), BatchMode.ATOMIC);
+
+        assertThat(result.isCommitted()).isFalse();
+        assertThat(repo.find(ACC_NO_1).getBalance()).isEqualTo(new BigDecimal("10.00"));
+    }
+
+    @Test
+    public void transferAll_atomicCoveredBatch_shouldApplyAllTransfers() {
+        final BatchResult result = sut.transferAll(Arrays.asList(
+                new Transfer(ACC_NO_1, ACC_NO_2, new BigDecimal("15.50")),
+                new Transfer(ACC_NO_2, ACC_NO_1, BigDecimal.valueOf(10))), BatchMode.ATOMIC);
+
+        assertThat(result.isCommitted()).isTrue();
+        assertThat(repo.find(ACC_NO_1).getBalance()).isEqualTo(new BigDecimal("4.50"));
+        assertThat(repo.find(ACC_NO_2).getBalance()).isEqualTo(new BigDecimal("15.50"));
+    }
+
+    @Test
+    public void transferAll_bestEffort_shouldReportFailuresPerTransfer() {
+        final BatchResult result = sut.transferAll(Arrays.asList(
+                new Transfer(ACC_NO_1, ACC_NO_2, BigDecimal.valueOf(11)),
+                new Transfer(ACC_NO_1, ACC_NO_2, BigDecimal.valueOf(10))), BatchMode.BEST_EFFORT);
+
+        assertThat(result.getResults()).extracting(TransferResult::isSuccess).containsExactly(false, true);
+        assertThat(repo.find(ACC_NO_2).getBalance()).isEqualTo(new BigDecimal("20.00"));
+    }
+}
@@ -1,14 +1,23 @@
 package net.lugburz.tinytransfer.transfer;
 
-import net.lugburz.tinytransfer.account.AccountRepository;
+import net.lugburz.tinytransfer.account.Account;
+import net.lugburz.tinytransfer.account.InMemoryAccountRepository;
+import net.lugburz.tinytransfer.fx.ExchangeRateTable;
+import net.lugburz.tinytransfer.fx.ExchangeRates;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Currency;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -23,12 +32,12 @@ class InMemoryTransferServiceTest {
     private static final String ACC_NO_1 = "123";
     private static final String ACC_NO_2 = "456";
 
-    private AccountRepository repo;
+    private InMemoryAccountRepository repo;
     private InMemoryTransferService sut;
 
     @BeforeEach
     public void setup() {
-        repo = new AccountRepository();
+        repo = new InMemoryAccountRepository();
         repo.create(ACC_NO_1, BigDecimal.valueOf(10));
         repo.create(ACC_NO_2, BigDecimal.valueOf(10));
         sut = new InMemoryTransferService(repo);
@@ -46,7 +55,11 @@ class InMemoryTransferServiceTest {
 
     @Test
     public void transfer_onInsufficientSenderBalance_shouldThrowTransferException() {
-        assertThrows(TransferException.class, () -> sut.transfer(ACC_NO_1, ACC_NO_2, BigDecimal.valueOf(11)));
+        final TransferException exception =
+                assertThrows(TransferException.class, () -> sut.transfer(ACC_NO_1, ACC_NO_2, BigDecimal.valueOf(11)));
+
+        assertThat(exception.getReason()).isEqualTo(FailureReason.INSUFFICIENT_FUNDS);
+        assertThat(exception.getStackTrace()).isEmpty();
     }
 
     @Test
@@ -97,4 +110,162 @@ class InMemoryTransferServiceTest {
         assertThat(senderBalance).isEqualTo(BigDecimal.ZERO);
         assertThat(receiverBalance).isEqualTo(BigDecimal.valueOf(2000));
     }
+
+    @Test
+    public void transferAll_atomicUncoveredBatch_shouldApplyNothing() {
+        repo.create("789", BigDecimal.valueOf(1));
+
+        final BatchResult result = sut.transferAll(Arrays.asList(
+                new Transfer(ACC_NO_1, "789", BigDecimal.valueOf(5)),
+                new Transfer(ACC_NO_2, "789", BigDecimal.valueOf(11))), BatchMode.ATOMIC);
+
+        assertThat(result.isCommitted()).isFalse();
+        assertThat(repo.find(ACC_NO_1).getBalance()).isEqualTo(BigDecimal.valueOf(10));
+        assertThat(repo.find(ACC_NO_2).getBalance()).isEqualTo(BigDecimal.valueOf(10));
+        assertThat(repo.find("789").getBalance()).isEqualTo(BigDecimal.valueOf(1));
+    }
+
+    @Test
+    public void transferAll_atomicCoveredBatch_shouldApplyAllTransfers() {
+        final BatchResult result = sut.transferAll(Arrays.asList(
+                new Transfer(ACC_NO_1, ACC_NO_2, BigDecimal.valueOf(15)),
+                new Transfer(ACC_NO_2, ACC_NO_1, BigDecimal.valueOf(10))), BatchMode.ATOMIC);
+
+        assertThat(result.isCommitted()).isTrue();
+        assertThat(repo.find(ACC_NO_1).getBalance()).isEqualTo(BigDecimal.valueOf(5));
+        assertThat(repo.find(ACC_NO_2).getBalance()).isEqualTo(BigDecimal.valueOf(15));
+    }
+
+    @Test
+    public void transferAll_bestEffort_shouldReportFailuresPerTransfer() {
+        final BatchResult result = sut.transferAll(Arrays.asList(
+                new Transfer(ACC_NO_1, ACC_NO_2, BigDecimal.valueOf(11)),
+                new Transfer(ACC_NO_1, ACC_NO_2, BigDecimal.valueOf(10))), BatchMode.BEST_EFFORT);
+
+        assertThat(result.getResults()).extracting(TransferResult::isSuccess).containsExactly(false, true);
+        assertThat(repo.find(ACC_NO_2).getBalance()).isEqualTo(BigDecimal.valueOf(20));
+    }
+
+    @Test
+    public void transfer_betweenCurrencies_shouldCreditConvertedAmount() throws IOException {
+        setupCurrencies("EUR USD 1.0842");
+
+        sut.transfer(ACC_NO_1, ACC_NO_2, new BigDecimal("10.00"));
+
+        assertThat(repo.find(ACC_NO_1).getBalance()).isEqualByComparingTo("90");
+        assertThat(repo.find(ACC_NO_2).getBalance()).isEqualByComparingTo("10.84");
+        assertThat(repo.totalBalance()).isEqualByComparingTo("100.84");
+        assertThat(repo.checkConsistency().isConsistent()).isTrue();
+        assertThat(repo.verifyConsistency().isConsistent()).isTrue();
+    }
+
+    @Test
+    public void transfer_withoutRate_shouldThrowTransferException() throws IOException {
+        setupCurrencies("EUR USD 1.0842");
+
+        final TransferException exception =
+                assertThrows(TransferException.class, () -> sut.transfer(ACC_NO_2, ACC_NO_1, BigDecimal.ONE));
+
+        assertThat(exception.getReason()).isEqualTo(FailureReason.UNSUPPORTED_CURRENCY);
+        assertThat(repo.find(ACC_NO_2).getBalance()).isEqualByComparingTo("0");
+    }
+
+    @Test
+    public void transfer_onAmountConvertedToZero_shouldThrowTransferException() throws IOException {
+        setupCurrencies("EUR USD 0.1");
+
+        final TransferException exception =
+                assertThrows(TransferException.class, () -> sut.transfer(ACC_NO_1, ACC_NO_2, new BigDecimal("0.01")));
+
+        assertThat(exception.getReason()).isEqualTo(FailureReason.INVALID_AMOUNT);
+        assertThat(repo.find(ACC_NO_1).getBalance()).isEqualByComparingTo("100");
+    }
+
+    @Test
+    public void transferAll_betweenCurrencies_shouldConvertEachTransfer() throws IOException {
+        setupCurrencies("EUR USD 1.5");
+        repo.create("789", BigDecimal.ZERO);
+
+        final BatchResult atomic = sut.transferAll(Arrays.asList(
+                new Transfer(ACC_NO_1, ACC_NO_2, BigDecimal.TEN),
+                new Transfer(ACC_NO_1, "789", BigDecimal.TEN)), BatchMode.ATOMIC);
+        final BatchResult bestEffort = sut.transferAll(Arrays.asList(
+                new Transfer(ACC_NO_2, ACC_NO_1, BigDecimal.ONE),
+                new Transfer(ACC_NO_1, ACC_NO_2, BigDecimal.ONE)), BatchMode.BEST_EFFORT);
+
+        assertThat(atomic.isCommitted()).isTrue();
+        assertThat(bestEffort.getResults()).extracting(TransferResult::isSuccess).containsExactly(false, true);
+        assertThat(repo.find(ACC_NO_1).getBalance()).isEqualByComparingTo("79");
+        assertThat(repo.find(ACC_NO_2).getBalance()).isEqualByComparingTo("16.5");
+        assertThat(repo.find("789").getBalance()).isEqualByComparingTo("10");
+        assertThat(repo.checkConsistency().isConsistent()).isTrue();
+        assertThat(repo.verifyConsistency().isConsistent()).isTrue();
+    }
+
+    @Test
+    public void transfer_afterRatesReplaced_shouldConvertAtNewRates() throws IOException {
+        final ExchangeRateTable rates = setupCurrencies("EUR USD 1.5");
+
+        rates.replace(parse("EUR USD 2"));
+        sut.transfer(ACC_NO_1, ACC_NO_2, BigDecimal.ONE);
+
+        assertThat(repo.find(ACC_NO_2).getBalance()).isEqualByComparingTo("2");
+    }
+
+    @Test
+    public void snapshotAll_concurrentlyWithTransfers_shouldAlwaysSeeTotalMoney() throws InterruptedException {
+        final int accounts = 8;
+        repo = new InMemoryAccountRepository(Collections.singleton("acc-0"), 4);
+        final List<String> accountNos = new ArrayList<>();
+        for (int i = 0; i < accounts; i++) {
+            accountNos.add("acc-" + i);
+            repo.create("acc-" + i, BigDecimal.valueOf(100));
+        }
+        sut = new InMemoryTransferService(repo);
+
+        final ExecutorService es = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            es.execute(() -> {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 5_000; i++) {
+                    try {
+                        sut.transfer("acc-" + random.nextInt(accounts), "acc-" + random.nextInt(accounts),
+                                BigDecimal.valueOf(random.nextInt(1, 50)));
+                    } catch (final TransferException ignored) {
+                        // insufficient funds are expected
+                    }
+                    sut.transferAll(Arrays.asList(
+                            new Transfer("acc-" + random.nextInt(accounts), "acc-" + random.nextInt(accounts),
+                                    BigDecimal.ONE),
+                            new Transfer("acc-" + random.nextInt(accounts), "acc-0", BigDecimal.ONE)),
+                            BatchMode.ATOMIC);
+                }
+            });
+        }
+        es.shutdown();
+
+        do {
+            BigDecimal total = BigDecimal.ZERO;
+            for (final Account account : repo.snapshotAll(accountNos)) {
+                total = total.add(account.getBalance());
+            }
+            assertThat(total).isEqualByComparingTo(BigDecimal.valueOf(100L * accounts));
+        } while (!es.awaitTermination(0, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Replaces the accounts with {@value #ACC_NO_1} holding 100 EUR and {@value #ACC_NO_2} holding nothing in USD.
+     */
+    private ExchangeRateTable setupCurrencies(final String... rates) throws IOException {
+        repo = new InMemoryAccountRepository(Collections.emptySet(), 1, Currency.getInstance("EUR"));
+        repo.create(ACC_NO_1, BigDecimal.valueOf(100));
+        repo.create(ACC_NO_2, BigDecimal.ZERO, Currency.getInstance("USD"));
+        final ExchangeRateTable table = ExchangeRateTable.of(parse(rates));
+        sut = new InMemoryTransferService(repo, table);
+        return table;
+    }
+
+    private static ExchangeRates parse(final String... lines) throws IOException {
+        return ExchangeRates.parse(new StringReader(String.join("\n", lines)), "rates");
+    }
 }
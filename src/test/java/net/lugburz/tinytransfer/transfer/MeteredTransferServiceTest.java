@@ -0,0 +1,109 @@
+package net.lugburz.tinytransfer.transfer;
+
+import com.codahale.metrics.MetricRegistry;
+import net.lugburz.tinytransfer.account.InMemoryAccountRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link MeteredTransferService}.
+ */
+class MeteredTransferServiceTest {
+
+    private static final String ACC_NO_1 = "123";
+    private static final String ACC_NO_2 = "456";
+
+    private MetricRegistry registry;
+    private MeteredTransferService sut;
+
+    @BeforeEach
+    public void setup() {
+        final InMemoryAccountRepository repo = new InMemoryAccountRepository();
+        repo.create(ACC_NO_1, BigDecimal.valueOf(10));
+        repo.create(ACC_NO_2, BigDecimal.valueOf(10));
+        registry = new MetricRegistry();
+        sut = new MeteredTransferService(new StripedLockTransferService(repo), registry);
+    }
+
+    @Test
+    public void transfer_onValidTransfer_shouldMarkSucceededAndTime() {
+        sut.transfer(ACC_NO_1, ACC_NO_2, BigDecimal.ONE);
+
+        assertThat(registry.meter("net.lugburz.tinytransfer.transfer.TransferService.transfers.succeeded").getCount())
+                .isEqualTo(1);
+        assertThat(registry.timer("net.lugburz.tinytransfer.transfer.TransferService.transfers").getCount())
+                .isEqualTo(1);
+    }
+
+    @Test
+    public void transfer_onRejectedTransfer_shouldMarkFailureReasonAndRethrow() {
+        assertThrows(TransferException.class, () -> sut.transfer(ACC_NO_1, ACC_NO_2, BigDecimal.valueOf(11)));
+        assertThrows(TransferException.class, () -> sut.transfer("42", ACC_NO_2, BigDecimal.ONE));
+
+        assertThat(registry.meter(
+                "net.lugburz.tinytransfer.transfer.TransferService.transfers.failed.insufficient-funds").getCount())
+                .isEqualTo(1);
+        assertThat(registry.meter(
+                "net.lugburz.tinytransfer.transfer.TransferService.transfers.failed.unknown-account").getCount())
+                .isEqualTo(1);
+        assertThat(registry.meter("net.lugburz.tinytransfer.transfer.TransferService.transfers.succeeded").getCount())
+                .isZero();
+        assertThat(registry.timer("net.lugburz.tinytransfer.transfer.TransferService.transfers").getCount())
+                .isEqualTo(2);
+    }
+
+    @Test
+    public void transferAsync_onRejectedTransfer_shouldMarkFailureReasonOnCompletion() {
+        final CompletableFuture<Void> transfer = sut.transferAsync(ACC_NO_1, ACC_NO_2, BigDecimal.valueOf(11));
+
+        assertThat(transfer).isCompletedExceptionally();
+        assertThat(registry.meter(
+                "net.lugburz.tinytransfer.transfer.TransferService.transfers.failed.insufficient-funds").getCount())
+                .isEqualTo(1);
+        assertThat(registry.timer("net.lugburz.tinytransfer.transfer.TransferService.transfers").getCount())
+                .isEqualTo(1);
+    }
+
+    @Test
+    public void transfer_onUnexpectedException_shouldMarkError() {
+        sut = new MeteredTransferService(new TransferService() {
+            @Override
+            public void transfer(final String senderAccNo, final String receiverAccNo, final BigDecimal amount) {
+                throw new IllegalStateException();
+            }
+
+            @Override
+            public BatchResult transferAll(final List<Transfer> transfers, final BatchMode mode) {
+                throw new IllegalStateException();
+            }
+        }, registry);
+
+        assertThrows(IllegalStateException.class, () -> sut.transfer(ACC_NO_1, ACC_NO_2, BigDecimal.ONE));
+
+        assertThat(registry.meter("net.lugburz.tinytransfer.transfer.TransferService.transfers.errors").getCount())
+                .isEqualTo(1);
+    }
+
+    @Test
+    public void transferAll_bestEffort_shouldMarkTransfersByOutcome() {
+        sut.transferAll(Arrays.asList(
+                new Transfer(ACC_NO_1, ACC_NO_2, BigDecimal.ONE),
+                new Transfer(ACC_NO_1, ACC_NO_2, BigDecimal.valueOf(100)),
+                new Transfer(ACC_NO_2, ACC_NO_1, BigDecimal.ONE)), BatchMode.BEST_EFFORT);
+
+        assertThat(registry.meter("net.lugburz.tinytransfer.transfer.TransferService.batches.succeeded").getCount())
+                .isEqualTo(2);
+        assertThat(registry.meter("net.lugburz.tinytransfer.transfer.TransferService.batches.failed").getCount())
+                .isEqualTo(1);
+        assertThat(registry.timer("net.lugburz.tinytransfer.transfer.TransferService.batches").getCount())
+                .isEqualTo(1);
+    }
+}
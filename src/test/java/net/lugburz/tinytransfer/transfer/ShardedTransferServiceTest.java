@@ -0,0 +1,167 @@
+package net.lugburz.tinytransfer.transfer;
+
+import net.lugburz.tinytransfer.account.ShardedAccountRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link ShardedTransferService}.
+ */
+class ShardedTransferServiceTest {
+
+    private static final String ACC_NO_1 = "123";
+    private static final String ACC_NO_2 = "456";
+
+    private ShardedAccountRepository repo;
+    private ExecutorService completions;
+    private ShardedTransferService sut;
+
+    @BeforeEach
+    public void setup() {
+        repo = new ShardedAccountRepository(4);
+        repo.create(ACC_NO_1, BigDecimal.valueOf(10));
+        repo.create(ACC_NO_2, BigDecimal.valueOf(10));
+        completions = Executors.newFixedThreadPool(2);
+        sut = new ShardedTransferService(repo, completions);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        completions.shutdown();
+        repo.close();
+    }
+
+    @Test
+    public void transfer_onZeroAmount_shouldThrowTransferException() {
+        final TransferException exception =
+                assertThrows(TransferException.class, () -> sut.transfer(ACC_NO_1, ACC_NO_2, BigDecimal.valueOf(0)));
+
+        assertThat(exception.getReason()).isEqualTo(FailureReason.INVALID_AMOUNT);
+    }
+
+    @Test
+    public void transfer_onInsufficientSenderBalance_shouldThrowTransferException() {
+        final TransferException exception =
+                assertThrows(TransferException.class, () -> sut.transfer(ACC_NO_1, ACC_NO_2, BigDecimal.valueOf(11)));
+
+        assertThat(exception.getReason()).isEqualTo(FailureReason.INSUFFICIENT_FUNDS);
+    }
+
+    @Test
+    public void transfer_onUnknownSender_shouldThrowTransferException() {
+        final TransferException exception =
+                assertThrows(TransferException.class, () -> sut.transfer("42", ACC_NO_1, BigDecimal.valueOf(5)));
+
+        assertThat(exception.getReason()).isEqualTo(FailureReason.UNKNOWN_ACCOUNT);
+    }
+
+    @Test
+    public void transfer_onUnknownReceiver_shouldThrowTransferException() {
+        final TransferException exception =
+                assertThrows(TransferException.class, () -> sut.transfer(ACC_NO_1, "42", BigDecimal.valueOf(5)));
+
+        assertThat(exception.getReason()).isEqualTo(FailureReason.UNKNOWN_ACCOUNT);
+
+        assertThat(repo.find(ACC_NO_1).getBalance()).isEqualTo(BigDecimal.valueOf(10));
+    }
+
+    @Test
+    public void transfer_onValidTransfer_shouldAdjustBalancesCorrectly() {
+        sut.transfer(ACC_NO_1, ACC_NO_2, new BigDecimal("9.99"));
+
+        assertThat(repo.find(ACC_NO_1).getBalance()).isEqualTo(new BigDecimal("0.01"));
+        assertThat(repo.find(ACC_NO_2).getBalance()).isEqualTo(new BigDecimal("19.99"));
+    }
+
+    @Test
+    public void transferAsync_shouldCompleteOffTheShardThreads() {
+        final String thread = sut.transferAsync(ACC_NO_1, ACC_NO_2, BigDecimal.ONE)
+                .thenApply(ignored -> Thread.currentThread().getName())
+                .join();
+
+        assertThat(thread).doesNotStartWith("shard-");
+    }
+
+    @Test
+    public void transferAsync_onInsufficientSenderBalance_shouldCompleteExceptionally() {
+        final CompletionException exception = assertThrows(CompletionException.class,
+                () -> sut.transferAsync(ACC_NO_1, ACC_NO_2, BigDecimal.valueOf(11)).join());
+
+        assertThat(exception).hasCauseInstanceOf(TransferException.class);
+    }
+
+    @Test
+    public void transferAsync_manyTransfersRandomAccounts_shouldConserveTotalMoney() {
+        final int accounts = 64;
+        repo.clear();
+        for (int i = 0; i < accounts; i++) {
+            repo.create("acc-" + i, BigDecimal.valueOf(100));
+        }
+
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final List<CompletableFuture<Void>> transfers = new ArrayList<>();
+        for (int i = 0; i < 50_000; i++) {
+            transfers.add(sut.transferAsync("acc-" + random.nextInt(accounts), "acc-" + random.nextInt(accounts),
+                    BigDecimal.valueOf(random.nextInt(1, 3000), 2)).exceptionally(failure -> null));
+        }
+        CompletableFuture.allOf(transfers.toArray(new CompletableFuture[0])).join();
+
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < accounts; i++) {
+            total = total.add(repo.find("acc-" + i).getBalance());
+        }
+        assertThat(total).isEqualByComparingTo(BigDecimal.valueOf(6400));
+        assertThat(repo.isConsistent()).isTrue();
+        assertThat(repo.verifyConsistency().isConsistent()).isTrue();
+    }
+
+    @Test
+    public void transferAll_atomicUncoveredBatch_shouldApplyNothing() {
+        repo.create("789", BigDecimal.valueOf(1));
+
+        final BatchResult result = sut.transferAll(Arrays.asList(
+                new Transfer(ACC_NO_1, "789", BigDecimal.valueOf(5)),
+                new Transfer(ACC_NO_2, "789", BigDecimal.valueOf(11))), BatchMode.ATOMIC);
+
+        assertThat(result.isCommitted()).isFalse();
+        assertThat(result.getResults()).extracting(TransferResult::isSuccess).containsExactly(false, false);
+        assertThat(repo.find(ACC_NO_1).getBalance()).isEqualTo(BigDecimal.valueOf(10));
+        assertThat(repo.find(ACC_NO_2).getBalance()).isEqualTo(BigDecimal.valueOf(10));
+        assertThat(repo.find("789").getBalance()).isEqualTo(BigDecimal.valueOf(1));
+    }
+
+    @Test
+    public void transferAll_atomicCoveredBatch_shouldApplyAllTransfers() {
+        final BatchResult result = sut.transferAll(Arrays.asList(
+                new Transfer(ACC_NO_1, ACC_NO_2, new BigDecimal("15.50")),
+                new Transfer(ACC_NO_2, ACC_NO_1, BigDecimal.valueOf(10))), BatchMode.ATOMIC);
+
+        assertThat(result.isCommitted()).isTrue();
+        assertThat(repo.find(ACC_NO_1).getBalance()).isEqualByComparingTo(new BigDecimal("4.50"));
+        assertThat(repo.find(ACC_NO_2).getBalance()).isEqualByComparingTo(new BigDecimal("15.50"));
+    }
+
+    @Test
+    public void transferAll_bestEffort_shouldReportFailuresPerTransfer() {
+        final BatchResult result = sut.transferAll(Arrays.asList(
+                new Transfer(ACC_NO_1, ACC_NO_2, BigDecimal.valueOf(11)),
+                new Transfer(ACC_NO_1, ACC_NO_2, BigDecimal.valueOf(10))), BatchMode.BEST_EFFORT);
+
+        assertThat(result.getResults()).extracting(TransferResult::isSuccess).containsExactly(false, true);
+        assertThat(repo.find(ACC_NO_2).getBalance()).isEqualTo(BigDecimal.valueOf(20));
+    }
+}
@@ -0,0 +1,443 @@
+package net.lugburz.tinytransfer.transfer;
+
+import net.lugburz.tinytransfer.account.Account;
+import net.lugburz.tinytransfer.account.InMemoryAccountRepository;
+import net.lugburz.tinytransfer.journal.Journal;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for {@link StripedLockTransferService}.
+ */
+class StripedLockTransferServiceTest {
+
+    private static final String ACC_NO_1 = "123";
+    private static final String ACC_NO_2 = "456";
+
+    private InMemoryAccountRepository repo;
+    private StripedLockTransferService sut;
+
+    @BeforeEach
+    public void setup() {
+        repo = new InMemoryAccountRepository();
+        repo.create(ACC_NO_1, BigDecimal.valueOf(10));
+        repo.create(ACC_NO_2, BigDecimal.valueOf(10));
+        sut = new StripedLockTransferService(repo);
+    }
+
+    @Test
+    public void transfer_onZeroAmount_shouldThrowTransferException() {
+        final TransferException exception =
+                assertThrows(TransferException.class, () -> sut.transfer(ACC_NO_1, ACC_NO_2, BigDecimal.valueOf(0)));
+
+        assertThat(exception.getReason()).isEqualTo(FailureReason.INVALID_AMOUNT);
+    }
+
+    @Test
+    public void transfer_onNegativeAmount_shouldThrowTransferException() {
+        assertThrows(TransferException.class, () -> sut.transfer(ACC_NO_1, ACC_NO_2, BigDecimal.valueOf(-1)));
+    }
+
+    @Test
+    public void transfer_onInsufficientSenderBalance_shouldThrowTransferExceptionAndKeepBalances() {
+        final TransferException exception =
+                assertThrows(TransferException.class, () -> sut.transfer(ACC_NO_1, ACC_NO_2, BigDecimal.valueOf(11)));
+
+        assertThat(exception.getReason()).isEqualTo(FailureReason.INSUFFICIENT_FUNDS);
+        assertThat(repo.find(ACC_NO_1).getBalance()).isEqualTo(BigDecimal.valueOf(10));
+        assertThat(repo.find(ACC_NO_2).getBalance()).isEqualTo(BigDecimal.valueOf(10));
+    }
+
+    @Test
+    public void transfer_onUnknownSender_shouldThrowTransferException() {
+        final TransferException exception =
+                assertThrows(TransferException.class, () -> sut.transfer("42", ACC_NO_1, BigDecimal.valueOf(5)));
+
+        assertThat(exception.getReason()).isEqualTo(FailureReason.UNKNOWN_ACCOUNT);
+    }
+
+    @Test
+    public void transfer_onUnknownReceiver_shouldThrowTransferException() {
+        final TransferException exception =
+                assertThrows(TransferException.class, () -> sut.transfer(ACC_NO_1, "42", BigDecimal.valueOf(5)));
+
+        assertThat(exception.getReason()).isEqualTo(FailureReason.UNKNOWN_ACCOUNT);
+    }
+
+    @Test
+    public void transfer_onValidTransfer_shouldAdjustBalancesCorrectly() {
+        sut.transfer(ACC_NO_1, ACC_NO_2, BigDecimal.valueOf(10));
+
+        assertThat(repo.find(ACC_NO_1).getBalance()).isEqualTo(BigDecimal.valueOf(0));
+        assertThat(repo.find(ACC_NO_2).getBalance()).isEqualTo(BigDecimal.valueOf(20));
+    }
+
+    @Test
+    public void transfer_onSingleStripe_shouldAdjustBalancesCorrectly() {
+        sut = new StripedLockTransferService(repo, 1);
+
+        sut.transfer(ACC_NO_1, ACC_NO_2, BigDecimal.valueOf(4));
+
+        assertThat(repo.find(ACC_NO_1).getBalance()).isEqualTo(BigDecimal.valueOf(6));
+        assertThat(repo.find(ACC_NO_2).getBalance()).isEqualTo(BigDecimal.valueOf(14));
+    }
+
+    @Test
+    public void transfer_onContendedStripe_shouldReportLockWait() throws InterruptedException {
+        final CountDownLatch appending = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        repo = new InMemoryAccountRepository(new BlockingJournal(appending, release));
+        repo.create(ACC_NO_1, BigDecimal.valueOf(10));
+        repo.create(ACC_NO_2, BigDecimal.valueOf(10));
+        final AtomicLong waited = new AtomicLong();
+        sut = new StripedLockTransferService(repo, 1, waited::set);
+
+        final Thread holder = new Thread(() -> sut.transfer(ACC_NO_1, ACC_NO_2, BigDecimal.ONE));
+        holder.start();
+        assertThat(appending.await(10, TimeUnit.SECONDS)).isTrue();
+        final Thread waiter = new Thread(() -> sut.transfer(ACC_NO_2, ACC_NO_1, BigDecimal.ONE));
+        waiter.start();
+        while (waiter.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        holder.join();
+        waiter.join();
+
+        assertThat(waited.get()).isPositive();
+    }
+
+    @Test
+    public void transfer_onUncontendedStripe_shouldNotReportLockWait() {
+        final AtomicLong waits = new AtomicLong();
+        sut = new StripedLockTransferService(repo, 1, nanos -> waits.incrementAndGet());
+
+        sut.transfer(ACC_NO_1, ACC_NO_2, BigDecimal.ONE);
+
+        assertThat(waits.get()).isZero();
+    }
+
+    @Test
+    public void transfer_manyThreadsRandomAccounts_shouldConserveTotalMoney() throws InterruptedException {
+        final int accounts = 64;
+        final int threads = 32;
+        final int transfersPerThread = 5_000;
+        repo.clear();
+        for (int i = 0; i < accounts; i++) {
+            repo.create("acc-" + i, BigDecimal.valueOf(100));
+        }
+        // Few stripes force many accounts to share locks, which exercises the ordering on collisions.
+        sut = new StripedLockTransferService(repo, 8);
+
+        final ExecutorService es = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            es.execute(() -> {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < transfersPerThread; i++) {
+                    final String sender = "acc-" + random.nextInt(accounts);
+                    final String receiver = "acc-" + random.nextInt(accounts);
+                    try {
+                        sut.transfer(sender, receiver, BigDecimal.valueOf(random.nextInt(1, 30)));
+                    } catch (final TransferException ignored) {
+                        // insufficient funds are expected
+                    }
+                }
+            });
+        }
+        es.shutdown();
+
+        assertThat(es.awaitTermination(60, TimeUnit.SECONDS)).isTrue();
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < accounts; i++) {
+            final BigDecimal balance = repo.find("acc-" + i).getBalance();
+            assertThat(balance).isGreaterThanOrEqualTo(BigDecimal.ZERO);
+            total = total.add(balance);
+        }
+        assertThat(total).isEqualTo(BigDecimal.valueOf(100L * accounts));
+        assertThat(repo.isConsistent()).isTrue();
+        assertThat(repo.verifyConsistency().getBalanceSum()).isEqualByComparingTo(repo.getTracker().sum());
+    }
+
+    @Test
+    public void transfer_oppositeDirections_shouldNotDeadlock() throws InterruptedException {
+        repo.create("sender", BigDecimal.valueOf(1000));
+        repo.create("receiver", BigDecimal.valueOf(1000));
+
+        final ExecutorService es = Executors.newFixedThreadPool(16);
+        for (int t = 0; t < 16; t++) {
+            final boolean forward = t % 2 == 0;
+            es.execute(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    try {
+                        if (forward) {
+                            sut.transfer("sender", "receiver", BigDecimal.ONE);
+                        } else {
+                            sut.transfer("receiver", "sender", BigDecimal.ONE);
+                        }
+                    } catch (final TransferException ignored) {
+                        // one side may temporarily run dry
+                    }
+                }
+            });
+        }
+        es.shutdown();
+
+        assertThat(es.awaitTermination(60, TimeUnit.SECONDS)).isTrue();
+        assertThat(repo.find("sender").getBalance().add(repo.find("receiver").getBalance()))
+                .isEqualTo(BigDecimal.valueOf(2000));
+    }
+
+    @Test
+    public void transferAll_atomicCoveredBatch_shouldApplyAllTransfers() {
+        final BatchResult result = sut.transferAll(Arrays.asList(
+                new Transfer(ACC_NO_1, ACC_NO_2, BigDecimal.valueOf(4)),
+                new Transfer(ACC_NO_2, ACC_NO_1, BigDecimal.valueOf(1))), BatchMode.ATOMIC);
+
+        assertThat(result.isCommitted()).isTrue();
+        assertThat(result.getResults()).extracting(TransferResult::isSuccess).containsExactly(true, true);
+        assertThat(repo.find(ACC_NO_1).getBalance()).isEqualTo(BigDecimal.valueOf(7));
+        assertThat(repo.find(ACC_NO_2).getBalance()).isEqualTo(BigDecimal.valueOf(13));
+    }
+
+    @Test
+    public void transferAll_atomicBatchCoveredOnlyByNetEffect_shouldApplyAllTransfers() {
+        final BatchResult result = sut.transferAll(Arrays.asList(
+                new Transfer(ACC_NO_1, ACC_NO_2, BigDecimal.valueOf(15)),
+                new Transfer(ACC_NO_2, ACC_NO_1, BigDecimal.valueOf(10))), BatchMode.ATOMIC);
+
+        assertThat(result.isCommitted()).isTrue();
+        assertThat(repo.find(ACC_NO_1).getBalance()).isEqualTo(BigDecimal.valueOf(5));
+        assertThat(repo.find(ACC_NO_2).getBalance()).isEqualTo(BigDecimal.valueOf(15));
+    }
+
+    @Test
+    public void transferAll_atomicUncoveredBatch_shouldApplyNothing() {
+        final BatchResult result = sut.transferAll(Arrays.asList(
+                new Transfer(ACC_NO_2, ACC_NO_1, BigDecimal.valueOf(5)),
+                new Transfer(ACC_NO_1, ACC_NO_2, BigDecimal.valueOf(16))), BatchMode.ATOMIC);
+
+        assertThat(result.isCommitted()).isFalse();
+        assertThat(result.getResults()).extracting(TransferResult::getError)
+                .containsExactly(Batch.NOT_APPLIED,
+                        "Money transfer failed: The account does not have sufficient balance for the batch.");
+        assertThat(repo.find(ACC_NO_1).getBalance()).isEqualTo(BigDecimal.valueOf(10));
+        assertThat(repo.find(ACC_NO_2).getBalance()).isEqualTo(BigDecimal.valueOf(10));
+    }
+
+    @Test
+    public void transferAll_atomicBatchWithUnknownAccount_shouldApplyNothing() {
+        final BatchResult result = sut.transferAll(Arrays.asList(
+                new Transfer(ACC_NO_1, ACC_NO_2, BigDecimal.valueOf(1)),
+                new Transfer(ACC_NO_1, "42", BigDecimal.valueOf(1))), BatchMode.ATOMIC);
+
+        assertThat(result.isCommitted()).isFalse();
+        assertThat(result.getResults()).extracting(TransferResult::isSuccess).containsExactly(false, false);
+        assertThat(repo.find(ACC_NO_1).getBalance()).isEqualTo(BigDecimal.valueOf(10));
+    }
+
+    @Test
+    public void transferAll_bestEffort_shouldApplyTransfersInOrderAndReportFailures() {
+        final BatchResult result = sut.transferAll(Arrays.asList(
+                new Transfer(ACC_NO_1, ACC_NO_2, BigDecimal.valueOf(6)),
+                new Transfer(ACC_NO_1, ACC_NO_2, BigDecimal.valueOf(6)),
+                new Transfer(ACC_NO_1, "42", BigDecimal.valueOf(1)),
+                new Transfer(ACC_NO_2, ACC_NO_1, BigDecimal.valueOf(0)),
+                new Transfer(ACC_NO_1, ACC_NO_2, BigDecimal.valueOf(4))), BatchMode.BEST_EFFORT);
+
+        assertThat(result.isCommitted()).isFalse();
+        assertThat(result.getResults()).extracting(TransferResult::isSuccess)
+                .containsExactly(true, false, false, false, true);
+        assertThat(repo.find(ACC_NO_1).getBalance()).isEqualTo(BigDecimal.valueOf(0));
+        assertThat(repo.find(ACC_NO_2).getBalance()).isEqualTo(BigDecimal.valueOf(20));
+    }
+
+    @Test
+    public void transferAll_concurrentBatchesAndTransfers_shouldConserveTotalMoney() throws InterruptedException {
+        final int accounts = 32;
+        repo.clear();
+        for (int i = 0; i < accounts; i++) {
+            repo.create("acc-" + i, BigDecimal.valueOf(100));
+        }
+        sut = new StripedLockTransferService(repo, 16);
+
+        final ExecutorService es = Executors.newFixedThreadPool(16);
+        for (int t = 0; t < 16; t++) {
+            final BatchMode mode = t % 2 == 0 ? BatchMode.ATOMIC : BatchMode.BEST_EFFORT;
+            es.execute(() -> {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 500; i++) {
+                    final List<Transfer> batch = new ArrayList<>();
+                    for (int j = 0; j < 8; j++) {
+                        batch.add(new Transfer("acc-" + random.nextInt(accounts), "acc-" + random.nextInt(accounts),
+                                BigDecimal.valueOf(random.nextInt(1, 50))));
+                    }
+                    sut.transferAll(batch, mode);
+                    try {
+                        sut.transfer("acc-" + random.nextInt(accounts), "acc-" + random.nextInt(accounts),
+                                BigDecimal.ONE);
+                    } catch (final TransferException ignored) {
+                        // insufficient funds are expected
+                    }
+                }
+            });
+        }
+        es.shutdown();
+
+        assertThat(es.awaitTermination(60, TimeUnit.SECONDS)).isTrue();
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < accounts; i++) {
+            final BigDecimal balance = repo.find("acc-" + i).getBalance();
+            assertThat(balance).isGreaterThanOrEqualTo(BigDecimal.ZERO);
+            total = total.add(balance);
+        }
+        assertThat(total).isEqualTo(BigDecimal.valueOf(100L * accounts));
+    }
+
+    @Test
+    public void transferAll_concurrentlyWithHotAccounts_shouldConserveTotalMoney() throws InterruptedException {
+        final int accounts = 32;
+        repo = new InMemoryAccountRepository(new HashSet<>(Arrays.asList("acc-0", "acc-1")), 4);
+        for (int i = 0; i < accounts; i++) {
+            repo.create("acc-" + i, BigDecimal.valueOf(100));
+        }
+        sut = new StripedLockTransferService(repo, 16);
+
+        final ExecutorService es = Executors.newFixedThreadPool(16);
+        for (int t = 0; t < 16; t++) {
+            final BatchMode mode = t % 2 == 0 ? BatchMode.ATOMIC : BatchMode.BEST_EFFORT;
+            es.execute(() -> {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 500; i++) {
+                    sut.transferAll(Arrays.asList(
+                            new Transfer("acc-" + random.nextInt(accounts), "acc-" + random.nextInt(2),
+                                    BigDecimal.valueOf(random.nextInt(1, 50))),
+                            new Transfer("acc-" + random.nextInt(2), "acc-" + random.nextInt(accounts),
+                                    BigDecimal.valueOf(random.nextInt(1, 50)))), mode);
+                    try {
+                        sut.transfer("acc-" + random.nextInt(accounts), "acc-" + random.nextInt(2), BigDecimal.ONE);
+                    } catch (final TransferException ignored) {
+                        // insufficient funds are expected
+                    }
+                }
+            });
+        }
+        es.shutdown();
+
+        assertThat(es.awaitTermination(60, TimeUnit.SECONDS)).isTrue();
+        assertThat(repo.find("acc-0").isSplit()).isTrue();
+        BigDecimal total = BigDecimal.ZERO;
+        for (int i = 0; i < accounts; i++) {
+            final BigDecimal balance = repo.find("acc-" + i).getBalance();
+            assertThat(balance).isGreaterThanOrEqualTo(BigDecimal.ZERO);
+            total = total.add(balance);
+        }
+        assertThat(total).isEqualTo(BigDecimal.valueOf(100L * accounts));
+        assertThat(repo.checkConsistency().isConsistent()).isTrue();
+    }
+
+    @Test
+    public void snapshotAll_concurrentlyWithTransfers_shouldAlwaysSeeTotalMoney() throws InterruptedException {
+        final int accounts = 8;
+        repo = new InMemoryAccountRepository(new HashSet<>(Arrays.asList("acc-0", "acc-1")), 4);
+        final List<String> accountNos = new ArrayList<>();
+        for (int i = 0; i < accounts; i++) {
+            accountNos.add("acc-" + i);
+            repo.create("acc-" + i, BigDecimal.valueOf(100));
+        }
+        sut = new StripedLockTransferService(repo, 16);
+
+        final ExecutorService es = Executors.newFixedThreadPool(4);
+        for (int t = 0; t < 4; t++) {
+            es.execute(() -> {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 5_000; i++) {
+                    try {
+                        sut.transfer("acc-" + random.nextInt(accounts), "acc-" + random.nextInt(accounts),
+                                BigDecimal.valueOf(random.nextInt(1, 50)));
+                    } catch (final TransferException ignored) {
+                        // insufficient funds are expected
+                    }
+                    sut.transferAll(Arrays.asList(
+                            new Transfer("acc-" + random.nextInt(accounts), "acc-" + random.nextInt(accounts),
+                                    BigDecimal.ONE),
+                            new Transfer("acc-" + random.nextInt(accounts), "acc-0", BigDecimal.ONE),
+                            new Transfer("acc-" + random.nextInt(accounts), "acc-1", BigDecimal.ONE)),
+                            BatchMode.ATOMIC);
+                }
+            });
+        }
+        es.shutdown();
+
+        do {
+            BigDecimal total = BigDecimal.ZERO;
+            for (final Account account : repo.snapshotAll(accountNos)) {
+                total = total.add(account.getBalance());
+            }
+            assertThat(total).isEqualByComparingTo(BigDecimal.valueOf(100L * accounts));
+        } while (!es.awaitTermination(0, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Journal which blocks the first transfer while it holds its stripes.
+     */
+    private static final class BlockingJournal implements Journal {
+
+        private final CountDownLatch appending;
+        private final CountDownLatch release;
+
+        private BlockingJournal(final CountDownLatch appending, final CountDownLatch release) {
+            this.appending = appending;
+            this.release = release;
+        }
+
+        @Override
+        public long appendCreate(final String accountNo, final BigDecimal balance) {
+            return 0;
+        }
+
+        @Override
+        public long appendTransfer(final String senderAccNo, final BigDecimal senderBalance,
+                                   final String receiverAccNo, final BigDecimal receiverBalance) {
+            if (appending.getCount() > 0) {
+                appending.countDown();
+                try {
+                    release.await();
+                } catch (final InterruptedException exception) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public long appendBalances(final Map<String, BigDecimal> balances) {
+            return 0;
+        }
+
+        @Override
+        public long appendClear() {
+            return 0;
+        }
+
+        @Override
+        public void awaitDurable(final long position) {
+            // nothing to wait for
+        }
+    }
+}